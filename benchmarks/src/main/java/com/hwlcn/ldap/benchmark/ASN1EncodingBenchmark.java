@@ -0,0 +1,94 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.asn1.ASN1Buffer;
+import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
+import com.hwlcn.ldap.ldap.protocol.SearchResultEntryProtocolOp;
+import com.hwlcn.ldap.ldap.sdk.Filter;
+import com.hwlcn.ldap.ldap.sdk.SearchRequest;
+import com.hwlcn.ldap.ldap.sdk.SearchScope;
+
+
+
+/**
+ * Measures the cost of encoding typical request and response messages with
+ * {@link ASN1Buffer}, reusing one buffer per thread the way the connection
+ * internals do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ASN1EncodingBenchmark
+{
+  private ASN1Buffer buffer;
+
+  private LDAPMessage searchRequestMessage;
+
+  private LDAPMessage searchResultEntryMessage;
+
+
+
+  @Setup()
+  public void setUp()
+         throws Exception
+  {
+    buffer = new ASN1Buffer();
+
+    final SearchRequest searchRequest = new SearchRequest(
+         BenchmarkData.BASE_DN, SearchScope.SUB,
+         Filter.create("(&(objectClass=inetOrgPerson)(uid=user.12345))"),
+         "cn", "sn", "mail", "telephoneNumber");
+    searchRequestMessage = new LDAPMessage(2, searchRequest);
+
+    searchResultEntryMessage = new LDAPMessage(2,
+         new SearchResultEntryProtocolOp(
+              BenchmarkData.createUserEntry(12345)));
+  }
+
+
+
+  @Benchmark()
+  public int encodeSearchRequest()
+  {
+    buffer.clear();
+    searchRequestMessage.writeTo(buffer);
+    return buffer.length();
+  }
+
+
+
+  @Benchmark()
+  public int encodeSearchResultEntry()
+  {
+    buffer.clear();
+    searchResultEntryMessage.writeTo(buffer);
+    return buffer.length();
+  }
+
+
+
+  @Benchmark()
+  public byte[] encodeSearchResultEntryToByteArray()
+  {
+    buffer.clear();
+    searchResultEntryMessage.writeTo(buffer);
+    return buffer.toByteArray();
+  }
+}
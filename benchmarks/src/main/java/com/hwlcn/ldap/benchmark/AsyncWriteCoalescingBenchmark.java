@@ -0,0 +1,274 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.SocketFactory;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.AddRequest;
+import com.hwlcn.ldap.ldap.sdk.AsyncRequestID;
+import com.hwlcn.ldap.ldap.sdk.BasicAsyncResultListener;
+import com.hwlcn.ldap.ldap.sdk.BasicAsyncSearchResultListener;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnection;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnectionOptions;
+import com.hwlcn.ldap.ldap.sdk.LDAPResult;
+import com.hwlcn.ldap.ldap.sdk.SearchRequest;
+import com.hwlcn.ldap.ldap.sdk.SearchScope;
+
+
+
+/**
+ * Measures the latency distribution of asynchronous adds and searches sent
+ * concurrently by several threads over a single connection to an in-memory
+ * server on a loopback port, without write coalescing (a coalescing delay of
+ * -1) and with it, with no delay and with a 50 microsecond coalescing delay.
+ * Run in sample time mode, JMH reports the p99 latency of each operation along
+ * with the mean.
+ * <BR><BR>
+ * The connection's socket counts the write calls made on its output stream,
+ * each of which is one send system call, against the thread that makes them.
+ * JMH reports the totals as the {@code operations} and {@code writeCalls}
+ * secondary results, and their ratio is the number of write calls per
+ * operation.  Without coalescing, this is one per operation; with coalescing,
+ * requests sent while another thread is writing share a write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class AsyncWriteCoalescingBenchmark
+{
+  @Param({ "-1", "0", "50" })
+  public long writeCoalescingDelayMicros;
+
+
+
+  private final AtomicInteger nextUser =
+       new AtomicInteger(LoopbackServer.NUM_USERS);
+
+  private LDAPConnection connection;
+
+
+
+  @Setup(Level.Trial)
+  public void setUp(final LoopbackServer server)
+         throws Exception
+  {
+    final LDAPConnectionOptions options = new LDAPConnectionOptions();
+    if (writeCoalescingDelayMicros >= 0L)
+    {
+      options.setUseWriteCoalescing(true);
+      options.setMaxWriteCoalescingDelayMicros(writeCoalescingDelayMicros);
+    }
+
+    connection = new LDAPConnection(new CountingSocketFactory(), options,
+         server.getHost(), server.getPort());
+  }
+
+
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    connection.close();
+  }
+
+
+
+  @Benchmark()
+  public LDAPResult asyncAdd(final WriteCounters counters)
+         throws Exception
+  {
+    final AddRequest addRequest = new AddRequest(
+         BenchmarkData.createUserEntry(nextUser.getAndIncrement()));
+    final AsyncRequestID requestID =
+         connection.asyncAdd(addRequest, new BasicAsyncResultListener());
+    counters.operations++;
+    return requestID.get();
+  }
+
+
+
+  @Benchmark()
+  public LDAPResult asyncSearch(final WriteCounters counters)
+         throws Exception
+  {
+    final int i = ThreadLocalRandom.current().nextInt(LoopbackServer.NUM_USERS);
+    final SearchRequest searchRequest =
+         new SearchRequest(new BasicAsyncSearchResultListener(),
+              BenchmarkData.BASE_DN, SearchScope.SUB, "(uid=user." + i + ')');
+    final AsyncRequestID requestID = connection.asyncSearch(searchRequest);
+    counters.operations++;
+    return requestID.get();
+  }
+
+
+
+  /**
+   * The operations sent and socket write calls made by one benchmark thread
+   * in the current iteration.  A write call is counted against the thread
+   * that makes it, which with coalescing may be writing other threads'
+   * requests as well as its own.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class WriteCounters
+  {
+    private static final ThreadLocal<WriteCounters> CURRENT =
+         new ThreadLocal<WriteCounters>();
+
+    public long operations;
+
+    public long writeCalls;
+
+
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+      operations = 0L;
+      writeCalls = 0L;
+      CURRENT.set(this);
+    }
+
+
+
+    @TearDown(Level.Iteration)
+    public void detach()
+    {
+      CURRENT.remove();
+    }
+
+
+
+    private static void countWrite()
+    {
+      final WriteCounters counters = CURRENT.get();
+      if (counters != null)
+      {
+        counters.writeCalls++;
+      }
+    }
+  }
+
+
+
+  /**
+   * A socket factory whose sockets count the write calls made on their
+   * output streams.
+   */
+  private static final class CountingSocketFactory
+          extends SocketFactory
+  {
+    @Override()
+    public Socket createSocket(final String host, final int port)
+           throws IOException
+    {
+      return new CountingSocket(host, port);
+    }
+
+
+
+    @Override()
+    public Socket createSocket(final String host, final int port,
+                               final InetAddress localAddress,
+                               final int localPort)
+           throws IOException
+    {
+      return createSocket(host, port);
+    }
+
+
+
+    @Override()
+    public Socket createSocket(final InetAddress address, final int port)
+           throws IOException
+    {
+      return createSocket(address.getHostAddress(), port);
+    }
+
+
+
+    @Override()
+    public Socket createSocket(final InetAddress address, final int port,
+                               final InetAddress localAddress,
+                               final int localPort)
+           throws IOException
+    {
+      return createSocket(address.getHostAddress(), port);
+    }
+  }
+
+
+
+  private static final class CountingSocket
+          extends Socket
+  {
+    private OutputStream outputStream;
+
+
+
+    private CountingSocket(final String host, final int port)
+            throws IOException
+    {
+      super(host, port);
+    }
+
+
+
+    @Override()
+    public synchronized OutputStream getOutputStream()
+           throws IOException
+    {
+      if (outputStream == null)
+      {
+        outputStream = new FilterOutputStream(super.getOutputStream())
+        {
+          @Override()
+          public void write(final int b)
+                 throws IOException
+          {
+            WriteCounters.countWrite();
+            out.write(b);
+          }
+
+          @Override()
+          public void write(final byte[] b, final int off, final int len)
+                 throws IOException
+          {
+            WriteCounters.countWrite();
+            out.write(b, off, len);
+          }
+        };
+      }
+
+      return outputStream;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hwlcn.ldap.ldap.sdk.Attribute;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldif.LDIFWriter;
+
+
+
+/**
+ * Generates the directory data shared by the benchmarks.  The data is
+ * deterministic so that results remain comparable across releases.
+ */
+final class BenchmarkData
+{
+  static final String BASE_DN = "dc=example,dc=com";
+
+  static final String PEOPLE_DN = "ou=People,dc=example,dc=com";
+
+
+
+  private BenchmarkData()
+  {
+    // No implementation required.
+  }
+
+
+
+  static Entry createBaseEntry()
+  {
+    return new Entry(BASE_DN,
+         new Attribute("objectClass", "top", "domain"),
+         new Attribute("dc", "example"));
+  }
+
+
+
+  static Entry createPeopleEntry()
+  {
+    return new Entry(PEOPLE_DN,
+         new Attribute("objectClass", "top", "organizationalUnit"),
+         new Attribute("ou", "People"));
+  }
+
+
+
+  static String getUserDN(final int i)
+  {
+    return "uid=user." + i + ',' + PEOPLE_DN;
+  }
+
+
+
+  static Entry createUserEntry(final int i)
+  {
+    final Entry e = new Entry(getUserDN(i));
+    e.addAttribute("objectClass", "top", "person", "organizationalPerson",
+         "inetOrgPerson");
+    e.addAttribute("uid", "user." + i);
+    e.addAttribute("givenName", "Given" + i);
+    e.addAttribute("sn", "Surname" + (i % 1000));
+    e.addAttribute("cn", "Given" + i + " Surname" + (i % 1000));
+    e.addAttribute("mail", "user." + i + "@example.com");
+    e.addAttribute("telephoneNumber", "+1 512 555 " + (1000 + (i % 9000)));
+    e.addAttribute("employeeNumber", String.valueOf(i));
+    e.addAttribute("departmentNumber", String.valueOf(i % 50));
+    e.addAttribute("description", "Benchmark user number " + i +
+         " with a value long enough to require LDIF line wrapping when it " +
+         "is written with the default wrap column.");
+    e.addAttribute("userPassword", "password" + i);
+    return e;
+  }
+
+
+
+  static List<Entry> createEntries(final int numUsers)
+  {
+    final ArrayList<Entry> entries = new ArrayList<Entry>(numUsers + 2);
+    entries.add(createBaseEntry());
+    entries.add(createPeopleEntry());
+    for (int i=0; i < numUsers; i++)
+    {
+      entries.add(createUserEntry(i));
+    }
+    return entries;
+  }
+
+
+
+  static File createLDIFFile(final int numUsers)
+         throws IOException
+  {
+    final File f = File.createTempFile("ldap-benchmark-", ".ldif");
+    f.deleteOnExit();
+
+    final LDIFWriter writer = new LDIFWriter(f);
+    try
+    {
+      for (int i=0; i < numUsers; i++)
+      {
+        writer.writeEntry(createUserEntry(i));
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+    return f;
+  }
+}
@@ -0,0 +1,102 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.CompactEntry;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+
+
+
+/**
+ * Measures converting entries to and from {@link CompactEntry} and reading
+ * attribute values from the compact form.  Run with {@code -prof gc} to
+ * compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactEntryBenchmark
+{
+  private static final int NUM_ENTRIES = 1024;
+
+
+
+  private CompactEntry[] compactEntries;
+
+  private Entry[] entries;
+
+  private int next;
+
+
+
+  @Setup()
+  public void setUp()
+  {
+    final List<Entry> l = BenchmarkData.createEntries(NUM_ENTRIES);
+    entries        = new Entry[NUM_ENTRIES];
+    compactEntries = new CompactEntry[NUM_ENTRIES];
+    for (int i=0; i < NUM_ENTRIES; i++)
+    {
+      entries[i]        = l.get(i);
+      compactEntries[i] = new CompactEntry(entries[i]);
+    }
+    next = 0;
+  }
+
+
+
+  private int nextIndex()
+  {
+    next = (next + 1) & (NUM_ENTRIES - 1);
+    return next;
+  }
+
+
+
+  @Benchmark()
+  public CompactEntry toCompactEntry()
+  {
+    return new CompactEntry(entries[nextIndex()]);
+  }
+
+
+
+  @Benchmark()
+  public Entry toEntry()
+  {
+    return compactEntries[nextIndex()].toEntry();
+  }
+
+
+
+  @Benchmark()
+  public String getAttributeValue()
+  {
+    return compactEntries[nextIndex()].getAttributeValue("mail");
+  }
+
+
+
+  @Benchmark()
+  public String getAttributeValueFromEntry()
+  {
+    return entries[nextIndex()].getAttributeValue("mail");
+  }
+}
@@ -0,0 +1,231 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.LDAPConnection;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnectionPool;
+import com.hwlcn.ldap.ldap.sdk.SearchResult;
+import com.hwlcn.ldap.ldap.sdk.SearchScope;
+
+
+
+/**
+ * Measures connection checkout and release, and complete searches, through an
+ * {@link LDAPConnectionPool} connected to an in-memory server on a loopback
+ * port, with the default and the striped checkout implementations.
+ * <BR><BR>
+ * Each operation is run with 1, 8, 64 and 512 threads, by the methods whose
+ * names end in the thread count.  The pool is sized to the thread count, up to
+ * {@link #MAX_POOL_SIZE} connections, so that up to 64 threads every thread
+ * can hold a connection and the runs measure contention on the pool itself;
+ * with 512 threads, four threads share each connection and also wait for one
+ * to be released.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionPoolBenchmark
+{
+  static final int MAX_POOL_SIZE = 128;
+
+
+
+  /**
+   * The pool shared by the threads of one run, sized for its thread count.
+   */
+  @State(Scope.Benchmark)
+  public abstract static class PoolState
+  {
+    @Param({ "false", "true" })
+    public boolean useStripedCheckout;
+
+    LDAPConnectionPool pool;
+
+
+
+    abstract int getNumThreads();
+
+
+
+    @Setup(Level.Trial)
+    public void setUp(final LoopbackServer server)
+           throws Exception
+    {
+      final int poolSize = Math.min(getNumThreads(), MAX_POOL_SIZE);
+      final LDAPConnection connection =
+           new LDAPConnection(server.getHost(), server.getPort());
+      pool = new LDAPConnectionPool(connection, poolSize, poolSize, 1, null,
+           true, useStripedCheckout);
+    }
+
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+      pool.close();
+    }
+  }
+
+
+
+  public static class Pool1 extends PoolState
+  {
+    int getNumThreads()
+    {
+      return 1;
+    }
+  }
+
+
+
+  public static class Pool8 extends PoolState
+  {
+    int getNumThreads()
+    {
+      return 8;
+    }
+  }
+
+
+
+  public static class Pool64 extends PoolState
+  {
+    int getNumThreads()
+    {
+      return 64;
+    }
+  }
+
+
+
+  public static class Pool512 extends PoolState
+  {
+    int getNumThreads()
+    {
+      return 512;
+    }
+  }
+
+
+
+  private static LDAPConnection checkoutAndRelease(
+                                     final LDAPConnectionPool pool)
+          throws Exception
+  {
+    final LDAPConnection connection = pool.getConnection();
+    pool.releaseConnection(connection);
+    return connection;
+  }
+
+
+
+  private static int search(final LDAPConnectionPool pool)
+          throws Exception
+  {
+    final int i = ThreadLocalRandom.current().nextInt(LoopbackServer.NUM_USERS);
+    final SearchResult result = pool.search(BenchmarkData.BASE_DN,
+         SearchScope.SUB, "(uid=user." + i + ')', "cn", "mail");
+    return result.getEntryCount();
+  }
+
+
+
+  @Benchmark()
+  @Threads(1)
+  public LDAPConnection checkoutAndRelease001(final Pool1 state)
+         throws Exception
+  {
+    return checkoutAndRelease(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(8)
+  public LDAPConnection checkoutAndRelease008(final Pool8 state)
+         throws Exception
+  {
+    return checkoutAndRelease(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(64)
+  public LDAPConnection checkoutAndRelease064(final Pool64 state)
+         throws Exception
+  {
+    return checkoutAndRelease(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(512)
+  public LDAPConnection checkoutAndRelease512(final Pool512 state)
+         throws Exception
+  {
+    return checkoutAndRelease(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(1)
+  public int search001(final Pool1 state)
+         throws Exception
+  {
+    return search(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(8)
+  public int search008(final Pool8 state)
+         throws Exception
+  {
+    return search(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(64)
+  public int search064(final Pool64 state)
+         throws Exception
+  {
+    return search(state.pool);
+  }
+
+
+
+  @Benchmark()
+  @Threads(512)
+  public int search512(final Pool512 state)
+         throws Exception
+  {
+    return search(state.pool);
+  }
+}
@@ -0,0 +1,148 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.DN;
+import com.hwlcn.ldap.ldap.sdk.DNInternPool;
+
+
+
+/**
+ * Measures DN parsing, normalization, and comparison, with and without a
+ * {@link DNInternPool}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DNBenchmark
+{
+  private static final int NUM_DNS = 1024;
+
+
+
+  private DN[] parsedDNs;
+
+  private DN[] internedDNs;
+
+  private DNInternPool pool;
+
+  private String[] dnStrings;
+
+  private String[] equivalentDNStrings;
+
+  private int next;
+
+
+
+  @Setup()
+  public void setUp()
+         throws Exception
+  {
+    pool = new DNInternPool(NUM_DNS * 4);
+
+    dnStrings           = new String[NUM_DNS];
+    equivalentDNStrings = new String[NUM_DNS];
+    parsedDNs           = new DN[NUM_DNS];
+    internedDNs         = new DN[NUM_DNS];
+    for (int i=0; i < NUM_DNS; i++)
+    {
+      dnStrings[i] = BenchmarkData.getUserDN(i);
+      equivalentDNStrings[i] =
+           "UID=User." + i + ", OU=people, DC=Example, DC=COM";
+      parsedDNs[i] = new DN(dnStrings[i]);
+      internedDNs[i] = pool.intern(dnStrings[i]);
+    }
+    next = 0;
+  }
+
+
+
+  private int nextIndex()
+  {
+    next = (next + 1) & (NUM_DNS - 1);
+    return next;
+  }
+
+
+
+  @Benchmark()
+  public DN parse()
+         throws Exception
+  {
+    return new DN(dnStrings[nextIndex()]);
+  }
+
+
+
+  @Benchmark()
+  public String normalize()
+         throws Exception
+  {
+    return new DN(equivalentDNStrings[nextIndex()]).toNormalizedString();
+  }
+
+
+
+  @Benchmark()
+  public boolean parseAndCompare()
+         throws Exception
+  {
+    final int i = nextIndex();
+    return new DN(equivalentDNStrings[i]).equals(parsedDNs[i]);
+  }
+
+
+
+  @Benchmark()
+  public DN intern()
+         throws Exception
+  {
+    return pool.intern(dnStrings[nextIndex()]);
+  }
+
+
+
+  @Benchmark()
+  public boolean internAndCompare()
+         throws Exception
+  {
+    final int i = nextIndex();
+    return pool.intern(equivalentDNStrings[i]).equals(internedDNs[i]);
+  }
+
+
+
+  @Benchmark()
+  public boolean isDescendantOf()
+  {
+    final int i = nextIndex();
+    return parsedDNs[i].isDescendantOf(parsedDNs[(i + 1) & (NUM_DNS - 1)],
+         false);
+  }
+
+
+
+  @Benchmark()
+  public boolean internedIsDescendantOf()
+  {
+    final int i = nextIndex();
+    return internedDNs[i].isDescendantOf(
+         internedDNs[(i + 1) & (NUM_DNS - 1)], false);
+  }
+}
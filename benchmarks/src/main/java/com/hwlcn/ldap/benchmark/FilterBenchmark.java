@@ -0,0 +1,114 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.CompiledFilter;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldap.sdk.Filter;
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+
+
+
+/**
+ * Measures parsing a filter string with {@link Filter#create}, and evaluating
+ * a filter against a set of entries both with {@link Filter#matchesEntry} and
+ * with a {@link CompiledFilter}, over 1,000 and 100,000 entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark
+{
+  @Param({
+    "(uid=user.500)",
+    "(&(objectClass=inetOrgPerson)(|(sn=Surname1*)(departmentNumber=7)))",
+    "(&(objectClass=person)(!(mail=*@example.org))(employeeNumber>=900))"
+  })
+  public String filterString;
+
+  @Param({ "1000", "100000" })
+  public int numEntries;
+
+
+
+  private CompiledFilter compiledFilter;
+
+  private Filter filter;
+
+  private List<Entry> entries;
+
+  private Schema schema;
+
+
+
+  @Setup()
+  public void setUp()
+         throws Exception
+  {
+    schema = Schema.getDefaultStandardSchema();
+    entries = BenchmarkData.createEntries(numEntries);
+    filter = Filter.create(filterString);
+    compiledFilter = filter.compile(schema);
+  }
+
+
+
+  @Benchmark()
+  public Filter create()
+         throws Exception
+  {
+    return Filter.create(filterString);
+  }
+
+
+
+  @Benchmark()
+  public int matchesEntry()
+         throws Exception
+  {
+    int matches = 0;
+    for (final Entry e : entries)
+    {
+      if (filter.matchesEntry(e, schema))
+      {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+
+
+  @Benchmark()
+  public int compiledMatchesEntry()
+         throws Exception
+  {
+    int matches = 0;
+    for (final Entry e : entries)
+    {
+      if (compiledFilter.matchesEntry(e))
+      {
+        matches++;
+      }
+    }
+    return matches;
+  }
+}
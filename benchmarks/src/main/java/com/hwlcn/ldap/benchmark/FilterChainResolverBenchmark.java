@@ -0,0 +1,127 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.security.util.AntPathMatcher;
+import com.hwlcn.security.web.filter.mgt.FilterChainPathIndex;
+
+
+
+/**
+ * Compares finding the filter chain for a request path by matching each of
+ * 500 chain definitions in turn, as {@code PathMatchingFilterChainResolver}
+ * did, with looking it up in a {@link FilterChainPathIndex} with and without
+ * its path cache.  The paths include numeric identifiers, so that there are
+ * more distinct paths than chains, and some match only the final catch-all
+ * chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainResolverBenchmark
+{
+  private static final int NUM_CHAINS = 500;
+
+  private static final int NUM_PATHS = 4096;
+
+
+
+  @Param({ "0", "10000" })
+  public int cacheSize;
+
+  private AntPathMatcher pathMatcher;
+
+  private FilterChainPathIndex index;
+
+  private List<String> chainNames;
+
+  private String[] paths;
+
+  private int next;
+
+
+
+  @Setup()
+  public void setUp()
+  {
+    chainNames = new ArrayList<String>(NUM_CHAINS);
+    for (int i=0; chainNames.size() < NUM_CHAINS - 1; i++)
+    {
+      chainNames.add("/module" + i + "/login.jsp");
+      chainNames.add("/module" + i + "/admin/**");
+      chainNames.add("/module" + i + "/api/*/items/**");
+      chainNames.add("/module" + i + "/**/*.css");
+      chainNames.add("/module" + i + "/static/**");
+    }
+    chainNames.add("/**");
+
+    pathMatcher = new AntPathMatcher();
+    index = new FilterChainPathIndex(chainNames, pathMatcher, cacheSize);
+
+    final Random random = new Random(0L);
+    final String[] suffixes =
+    {
+      "/login.jsp", "/admin/users/", "/api/v1/items/", "/theme/site.css",
+      "/static/js/", "/orders/"
+    };
+    paths = new String[NUM_PATHS];
+    for (int i=0; i < NUM_PATHS; i++)
+    {
+      paths[i] = "/module" + random.nextInt(NUM_CHAINS / 5) +
+           suffixes[random.nextInt(suffixes.length)] + random.nextInt(500);
+    }
+    next = 0;
+  }
+
+
+
+  private String nextPath()
+  {
+    next = (next + 1) & (NUM_PATHS - 1);
+    return paths[next];
+  }
+
+
+
+  @Benchmark()
+  public String linearMatch()
+  {
+    final String path = nextPath();
+    for (final String chainName : chainNames)
+    {
+      if (pathMatcher.matches(chainName, path))
+      {
+        return chainName;
+      }
+    }
+    return null;
+  }
+
+
+
+  @Benchmark()
+  public String indexedMatch()
+  {
+    return index.getChainName(nextPath());
+  }
+}
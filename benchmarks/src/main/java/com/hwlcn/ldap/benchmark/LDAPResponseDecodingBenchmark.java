@@ -0,0 +1,118 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.asn1.ASN1Buffer;
+import com.hwlcn.ldap.asn1.ASN1StreamReader;
+import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
+import com.hwlcn.ldap.ldap.protocol.LDAPResponse;
+import com.hwlcn.ldap.ldap.protocol.SearchResultDoneProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.SearchResultEntryProtocolOp;
+import com.hwlcn.ldap.ldap.sdk.ResultCode;
+
+
+
+/**
+ * Measures {@link LDAPMessage#readLDAPResponseFrom} for a search result made
+ * up of a number of entries followed by a search result done message, read
+ * from an in-memory stream element by element, from an in-memory stream with
+ * each message buffered whole, and directly from a byte array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LDAPResponseDecodingBenchmark
+{
+  @Param({ "1", "100" })
+  public int numEntries;
+
+
+
+  private byte[] encodedResponses;
+
+
+
+  @Setup()
+  public void setUp()
+  {
+    final ASN1Buffer buffer = new ASN1Buffer();
+    for (int i=0; i < numEntries; i++)
+    {
+      new LDAPMessage(2, new SearchResultEntryProtocolOp(
+           BenchmarkData.createUserEntry(i))).writeTo(buffer);
+    }
+    new LDAPMessage(2, new SearchResultDoneProtocolOp(
+         ResultCode.SUCCESS_INT_VALUE, null, null, null)).writeTo(buffer);
+
+    encodedResponses = buffer.toByteArray();
+  }
+
+
+
+  @Benchmark()
+  public int decodeFromStream()
+         throws Exception
+  {
+    return readAll(new ASN1StreamReader(
+         new ByteArrayInputStream(encodedResponses)), false);
+  }
+
+
+
+  @Benchmark()
+  public int decodeFromStreamWithMessageBuffers()
+         throws Exception
+  {
+    return readAll(new ASN1StreamReader(
+         new ByteArrayInputStream(encodedResponses)), true);
+  }
+
+
+
+  @Benchmark()
+  public int decodeFromByteArray()
+         throws Exception
+  {
+    return readAll(new ASN1StreamReader(encodedResponses, 0,
+         encodedResponses.length, 0), false);
+  }
+
+
+
+  private static int readAll(final ASN1StreamReader reader,
+                             final boolean bufferMessages)
+          throws Exception
+  {
+    int count = 0;
+    while (true)
+    {
+      final LDAPResponse response =
+           LDAPMessage.readLDAPResponseFrom(reader, true, null,
+                bufferMessages);
+      if (response == null)
+      {
+        return count;
+      }
+
+      count++;
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldif.LDIFReader;
+import com.hwlcn.ldap.ldif.LDIFWriter;
+
+
+
+/**
+ * Measures reading and writing an LDIF file of generated user entries with
+ * {@link LDIFReader} and {@link LDIFWriter}.  A thread count of zero uses the
+ * serial implementations; otherwise the reader is measured in its
+ * asynchronous and memory-mapped modes and the writer in its pipelined mode
+ * with the given number of threads.  Entries to write are taken in turn from a
+ * pool of 10,000 generated entries so that a million-entry run does not need
+ * every entry in memory at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LDIFBenchmark
+{
+  private static final int ENTRY_POOL_SIZE = 10000;
+
+
+
+  @Param({ "50000", "1000000" })
+  public int numEntries;
+
+  @Param({ "0", "1", "4" })
+  public int numThreads;
+
+
+
+  private File inputFile;
+
+  private File outputFile;
+
+  private List<Entry> entries;
+
+
+
+  @Setup(Level.Trial)
+  public void setUp()
+         throws Exception
+  {
+    inputFile = BenchmarkData.createLDIFFile(numEntries);
+    entries = BenchmarkData.createEntries(Math.min(numEntries,
+         ENTRY_POOL_SIZE));
+
+    outputFile = File.createTempFile("ldap-benchmark-out-", ".ldif");
+    outputFile.deleteOnExit();
+  }
+
+
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    inputFile.delete();
+    outputFile.delete();
+  }
+
+
+
+  @Benchmark()
+  public int read()
+         throws Exception
+  {
+    final LDIFReader reader;
+    if (numThreads == 0)
+    {
+      reader = new LDIFReader(inputFile);
+    }
+    else
+    {
+      reader = new LDIFReader(inputFile, numThreads);
+    }
+
+    return readAll(reader);
+  }
+
+
+
+  @Benchmark()
+  public int readMapped()
+         throws Exception
+  {
+    return readAll(new LDIFReader(inputFile, Math.max(1, numThreads), null,
+         true));
+  }
+
+
+
+  @Benchmark()
+  public int readMappedUnordered()
+         throws Exception
+  {
+    return readAll(new LDIFReader(inputFile, Math.max(1, numThreads), null,
+         false));
+  }
+
+
+
+  @Benchmark()
+  public long write()
+         throws Exception
+  {
+    final LDIFWriter writer;
+    if (numThreads == 0)
+    {
+      writer = new LDIFWriter(outputFile);
+    }
+    else
+    {
+      writer = new LDIFWriter(outputFile, numThreads);
+    }
+
+    try
+    {
+      final int poolSize = entries.size();
+      for (int i=0; i < numEntries; i++)
+      {
+        writer.writeEntry(entries.get(i % poolSize));
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+
+    return outputFile.length();
+  }
+
+
+
+  private static int readAll(final LDIFReader reader)
+          throws Exception
+  {
+    try
+    {
+      int count = 0;
+      while (reader.readEntry() != null)
+      {
+        count++;
+      }
+      return count;
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.ldap.ldap.sdk.LDAPConnection;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnectionOptions;
+import com.hwlcn.ldap.ldap.sdk.SearchResult;
+import com.hwlcn.ldap.ldap.sdk.SearchScope;
+
+
+
+/**
+ * Measures end-to-end search latency over a dedicated connection per thread
+ * to an in-memory server on a loopback port, with the connection reader and
+ * writer options that affect the client side of the exchange.  As each
+ * thread has its own connection, write coalescing has nothing to coalesce
+ * here; see {@link AsyncWriteCoalescingBenchmark} for concurrent requests on a
+ * shared connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LoopbackSearchBenchmark
+{
+  @Param({ "default", "messageBuffers", "multiplexedReader",
+           "writeCoalescing" })
+  public String connectionMode;
+
+
+
+  private LDAPConnection connection;
+
+
+
+  @Setup(Level.Trial)
+  public void setUp(final LoopbackServer server)
+         throws Exception
+  {
+    final LDAPConnectionOptions options = new LDAPConnectionOptions();
+    if (connectionMode.equals("messageBuffers"))
+    {
+      options.setUseMessageBuffers(true);
+    }
+    else if (connectionMode.equals("multiplexedReader"))
+    {
+      options.setUseMultiplexedReader(true);
+    }
+    else if (connectionMode.equals("writeCoalescing"))
+    {
+      options.setUseWriteCoalescing(true);
+    }
+
+    connection =
+         new LDAPConnection(options, server.getHost(), server.getPort());
+  }
+
+
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    connection.close();
+  }
+
+
+
+  @Benchmark()
+  public int searchSingleEntry()
+         throws Exception
+  {
+    final int i = ThreadLocalRandom.current().nextInt(LoopbackServer.NUM_USERS);
+    final SearchResult result = connection.search(BenchmarkData.BASE_DN,
+         SearchScope.SUB, "(uid=user." + i + ')');
+    return result.getEntryCount();
+  }
+
+
+
+  @Benchmark()
+  public int searchManyEntries()
+         throws Exception
+  {
+    final int i = ThreadLocalRandom.current().nextInt(50);
+    final SearchResult result = connection.search(BenchmarkData.PEOPLE_DN,
+         SearchScope.ONE, "(departmentNumber=" + i + ')');
+    return result.getEntryCount();
+  }
+}
@@ -0,0 +1,76 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.hwlcn.ldap.ldap.listener.InMemoryDirectoryServer;
+import com.hwlcn.ldap.ldap.listener.InMemoryDirectoryServerConfig;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+
+
+
+/**
+ * Benchmark state holding an {@link InMemoryDirectoryServer} listening on a
+ * loopback port and populated with the generated user entries.
+ */
+@State(Scope.Benchmark)
+public class LoopbackServer
+{
+  static final int NUM_USERS = 10000;
+
+
+
+  private InMemoryDirectoryServer server;
+
+
+
+  @Setup(Level.Trial)
+  public void startServer()
+         throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+         new InMemoryDirectoryServerConfig(BenchmarkData.BASE_DN);
+    config.setEqualityIndexAttributes("uid", "departmentNumber");
+
+    server = new InMemoryDirectoryServer(config);
+    for (final Entry e : BenchmarkData.createEntries(NUM_USERS))
+    {
+      server.add(e);
+    }
+    server.startListening();
+  }
+
+
+
+  @TearDown(Level.Trial)
+  public void stopServer()
+  {
+    server.shutDown(true);
+  }
+
+
+
+  InMemoryDirectoryServer getServer()
+  {
+    return server;
+  }
+
+
+
+  String getHost()
+  {
+    return "127.0.0.1";
+  }
+
+
+
+  int getPort()
+  {
+    return server.getListenPort();
+  }
+}
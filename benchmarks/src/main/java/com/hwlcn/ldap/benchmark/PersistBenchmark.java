@@ -0,0 +1,230 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldap.sdk.persist.LDAPDNField;
+import com.hwlcn.ldap.ldap.sdk.persist.LDAPField;
+import com.hwlcn.ldap.ldap.sdk.persist.LDAPObject;
+import com.hwlcn.ldap.ldap.sdk.persist.LDAPPersister;
+
+
+
+/**
+ * Measures the throughput of encoding and decoding persisted objects with
+ * {@code LDAPPersister}, and compares the two ways of reaching the private
+ * fields of a persisted class that are available to it:  the reflection that
+ * {@code LDAPPersister} uses, and method handles unreflected from the same
+ * accessible fields, which is the fastest accessor that can be created for
+ * private fields without changing the persisted class.  The
+ * {@code readFields} and {@code writeFields} benchmarks each touch every
+ * persisted field of one object once, so they can be set against the
+ * {@code encode} and {@code decode} results to see how much of the cost of
+ * persistence is field access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistBenchmark
+{
+  private static final int NUM_ENTRIES = 1024;
+
+
+
+  private Entry[] entries;
+
+  private int next;
+
+  private LDAPPersister<BenchmarkUser> persister;
+
+  private BenchmarkUser[] users;
+
+  private Field[] fields;
+
+  private MethodHandle[] getters;
+
+  private MethodHandle[] setters;
+
+  private BenchmarkUser target;
+
+
+
+  @Setup()
+  public void setUp()
+         throws Exception
+  {
+    persister = LDAPPersister.getInstance(BenchmarkUser.class);
+
+    final List<Entry> l = BenchmarkData.createEntries(NUM_ENTRIES + 2);
+    entries = new Entry[NUM_ENTRIES];
+    users   = new BenchmarkUser[NUM_ENTRIES];
+    for (int i=0; i < NUM_ENTRIES; i++)
+    {
+      entries[i] = l.get(i + 2);
+      users[i]   = persister.decode(entries[i]);
+    }
+    next = 0;
+
+    fields  = BenchmarkUser.class.getDeclaredFields();
+    getters = new MethodHandle[fields.length];
+    setters = new MethodHandle[fields.length];
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    final MethodType getterType =
+         MethodType.methodType(Object.class, Object.class);
+    final MethodType setterType =
+         MethodType.methodType(void.class, Object.class, Object.class);
+    for (int i=0; i < fields.length; i++)
+    {
+      fields[i].setAccessible(true);
+      getters[i] = lookup.unreflectGetter(fields[i]).asType(getterType);
+      setters[i] = lookup.unreflectSetter(fields[i]).asType(setterType);
+    }
+    target = new BenchmarkUser();
+  }
+
+
+
+  private int nextIndex()
+  {
+    next = (next + 1) & (NUM_ENTRIES - 1);
+    return next;
+  }
+
+
+
+  @Benchmark()
+  public BenchmarkUser decode()
+         throws Exception
+  {
+    return persister.decode(entries[nextIndex()]);
+  }
+
+
+
+  @Benchmark()
+  public Entry encode()
+         throws Exception
+  {
+    return persister.encode(users[nextIndex()], BenchmarkData.PEOPLE_DN);
+  }
+
+
+
+  @Benchmark()
+  public void readFieldsReflection(final Blackhole blackhole)
+         throws Exception
+  {
+    final BenchmarkUser u = users[nextIndex()];
+    for (final Field f : fields)
+    {
+      blackhole.consume(f.get(u));
+    }
+  }
+
+
+
+  @Benchmark()
+  public void readFieldsMethodHandles(final Blackhole blackhole)
+         throws Throwable
+  {
+    final BenchmarkUser u = users[nextIndex()];
+    for (final MethodHandle h : getters)
+    {
+      blackhole.consume((Object) h.invokeExact((Object) u));
+    }
+  }
+
+
+
+  @Benchmark()
+  public BenchmarkUser writeFieldsReflection()
+         throws Exception
+  {
+    final BenchmarkUser u = users[nextIndex()];
+    for (final Field f : fields)
+    {
+      f.set(target, f.get(u));
+    }
+    return target;
+  }
+
+
+
+  @Benchmark()
+  public BenchmarkUser writeFieldsMethodHandles()
+         throws Throwable
+  {
+    final BenchmarkUser u = users[nextIndex()];
+    for (int i=0; i < setters.length; i++)
+    {
+      setters[i].invokeExact((Object) target,
+           (Object) getters[i].invokeExact((Object) u));
+    }
+    return target;
+  }
+
+
+
+  /**
+   * The persisted representation of the generated user entries.
+   */
+  @LDAPObject(structuralClass="inetOrgPerson",
+              superiorClass={ "top", "person", "organizationalPerson" })
+  public static class BenchmarkUser
+  {
+    @LDAPDNField()
+    private String dn;
+
+    @LDAPField(inRDN=true, requiredForDecode=true, requiredForEncode=true)
+    private String uid;
+
+    @LDAPField()
+    private String givenName;
+
+    @LDAPField(requiredForEncode=true)
+    private String sn;
+
+    @LDAPField(requiredForEncode=true)
+    private String cn;
+
+    @LDAPField()
+    private String mail;
+
+    @LDAPField()
+    private String telephoneNumber;
+
+    @LDAPField()
+    private int employeeNumber;
+
+    @LDAPField()
+    private int departmentNumber;
+
+    @LDAPField()
+    private String description;
+
+    @LDAPField()
+    private String userPassword;
+  }
+}
@@ -0,0 +1,138 @@
+package com.hwlcn.ldap.benchmark;
+
+
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hwlcn.security.io.DefaultSerializer;
+import com.hwlcn.security.io.Serializer;
+import com.hwlcn.security.io.XmlSerializer;
+import com.hwlcn.security.session.mgt.SimpleSession;
+import com.hwlcn.security.session.mgt.SimpleSessionSerializer;
+import com.hwlcn.security.subject.SimplePrincipalCollection;
+import com.hwlcn.security.subject.support.DefaultSubjectContext;
+
+
+
+/**
+ * Compares serializing and deserializing an authenticated session with the
+ * {@link SimpleSessionSerializer}, {@link DefaultSerializer} and
+ * {@link XmlSerializer}.  JMH reports the number of operations and the
+ * serialized bytes written or read by them as the {@code operations} and
+ * {@code serializedBytes} secondary results, and their ratio is the size of
+ * the serialized session with each serializer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionSerializerBenchmark
+{
+  @Param({ "compact", "default", "xml" })
+  public String serializerName;
+
+  private Serializer<SimpleSession> serializer;
+
+  private SimpleSession session;
+
+  private byte[] serialized;
+
+
+
+  @Setup()
+  @SuppressWarnings("unchecked")
+  public void setUp()
+  {
+    if (serializerName.equals("compact"))
+    {
+      serializer = new SimpleSessionSerializer();
+    }
+    else if (serializerName.equals("default"))
+    {
+      serializer = new DefaultSerializer<SimpleSession>();
+    }
+    else
+    {
+      serializer = new XmlSerializer();
+    }
+
+    session = new SimpleSession("192.168.1.20");
+    session.setId(UUID.randomUUID().toString());
+    session.touch();
+    session.setAttribute(DefaultSubjectContext.PRINCIPALS_SESSION_KEY,
+         new SimplePrincipalCollection(Arrays.asList("jdoe", 10042L),
+              "ldapRealm"));
+    session.setAttribute(DefaultSubjectContext.AUTHENTICATED_SESSION_KEY,
+         Boolean.TRUE);
+    session.setAttribute("locale", "zh_CN");
+    session.setAttribute("loginCount", 17);
+    session.setAttribute("lastLogin", new Date());
+
+    serialized = serializer.serialize(session);
+  }
+
+
+
+  @Benchmark()
+  public byte[] serialize(final SizeCounters counters)
+  {
+    final byte[] bytes = serializer.serialize(session);
+    counters.operations++;
+    counters.serializedBytes += bytes.length;
+    return bytes;
+  }
+
+
+
+  @Benchmark()
+  public SimpleSession deserialize(final SizeCounters counters)
+  {
+    final SimpleSession s = serializer.deserialize(serialized);
+    counters.operations++;
+    counters.serializedBytes += serialized.length;
+    return s;
+  }
+
+
+
+  /**
+   * The operations performed and serialized bytes written or read by one
+   * benchmark thread in the current iteration.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class SizeCounters
+  {
+    public long operations;
+
+    public long serializedBytes;
+
+
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+      operations      = 0L;
+      serializedBytes = 0L;
+    }
+  }
+}
@@ -0,0 +1,642 @@
+package com.hwlcn.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Cache} that holds at most a fixed number of entries (or a fixed total weight,
+ * when a {@link Weigher} is supplied) and can expire entries a fixed time after they
+ * were written and/or after they were last read.
+ * <p/>
+ * Reads never block: they look the entry up in a {@code ConcurrentHashMap} and record
+ * the access in a small lossy buffer.  Writes update the map directly and queue the
+ * change.  The buffered accesses and changes are applied to the eviction policy in
+ * batches by whichever thread acquires the eviction lock, so the lock is never held
+ * on the read path and rarely contended on the write path.
+ * <p/>
+ * The eviction policy is W-TinyLFU: new entries enter a small LRU window, and when it
+ * overflows they compete for a place in a segmented LRU main area (probation and
+ * protected segments).  A new entry is only admitted if it has been used more often
+ * recently than the entry it would displace, which keeps one-off lookups from flushing
+ * out frequently used entries.
+ */
+public class BoundedCache<K, V> implements Cache<K, V> {
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final int READ_BUFFER_STRIPES = ceilingPowerOfTwo(Math.min(4 * NCPU, 64));
+
+    private static final int READ_BUFFER_SIZE = 32;
+
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private static final int MAXIMUM_PENDING_WRITES = 1024;
+
+    private static final int WRITE_BUFFER_DRAIN_LIMIT = MAXIMUM_PENDING_WRITES;
+
+    private static final int MAXIMUM_MAINTENANCE_PASSES = 2;
+
+    private static final double WINDOW_PERCENTAGE = 0.01d;
+
+    private static final double PROTECTED_PERCENTAGE = 0.80d;
+
+    private static final int NONE = 0;
+
+    private static final int WINDOW = 1;
+
+    private static final int PROBATION = 2;
+
+    private static final int PROTECTED = 3;
+
+    private final String name;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+
+    private final long maximumWeight;
+
+    private final Weigher<? super K, ? super V> weigher;
+
+    private final long timeToLiveNanos;
+
+    private final long timeToIdleNanos;
+
+    private final ReentrantLock evictionLock;
+
+    private final ReadBuffer<K, V>[] readBuffers;
+
+    private final ConcurrentLinkedQueue<Node<K, V>> writeBuffer;
+
+    private final AtomicInteger pendingWrites;
+
+    //the following are guarded by the eviction lock:
+    private final FrequencySketch sketch;
+
+    private final AccessOrderDeque<K, V> window;
+
+    private final AccessOrderDeque<K, V> probation;
+
+    private final AccessOrderDeque<K, V> protectedSegment;
+
+    private final long windowMaximum;
+
+    private final long protectedMaximum;
+
+    private long weightedSize;
+
+    private long windowWeight;
+
+    private long protectedWeight;
+
+    private Node<K, V> firstCandidate;
+
+    public BoundedCache(String name, long maximumSize) {
+        this(name, maximumSize, null, 0L, 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BoundedCache(String name, long maximumWeight, Weigher<? super K, ? super V> weigher,
+                        long timeToLiveMillis, long timeToIdleMillis) {
+        if (name == null) {
+            throw new IllegalArgumentException("Cache name cannot be null.");
+        }
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum cache size or weight must be greater than zero.");
+        }
+        if (timeToLiveMillis < 0 || timeToIdleMillis < 0) {
+            throw new IllegalArgumentException("Cache expiration times cannot be negative.");
+        }
+        this.name = name;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.timeToIdleNanos = TimeUnit.MILLISECONDS.toNanos(timeToIdleMillis);
+
+        this.data = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, Math.max(16, NCPU));
+        this.evictionLock = new ReentrantLock();
+        this.writeBuffer = new ConcurrentLinkedQueue<Node<K, V>>();
+        this.pendingWrites = new AtomicInteger();
+        this.readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<K, V>();
+        }
+
+        this.sketch = new FrequencySketch(Math.min(maximumWeight, 1L << 20));
+        this.window = new AccessOrderDeque<K, V>();
+        this.probation = new AccessOrderDeque<K, V>();
+        this.protectedSegment = new AccessOrderDeque<K, V>();
+        this.windowMaximum = Math.max(1L, (long) (maximumWeight * WINDOW_PERCENTAGE));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENTAGE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getTimeToLiveMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(timeToLiveNanos);
+    }
+
+    public long getTimeToIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(timeToIdleNanos);
+    }
+
+    public V get(K key) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        long now = expires() ? System.nanoTime() : 0L;
+        if (isExpired(node, now)) {
+            if (data.remove(key, node)) {
+                afterWrite(node);
+            }
+            return null;
+        }
+        if (timeToIdleNanos > 0) {
+            node.accessTime = now;
+        }
+        afterRead(node);
+        return node.value;
+    }
+
+    public V put(K key, V value) throws CacheException {
+        if (key == null) {
+            throw new IllegalArgumentException("Cache key cannot be null.");
+        }
+        if (value == null) {
+            return remove(key);
+        }
+        int weight = weigher == null ? 1 : weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new CacheException("Weigher returned a negative weight for cache '" + name + "'.");
+        }
+        long now = expires() ? System.nanoTime() : 0L;
+        Node<K, V> node = new Node<K, V>(key, value, weight, now);
+        Node<K, V> previous = data.put(key, node);
+        if (previous != null) {
+            writeBuffer.add(previous);
+            pendingWrites.incrementAndGet();
+        }
+        afterWrite(node);
+        return (previous == null || isExpired(previous, now)) ? null : previous.value;
+    }
+
+    public V remove(K key) throws CacheException {
+        if (key == null) {
+            return null;
+        }
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        afterWrite(node);
+        return isExpired(node, expires() ? System.nanoTime() : 0L) ? null : node.value;
+    }
+
+    public void clear() throws CacheException {
+        evictionLock.lock();
+        try {
+            maintenance();
+            for (Node<K, V> node : data.values()) {
+                if (data.remove(node.key, node)) {
+                    onRemove(node);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        cleanUp();
+        if (!expires()) {
+            return data.size();
+        }
+        //entries are expired in access order, so an expired entry can still be mapped
+        //behind one that has not expired yet:
+        long now = System.nanoTime();
+        int size = 0;
+        for (Node<K, V> node : data.values()) {
+            if (!isExpired(node, now)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public Set<K> keys() {
+        long now = expires() ? System.nanoTime() : 0L;
+        Set<K> keys = new HashSet<K>();
+        for (Node<K, V> node : data.values()) {
+            if (!isExpired(node, now)) {
+                keys.add(node.key);
+            }
+        }
+        if (!keys.isEmpty()) {
+            return Collections.unmodifiableSet(keys);
+        }
+        return Collections.emptySet();
+    }
+
+    public Collection<V> values() {
+        long now = expires() ? System.nanoTime() : 0L;
+        List<V> values = new ArrayList<V>(data.size());
+        for (Node<K, V> node : data.values()) {
+            if (!isExpired(node, now)) {
+                values.add(node.value);
+            }
+        }
+        if (!values.isEmpty()) {
+            return Collections.unmodifiableCollection(values);
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * Applies the pending reads and writes to the eviction policy and removes any
+     * expired entries that it finds.  This normally happens as a side effect of using
+     * the cache, so it only needs to be called to reclaim space in a cache that is
+     * no longer being used.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public String toString() {
+        return new StringBuilder("BoundedCache '")
+                .append(name).append("' (")
+                .append(data.size())
+                .append(" entries)")
+                .toString();
+    }
+
+    private boolean expires() {
+        return timeToLiveNanos > 0 || timeToIdleNanos > 0;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return (timeToLiveNanos > 0 && now - node.writeTime >= timeToLiveNanos) ||
+                (timeToIdleNanos > 0 && now - node.accessTime >= timeToIdleNanos);
+    }
+
+    private void afterRead(Node<K, V> node) {
+        int stripe = (int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1);
+        if (readBuffers[stripe].offer(node)) {
+            tryMaintenance();
+        }
+    }
+
+    /*
+     * Queues a node that was added to or removed from the map.  A node is queued once
+     * when it is added and once when it is removed, and it is up to the policy to
+     * tell the two apart (a node that is still mapped is being added).
+     */
+    private void afterWrite(Node<K, V> node) {
+        writeBuffer.add(node);
+        if (pendingWrites.incrementAndGet() > MAXIMUM_PENDING_WRITES) {
+            //writers are outpacing maintenance, so wait for the lock rather than letting
+            //the cache grow past its bound:
+            cleanUp();
+        } else {
+            tryMaintenance();
+        }
+    }
+
+    /*
+     * A write queued while the lock was held may have failed to acquire it, so the
+     * buffer is checked again after unlocking.  The number of passes is bounded so that
+     * a steady stream of writes cannot keep one caller draining on behalf of all the
+     * others; anything left is drained by the next read or write.
+     */
+    private void tryMaintenance() {
+        for (int i = 0; i < MAXIMUM_MAINTENANCE_PASSES && evictionLock.tryLock(); i++) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+            if (writeBuffer.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void maintenance() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            buffer.drain(this);
+        }
+        Node<K, V> node;
+        for (int i = 0; i < WRITE_BUFFER_DRAIN_LIMIT && (node = writeBuffer.poll()) != null; i++) {
+            pendingWrites.decrementAndGet();
+            if (node.queue == NONE && !node.removed && data.get(node.key) == node) {
+                onAdd(node);
+            } else {
+                onRemove(node);
+            }
+        }
+        expireEntries();
+        evictEntries();
+    }
+
+    private void onAdd(Node<K, V> node) {
+        sketch.increment(node.key);
+        window.linkLast(node);
+        node.queue = WINDOW;
+        windowWeight += node.weight;
+        weightedSize += node.weight;
+
+        while (windowWeight > windowMaximum) {
+            Node<K, V> first = window.peekFirst();
+            if (first == null) {
+                break;
+            }
+            window.unlink(first);
+            windowWeight -= first.weight;
+            probation.linkLast(first);
+            first.queue = PROBATION;
+            if (firstCandidate == null) {
+                firstCandidate = first;
+            }
+        }
+    }
+
+    void onAccess(Node<K, V> node) {
+        if (node.removed || node.queue == NONE) {
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                if (node == firstCandidate) {
+                    firstCandidate = node.next;
+                }
+                probation.unlink(node);
+                protectedSegment.linkLast(node);
+                node.queue = PROTECTED;
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaximum) {
+                    Node<K, V> demoted = protectedSegment.peekFirst();
+                    if (demoted == null) {
+                        break;
+                    }
+                    protectedSegment.unlink(demoted);
+                    protectedWeight -= demoted.weight;
+                    probation.linkLast(demoted);
+                    demoted.queue = PROBATION;
+                }
+                break;
+            case PROTECTED:
+                protectedSegment.moveToBack(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onRemove(Node<K, V> node) {
+        if (node.removed) {
+            return;
+        }
+        node.removed = true;
+        switch (node.queue) {
+            case WINDOW:
+                window.unlink(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                if (node == firstCandidate) {
+                    firstCandidate = node.next;
+                }
+                probation.unlink(node);
+                break;
+            case PROTECTED:
+                protectedSegment.unlink(node);
+                protectedWeight -= node.weight;
+                break;
+            default:
+                return;
+        }
+        node.queue = NONE;
+        weightedSize -= node.weight;
+    }
+
+    private void expireEntries() {
+        if (!expires()) {
+            return;
+        }
+        long now = System.nanoTime();
+        expireEntries(window, now);
+        expireEntries(probation, now);
+        expireEntries(protectedSegment, now);
+    }
+
+    private void expireEntries(AccessOrderDeque<K, V> deque, long now) {
+        Node<K, V> node;
+        while ((node = deque.peekFirst()) != null && isExpired(node, now)) {
+            evict(node);
+        }
+    }
+
+    /*
+     * The entries that have moved from the window to the probation segment since the
+     * last eviction are candidates for admission.  Each candidate is compared with the
+     * least recently used entry in the probation segment, and whichever has been used
+     * less often recently is evicted.
+     */
+    private void evictEntries() {
+        Node<K, V> candidate = firstCandidate;
+        firstCandidate = null;
+        while (weightedSize > maximumWeight) {
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedSegment.peekFirst();
+            }
+            if (victim == null) {
+                victim = window.peekFirst();
+            }
+            if (victim == null) {
+                break;
+            }
+
+            if (candidate == null || candidate.queue != PROBATION) {
+                evict(victim);
+            } else if (candidate == victim) {
+                candidate = candidate.next;
+                evict(victim);
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict(victim);
+            } else {
+                Node<K, V> rejected = candidate;
+                candidate = candidate.next;
+                evict(rejected);
+            }
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        data.remove(node.key, node);
+        onRemove(node);
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        int n = 1;
+        while (n < x) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    static final class Node<K, V> {
+
+        final K key;
+
+        final V value;
+
+        final int weight;
+
+        final long writeTime;
+
+        volatile long accessTime;
+
+        //the following are guarded by the eviction lock:
+        Node<K, V> prev;
+
+        Node<K, V> next;
+
+        int queue;
+
+        boolean removed;
+
+        Node(K key, V value, int weight, long now) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = now;
+            this.accessTime = now;
+            this.queue = NONE;
+            this.removed = false;
+        }
+    }
+
+    static final class AccessOrderDeque<K, V> {
+
+        private Node<K, V> first;
+
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        void linkLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            Node<K, V> prev = node.prev;
+            Node<K, V> next = node.next;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                last = prev;
+            } else {
+                next.prev = prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    /*
+     * A bounded buffer of recently read nodes.  When the buffer is full further reads
+     * are simply not recorded, which only makes the policy's view of recency slightly
+     * less precise.
+     */
+    static final class ReadBuffer<K, V> {
+
+        private final AtomicLong writeCount = new AtomicLong();
+
+        private volatile long readCount;
+
+        private final AtomicReferenceArray<Node<K, V>> buffer =
+                new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+
+        /**
+         * Records the read, returning {@code true} if the buffer should be drained.
+         */
+        boolean offer(Node<K, V> node) {
+            long head = readCount;
+            long tail = writeCount.get();
+            long size = tail - head;
+            if (size >= READ_BUFFER_SIZE) {
+                return true;
+            }
+            if (writeCount.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+            }
+            return size >= READ_BUFFER_DRAIN_THRESHOLD;
+        }
+
+        void drain(BoundedCache<K, V> cache) {
+            long head = readCount;
+            long tail = writeCount.get();
+            while (head < tail) {
+                int index = (int) (head & READ_BUFFER_MASK);
+                Node<K, V> node = buffer.get(index);
+                if (node == null) {
+                    //the slot has been claimed but not yet written
+                    break;
+                }
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+                head++;
+            }
+            readCount = head;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.hwlcn.cache;
+
+/**
+ * The size and expiration settings for a {@link BoundedCache}.  A maximum weight of
+ * zero means that the cache is bounded by its number of entries, and an expiration
+ * time of zero means that entries do not expire.
+ */
+public class BoundedCacheConfig {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000L;
+
+    private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private long maximumWeight;
+
+    private Weigher<Object, Object> weigher;
+
+    private long timeToLiveMillis;
+
+    private long timeToIdleMillis;
+
+    public BoundedCacheConfig() {
+    }
+
+    public BoundedCacheConfig(long maximumSize, long timeToLiveMillis, long timeToIdleMillis) {
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.timeToIdleMillis = timeToIdleMillis;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    public Weigher<Object, Object> getWeigher() {
+        return weigher;
+    }
+
+    public void setWeigher(Weigher<Object, Object> weigher) {
+        this.weigher = weigher;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    public long getTimeToIdleMillis() {
+        return timeToIdleMillis;
+    }
+
+    public void setTimeToIdleMillis(long timeToIdleMillis) {
+        this.timeToIdleMillis = timeToIdleMillis;
+    }
+
+    protected <K, V> BoundedCache<K, V> createCache(String name) {
+        if (maximumWeight > 0) {
+            if (weigher == null) {
+                throw new CacheException("A weigher is required to bound cache '" + name + "' by weight.");
+            }
+            return new BoundedCache<K, V>(name, maximumWeight, weigher, timeToLiveMillis, timeToIdleMillis);
+        }
+        return new BoundedCache<K, V>(name, maximumSize, null, timeToLiveMillis, timeToIdleMillis);
+    }
+}
@@ -0,0 +1,75 @@
+package com.hwlcn.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link CacheManager} that creates {@link BoundedCache} instances, which evict by
+ * size (or weight) and optionally by age instead of relying on the garbage collector
+ * like {@link MemoryConstrainedCacheManager}.  The default settings apply to every
+ * cache unless settings for that cache name have been given with
+ * {@link #setCacheConfigs(java.util.Map)}.
+ */
+public class BoundedCacheManager extends AbstractCacheManager {
+
+    private BoundedCacheConfig defaultConfig;
+
+    private Map<String, BoundedCacheConfig> cacheConfigs;
+
+    public BoundedCacheManager() {
+        this.defaultConfig = new BoundedCacheConfig();
+        this.cacheConfigs = new HashMap<String, BoundedCacheConfig>();
+    }
+
+    public BoundedCacheConfig getDefaultConfig() {
+        return defaultConfig;
+    }
+
+    public void setDefaultConfig(BoundedCacheConfig defaultConfig) {
+        if (defaultConfig == null) {
+            throw new IllegalArgumentException("Default cache configuration cannot be null.");
+        }
+        this.defaultConfig = defaultConfig;
+    }
+
+    public Map<String, BoundedCacheConfig> getCacheConfigs() {
+        return cacheConfigs;
+    }
+
+    public void setCacheConfigs(Map<String, BoundedCacheConfig> cacheConfigs) {
+        this.cacheConfigs = cacheConfigs != null ? cacheConfigs : new HashMap<String, BoundedCacheConfig>();
+    }
+
+    public long getMaximumSize() {
+        return defaultConfig.getMaximumSize();
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        defaultConfig.setMaximumSize(maximumSize);
+    }
+
+    public long getTimeToLiveMillis() {
+        return defaultConfig.getTimeToLiveMillis();
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        defaultConfig.setTimeToLiveMillis(timeToLiveMillis);
+    }
+
+    public long getTimeToIdleMillis() {
+        return defaultConfig.getTimeToIdleMillis();
+    }
+
+    public void setTimeToIdleMillis(long timeToIdleMillis) {
+        defaultConfig.setTimeToIdleMillis(timeToIdleMillis);
+    }
+
+    @Override
+    protected Cache createCache(String name) throws CacheException {
+        BoundedCacheConfig config = cacheConfigs.get(name);
+        if (config == null) {
+            config = defaultConfig;
+        }
+        return config.createCache(name);
+    }
+}
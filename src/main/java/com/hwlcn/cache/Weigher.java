@@ -0,0 +1,7 @@
+package com.hwlcn.cache;
+
+
+public interface Weigher<K, V> {
+
+    public int weigh(K key, V value);
+}
@@ -61,35 +61,46 @@ public final class ASN1OctetString
    * computed on-demand later.  Even though this class is externally immutable,
    * that does not by itself make it completely threadsafe, because weirdness in
    * the Java memory model could allow the assignment to be performed out of
-   * order.  By passing the value through a volatile variable any time the value
-   * is set other than in the constructor (which will always be safe) we ensure
-   * that this reordering cannot happen.  This is only needed for the valueBytes
-   * array because it is not required for primitives (like length and offset) or
-   * for objects with only final fields (like stringValue).
+   * order.  By passing the encoded string through a volatile variable any time
+   * it is set other than in the constructor (which will always be safe) we
+   * ensure that this reordering cannot happen.  This is not required for
+   * objects with only final fields (like stringValue).
    *
    * In the majority of cases, passing the value through a volatile variable is
-   * much faster than declaring valueBytes itself to be volatile because a
+   * much faster than declaring stringBytes itself to be volatile because a
    * volatile variable cannot be held in CPU caches or registers and must only
    * be accessed from memory visible to all threads.  Since the value may be
    * read much more often than it is written, passing it through a volatile
    * variable rather than making it volatile directly can help avoid that
    * penalty when possible.
+   *
+   * A value provided as a byte array may be a portion of a larger array (for
+   * example, an entire LDAP message decoded by a buffer-backed
+   * ASN1StreamReader).  The array, offset, and length are never changed after
+   * construction, and the getValue method returns a copy of the referenced
+   * portion rather than replacing the array with a compacted one.
    */
 
 
 
-  // The binary representation of the value for this element.
-  private byte[] valueBytes;
+  // The byte array containing the value for this element, or null if the
+  // value was provided as a string.
+  private final byte[] valueBytes;
+
+  // The offset in the byte array at which the value begins, if applicable.
+  private final int offset;
 
-  // A volatile variable used to guard publishing the valueBytes array.  See the
-  // note above to explain why this is needed.
-  private volatile byte[] valueBytesGuard;
+  // The length of the value in the byte array, or -1 if the value was
+  // provided as a string.
+  private final int length;
 
-  // The length of the value in the byte array, if applicable.
-  private int length;
+  // The binary representation of a value that was provided as a string, if it
+  // has been computed.
+  private byte[] stringBytes;
 
-  // The offset in the byte array at which the value begins, if applicable.
-  private int offset;
+  // A volatile variable used to guard publishing the stringBytes array.  See
+  // the note above to explain why this is needed.
+  private volatile byte[] stringBytesGuard;
 
   // The string representation of the value for this element.
   private String stringValue;
@@ -267,7 +278,7 @@ public final class ASN1OctetString
     {
       valueBytes  = null;
       stringValue = value;
-      offset      = -1;
+      offset      = 0;
       length      = -1;
     }
   }
@@ -296,7 +307,7 @@ public final class ASN1OctetString
     {
       valueBytes  = null;
       stringValue = value;
-      offset      = -1;
+      offset      = 0;
       length      = -1;
     }
   }
@@ -309,7 +320,12 @@ public final class ASN1OctetString
   @Override()
   byte[] getValueArray()
   {
-    return getValue();
+    if (valueBytes == null)
+    {
+      return getStringBytes();
+    }
+
+    return valueBytes;
   }
 
 
@@ -320,7 +336,7 @@ public final class ASN1OctetString
   @Override()
   int getValueOffset()
   {
-    return 0;
+    return offset;
   }
 
 
@@ -331,7 +347,12 @@ public final class ASN1OctetString
   @Override()
   public int getValueLength()
   {
-    return getValue().length;
+    if (valueBytes == null)
+    {
+      return getStringBytes().length;
+    }
+
+    return length;
   }
 
 
@@ -344,21 +365,37 @@ public final class ASN1OctetString
   {
     if (valueBytes == null)
     {
-      valueBytesGuard = getBytes(stringValue);
-      offset          = 0;
-      length          = valueBytesGuard.length;
-      valueBytes      = valueBytesGuard;
+      return getStringBytes();
     }
-    else if ((offset != 0) || (length != valueBytes.length))
+    else if ((offset == 0) && (length == valueBytes.length))
     {
-      final byte[] newArray = new byte[length];
-      System.arraycopy(valueBytes, offset, newArray, 0, length);
-      offset = 0;
-      valueBytesGuard = newArray;
-      valueBytes      = valueBytesGuard;
+      return valueBytes;
     }
 
-    return valueBytes;
+    final byte[] newArray = new byte[length];
+    System.arraycopy(valueBytes, offset, newArray, 0, length);
+    return newArray;
+  }
+
+
+
+  /**
+   * Retrieves the UTF-8 encoding of a value that was provided as a string,
+   * computing it if necessary.
+   *
+   * @return  The UTF-8 encoding of the string value for this element.
+   */
+  private byte[] getStringBytes()
+  {
+    byte[] b = stringBytes;
+    if (b == null)
+    {
+      stringBytesGuard = getBytes(stringValue);
+      b                = stringBytesGuard;
+      stringBytes      = b;
+    }
+
+    return b;
   }
 
 
@@ -35,6 +35,7 @@ import com.hwlcn.ldap.util.ThreadSafetyLevel;
 import static com.hwlcn.ldap.asn1.ASN1Messages.*;
 import static com.hwlcn.ldap.util.Debug.*;
 import static com.hwlcn.ldap.util.StaticUtils.*;
+import static com.hwlcn.ldap.util.Validator.*;
 
 
 
@@ -46,6 +47,13 @@ import static com.hwlcn.ldap.util.StaticUtils.*;
  * caller must close this reader and must not attempt to use it any more.
  * {@code ASN1StreamReader} instances are not threadsafe and must not be
  * accessed concurrently by multiple threads.
+ * <BR><BR>
+ * A reader may also be backed by a byte array that holds one or more complete
+ * encoded elements (for example, an entire LDAP message read with the
+ * {@link #bufferNextElement} method).  In that case, octet string values read
+ * with the {@link #readOctetString} method will reference the appropriate
+ * portion of that array rather than copying the data, so the array must not be
+ * altered after it has been provided to the reader.
  */
 @Mutable()
 @ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
@@ -59,7 +67,18 @@ public final class ASN1StreamReader
   // subsequent reads of an element.
   private boolean ignoreSubsequentSocketTimeout;
 
-  // The input stream from which data will be read.
+  // The byte array from which data will be read for a buffer-backed reader,
+  // or null if data should be read from the input stream.
+  private final byte[] buffer;
+
+  // The position immediately after the last byte of data in the buffer.
+  private final int bufferEnd;
+
+  // The position of the next byte to read from the buffer.
+  private int bufferPos;
+
+  // The input stream from which data will be read, or null if this is a
+  // buffer-backed reader.
   private final InputStream inputStream;
 
   // The maximum element size that will be allowed.
@@ -113,6 +132,55 @@ public final class ASN1StreamReader
       this.inputStream = new BufferedInputStream(inputStream);
     }
 
+    buffer    = null;
+    bufferPos = 0;
+    bufferEnd = 0;
+
+    if (maxElementSize > 0)
+    {
+      this.maxElementSize = maxElementSize;
+    }
+    else
+    {
+      this.maxElementSize = Integer.MAX_VALUE;
+    }
+
+    totalBytesRead                = 0L;
+    ignoreInitialSocketTimeout    = false;
+    ignoreSubsequentSocketTimeout = false;
+  }
+
+
+
+  /**
+   * Creates a new ASN.1 stream reader that will read data from the specified
+   * portion of the provided byte array.  Octet string values read with the
+   * {@link #readOctetString} method will reference the provided array rather
+   * than a copy of it, so the contents of the array must not be altered for as
+   * long as any value read from it is in use.
+   *
+   * @param  buffer          The byte array containing the encoded data to be
+   *                         read.  It must not be {@code null}.
+   * @param  offset          The position in the array of the first byte to
+   *                         read.
+   * @param  length          The number of bytes that may be read from the
+   *                         array.
+   * @param  maxElementSize  The maximum size in bytes of an ASN.1 element that
+   *                         may be read.  A value less than or equal to zero
+   *                         will be interpreted as {@code Integer.MAX_VALUE}.
+   */
+  public ASN1StreamReader(final byte[] buffer, final int offset,
+                          final int length, final int maxElementSize)
+  {
+    ensureNotNull(buffer);
+    ensureTrue((offset >= 0) && (length >= 0) &&
+               (offset+length <= buffer.length));
+
+    this.buffer = buffer;
+    bufferPos   = offset;
+    bufferEnd   = offset + length;
+    inputStream = null;
+
     if (maxElementSize > 0)
     {
       this.maxElementSize = maxElementSize;
@@ -139,7 +207,24 @@ public final class ASN1StreamReader
   public void close()
          throws IOException
   {
-    inputStream.close();
+    if (inputStream != null)
+    {
+      inputStream.close();
+    }
+  }
+
+
+
+  /**
+   * Indicates whether this reader is backed by a byte array rather than an
+   * input stream.
+   *
+   * @return  {@code true} if this reader is backed by a byte array, or
+   *          {@code false} if it reads from an input stream.
+   */
+  public boolean isBufferBacked()
+  {
+    return (buffer != null);
   }
 
 
@@ -273,6 +358,16 @@ public final class ASN1StreamReader
   public int peek()
          throws IOException
   {
+    if (buffer != null)
+    {
+      if (bufferPos >= bufferEnd)
+      {
+        return -1;
+      }
+
+      return (buffer[bufferPos] & 0xFF);
+    }
+
     inputStream.mark(1);
     final int byteRead = read(true);
     inputStream.reset();
@@ -384,6 +479,19 @@ public final class ASN1StreamReader
       return;
     }
 
+    if (buffer != null)
+    {
+      if (numBytes > (bufferEnd - bufferPos))
+      {
+        bufferPos = bufferEnd;
+        throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+      }
+
+      bufferPos      += numBytes;
+      totalBytesRead += numBytes;
+      return;
+    }
+
     long totalBytesSkipped = inputStream.skip(numBytes);
     while (totalBytesSkipped < numBytes)
     {
@@ -801,6 +909,11 @@ public final class ASN1StreamReader
     }
 
     final int length = readLength();
+    if (buffer != null)
+    {
+      final int offset = consumeBuffer(length);
+      return toUTF8String(buffer, offset, length);
+    }
 
     int valueBytesRead = 0;
     int bytesRemaining = length;
@@ -823,6 +936,127 @@ public final class ASN1StreamReader
 
 
 
+  /**
+   * Reads an ASN.1 octet string element from the input stream and returns it
+   * with the BER type that was read.  If this is a buffer-backed reader, then
+   * the value of the octet string that is returned will reference the
+   * underlying byte array rather than a copy of the data.
+   *
+   * @return  The ASN.1 octet string element read, or {@code null} if the end of
+   *          the input stream was reached before any data could be read.  If
+   *          {@code null} is returned, then the input stream will have been
+   *          closed.
+   *
+   * @throws  java.io.IOException  If a problem occurs while reading from the input
+   *                       stream, if the end of the input stream is reached in
+   *                       the middle of the element, or or if an attempt is
+   *                       made to read an element larger than the maximum
+   *                       allowed size.
+   */
+  public ASN1OctetString readOctetString()
+         throws IOException
+  {
+    final int type = readType();
+    if (type < 0)
+    {
+      return null;
+    }
+
+    final int length = readLength();
+    if (buffer != null)
+    {
+      final int offset = consumeBuffer(length);
+      return new ASN1OctetString((byte) type, buffer, offset, length);
+    }
+
+    int valueBytesRead = 0;
+    int bytesRemaining = length;
+    final byte[] value = new byte[length];
+    while (valueBytesRead < length)
+    {
+      final int bytesRead = read(false, value, valueBytesRead, bytesRemaining);
+      if (bytesRead < 0)
+      {
+        throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+      }
+
+      valueBytesRead += bytesRead;
+      bytesRemaining -= bytesRead;
+    }
+
+    totalBytesRead += length;
+    return new ASN1OctetString((byte) type, value);
+  }
+
+
+
+  /**
+   * Reads the complete encoded representation of the next element from the
+   * input stream into a newly-allocated byte array that is sized to hold
+   * exactly that element, and returns a buffer-backed reader that may be used
+   * to decode it.  This makes it possible to read an entire LDAP message with a
+   * single allocation and then decode octet string values from that message
+   * without copying them.
+   *
+   * @return  A buffer-backed reader positioned at the start of the element that
+   *          was read, or {@code null} if the end of the input stream was
+   *          reached before any data could be read.  If {@code null} is
+   *          returned, then the input stream will have been closed.
+   *
+   * @throws  java.io.IOException  If a problem occurs while reading from the input
+   *                       stream, if the end of the input stream is reached in
+   *                       the middle of the element, or or if an attempt is
+   *                       made to read an element larger than the maximum
+   *                       allowed size.
+   */
+  public ASN1StreamReader bufferNextElement()
+         throws IOException
+  {
+    final int type = readType();
+    if (type < 0)
+    {
+      return null;
+    }
+
+    final int length = readLength();
+
+    final byte[] lengthBytes = ASN1Element.encodeLength(length);
+    final int headerLength = 1 + lengthBytes.length;
+    final byte[] elementBytes = new byte[headerLength + length];
+    elementBytes[0] = (byte) type;
+    System.arraycopy(lengthBytes, 0, elementBytes, 1, lengthBytes.length);
+
+    if (buffer != null)
+    {
+      final int offset = consumeBuffer(length);
+      System.arraycopy(buffer, offset, elementBytes, headerLength, length);
+    }
+    else
+    {
+      int valueBytesRead = 0;
+      int bytesRemaining = length;
+      while (valueBytesRead < length)
+      {
+        final int bytesRead = read(false, elementBytes,
+             (headerLength + valueBytesRead), bytesRemaining);
+        if (bytesRead < 0)
+        {
+          throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+        }
+
+        valueBytesRead += bytesRead;
+        bytesRemaining -= bytesRead;
+      }
+
+      totalBytesRead += length;
+    }
+
+    return new ASN1StreamReader(elementBytes, 0, elementBytes.length,
+         maxElementSize);
+  }
+
+
+
   /**
    * Reads the beginning of an ASN.1 sequence from the input stream and
    * returns a value that can be used to determine when the end of the sequence
@@ -906,6 +1140,16 @@ public final class ASN1StreamReader
   private int read(final boolean initial)
           throws IOException
   {
+    if (buffer != null)
+    {
+      if (bufferPos >= bufferEnd)
+      {
+        return -1;
+      }
+
+      return (buffer[bufferPos++] & 0xFF);
+    }
+
     try
     {
       return inputStream.read();
@@ -957,6 +1201,19 @@ public final class ASN1StreamReader
                    final int length)
           throws IOException
   {
+    if (this.buffer != null)
+    {
+      if (bufferPos >= bufferEnd)
+      {
+        return -1;
+      }
+
+      final int bytesRead = Math.min(length, (bufferEnd - bufferPos));
+      System.arraycopy(this.buffer, bufferPos, buffer, offset, bytesRead);
+      bufferPos += bytesRead;
+      return bytesRead;
+    }
+
     try
     {
       return inputStream.read(buffer, offset, length);
@@ -985,4 +1242,32 @@ public final class ASN1StreamReader
       }
     }
   }
+
+
+
+  /**
+   * Consumes the specified number of bytes from the backing byte array of a
+   * buffer-backed reader.
+   *
+   * @param  length  The number of bytes to consume.
+   *
+   * @return  The position in the backing array of the first byte consumed.
+   *
+   * @throws  java.io.IOException  If the array does not contain the specified number
+   *                       of bytes.
+   */
+  private int consumeBuffer(final int length)
+          throws IOException
+  {
+    if (length > (bufferEnd - bufferPos))
+    {
+      bufferPos = bufferEnd;
+      throw new IOException(ERR_READ_END_BEFORE_VALUE_END.get());
+    }
+
+    final int offset = bufferPos;
+    bufferPos      += length;
+    totalBytesRead += length;
+    return offset;
+  }
 }
@@ -0,0 +1,334 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+
+import com.hwlcn.ldap.ldap.sdk.DN;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldap.sdk.Filter;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnection;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnectionPool;
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.ldap.ldap.sdk.Modification;
+import com.hwlcn.ldap.ldap.sdk.ReadOnlyEntry;
+import com.hwlcn.ldap.ldap.sdk.ResultCode;
+import com.hwlcn.ldap.ldap.sdk.SearchScope;
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+import com.hwlcn.ldap.ldif.LDIFException;
+import com.hwlcn.ldap.ldif.LDIFReader;
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.listener.ListenerMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+
+
+
+/**
+ * This class provides an embeddable LDAPv3 directory server that keeps all of
+ * its data in memory, intended for tests and benchmarks that need a real
+ * server on a loopback socket without any external dependencies.  For
+ * example:
+ * <PRE>
+ *   InMemoryDirectoryServerConfig config =
+ *        new InMemoryDirectoryServerConfig("dc=example,dc=com");
+ *   config.setEqualityIndexAttributes("uid", "member");
+ *
+ *   InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+ *   server.importFromLDIF(true, "test-data.ldif");
+ *   server.startListening();
+ *
+ *   LDAPConnectionPool pool = server.getConnectionPool(10);
+ *   ...
+ *   pool.close();
+ *   server.shutDown(true);
+ * </PRE>
+ * Entries may also be added, searched, and removed directly through this
+ * class, which does not require the server to be listening.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class InMemoryDirectoryServer
+{
+  private static final String LISTENER_NAME = "LDAP";
+
+
+
+  private final InMemoryDirectoryServerConfig config;
+
+  private final InMemoryRequestHandler requestHandler;
+
+  private LDAPListener listener;
+
+
+
+  public InMemoryDirectoryServer(final String... baseDNs)
+         throws LDAPException
+  {
+    this(new InMemoryDirectoryServerConfig(baseDNs));
+  }
+
+
+
+  public InMemoryDirectoryServer(final InMemoryDirectoryServerConfig config)
+         throws LDAPException
+  {
+    this.config = config;
+
+    requestHandler = new InMemoryRequestHandler(config);
+    listener       = null;
+  }
+
+
+
+  public synchronized void startListening()
+         throws LDAPException
+  {
+    if (listener != null)
+    {
+      return;
+    }
+
+    final LDAPListenerConfig listenerConfig =
+         new LDAPListenerConfig(config.getListenPort(), requestHandler);
+    listenerConfig.setListenAddress(config.getListenAddress());
+    listenerConfig.setMaxConnections(config.getMaxConnections());
+
+    final LDAPListener l = new LDAPListener(listenerConfig);
+    try
+    {
+      l.startListening();
+    }
+    catch (final IOException ioe)
+    {
+      debugException(ioe);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_DS_START_FAILED.get(LISTENER_NAME,
+                getExceptionMessage(ioe)), ioe);
+    }
+
+    listener = l;
+  }
+
+
+
+  public synchronized void shutDown(final boolean closeExistingConnections)
+  {
+    if (listener != null)
+    {
+      listener.shutDown(closeExistingConnections);
+      listener = null;
+    }
+  }
+
+
+
+  public synchronized boolean isListening()
+  {
+    return (listener != null);
+  }
+
+
+
+  public synchronized int getListenPort()
+  {
+    if (listener == null)
+    {
+      return -1;
+    }
+
+    return listener.getListenPort();
+  }
+
+
+
+  public LDAPConnection getConnection()
+         throws LDAPException
+  {
+    final String host;
+    final int port;
+    synchronized (this)
+    {
+      if (listener == null)
+      {
+        throw new LDAPException(ResultCode.CONNECT_ERROR,
+             ERR_MEM_DS_GET_CONNECTION_NO_LISTENERS.get());
+      }
+
+      final InetAddress address = listener.getListenAddress();
+      if ((address == null) || address.isAnyLocalAddress())
+      {
+        host = "127.0.0.1";
+      }
+      else
+      {
+        host = address.getHostAddress();
+      }
+      port = listener.getListenPort();
+    }
+
+    return new LDAPConnection(host, port);
+  }
+
+
+
+  public LDAPConnectionPool getConnectionPool(final int maxConnections)
+         throws LDAPException
+  {
+    return getConnectionPool(1, maxConnections);
+  }
+
+
+
+  public LDAPConnectionPool getConnectionPool(final int initialConnections,
+                                              final int maxConnections)
+         throws LDAPException
+  {
+    return new LDAPConnectionPool(getConnection(), initialConnections,
+         maxConnections);
+  }
+
+
+
+  public InMemoryDirectoryServerConfig getConfig()
+  {
+    return config;
+  }
+
+
+
+  public InMemoryRequestHandler getRequestHandler()
+  {
+    return requestHandler;
+  }
+
+
+
+  public List<DN> getBaseDNs()
+  {
+    return requestHandler.getBaseDNs();
+  }
+
+
+
+  public Schema getSchema()
+  {
+    return requestHandler.getSchema();
+  }
+
+
+
+  public int importFromLDIF(final boolean clear, final String path)
+         throws LDAPException
+  {
+    final LDIFReader ldifReader;
+    try
+    {
+      // Parents always precede their children in a well-formed LDIF file, so
+      // the parallel reader must return the entries in their original order.
+      ldifReader = new LDIFReader(new File(path),
+           Math.max(1, Runtime.getRuntime().availableProcessors()), null,
+           true);
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_MEM_DS_INIT_FROM_LDIF_CANNOT_CREATE_READER.get(path,
+                getExceptionMessage(e)), e);
+    }
+
+    return importFromLDIF(clear, ldifReader);
+  }
+
+
+
+  public int importFromLDIF(final boolean clear, final LDIFReader ldifReader)
+         throws LDAPException
+  {
+    return requestHandler.importFromLDIF(clear, ldifReader);
+  }
+
+
+
+  public void add(final Entry entry)
+         throws LDAPException
+  {
+    requestHandler.addEntry(entry);
+  }
+
+
+
+  public void add(final String... ldifLines)
+         throws LDAPException
+  {
+    final Entry entry;
+    try
+    {
+      entry = new Entry(ldifLines);
+    }
+    catch (final LDIFException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_ADD_ENTRY_LDIF_PARSE_EXCEPTION.get(le.getMessage()),
+           le);
+    }
+
+    requestHandler.addEntry(entry);
+  }
+
+
+
+  public void delete(final String dn)
+         throws LDAPException
+  {
+    requestHandler.deleteEntry(dn);
+  }
+
+
+
+  public void modify(final String dn, final List<Modification> modifications)
+         throws LDAPException
+  {
+    requestHandler.modifyEntry(dn, modifications);
+  }
+
+
+
+  public ReadOnlyEntry getEntry(final String dn)
+         throws LDAPException
+  {
+    return requestHandler.getEntry(dn);
+  }
+
+
+
+  public List<ReadOnlyEntry> search(final String baseDN,
+                                    final SearchScope scope,
+                                    final Filter filter)
+         throws LDAPException
+  {
+    return requestHandler.search(baseDN, scope, filter);
+  }
+
+
+
+  public int countEntries()
+  {
+    return requestHandler.countEntries();
+  }
+
+
+
+  public void clear()
+  {
+    requestHandler.clear();
+  }
+}
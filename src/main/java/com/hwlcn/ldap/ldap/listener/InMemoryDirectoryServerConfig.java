@@ -0,0 +1,340 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.hwlcn.ldap.ldap.sdk.DN;
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.ldap.ldap.sdk.ResultCode;
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.listener.ListenerMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+
+
+
+/**
+ * This class provides the configuration for an
+ * {@link InMemoryDirectoryServer}.  By default, the server uses the standard
+ * schema bundled with the SDK, listens on an automatically-selected port on
+ * all addresses, does not maintain any attribute indexes, and does not impose
+ * a size limit beyond the one included in each search request.  Setting the
+ * schema to {@code null} disables schema checking entirely.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+public final class InMemoryDirectoryServerConfig
+{
+  private DN[] baseDNs;
+
+  private InetAddress listenAddress;
+
+  private int listenPort;
+
+  private int maxConnections;
+
+  private int maxSizeLimit;
+
+  private final Map<DN,List<byte[]>> additionalBindCredentials;
+
+  private final Set<String> equalityIndexAttributes;
+
+  private Schema schema;
+
+
+
+  public InMemoryDirectoryServerConfig(final String... baseDNs)
+         throws LDAPException
+  {
+    this(parseDNs(baseDNs));
+  }
+
+
+
+  public InMemoryDirectoryServerConfig(final DN... baseDNs)
+         throws LDAPException
+  {
+    if ((baseDNs == null) || (baseDNs.length == 0))
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_CFG_NO_BASE_DNS.get());
+    }
+
+    this.baseDNs = baseDNs;
+
+    listenAddress             = null;
+    listenPort                = 0;
+    maxConnections            = 0;
+    maxSizeLimit              = 0;
+    additionalBindCredentials = new LinkedHashMap<DN,List<byte[]>>(1);
+    equalityIndexAttributes   = new LinkedHashSet<String>(10);
+
+    try
+    {
+      schema = Schema.getDefaultStandardSchema();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+      schema = null;
+    }
+  }
+
+
+
+  private static DN[] parseDNs(final String... dnStrings)
+          throws LDAPException
+  {
+    if (dnStrings == null)
+    {
+      return null;
+    }
+
+    final DN[] dns = new DN[dnStrings.length];
+    for (int i=0; i < dns.length; i++)
+    {
+      try
+      {
+        dns[i] = new DN(dnStrings[i]);
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+             ERR_MEM_DS_CFG_MALFORMED_BASE_DN.get(dnStrings[i],
+                  le.getMessage()), le);
+      }
+    }
+    return dns;
+  }
+
+
+
+  public DN[] getBaseDNs()
+  {
+    return baseDNs;
+  }
+
+
+
+  public void setBaseDNs(final String... baseDNs)
+         throws LDAPException
+  {
+    setBaseDNs(parseDNs(baseDNs));
+  }
+
+
+
+  public void setBaseDNs(final DN... baseDNs)
+         throws LDAPException
+  {
+    if ((baseDNs == null) || (baseDNs.length == 0))
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_CFG_NO_BASE_DNS.get());
+    }
+
+    this.baseDNs = baseDNs;
+  }
+
+
+
+  public InetAddress getListenAddress()
+  {
+    return listenAddress;
+  }
+
+
+
+  public void setListenAddress(final InetAddress listenAddress)
+  {
+    this.listenAddress = listenAddress;
+  }
+
+
+
+  public int getListenPort()
+  {
+    return listenPort;
+  }
+
+
+
+  public void setListenPort(final int listenPort)
+         throws LDAPException
+  {
+    if ((listenPort < 0) || (listenPort > 65535))
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_CFG_INVALID_LISTEN_PORT.get(listenPort));
+    }
+
+    this.listenPort = listenPort;
+  }
+
+
+
+  public int getMaxConnections()
+  {
+    return maxConnections;
+  }
+
+
+
+  public void setMaxConnections(final int maxConnections)
+  {
+    this.maxConnections = Math.max(0, maxConnections);
+  }
+
+
+
+  public int getMaxSizeLimit()
+  {
+    return maxSizeLimit;
+  }
+
+
+
+  public void setMaxSizeLimit(final int maxSizeLimit)
+  {
+    this.maxSizeLimit = Math.max(0, maxSizeLimit);
+  }
+
+
+
+  public Map<DN,List<byte[]>> getAdditionalBindCredentials()
+  {
+    return Collections.unmodifiableMap(additionalBindCredentials);
+  }
+
+
+
+  public void addAdditionalBindCredentials(final String dn,
+                                           final String password)
+         throws LDAPException
+  {
+    addAdditionalBindCredentials(dn, getBytes(password));
+  }
+
+
+
+  public void addAdditionalBindCredentials(final String dn,
+                                           final byte[] password)
+         throws LDAPException
+  {
+    if (dn == null)
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_CFG_NULL_ADDITIONAL_BIND_DN.get());
+    }
+
+    final DN parsedDN = new DN(dn);
+    if (parsedDN.isNullDN())
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_CFG_NULL_ADDITIONAL_BIND_DN.get());
+    }
+
+    if ((password == null) || (password.length == 0))
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_DS_CFG_NULL_ADDITIONAL_BIND_PW.get());
+    }
+
+    List<byte[]> pwList = additionalBindCredentials.get(parsedDN);
+    if (pwList == null)
+    {
+      pwList = new ArrayList<byte[]>(1);
+      additionalBindCredentials.put(parsedDN, pwList);
+    }
+
+    pwList.add(password);
+  }
+
+
+
+  public Set<String> getEqualityIndexAttributes()
+  {
+    return Collections.unmodifiableSet(equalityIndexAttributes);
+  }
+
+
+
+  public void setEqualityIndexAttributes(final String... attributes)
+  {
+    equalityIndexAttributes.clear();
+    if (attributes != null)
+    {
+      equalityIndexAttributes.addAll(Arrays.asList(attributes));
+    }
+  }
+
+
+
+  public Schema getSchema()
+  {
+    return schema;
+  }
+
+
+
+  public void setSchema(final Schema schema)
+  {
+    this.schema = schema;
+  }
+
+
+
+  @Override()
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer);
+    return buffer.toString();
+  }
+
+
+
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("InMemoryDirectoryServerConfig(baseDNs={");
+    for (int i=0; i < baseDNs.length; i++)
+    {
+      if (i > 0)
+      {
+        buffer.append(", ");
+      }
+
+      buffer.append('\'');
+      buffer.append(baseDNs[i].toString());
+      buffer.append('\'');
+    }
+
+    buffer.append("}, listenPort=");
+    buffer.append(listenPort);
+    buffer.append(", maxConnections=");
+    buffer.append(maxConnections);
+    buffer.append(", maxSizeLimit=");
+    buffer.append(maxSizeLimit);
+    buffer.append(", schemaProvided=");
+    buffer.append(schema != null);
+    buffer.append(", equalityIndexAttributes=");
+    buffer.append(equalityIndexAttributes);
+    buffer.append(", numAdditionalBindCredentials=");
+    buffer.append(additionalBindCredentials.size());
+    buffer.append(')');
+  }
+}
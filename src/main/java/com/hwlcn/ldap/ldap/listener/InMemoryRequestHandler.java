@@ -0,0 +1,1595 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.hwlcn.ldap.asn1.ASN1OctetString;
+import com.hwlcn.ldap.ldap.matchingrules.MatchingRule;
+import com.hwlcn.ldap.ldap.protocol.AddRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.BindRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.CompareRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.DeleteRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ExtendedRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
+import com.hwlcn.ldap.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ModifyRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.SearchRequestProtocolOp;
+import com.hwlcn.ldap.ldap.sdk.Attribute;
+import com.hwlcn.ldap.ldap.sdk.CompiledFilter;
+import com.hwlcn.ldap.ldap.sdk.Control;
+import com.hwlcn.ldap.ldap.sdk.DN;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldap.sdk.Filter;
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.ldap.ldap.sdk.Modification;
+import com.hwlcn.ldap.ldap.sdk.RDN;
+import com.hwlcn.ldap.ldap.sdk.ReadOnlyEntry;
+import com.hwlcn.ldap.ldap.sdk.ResultCode;
+import com.hwlcn.ldap.ldap.sdk.SearchScope;
+import com.hwlcn.ldap.ldap.sdk.schema.AttributeTypeDefinition;
+import com.hwlcn.ldap.ldap.sdk.schema.EntryValidator;
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+import com.hwlcn.ldap.ldif.LDIFException;
+import com.hwlcn.ldap.ldif.LDIFReader;
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.listener.ListenerMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+
+
+
+/**
+ * This class provides an {@link LDAPListenerRequestHandler} that holds a set
+ * of entries in memory.  Entries are kept in a map keyed by DN together with a
+ * map from each DN to the DNs of its immediate children, so one-level and
+ * subtree searches only visit the entries in scope.  Equality indexes may be
+ * configured for selected attributes; searches whose filter is an equality
+ * component on an indexed attribute, or an AND or OR of such components, only
+ * evaluate the filter against the indexed candidates.  Filters are compiled
+ * once per search with {@link Filter#compile(Schema)}.
+ * <BR><BR>
+ * Each client connection gets its own handler instance, but all instances
+ * created from the same handler share the same data.  Searches, compares,
+ * and binds may run concurrently; updates are serialized.  No access control
+ * is applied, so every client may perform every operation.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class InMemoryRequestHandler
+       extends LDAPListenerRequestHandler
+{
+  private final DN[] baseDNs;
+
+  private final EntryValidator entryValidator;
+
+  private final HashMap<DN,ReadOnlyEntry> entryMap;
+
+  private final HashMap<DN,LinkedHashSet<DN>> childMap;
+
+  private final int maxSizeLimit;
+
+  private final LDAPListenerClientConnection connection;
+
+  private final Map<DN,List<byte[]>> additionalBindCredentials;
+
+  private final List<EqualityIndex> indexList;
+
+  private final Map<String,EqualityIndex> equalityIndexes;
+
+  private final ReentrantReadWriteLock lock;
+
+  private final Schema schema;
+
+
+
+  public InMemoryRequestHandler(final InMemoryDirectoryServerConfig config)
+         throws LDAPException
+  {
+    schema       = config.getSchema();
+    maxSizeLimit = config.getMaxSizeLimit();
+    connection   = null;
+
+    final DN[] configuredBaseDNs = config.getBaseDNs();
+    if ((configuredBaseDNs == null) || (configuredBaseDNs.length == 0))
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_MEM_HANDLER_NO_BASE_DNS.get());
+    }
+
+    baseDNs = new DN[configuredBaseDNs.length];
+    for (int i=0; i < baseDNs.length; i++)
+    {
+      if (configuredBaseDNs[i].isNullDN())
+      {
+        throw new LDAPException(ResultCode.PARAM_ERROR,
+             ERR_MEM_HANDLER_NULL_BASE_DN.get());
+      }
+
+      baseDNs[i] = new DN(configuredBaseDNs[i].toString(), schema);
+    }
+
+    if (schema == null)
+    {
+      entryValidator = null;
+    }
+    else
+    {
+      entryValidator = new EntryValidator(schema);
+    }
+
+    final LinkedHashMap<DN,List<byte[]>> credentials =
+         new LinkedHashMap<DN,List<byte[]>>(
+              config.getAdditionalBindCredentials().size());
+    for (final Map.Entry<DN,List<byte[]>> e :
+         config.getAdditionalBindCredentials().entrySet())
+    {
+      credentials.put(new DN(e.getKey().toString(), schema),
+           new ArrayList<byte[]>(e.getValue()));
+    }
+    additionalBindCredentials = Collections.unmodifiableMap(credentials);
+
+    final ArrayList<EqualityIndex> indexes = new ArrayList<EqualityIndex>(
+         config.getEqualityIndexAttributes().size());
+    final LinkedHashMap<String,EqualityIndex> indexesByName =
+         new LinkedHashMap<String,EqualityIndex>(10);
+    for (final String attributeName : config.getEqualityIndexAttributes())
+    {
+      final EqualityIndex index = new EqualityIndex(attributeName, schema);
+      indexes.add(index);
+      for (final String name : index.names)
+      {
+        indexesByName.put(name, index);
+      }
+    }
+    indexList       = Collections.unmodifiableList(indexes);
+    equalityIndexes = Collections.unmodifiableMap(indexesByName);
+
+    entryMap = new HashMap<DN,ReadOnlyEntry>(100);
+    childMap = new HashMap<DN,LinkedHashSet<DN>>(100);
+    lock     = new ReentrantReadWriteLock();
+  }
+
+
+
+  private InMemoryRequestHandler(final InMemoryRequestHandler parent,
+                                 final LDAPListenerClientConnection connection)
+  {
+    this.connection = connection;
+
+    baseDNs                   = parent.baseDNs;
+    entryValidator            = parent.entryValidator;
+    entryMap                  = parent.entryMap;
+    childMap                  = parent.childMap;
+    maxSizeLimit              = parent.maxSizeLimit;
+    additionalBindCredentials = parent.additionalBindCredentials;
+    indexList                 = parent.indexList;
+    equalityIndexes           = parent.equalityIndexes;
+    lock                      = parent.lock;
+    schema                    = parent.schema;
+  }
+
+
+
+  @Override()
+  public InMemoryRequestHandler newInstance(
+              final LDAPListenerClientConnection connection)
+         throws LDAPException
+  {
+    return new InMemoryRequestHandler(this, connection);
+  }
+
+
+
+  public List<DN> getBaseDNs()
+  {
+    return Collections.unmodifiableList(Arrays.asList(baseDNs));
+  }
+
+
+
+  public Schema getSchema()
+  {
+    return schema;
+  }
+
+
+
+  public int countEntries()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return entryMap.size();
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+  public ReadOnlyEntry getEntry(final String dn)
+         throws LDAPException
+  {
+    final DN parsedDN = new DN(dn, schema);
+
+    lock.readLock().lock();
+    try
+    {
+      return entryMap.get(parsedDN);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+  public void clear()
+  {
+    lock.writeLock().lock();
+    try
+    {
+      entryMap.clear();
+      childMap.clear();
+      for (final EqualityIndex index : indexList)
+      {
+        index.clear();
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  public int importFromLDIF(final boolean clear, final LDIFReader ldifReader)
+         throws LDAPException
+  {
+    lock.writeLock().lock();
+    try
+    {
+      if (clear)
+      {
+        clear();
+      }
+
+      int entriesAdded = 0;
+      while (true)
+      {
+        final Entry entry;
+        try
+        {
+          entry = ldifReader.readEntry();
+          if (entry == null)
+          {
+            return entriesAdded;
+          }
+        }
+        catch (final LDIFException le)
+        {
+          debugException(le);
+          throw new LDAPException(ResultCode.LOCAL_ERROR,
+               ERR_MEM_HANDLER_INIT_FROM_LDIF_READ_ERROR.get(
+                    le.getLineNumber(), le.getMessage()), le);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+          throw new LDAPException(ResultCode.LOCAL_ERROR,
+               ERR_MEM_HANDLER_INIT_FROM_LDIF_READ_ERROR.get(
+                    null, getExceptionMessage(e)), e);
+        }
+
+        addEntry(entry);
+        entriesAdded++;
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+
+      try
+      {
+        ldifReader.close();
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+    }
+  }
+
+
+
+  public void addEntry(final Entry entry)
+         throws LDAPException
+  {
+    final DN dn;
+    try
+    {
+      dn = new DN(entry.getDN(), schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_ADD_MALFORMED_DN.get(entry.getDN(),
+                le.getMessage()), le);
+    }
+
+    if (dn.isNullDN())
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_ADD_ROOT_DSE.get());
+    }
+
+    final ReadOnlyEntry newEntry =
+         new ReadOnlyEntry(dn, schema, entry.getAttributes());
+
+    lock.writeLock().lock();
+    try
+    {
+      if (entryMap.containsKey(dn))
+      {
+        throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,
+             ERR_MEM_HANDLER_ADD_ALREADY_EXISTS.get(entry.getDN()));
+      }
+
+      final DN parentDN = dn.getParent();
+      if ((! isBaseDN(dn)) &&
+          ((parentDN == null) || (! entryMap.containsKey(parentDN))))
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_ADD_MISSING_PARENT.get(entry.getDN(),
+                  String.valueOf(parentDN)),
+             getMatchedDN(dn), null);
+      }
+
+      validate(newEntry, ERR_MEM_HANDLER_ADD_VIOLATES_SCHEMA);
+      putEntry(dn, newEntry);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  public void deleteEntry(final String dn)
+         throws LDAPException
+  {
+    final DN parsedDN;
+    try
+    {
+      parsedDN = new DN(dn, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_DELETE_MALFORMED_DN.get(dn, le.getMessage()), le);
+    }
+
+    if (parsedDN.isNullDN())
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_DELETE_ROOT_DSE.get());
+    }
+
+    lock.writeLock().lock();
+    try
+    {
+      if (! entryMap.containsKey(parsedDN))
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_DELETE_NO_SUCH_ENTRY.get(dn),
+             getMatchedDN(parsedDN), null);
+      }
+
+      final Set<DN> children = childMap.get(parsedDN);
+      if ((children != null) && (! children.isEmpty()))
+      {
+        throw new LDAPException(ResultCode.NOT_ALLOWED_ON_NONLEAF,
+             ERR_MEM_HANDLER_DELETE_HAS_SUBORDINATES.get(dn));
+      }
+
+      removeEntry(parsedDN);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  public void modifyEntry(final String dn,
+                          final List<Modification> modifications)
+         throws LDAPException
+  {
+    final DN parsedDN;
+    try
+    {
+      parsedDN = new DN(dn, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_MOD_MALFORMED_DN.get(dn, le.getMessage()), le);
+    }
+
+    if (parsedDN.isNullDN())
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_MOD_ROOT_DSE.get());
+    }
+
+    lock.writeLock().lock();
+    try
+    {
+      final ReadOnlyEntry entry = entryMap.get(parsedDN);
+      if (entry == null)
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_MOD_NO_SUCH_ENTRY.get(dn),
+             getMatchedDN(parsedDN), null);
+      }
+
+      if (modifications.isEmpty())
+      {
+        return;
+      }
+
+      final Entry modifiedEntry;
+      try
+      {
+        modifiedEntry = Entry.applyModifications(entry, false, modifications);
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        throw new LDAPException(le.getResultCode(),
+             ERR_MEM_HANDLER_MOD_FAILED.get(dn, le.getMessage()), le);
+      }
+
+      final ReadOnlyEntry newEntry = new ReadOnlyEntry(parsedDN, schema,
+           modifiedEntry.getAttributes());
+      validate(newEntry, ERR_MEM_HANDLER_MOD_VIOLATES_SCHEMA);
+
+      removeEntry(parsedDN);
+      putEntry(parsedDN, newEntry);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  public void modifyDN(final String dn, final String newRDN,
+                       final boolean deleteOldRDN,
+                       final String newSuperiorDN)
+         throws LDAPException
+  {
+    final DN parsedDN;
+    try
+    {
+      parsedDN = new DN(dn, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_MOD_DN_MALFORMED_DN.get(dn, le.getMessage()), le);
+    }
+
+    final RDN parsedNewRDN;
+    try
+    {
+      parsedNewRDN = new RDN(newRDN, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_MOD_DN_MALFORMED_NEW_RDN.get(dn, newRDN,
+                le.getMessage()), le);
+    }
+
+    final DN newParentDN;
+    if (newSuperiorDN == null)
+    {
+      newParentDN = parsedDN.getParent();
+    }
+    else
+    {
+      try
+      {
+        newParentDN = new DN(newSuperiorDN, schema);
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+             ERR_MEM_HANDLER_MOD_DN_MALFORMED_NEW_SUPERIOR.get(dn,
+                  newSuperiorDN, le.getMessage()), le);
+      }
+    }
+
+    if (parsedDN.isNullDN())
+    {
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_MOD_DN_ROOT_DSE.get());
+    }
+
+    final DN newDN;
+    if (newParentDN == null)
+    {
+      newDN = new DN(parsedNewRDN);
+    }
+    else
+    {
+      newDN = new DN(parsedNewRDN, newParentDN);
+    }
+
+    lock.writeLock().lock();
+    try
+    {
+      final ReadOnlyEntry entry = entryMap.get(parsedDN);
+      if (entry == null)
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_MOD_DN_NO_SUCH_ENTRY.get(dn),
+             getMatchedDN(parsedDN), null);
+      }
+
+      if (newDN.equals(parsedDN))
+      {
+        throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+             ERR_MEM_HANDLER_MOD_DN_NEW_DN_SAME_AS_OLD.get(dn));
+      }
+
+      if (entryMap.containsKey(newDN))
+      {
+        throw new LDAPException(ResultCode.ENTRY_ALREADY_EXISTS,
+             ERR_MEM_HANDLER_MOD_DN_TARGET_ALREADY_EXISTS.get(dn,
+                  newDN.toString()));
+      }
+
+      if (newDN.isDescendantOf(parsedDN, false))
+      {
+        throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+             ERR_MEM_HANDLER_MOD_DN_NEW_SUPERIOR_IS_DESCENDANT.get(dn,
+                  newDN.toString()));
+      }
+
+      if ((! isBaseDN(newDN)) &&
+          ((newParentDN == null) || (! entryMap.containsKey(newParentDN))))
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_MOD_DN_PARENT_DOESNT_EXIST.get(dn,
+                  newDN.toString()),
+             getMatchedDN(newDN), null);
+      }
+
+      final Entry updatedEntry = entry.duplicate();
+      updatedEntry.setDN(newDN);
+      if (deleteOldRDN)
+      {
+        final RDN oldRDN = parsedDN.getRDN();
+        final String[] names = oldRDN.getAttributeNames();
+        final byte[][] values = oldRDN.getByteArrayAttributeValues();
+        for (int i=0; i < names.length; i++)
+        {
+          updatedEntry.removeAttributeValue(names[i], values[i]);
+        }
+      }
+
+      final String[] newNames = parsedNewRDN.getAttributeNames();
+      final byte[][] newValues = parsedNewRDN.getByteArrayAttributeValues();
+      for (int i=0; i < newNames.length; i++)
+      {
+        updatedEntry.addAttribute(newNames[i], newValues[i]);
+      }
+
+      final ReadOnlyEntry newEntry =
+           new ReadOnlyEntry(newDN, schema, updatedEntry.getAttributes());
+      validate(newEntry, ERR_MEM_HANDLER_MOD_DN_VIOLATES_SCHEMA);
+
+      // Move the entire subtree.  The entries are listed parents first so they
+      // can be re-added in the same order.
+      final List<DN> subtreeDNs = new ArrayList<DN>(10);
+      collectSubtree(parsedDN, subtreeDNs);
+
+      final List<ReadOnlyEntry> subtreeEntries =
+           new ArrayList<ReadOnlyEntry>(subtreeDNs.size());
+      for (final DN d : subtreeDNs)
+      {
+        subtreeEntries.add(entryMap.get(d));
+      }
+
+      for (int i=subtreeDNs.size()-1; i >= 0; i--)
+      {
+        removeEntry(subtreeDNs.get(i));
+      }
+
+      putEntry(newDN, newEntry);
+
+      final int oldBaseLength = parsedDN.getRDNs().length;
+      final RDN[] newBaseRDNs = newDN.getRDNs();
+      for (int i=1; i < subtreeDNs.size(); i++)
+      {
+        final RDN[] oldRDNs = subtreeDNs.get(i).getRDNs();
+        final int numToKeep = oldRDNs.length - oldBaseLength;
+        final RDN[] rdns = new RDN[numToKeep + newBaseRDNs.length];
+        System.arraycopy(oldRDNs, 0, rdns, 0, numToKeep);
+        System.arraycopy(newBaseRDNs, 0, rdns, numToKeep, newBaseRDNs.length);
+
+        final DN movedDN = new DN(rdns);
+        putEntry(movedDN, new ReadOnlyEntry(movedDN, schema,
+             subtreeEntries.get(i).getAttributes()));
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  public ResultCode compare(final String dn, final String attributeName,
+                            final byte[] assertionValue)
+         throws LDAPException
+  {
+    final DN parsedDN;
+    try
+    {
+      parsedDN = new DN(dn, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_COMPARE_MALFORMED_DN.get(dn, le.getMessage()), le);
+    }
+
+    final Filter filter =
+         Filter.createEqualityFilter(attributeName, assertionValue);
+
+    lock.readLock().lock();
+    try
+    {
+      final ReadOnlyEntry entry = entryMap.get(parsedDN);
+      if (entry == null)
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_COMPARE_NO_SUCH_ENTRY.get(dn),
+             getMatchedDN(parsedDN), null);
+      }
+
+      if (filter.matchesEntry(entry, schema))
+      {
+        return ResultCode.COMPARE_TRUE;
+      }
+      else
+      {
+        return ResultCode.COMPARE_FALSE;
+      }
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+  public List<ReadOnlyEntry> search(final String baseDN,
+                                    final SearchScope scope,
+                                    final Filter filter)
+         throws LDAPException
+  {
+    final ArrayList<ReadOnlyEntry> entries = new ArrayList<ReadOnlyEntry>(10);
+    final boolean sizeLimitExceeded =
+         search(baseDN, scope, filter, 0, entries);
+    if (sizeLimitExceeded)
+    {
+      throw new LDAPException(ResultCode.SIZE_LIMIT_EXCEEDED,
+           ERR_MEM_HANDLER_SEARCH_SIZE_LIMIT_EXCEEDED.get());
+    }
+
+    return Collections.unmodifiableList(entries);
+  }
+
+
+
+  private boolean search(final String baseDN, final SearchScope scope,
+                         final Filter filter, final int requestSizeLimit,
+                         final List<ReadOnlyEntry> matchingEntries)
+          throws LDAPException
+  {
+    final DN parsedBaseDN;
+    try
+    {
+      parsedBaseDN = new DN(baseDN, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_SEARCH_MALFORMED_BASE.get(baseDN, le.getMessage()),
+           le);
+    }
+
+    final int sizeLimit;
+    if (maxSizeLimit <= 0)
+    {
+      sizeLimit = requestSizeLimit;
+    }
+    else if (requestSizeLimit <= 0)
+    {
+      sizeLimit = maxSizeLimit;
+    }
+    else
+    {
+      sizeLimit = Math.min(requestSizeLimit, maxSizeLimit);
+    }
+
+    final CompiledFilter compiledFilter = filter.compile(schema);
+
+    lock.readLock().lock();
+    try
+    {
+      if (parsedBaseDN.isNullDN())
+      {
+        if (scope == SearchScope.BASE)
+        {
+          final ReadOnlyEntry rootDSE = createRootDSE();
+          if (compiledFilter.matchesEntry(rootDSE))
+          {
+            matchingEntries.add(rootDSE);
+          }
+          return false;
+        }
+      }
+      else if (! entryMap.containsKey(parsedBaseDN))
+      {
+        throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+             ERR_MEM_HANDLER_SEARCH_BASE_DOES_NOT_EXIST.get(baseDN),
+             getMatchedDN(parsedBaseDN), null);
+      }
+
+      final Set<DN> candidateDNs = getIndexCandidates(filter);
+      final Iterable<DN> dnsInScope;
+      if (candidateDNs == null)
+      {
+        dnsInScope = getDNsInScope(parsedBaseDN, scope);
+      }
+      else
+      {
+        dnsInScope = candidateDNs;
+      }
+
+      for (final DN dn : dnsInScope)
+      {
+        if ((candidateDNs != null) &&
+            (! dn.matchesBaseAndScope(parsedBaseDN, scope)))
+        {
+          continue;
+        }
+
+        final ReadOnlyEntry entry = entryMap.get(dn);
+        if (compiledFilter.matchesEntry(entry))
+        {
+          if ((sizeLimit > 0) && (matchingEntries.size() >= sizeLimit))
+          {
+            return true;
+          }
+          matchingEntries.add(entry);
+        }
+      }
+
+      return false;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
+  private List<DN> getDNsInScope(final DN baseDN, final SearchScope scope)
+  {
+    final ArrayList<DN> dns = new ArrayList<DN>(10);
+    final int scopeValue = scope.intValue();
+
+    if (baseDN.isNullDN())
+    {
+      for (final DN dn : baseDNs)
+      {
+        if (entryMap.containsKey(dn))
+        {
+          if (scopeValue == SearchScope.ONE_INT_VALUE)
+          {
+            dns.add(dn);
+          }
+          else
+          {
+            collectSubtree(dn, dns);
+          }
+        }
+      }
+      return dns;
+    }
+
+    switch (scopeValue)
+    {
+      case SearchScope.BASE_INT_VALUE:
+        dns.add(baseDN);
+        break;
+
+      case SearchScope.ONE_INT_VALUE:
+        final Set<DN> children = childMap.get(baseDN);
+        if (children != null)
+        {
+          dns.addAll(children);
+        }
+        break;
+
+      case SearchScope.SUB_INT_VALUE:
+        collectSubtree(baseDN, dns);
+        break;
+
+      case SearchScope.SUBORDINATE_SUBTREE_INT_VALUE:
+        collectSubtree(baseDN, dns);
+        dns.remove(0);
+        break;
+    }
+
+    return dns;
+  }
+
+
+
+  private void collectSubtree(final DN baseDN, final List<DN> dns)
+  {
+    final ArrayList<DN> stack = new ArrayList<DN>(10);
+    stack.add(baseDN);
+    while (! stack.isEmpty())
+    {
+      final DN dn = stack.remove(stack.size() - 1);
+      dns.add(dn);
+
+      final Set<DN> children = childMap.get(dn);
+      if (children != null)
+      {
+        stack.addAll(children);
+      }
+    }
+  }
+
+
+
+  private Set<DN> getIndexCandidates(final Filter filter)
+  {
+    if (equalityIndexes.isEmpty())
+    {
+      return null;
+    }
+
+    switch (filter.getFilterType())
+    {
+      case Filter.FILTER_TYPE_EQUALITY:
+        final EqualityIndex index =
+             equalityIndexes.get(toLowerCase(filter.getAttributeName()));
+        if (index == null)
+        {
+          return null;
+        }
+        return index.get(filter.getRawAssertionValue());
+
+      case Filter.FILTER_TYPE_AND:
+        Set<DN> smallest = null;
+        for (final Filter f : filter.getComponents())
+        {
+          final Set<DN> candidates = getIndexCandidates(f);
+          if ((candidates != null) &&
+              ((smallest == null) || (candidates.size() < smallest.size())))
+          {
+            smallest = candidates;
+          }
+        }
+        return smallest;
+
+      case Filter.FILTER_TYPE_OR:
+        if (filter.getComponents().length == 0)
+        {
+          return null;
+        }
+
+        final LinkedHashSet<DN> union = new LinkedHashSet<DN>(10);
+        for (final Filter f : filter.getComponents())
+        {
+          final Set<DN> candidates = getIndexCandidates(f);
+          if (candidates == null)
+          {
+            return null;
+          }
+          union.addAll(candidates);
+        }
+        return union;
+
+      default:
+        return null;
+    }
+  }
+
+
+
+  private ReadOnlyEntry createRootDSE()
+  {
+    final String[] namingContexts = new String[baseDNs.length];
+    for (int i=0; i < baseDNs.length; i++)
+    {
+      namingContexts[i] = baseDNs[i].toString();
+    }
+
+    return new ReadOnlyEntry(DN.NULL_DN, schema,
+         new Attribute("objectClass", "top", "ds-root-dse"),
+         new Attribute("namingContexts", namingContexts),
+         new Attribute("supportedLDAPVersion", "3"));
+  }
+
+
+
+  private void putEntry(final DN dn, final ReadOnlyEntry entry)
+  {
+    entryMap.put(dn, entry);
+
+    final DN parentDN = dn.getParent();
+    if (parentDN != null)
+    {
+      LinkedHashSet<DN> children = childMap.get(parentDN);
+      if (children == null)
+      {
+        children = new LinkedHashSet<DN>(4);
+        childMap.put(parentDN, children);
+      }
+      children.add(dn);
+    }
+
+    for (final EqualityIndex index : indexList)
+    {
+      index.add(dn, entry);
+    }
+  }
+
+
+
+  private void removeEntry(final DN dn)
+  {
+    final ReadOnlyEntry entry = entryMap.remove(dn);
+    if (entry == null)
+    {
+      return;
+    }
+
+    final DN parentDN = dn.getParent();
+    if (parentDN != null)
+    {
+      final LinkedHashSet<DN> children = childMap.get(parentDN);
+      if (children != null)
+      {
+        children.remove(dn);
+        if (children.isEmpty())
+        {
+          childMap.remove(parentDN);
+        }
+      }
+    }
+
+    for (final EqualityIndex index : indexList)
+    {
+      index.remove(dn, entry);
+    }
+  }
+
+
+
+  private boolean isBaseDN(final DN dn)
+  {
+    for (final DN baseDN : baseDNs)
+    {
+      if (baseDN.equals(dn))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+
+  private String getMatchedDN(final DN dn)
+  {
+    DN parentDN = dn.getParent();
+    while ((parentDN != null) && (! parentDN.isNullDN()))
+    {
+      if (entryMap.containsKey(parentDN))
+      {
+        return parentDN.toString();
+      }
+      parentDN = parentDN.getParent();
+    }
+    return null;
+  }
+
+
+
+  private void validate(final Entry entry, final ListenerMessages message)
+          throws LDAPException
+  {
+    if (entryValidator == null)
+    {
+      return;
+    }
+
+    final ArrayList<String> invalidReasons = new ArrayList<String>(1);
+    if (! entryValidator.entryIsValid(entry, invalidReasons))
+    {
+      throw new LDAPException(ResultCode.OBJECT_CLASS_VIOLATION,
+           message.get(entry.getDN(), concatenateStrings(invalidReasons)));
+    }
+  }
+
+
+
+  @Override()
+  public LDAPMessage processAddRequest(final int messageID,
+                                       final AddRequestProtocolOp request,
+                                       final List<Control> controls)
+  {
+    try
+    {
+      addEntry(new Entry(request.getDN(), schema, request.getAttributes()));
+      return createSuccessResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST, le);
+    }
+  }
+
+
+
+  @Override()
+  public LDAPMessage processBindRequest(final int messageID,
+                                        final BindRequestProtocolOp request,
+                                        final List<Control> controls)
+  {
+    try
+    {
+      bind(request);
+      return createSuccessResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST, le);
+    }
+  }
+
+
+
+  private void bind(final BindRequestProtocolOp request)
+          throws LDAPException
+  {
+    if (request.getCredentialsType() != BindRequestProtocolOp.CRED_TYPE_SIMPLE)
+    {
+      throw new LDAPException(ResultCode.AUTH_METHOD_NOT_SUPPORTED,
+           ERR_MEM_HANDLER_SASL_MECH_NOT_SUPPORTED.get(
+                request.getSASLMechanism()));
+    }
+
+    final String bindDN = request.getBindDN();
+    final DN parsedBindDN;
+    try
+    {
+      parsedBindDN = new DN(bindDN, schema);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPException(ResultCode.INVALID_DN_SYNTAX,
+           ERR_MEM_HANDLER_BIND_MALFORMED_DN.get(bindDN, le.getMessage()),
+           le);
+    }
+
+    final byte[] password = request.getSimplePassword().getValue();
+    if (password.length == 0)
+    {
+      if (parsedBindDN.isNullDN())
+      {
+        return;
+      }
+
+      throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM,
+           ERR_MEM_HANDLER_BIND_SIMPLE_DN_WITHOUT_PASSWORD.get());
+    }
+
+    final List<byte[]> additionalPasswords =
+         additionalBindCredentials.get(parsedBindDN);
+    if (additionalPasswords != null)
+    {
+      for (final byte[] p : additionalPasswords)
+      {
+        if (Arrays.equals(p, password))
+        {
+          return;
+        }
+      }
+    }
+
+    final ReadOnlyEntry entry;
+    lock.readLock().lock();
+    try
+    {
+      entry = entryMap.get(parsedBindDN);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+
+    if (entry == null)
+    {
+      if (additionalPasswords == null)
+      {
+        throw new LDAPException(ResultCode.INVALID_CREDENTIALS,
+             ERR_MEM_HANDLER_BIND_NO_SUCH_USER.get(bindDN));
+      }
+    }
+    else
+    {
+      final Attribute userPassword = entry.getAttribute("userPassword");
+      if (userPassword != null)
+      {
+        for (final ASN1OctetString p : userPassword.getRawValues())
+        {
+          if (Arrays.equals(p.getValue(), password))
+          {
+            return;
+          }
+        }
+      }
+    }
+
+    throw new LDAPException(ResultCode.INVALID_CREDENTIALS,
+         ERR_MEM_HANDLER_BIND_WRONG_PASSWORD.get(bindDN));
+  }
+
+
+
+  @Override()
+  public LDAPMessage processCompareRequest(final int messageID,
+                          final CompareRequestProtocolOp request,
+                          final List<Control> controls)
+  {
+    try
+    {
+      final ResultCode resultCode = compare(request.getDN(),
+           request.getAttributeName(), request.getAssertionValue().getValue());
+      return LDAPListenerClientConnection.createResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST, resultCode, null,
+           null);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST, le);
+    }
+  }
+
+
+
+  @Override()
+  public LDAPMessage processDeleteRequest(final int messageID,
+                                          final DeleteRequestProtocolOp request,
+                                          final List<Control> controls)
+  {
+    try
+    {
+      deleteEntry(request.getDN());
+      return createSuccessResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST, le);
+    }
+  }
+
+
+
+  @Override()
+  public LDAPMessage processExtendedRequest(final int messageID,
+                          final ExtendedRequestProtocolOp request,
+                          final List<Control> controls)
+  {
+    return LDAPListenerClientConnection.createResponse(messageID,
+         LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST,
+         ResultCode.UNWILLING_TO_PERFORM, null,
+         ERR_MEM_HANDLER_EXTENDED_OP_NOT_SUPPORTED.get(request.getOID()));
+  }
+
+
+
+  @Override()
+  public LDAPMessage processModifyRequest(final int messageID,
+                                          final ModifyRequestProtocolOp request,
+                                          final List<Control> controls)
+  {
+    try
+    {
+      modifyEntry(request.getDN(), request.getModifications());
+      return createSuccessResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST, le);
+    }
+  }
+
+
+
+  @Override()
+  public LDAPMessage processModifyDNRequest(final int messageID,
+                          final ModifyDNRequestProtocolOp request,
+                          final List<Control> controls)
+  {
+    try
+    {
+      modifyDN(request.getDN(), request.getNewRDN(), request.deleteOldRDN(),
+           request.getNewSuperiorDN());
+      return createSuccessResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST, le);
+    }
+  }
+
+
+
+  @Override()
+  public LDAPMessage processSearchRequest(final int messageID,
+                                          final SearchRequestProtocolOp request,
+                                          final List<Control> controls)
+  {
+    final ArrayList<ReadOnlyEntry> entries = new ArrayList<ReadOnlyEntry>(10);
+    final boolean sizeLimitExceeded;
+    try
+    {
+      sizeLimitExceeded = search(request.getBaseDN(), request.getScope(),
+           request.getFilter(), request.getSizeLimit(), entries);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return createErrorResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST, le);
+    }
+
+    // Entries are immutable, so they can be trimmed and written to the client
+    // after the lock has been released.
+    final AttributeSelector selector =
+         new AttributeSelector(request.getAttributes(), request.typesOnly());
+    try
+    {
+      for (final ReadOnlyEntry e : entries)
+      {
+        connection.sendSearchResultEntry(messageID, selector.select(e));
+      }
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return null;
+    }
+
+    if (sizeLimitExceeded)
+    {
+      return LDAPListenerClientConnection.createResponse(messageID,
+           LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST,
+           ResultCode.SIZE_LIMIT_EXCEEDED, null,
+           ERR_MEM_HANDLER_SEARCH_SIZE_LIMIT_EXCEEDED.get());
+    }
+
+    return createSuccessResponse(messageID,
+         LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST);
+  }
+
+
+
+  private static LDAPMessage createSuccessResponse(final int messageID,
+                                                   final byte requestOpType)
+  {
+    return LDAPListenerClientConnection.createResponse(messageID,
+         requestOpType, ResultCode.SUCCESS, null, null);
+  }
+
+
+
+  private static LDAPMessage createErrorResponse(final int messageID,
+                                                 final byte requestOpType,
+                                                 final LDAPException le)
+  {
+    return LDAPListenerClientConnection.createResponse(messageID,
+         requestOpType, le.getResultCode(), le.getMatchedDN(),
+         le.getMessage());
+  }
+
+
+
+  /**
+   * Applies the requested attribute list and types-only flag of a search
+   * request to the entries returned to the client.
+   */
+  private final class AttributeSelector
+  {
+    private final boolean allUserAttributes;
+
+    private final boolean typesOnly;
+
+    private final Set<String> requestedNames;
+
+
+
+    private AttributeSelector(final List<String> attributes,
+                              final boolean typesOnly)
+    {
+      this.typesOnly = typesOnly;
+
+      boolean all = attributes.isEmpty();
+      requestedNames = new HashSet<String>(attributes.size() * 2);
+      for (final String s : attributes)
+      {
+        if (s.equals("*"))
+        {
+          all = true;
+          continue;
+        }
+
+        final String baseName = toLowerCase(Attribute.getBaseName(s));
+        requestedNames.add(baseName);
+
+        if (schema != null)
+        {
+          final AttributeTypeDefinition d = schema.getAttributeType(baseName);
+          if (d != null)
+          {
+            requestedNames.add(toLowerCase(d.getOID()));
+            for (final String name : d.getNames())
+            {
+              requestedNames.add(toLowerCase(name));
+            }
+          }
+        }
+      }
+      allUserAttributes = all;
+    }
+
+
+
+    private Entry select(final ReadOnlyEntry entry)
+    {
+      if (allUserAttributes && (! typesOnly))
+      {
+        return entry;
+      }
+
+      final ArrayList<Attribute> attributes =
+           new ArrayList<Attribute>(entry.getAttributes().size());
+      for (final Attribute a : entry.getAttributes())
+      {
+        if (allUserAttributes ||
+            requestedNames.contains(toLowerCase(a.getBaseName())))
+        {
+          if (typesOnly)
+          {
+            attributes.add(new Attribute(a.getName()));
+          }
+          else
+          {
+            attributes.add(a);
+          }
+        }
+      }
+
+      return new Entry(entry.getDN(), schema, attributes);
+    }
+  }
+
+
+
+  /**
+   * An equality index that maps the normalized values of one attribute type
+   * to the DNs of the entries that contain them.  It is only accessed while
+   * holding the handler lock.
+   */
+  private static final class EqualityIndex
+  {
+    private final HashMap<ASN1OctetString,LinkedHashSet<DN>> values;
+
+    private final MatchingRule matchingRule;
+
+    private final Set<String> names;
+
+
+
+    private EqualityIndex(final String attributeName, final Schema schema)
+            throws LDAPException
+    {
+      names = new LinkedHashSet<String>(4);
+      names.add(toLowerCase(attributeName));
+
+      if (schema != null)
+      {
+        final AttributeTypeDefinition d =
+             schema.getAttributeType(attributeName);
+        if (d == null)
+        {
+          throw new LDAPException(ResultCode.PARAM_ERROR,
+               ERR_DS_EQ_INDEX_UNDEFINED_ATTRIBUTE_TYPE.get(attributeName));
+        }
+
+        names.add(toLowerCase(d.getOID()));
+        for (final String name : d.getNames())
+        {
+          names.add(toLowerCase(name));
+        }
+      }
+
+      matchingRule =
+           MatchingRule.selectEqualityMatchingRule(attributeName, schema);
+      values = new HashMap<ASN1OctetString,LinkedHashSet<DN>>(100);
+    }
+
+
+
+    private void add(final DN dn, final Entry entry)
+    {
+      for (final Attribute a : entry.getAttributes())
+      {
+        if (names.contains(toLowerCase(a.getBaseName())))
+        {
+          for (final ASN1OctetString v : a.getRawValues())
+          {
+            final ASN1OctetString key = normalize(v);
+            if (key == null)
+            {
+              continue;
+            }
+
+            LinkedHashSet<DN> dns = values.get(key);
+            if (dns == null)
+            {
+              dns = new LinkedHashSet<DN>(2);
+              values.put(key, dns);
+            }
+            dns.add(dn);
+          }
+        }
+      }
+    }
+
+
+
+    private void remove(final DN dn, final Entry entry)
+    {
+      for (final Attribute a : entry.getAttributes())
+      {
+        if (names.contains(toLowerCase(a.getBaseName())))
+        {
+          for (final ASN1OctetString v : a.getRawValues())
+          {
+            final ASN1OctetString key = normalize(v);
+            if (key == null)
+            {
+              continue;
+            }
+
+            final LinkedHashSet<DN> dns = values.get(key);
+            if (dns != null)
+            {
+              dns.remove(dn);
+              if (dns.isEmpty())
+              {
+                values.remove(key);
+              }
+            }
+          }
+        }
+      }
+    }
+
+
+
+    private Set<DN> get(final ASN1OctetString assertionValue)
+    {
+      final ASN1OctetString key = normalize(assertionValue);
+      if (key == null)
+      {
+        return null;
+      }
+
+      final LinkedHashSet<DN> dns = values.get(key);
+      if (dns == null)
+      {
+        return Collections.emptySet();
+      }
+      return dns;
+    }
+
+
+
+    private void clear()
+    {
+      values.clear();
+    }
+
+
+
+    private ASN1OctetString normalize(final ASN1OctetString value)
+    {
+      try
+      {
+        return new ASN1OctetString(
+             matchingRule.normalize(value).getValue());
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        return null;
+      }
+    }
+  }
+}
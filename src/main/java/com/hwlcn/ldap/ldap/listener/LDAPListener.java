@@ -0,0 +1,281 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.util.Debug.*;
+
+
+
+/**
+ * This class provides a thread that accepts client connections on a server
+ * socket and creates an {@link LDAPListenerClientConnection} thread for each
+ * of them, so requests from different clients are processed concurrently.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LDAPListener
+       extends Thread
+{
+  private final AtomicBoolean stopRequested;
+
+  private final AtomicLong nextConnectionID;
+
+  private final AtomicReference<ServerSocket> serverSocket;
+
+  private final ConcurrentHashMap<Long,LDAPListenerClientConnection>
+       establishedConnections;
+
+  private final CountDownLatch startLatch;
+
+  private final LDAPListenerConfig config;
+
+  private volatile IOException startException;
+
+
+
+  public LDAPListener(final LDAPListenerConfig config)
+  {
+    this.config = config.duplicate();
+
+    setName("LDAPListener thread (not listening)");
+    setDaemon(true);
+
+    stopRequested          = new AtomicBoolean(false);
+    nextConnectionID       = new AtomicLong(0L);
+    serverSocket           = new AtomicReference<ServerSocket>(null);
+    establishedConnections =
+         new ConcurrentHashMap<Long,LDAPListenerClientConnection>();
+    startLatch             = new CountDownLatch(1);
+    startException         = null;
+  }
+
+
+
+  public void startListening()
+         throws IOException
+  {
+    start();
+
+    try
+    {
+      startLatch.await();
+    }
+    catch (final InterruptedException ie)
+    {
+      debugException(ie);
+      Thread.currentThread().interrupt();
+    }
+
+    if (startException != null)
+    {
+      throw startException;
+    }
+  }
+
+
+
+  @Override()
+  public void run()
+  {
+    try
+    {
+      final ServerSocket s;
+      try
+      {
+        s = config.getServerSocketFactory().createServerSocket(
+             config.getListenPort(), 128, config.getListenAddress());
+        serverSocket.set(s);
+        setName("LDAPListener thread (listening on port " +
+             s.getLocalPort() + ')');
+      }
+      catch (final IOException ioe)
+      {
+        debugException(ioe);
+        startException = ioe;
+        return;
+      }
+      finally
+      {
+        startLatch.countDown();
+      }
+
+      while (! stopRequested.get())
+      {
+        final Socket socket;
+        try
+        {
+          socket = s.accept();
+        }
+        catch (final IOException ioe)
+        {
+          debugException(ioe);
+          if (stopRequested.get() || s.isClosed())
+          {
+            return;
+          }
+          continue;
+        }
+
+        final int maxConnections = config.getMaxConnections();
+        if ((maxConnections > 0) &&
+            (establishedConnections.size() >= maxConnections))
+        {
+          closeQuietly(socket);
+          continue;
+        }
+
+        try
+        {
+          socket.setKeepAlive(config.useKeepAlive());
+          socket.setTcpNoDelay(config.useTCPNoDelay());
+
+          final LDAPListenerClientConnection connection =
+               new LDAPListenerClientConnection(this, socket,
+                    config.getRequestHandler(),
+                    nextConnectionID.getAndIncrement());
+          establishedConnections.put(connection.getConnectionID(),
+               connection);
+          connection.start();
+        }
+        catch (final LDAPException le)
+        {
+          debugException(le);
+          closeQuietly(socket);
+        }
+        catch (final IOException ioe)
+        {
+          debugException(ioe);
+          closeQuietly(socket);
+        }
+      }
+    }
+    finally
+    {
+      final ServerSocket s = serverSocket.getAndSet(null);
+      if (s != null)
+      {
+        try
+        {
+          s.close();
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+      setName("LDAPListener thread (not listening)");
+    }
+  }
+
+
+
+  void connectionClosed(final LDAPListenerClientConnection connection)
+  {
+    establishedConnections.remove(connection.getConnectionID());
+  }
+
+
+
+  public InetAddress getListenAddress()
+  {
+    final ServerSocket s = serverSocket.get();
+    if (s == null)
+    {
+      return null;
+    }
+
+    return s.getInetAddress();
+  }
+
+
+
+  public int getListenPort()
+  {
+    final ServerSocket s = serverSocket.get();
+    if (s == null)
+    {
+      return -1;
+    }
+
+    return s.getLocalPort();
+  }
+
+
+
+  public int getNumEstablishedConnections()
+  {
+    return establishedConnections.size();
+  }
+
+
+
+  public void shutDown(final boolean closeExisting)
+  {
+    stopRequested.set(true);
+
+    final ServerSocket s = serverSocket.get();
+    if (s != null)
+    {
+      try
+      {
+        s.close();
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+    }
+
+    if (isAlive() && (Thread.currentThread() != this))
+    {
+      try
+      {
+        join();
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if (closeExisting)
+    {
+      final ArrayList<LDAPListenerClientConnection> connections =
+           new ArrayList<LDAPListenerClientConnection>(
+                establishedConnections.values());
+      for (final LDAPListenerClientConnection c : connections)
+      {
+        c.close();
+      }
+    }
+  }
+
+
+
+  private static void closeQuietly(final Socket socket)
+  {
+    try
+    {
+      socket.close();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+    }
+  }
+}
@@ -0,0 +1,428 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.hwlcn.ldap.asn1.ASN1Buffer;
+import com.hwlcn.ldap.asn1.ASN1StreamReader;
+import com.hwlcn.ldap.ldap.protocol.AddResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.BindResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.CompareResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.DeleteResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ExtendedResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
+import com.hwlcn.ldap.ldap.protocol.ModifyDNResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ModifyResponseProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.SearchResultDoneProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.SearchResultEntryProtocolOp;
+import com.hwlcn.ldap.ldap.sdk.Control;
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.ldap.ldap.sdk.ResultCode;
+import com.hwlcn.core.annotation.InternalUseOnly;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.listener.ListenerMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+
+
+
+/**
+ * This class provides a thread that reads requests from a single client
+ * connection accepted by an {@link LDAPListener}, passes them to the request
+ * handler for that connection, and writes the responses back to the client.
+ * Responses for a connection are written while holding a lock on the
+ * connection, so a request handler may send search result entries from any
+ * thread.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.MOSTLY_THREADSAFE)
+public final class LDAPListenerClientConnection
+       extends Thread
+{
+  private static final String NOTICE_OF_DISCONNECTION_OID =
+       "1.3.6.1.4.1.1466.20036";
+
+
+
+  private final AtomicBoolean closed;
+
+  private final ASN1Buffer asn1Buffer;
+
+  private final ASN1StreamReader asn1Reader;
+
+  private final LDAPListener listener;
+
+  private final LDAPListenerRequestHandler requestHandler;
+
+  private final long connectionID;
+
+  private final OutputStream outputStream;
+
+  private final Socket socket;
+
+
+
+  @InternalUseOnly()
+  public LDAPListenerClientConnection(final LDAPListener listener,
+                                      final Socket socket,
+                                      final LDAPListenerRequestHandler
+                                                 requestHandler,
+                                      final long connectionID)
+         throws LDAPException
+  {
+    this.listener     = listener;
+    this.socket       = socket;
+    this.connectionID = connectionID;
+
+    setName("LDAPListener client connection " + connectionID + " from " +
+         socket.getInetAddress().getHostAddress() + ':' + socket.getPort());
+    setDaemon(true);
+
+    closed     = new AtomicBoolean(false);
+    asn1Buffer = new ASN1Buffer();
+
+    try
+    {
+      asn1Reader   = new ASN1StreamReader(socket.getInputStream());
+      outputStream = socket.getOutputStream();
+    }
+    catch (final IOException ioe)
+    {
+      debugException(ioe);
+      closeSocket();
+      throw new LDAPException(ResultCode.CONNECT_ERROR,
+           ERR_CONN_CREATE_IO_EXCEPTION.get(getExceptionMessage(ioe)), ioe);
+    }
+
+    try
+    {
+      this.requestHandler = requestHandler.newInstance(this);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      closeSocket();
+      throw le;
+    }
+  }
+
+
+
+  public long getConnectionID()
+  {
+    return connectionID;
+  }
+
+
+
+  public Socket getSocket()
+  {
+    return socket;
+  }
+
+
+
+  public LDAPListener getListener()
+  {
+    return listener;
+  }
+
+
+
+  @InternalUseOnly()
+  @Override()
+  public void run()
+  {
+    try
+    {
+      while (! closed.get())
+      {
+        final LDAPMessage requestMessage;
+        try
+        {
+          requestMessage = LDAPMessage.readFrom(asn1Reader, true);
+        }
+        catch (final LDAPException le)
+        {
+          debugException(le);
+          if (! closed.get())
+          {
+            sendNoticeOfDisconnection(ResultCode.PROTOCOL_ERROR,
+                 le.getMessage());
+          }
+          return;
+        }
+
+        if (requestMessage == null)
+        {
+          return;
+        }
+
+        if (! processRequest(requestMessage))
+        {
+          return;
+        }
+      }
+    }
+    catch (final Throwable t)
+    {
+      debugException(t);
+    }
+    finally
+    {
+      close();
+    }
+  }
+
+
+
+  private boolean processRequest(final LDAPMessage requestMessage)
+  {
+    final int messageID = requestMessage.getMessageID();
+    final List<Control> controls = requestMessage.getControls();
+    final byte opType = requestMessage.getProtocolOpType();
+
+    final LDAPMessage responseMessage;
+    try
+    {
+      switch (opType)
+      {
+        case LDAPMessage.PROTOCOL_OP_TYPE_ABANDON_REQUEST:
+          // Requests are processed in the order they are received, so there
+          // is never anything left to abandon.
+          return true;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_UNBIND_REQUEST:
+          return false;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST:
+          responseMessage = requestHandler.processAddRequest(messageID,
+               requestMessage.getAddRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
+          responseMessage = requestHandler.processBindRequest(messageID,
+               requestMessage.getBindRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST:
+          responseMessage = requestHandler.processCompareRequest(messageID,
+               requestMessage.getCompareRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST:
+          responseMessage = requestHandler.processDeleteRequest(messageID,
+               requestMessage.getDeleteRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
+          responseMessage = requestHandler.processExtendedRequest(messageID,
+               requestMessage.getExtendedRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST:
+          responseMessage = requestHandler.processModifyRequest(messageID,
+               requestMessage.getModifyRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST:
+          responseMessage = requestHandler.processModifyDNRequest(messageID,
+               requestMessage.getModifyDNRequestProtocolOp(), controls);
+          break;
+
+        case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
+          responseMessage = requestHandler.processSearchRequest(messageID,
+               requestMessage.getSearchRequestProtocolOp(), controls);
+          break;
+
+        default:
+          sendNoticeOfDisconnection(ResultCode.PROTOCOL_ERROR,
+               ERR_CONN_INVALID_PROTOCOL_OP_TYPE.get(toHex(opType)));
+          return false;
+      }
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+
+      final LDAPMessage errorMessage = createResponse(messageID, opType,
+           ResultCode.OTHER, null, ERR_CONN_EXCEPTION_IN_REQUEST_HANDLER.get(
+                String.valueOf(requestMessage), getExceptionMessage(e)));
+      if (errorMessage == null)
+      {
+        return true;
+      }
+
+      try
+      {
+        sendMessage(errorMessage);
+        return true;
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        return false;
+      }
+    }
+
+    if (responseMessage == null)
+    {
+      return true;
+    }
+
+    try
+    {
+      sendMessage(responseMessage);
+      return true;
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      return false;
+    }
+  }
+
+
+
+  public void sendSearchResultEntry(final int messageID, final Entry entry,
+                                    final Control... controls)
+         throws LDAPException
+  {
+    sendMessage(new LDAPMessage(messageID,
+         new SearchResultEntryProtocolOp(entry), controls));
+  }
+
+
+
+  public void sendMessage(final LDAPMessage message)
+         throws LDAPException
+  {
+    synchronized (asn1Buffer)
+    {
+      try
+      {
+        asn1Buffer.clear();
+        message.writeTo(asn1Buffer);
+        asn1Buffer.writeTo(outputStream);
+        outputStream.flush();
+      }
+      catch (final IOException ioe)
+      {
+        debugException(ioe);
+        close();
+        throw new LDAPException(ResultCode.SERVER_DOWN,
+             ERR_CONN_SEND_MESSAGE_EXCEPTION.get(getExceptionMessage(ioe)),
+             ioe);
+      }
+    }
+  }
+
+
+
+  private void sendNoticeOfDisconnection(final ResultCode resultCode,
+                                         final String message)
+  {
+    try
+    {
+      sendMessage(new LDAPMessage(0, new ExtendedResponseProtocolOp(
+           resultCode.intValue(), null, message, null,
+           NOTICE_OF_DISCONNECTION_OID, null)));
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+    }
+  }
+
+
+
+  static LDAPMessage createResponse(final int messageID,
+                                    final byte requestOpType,
+                                    final ResultCode resultCode,
+                                    final String matchedDN,
+                                    final String message)
+  {
+    final int rc = resultCode.intValue();
+    final ProtocolOp op;
+    switch (requestOpType)
+    {
+      case LDAPMessage.PROTOCOL_OP_TYPE_ADD_REQUEST:
+        op = new AddResponseProtocolOp(rc, matchedDN, message, null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_BIND_REQUEST:
+        op = new BindResponseProtocolOp(rc, matchedDN, message, null, null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_COMPARE_REQUEST:
+        op = new CompareResponseProtocolOp(rc, matchedDN, message, null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_DELETE_REQUEST:
+        op = new DeleteResponseProtocolOp(rc, matchedDN, message, null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_EXTENDED_REQUEST:
+        op = new ExtendedResponseProtocolOp(rc, matchedDN, message, null, null,
+             null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_REQUEST:
+        op = new ModifyResponseProtocolOp(rc, matchedDN, message, null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_MODIFY_DN_REQUEST:
+        op = new ModifyDNResponseProtocolOp(rc, matchedDN, message, null);
+        break;
+      case LDAPMessage.PROTOCOL_OP_TYPE_SEARCH_REQUEST:
+        op = new SearchResultDoneProtocolOp(rc, matchedDN, message, null);
+        break;
+      default:
+        return null;
+    }
+
+    return new LDAPMessage(messageID, op);
+  }
+
+
+
+  public void close()
+  {
+    if (! closed.compareAndSet(false, true))
+    {
+      return;
+    }
+
+    try
+    {
+      requestHandler.closeInstance();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+    }
+
+    closeSocket();
+
+    if (listener != null)
+    {
+      listener.connectionClosed(this);
+    }
+  }
+
+
+
+  private void closeSocket()
+  {
+    try
+    {
+      socket.close();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+    }
+  }
+}
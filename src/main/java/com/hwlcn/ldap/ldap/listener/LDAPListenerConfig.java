@@ -0,0 +1,230 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.net.InetAddress;
+import javax.net.ServerSocketFactory;
+
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.listener.ListenerMessages.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides the configuration for an {@link LDAPListener}.  A listen
+ * port of zero causes the listener to select a free port when it is started.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+public final class LDAPListenerConfig
+{
+  private boolean useKeepAlive;
+
+  private boolean useTCPNoDelay;
+
+  private InetAddress listenAddress;
+
+  private int listenPort;
+
+  private int maxConnections;
+
+  private LDAPListenerRequestHandler requestHandler;
+
+  private ServerSocketFactory serverSocketFactory;
+
+
+
+  public LDAPListenerConfig(final int listenPort,
+                            final LDAPListenerRequestHandler requestHandler)
+  {
+    ensureTrue((listenPort >= 0) && (listenPort <= 65535),
+         ERR_LISTENER_CFG_INVALID_PORT.get(listenPort));
+    ensureNotNull(requestHandler);
+
+    this.listenPort     = listenPort;
+    this.requestHandler = requestHandler;
+
+    useKeepAlive        = true;
+    useTCPNoDelay       = true;
+    listenAddress       = null;
+    maxConnections      = 0;
+    serverSocketFactory = ServerSocketFactory.getDefault();
+  }
+
+
+
+  public int getListenPort()
+  {
+    return listenPort;
+  }
+
+
+
+  public void setListenPort(final int listenPort)
+  {
+    ensureTrue((listenPort >= 0) && (listenPort <= 65535),
+         ERR_LISTENER_CFG_INVALID_PORT.get(listenPort));
+
+    this.listenPort = listenPort;
+  }
+
+
+
+  public InetAddress getListenAddress()
+  {
+    return listenAddress;
+  }
+
+
+
+  public void setListenAddress(final InetAddress listenAddress)
+  {
+    this.listenAddress = listenAddress;
+  }
+
+
+
+  public LDAPListenerRequestHandler getRequestHandler()
+  {
+    return requestHandler;
+  }
+
+
+
+  public void setRequestHandler(
+                   final LDAPListenerRequestHandler requestHandler)
+  {
+    ensureNotNull(requestHandler);
+
+    this.requestHandler = requestHandler;
+  }
+
+
+
+  public int getMaxConnections()
+  {
+    return maxConnections;
+  }
+
+
+
+  public void setMaxConnections(final int maxConnections)
+  {
+    if (maxConnections > 0)
+    {
+      this.maxConnections = maxConnections;
+    }
+    else
+    {
+      this.maxConnections = 0;
+    }
+  }
+
+
+
+  public boolean useKeepAlive()
+  {
+    return useKeepAlive;
+  }
+
+
+
+  public void setUseKeepAlive(final boolean useKeepAlive)
+  {
+    this.useKeepAlive = useKeepAlive;
+  }
+
+
+
+  public boolean useTCPNoDelay()
+  {
+    return useTCPNoDelay;
+  }
+
+
+
+  public void setUseTCPNoDelay(final boolean useTCPNoDelay)
+  {
+    this.useTCPNoDelay = useTCPNoDelay;
+  }
+
+
+
+  public ServerSocketFactory getServerSocketFactory()
+  {
+    return serverSocketFactory;
+  }
+
+
+
+  public void setServerSocketFactory(
+                   final ServerSocketFactory serverSocketFactory)
+  {
+    if (serverSocketFactory == null)
+    {
+      this.serverSocketFactory = ServerSocketFactory.getDefault();
+    }
+    else
+    {
+      this.serverSocketFactory = serverSocketFactory;
+    }
+  }
+
+
+
+  public LDAPListenerConfig duplicate()
+  {
+    final LDAPListenerConfig config =
+         new LDAPListenerConfig(listenPort, requestHandler);
+    config.setListenAddress(listenAddress);
+    config.setMaxConnections(maxConnections);
+    config.setUseKeepAlive(useKeepAlive);
+    config.setUseTCPNoDelay(useTCPNoDelay);
+    config.setServerSocketFactory(serverSocketFactory);
+    return config;
+  }
+
+
+
+  @Override()
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer);
+    return buffer.toString();
+  }
+
+
+
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("LDAPListenerConfig(listenAddress=");
+
+    if (listenAddress == null)
+    {
+      buffer.append("null");
+    }
+    else
+    {
+      buffer.append('\'');
+      buffer.append(listenAddress.getHostAddress());
+      buffer.append('\'');
+    }
+
+    buffer.append(", listenPort=");
+    buffer.append(listenPort);
+    buffer.append(", maxConnections=");
+    buffer.append(maxConnections);
+    buffer.append(", requestHandlerClass='");
+    buffer.append(requestHandler.getClass().getName());
+    buffer.append("', useKeepAlive=");
+    buffer.append(useKeepAlive);
+    buffer.append(", useTCPNoDelay=");
+    buffer.append(useTCPNoDelay);
+    buffer.append(')');
+  }
+}
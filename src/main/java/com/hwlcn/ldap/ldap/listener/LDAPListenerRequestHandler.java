@@ -0,0 +1,96 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.util.List;
+
+import com.hwlcn.ldap.ldap.protocol.AddRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.BindRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.CompareRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.DeleteRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ExtendedRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
+import com.hwlcn.ldap.ldap.protocol.ModifyRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.hwlcn.ldap.ldap.protocol.SearchRequestProtocolOp;
+import com.hwlcn.ldap.ldap.sdk.Control;
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.core.annotation.Extensible;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class defines an API that may be used to process requests read from a
+ * client connection accepted by an {@link LDAPListener}.  A single instance is
+ * provided in the listener configuration, and the {@link #newInstance} method
+ * is used to obtain the handler for each new client connection.  Each request
+ * method must return the response message for the request; search result
+ * entries should be sent with
+ * {@link LDAPListenerClientConnection#sendSearchResultEntry} before the
+ * search result done message is returned.
+ */
+@Extensible()
+@ThreadSafety(level=ThreadSafetyLevel.INTERFACE_THREADSAFE)
+public abstract class LDAPListenerRequestHandler
+{
+  public abstract LDAPListenerRequestHandler newInstance(
+              final LDAPListenerClientConnection connection)
+         throws LDAPException;
+
+
+
+  public void closeInstance()
+  {
+    // No implementation is required by default.
+  }
+
+
+
+  public abstract LDAPMessage processAddRequest(final int messageID,
+                                   final AddRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processBindRequest(final int messageID,
+                                   final BindRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processCompareRequest(final int messageID,
+                                   final CompareRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processDeleteRequest(final int messageID,
+                                   final DeleteRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processExtendedRequest(final int messageID,
+                                   final ExtendedRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processModifyRequest(final int messageID,
+                                   final ModifyRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processModifyDNRequest(final int messageID,
+                                   final ModifyDNRequestProtocolOp request,
+                                   final List<Control> controls);
+
+
+
+  public abstract LDAPMessage processSearchRequest(final int messageID,
+                                   final SearchRequestProtocolOp request,
+                                   final List<Control> controls);
+}
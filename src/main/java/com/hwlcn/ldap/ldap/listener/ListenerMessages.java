@@ -0,0 +1,510 @@
+package com.hwlcn.ldap.ldap.listener;
+
+
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+enum ListenerMessages
+{
+  /**
+   * An error occurred while attempting to prepare for communication with the client:  {0}
+   */
+  ERR_CONN_CREATE_IO_EXCEPTION("An error occurred while attempting to prepare for communication with the client:  {0}"),
+
+
+
+  /**
+   * An unexpected error occurred while invoking the request handler to handle request {0}:  {1}
+   */
+  ERR_CONN_EXCEPTION_IN_REQUEST_HANDLER("An unexpected error occurred while invoking the request handler to handle request {0}:  {1}"),
+
+
+
+  /**
+   * The client sent a request with an invalid protocol op type of {0}.
+   */
+  ERR_CONN_INVALID_PROTOCOL_OP_TYPE("The client sent a request with an invalid protocol op type of {0}."),
+
+
+
+  /**
+   * An error occurred while attempting to send a response to the client:  {0}
+   */
+  ERR_CONN_SEND_MESSAGE_EXCEPTION("An error occurred while attempting to send a response to the client:  {0}"),
+
+
+
+  /**
+   * Unable to configure an equality index for attribute ''{0}'' because that attribute type is not defined in the server schema.
+   */
+  ERR_DS_EQ_INDEX_UNDEFINED_ATTRIBUTE_TYPE("Unable to configure an equality index for attribute ''{0}'' because that attribute type is not defined in the server schema."),
+
+
+
+  /**
+   * The provided listener port value {0,number,0} was invalid.  The value must be between 1 and 65535, or it may be zero to indicate that the server should automatically select a listen port.
+   */
+  ERR_LISTENER_CFG_INVALID_PORT("The provided listener port value {0,number,0} was invalid.  The value must be between 1 and 65535, or it may be zero to indicate that the server should automatically select a listen port."),
+
+
+
+  /**
+   * An error occurred while attempting to parse the provided set of LDIF lines as an entry:  {0}
+   */
+  ERR_MEM_DS_ADD_ENTRY_LDIF_PARSE_EXCEPTION("An error occurred while attempting to parse the provided set of LDIF lines as an entry:  {0}"),
+
+
+
+  /**
+   * Unable to use {0} as the listen port because it is outside the acceptable range of 1-65535 for explicitly-defined listen ports, or 0 for an automatically-determined listen port.
+   */
+  ERR_MEM_DS_CFG_INVALID_LISTEN_PORT("Unable to use {0} as the listen port because it is outside the acceptable range of 1-65535 for explicitly-defined listen ports, or 0 for an automatically-determined listen port."),
+
+
+
+  /**
+   * Base DN ''{0}'' cannot be parsed as a valid DN:  {1}
+   */
+  ERR_MEM_DS_CFG_MALFORMED_BASE_DN("Base DN ''{0}'' cannot be parsed as a valid DN:  {1}"),
+
+
+
+  /**
+   * The in-memory directory server must be configured with at least one base DN.
+   */
+  ERR_MEM_DS_CFG_NO_BASE_DNS("The in-memory directory server must be configured with at least one base DN."),
+
+
+
+  /**
+   * An additional bind DN must not be null or represent the null DN.
+   */
+  ERR_MEM_DS_CFG_NULL_ADDITIONAL_BIND_DN("An additional bind DN must not be null or represent the null DN."),
+
+
+
+  /**
+   * An additional bind password must not be null or empty.
+   */
+  ERR_MEM_DS_CFG_NULL_ADDITIONAL_BIND_PW("An additional bind password must not be null or empty."),
+
+
+
+  /**
+   * Unable to establish a connection to the in-memory directory server because none of the configured listeners are running.
+   */
+  ERR_MEM_DS_GET_CONNECTION_NO_LISTENERS("Unable to establish a connection to the in-memory directory server because none of the configured listeners are running."),
+
+
+
+  /**
+   * An error occurred while attempting to create an LDIF reader for file ''{0}'':  {1}
+   */
+  ERR_MEM_DS_INIT_FROM_LDIF_CANNOT_CREATE_READER("An error occurred while attempting to create an LDIF reader for file ''{0}'':  {1}"),
+
+
+
+  /**
+   * An error occurred while attempting to start listener ''{0}'':  {1}
+   */
+  ERR_MEM_DS_START_FAILED("An error occurred while attempting to start listener ''{0}'':  {1}"),
+
+
+
+  /**
+   * An entry with DN ''{0}'' already exists in the server.
+   */
+  ERR_MEM_HANDLER_ADD_ALREADY_EXISTS("An entry with DN ''{0}'' already exists in the server."),
+
+
+
+  /**
+   * Unable to add entry ''{0}'' because an error occurred while attempting to parse the DN:  {1}
+   */
+  ERR_MEM_HANDLER_ADD_MALFORMED_DN("Unable to add entry ''{0}'' because an error occurred while attempting to parse the DN:  {1}"),
+
+
+
+  /**
+   * Unable to add entry ''{0}'' because its parent entry ''{1}'' does not exist in the server.
+   */
+  ERR_MEM_HANDLER_ADD_MISSING_PARENT("Unable to add entry ''{0}'' because its parent entry ''{1}'' does not exist in the server."),
+
+
+
+  /**
+   * Unable to add an entry with the null DN.
+   */
+  ERR_MEM_HANDLER_ADD_ROOT_DSE("Unable to add an entry with the null DN."),
+
+
+
+  /**
+   * Unable to add entry ''{0}'' because it violates the provided schema:  {1}
+   */
+  ERR_MEM_HANDLER_ADD_VIOLATES_SCHEMA("Unable to add entry ''{0}'' because it violates the provided schema:  {1}"),
+
+
+
+  /**
+   * Unable to parse bind DN ''{0}'':  {1}
+   */
+  ERR_MEM_HANDLER_BIND_MALFORMED_DN("Unable to parse bind DN ''{0}'':  {1}"),
+
+
+
+  /**
+   * Unable to bind as user ''{0}'' because no such entry exists in the server.
+   */
+  ERR_MEM_HANDLER_BIND_NO_SUCH_USER("Unable to bind as user ''{0}'' because no such entry exists in the server."),
+
+
+
+  /**
+   * Simple authentication with a non-empty DN and an empty password is not allowed.
+   */
+  ERR_MEM_HANDLER_BIND_SIMPLE_DN_WITHOUT_PASSWORD("Simple authentication with a non-empty DN and an empty password is not allowed."),
+
+
+
+  /**
+   * Unable to bind as user ''{0}'' because the provided password was incorrect.
+   */
+  ERR_MEM_HANDLER_BIND_WRONG_PASSWORD("Unable to bind as user ''{0}'' because the provided password was incorrect."),
+
+
+
+  /**
+   * Unable to process the compare operation because an error occurred while attempting to parse target DN ''{0}'':  {1}
+   */
+  ERR_MEM_HANDLER_COMPARE_MALFORMED_DN("Unable to process the compare operation because an error occurred while attempting to parse target DN ''{0}'':  {1}"),
+
+
+
+  /**
+   * Entry ''{0}'' targeted by the compare request does not exist in the server.
+   */
+  ERR_MEM_HANDLER_COMPARE_NO_SUCH_ENTRY("Entry ''{0}'' targeted by the compare request does not exist in the server."),
+
+
+
+  /**
+   * Unable to delete entry ''{0}'' because it has one or more subordinate entries.
+   */
+  ERR_MEM_HANDLER_DELETE_HAS_SUBORDINATES("Unable to delete entry ''{0}'' because it has one or more subordinate entries."),
+
+
+
+  /**
+   * Unable to delete entry ''{0}'' because an error occurred while attempting to parse the DN:  {1}
+   */
+  ERR_MEM_HANDLER_DELETE_MALFORMED_DN("Unable to delete entry ''{0}'' because an error occurred while attempting to parse the DN:  {1}"),
+
+
+
+  /**
+   * Unable to delete entry ''{0}'' because it does not exist in the server.
+   */
+  ERR_MEM_HANDLER_DELETE_NO_SUCH_ENTRY("Unable to delete entry ''{0}'' because it does not exist in the server."),
+
+
+
+  /**
+   * Unable to delete the server root DSE.
+   */
+  ERR_MEM_HANDLER_DELETE_ROOT_DSE("Unable to delete the server root DSE."),
+
+
+
+  /**
+   * No extended operation handler is defined for extended request OID ''{0}''.
+   */
+  ERR_MEM_HANDLER_EXTENDED_OP_NOT_SUPPORTED("No extended operation handler is defined for extended request OID ''{0}''."),
+
+
+
+  /**
+   * An error occurred while attempting to read an entry from LDIF:  {1}
+   */
+  ERR_MEM_HANDLER_INIT_FROM_LDIF_READ_ERROR("An error occurred while attempting to read an entry from LDIF:  {1}"),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because an error occurred while attempting to parse the DN:  {1}
+   */
+  ERR_MEM_HANDLER_MOD_DN_MALFORMED_DN("Unable to modify the DN of entry ''{0}'' because an error occurred while attempting to parse the DN:  {1}"),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because an error occurred while attempting to parse new RDN ''{1}'':  {2}
+   */
+  ERR_MEM_HANDLER_MOD_DN_MALFORMED_NEW_RDN("Unable to modify the DN of entry ''{0}'' because an error occurred while attempting to parse new RDN ''{1}'':  {2}"),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because an error occurred while attempting to parse the new superior DN ''{1}'':  {2}
+   */
+  ERR_MEM_HANDLER_MOD_DN_MALFORMED_NEW_SUPERIOR("Unable to modify the DN of entry ''{0}'' because an error occurred while attempting to parse the new superior DN ''{1}'':  {2}"),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because the new DN is the same as the current DN.
+   */
+  ERR_MEM_HANDLER_MOD_DN_NEW_DN_SAME_AS_OLD("Unable to modify the DN of entry ''{0}'' because the new DN is the same as the current DN."),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because new DN ''{1}'' is subordinate to the entry being renamed.
+   */
+  ERR_MEM_HANDLER_MOD_DN_NEW_SUPERIOR_IS_DESCENDANT("Unable to modify the DN of entry ''{0}'' because new DN ''{1}'' is subordinate to the entry being renamed."),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because that entry does not exist in the server.
+   */
+  ERR_MEM_HANDLER_MOD_DN_NO_SUCH_ENTRY("Unable to modify the DN of entry ''{0}'' because that entry does not exist in the server."),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because the parent for the new DN ''{1}'' does not exist.
+   */
+  ERR_MEM_HANDLER_MOD_DN_PARENT_DOESNT_EXIST("Unable to modify the DN of entry ''{0}'' because the parent for the new DN ''{1}'' does not exist."),
+
+
+
+  /**
+   * Modify DN operations are not allowed for the server root DSE.
+   */
+  ERR_MEM_HANDLER_MOD_DN_ROOT_DSE("Modify DN operations are not allowed for the server root DSE."),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because another entry with DN ''{1}'' already exists in the server.
+   */
+  ERR_MEM_HANDLER_MOD_DN_TARGET_ALREADY_EXISTS("Unable to modify the DN of entry ''{0}'' because another entry with DN ''{1}'' already exists in the server."),
+
+
+
+  /**
+   * Unable to modify the DN of entry ''{0}'' because the updated entry would have violated the provided schema:  {1}
+   */
+  ERR_MEM_HANDLER_MOD_DN_VIOLATES_SCHEMA("Unable to modify the DN of entry ''{0}'' because the updated entry would have violated the provided schema:  {1}"),
+
+
+
+  /**
+   * Unable to modify entry ''{0}'' because an error occurred while attempting to apply the requested modifications:  {1}
+   */
+  ERR_MEM_HANDLER_MOD_FAILED("Unable to modify entry ''{0}'' because an error occurred while attempting to apply the requested modifications:  {1}"),
+
+
+
+  /**
+   * Unable to modify entry ''{0}'' because an error occurred while attempting to parse the target DN:  {1}
+   */
+  ERR_MEM_HANDLER_MOD_MALFORMED_DN("Unable to modify entry ''{0}'' because an error occurred while attempting to parse the target DN:  {1}"),
+
+
+
+  /**
+   * Unable to modify entry ''{0}'' because it does not exist in the server.
+   */
+  ERR_MEM_HANDLER_MOD_NO_SUCH_ENTRY("Unable to modify entry ''{0}'' because it does not exist in the server."),
+
+
+
+  /**
+   * Unable to modify the server root DSE.
+   */
+  ERR_MEM_HANDLER_MOD_ROOT_DSE("Unable to modify the server root DSE."),
+
+
+
+  /**
+   * Unable to modify entry ''{0}'' because the entry resulting from applying the modifications would have violated the provided schema:  {1}
+   */
+  ERR_MEM_HANDLER_MOD_VIOLATES_SCHEMA("Unable to modify entry ''{0}'' because the entry resulting from applying the modifications would have violated the provided schema:  {1}"),
+
+
+
+  /**
+   * Unable to create an in-memory request handler with no base DNs.
+   */
+  ERR_MEM_HANDLER_NO_BASE_DNS("Unable to create an in-memory request handler with no base DNs."),
+
+
+
+  /**
+   * Unable to use the null DN as a base DN for the in-memory request handler.
+   */
+  ERR_MEM_HANDLER_NULL_BASE_DN("Unable to use the null DN as a base DN for the in-memory request handler."),
+
+
+
+  /**
+   * SASL mechanism ''{0}'' is not supported by any of the configured SASL bind handlers.
+   */
+  ERR_MEM_HANDLER_SASL_MECH_NOT_SUPPORTED("SASL mechanism ''{0}'' is not supported by any of the configured SASL bind handlers."),
+
+
+
+  /**
+   * Unable to perform the search because base entry ''{0}'' does not exist in the server.
+   */
+  ERR_MEM_HANDLER_SEARCH_BASE_DOES_NOT_EXIST("Unable to perform the search because base entry ''{0}'' does not exist in the server."),
+
+
+
+  /**
+   * Unable to perform the search because an error occurred while attempting to parse base DN ''{0}'':  {1}
+   */
+  ERR_MEM_HANDLER_SEARCH_MALFORMED_BASE("Unable to perform the search because an error occurred while attempting to parse base DN ''{0}'':  {1}"),
+
+
+
+  /**
+   * The search size limit has been exceeded.
+   */
+  ERR_MEM_HANDLER_SEARCH_SIZE_LIMIT_EXCEEDED("The search size limit has been exceeded.");
+
+
+
+
+  /**
+   * The resource bundle that will be used to load the properties file.
+   */
+  private static final ResourceBundle RESOURCE_BUNDLE;
+  static
+  {
+    ResourceBundle rb = null;
+    try
+    {
+      rb = ResourceBundle.getBundle("ldap-ldapsdk-listener");
+    } catch (Exception e) {}
+    RESOURCE_BUNDLE = rb;
+  }
+
+
+
+  /**
+   * The map that will be used to hold the unformatted message strings, indexed by property name.
+   */
+  private static final ConcurrentHashMap<ListenerMessages,String> MESSAGE_STRINGS = new ConcurrentHashMap<ListenerMessages,String>();
+
+
+
+  /**
+   * The map that will be used to hold the message format objects, indexed by property name.
+   */
+  private static final ConcurrentHashMap<ListenerMessages,MessageFormat> MESSAGES = new ConcurrentHashMap<ListenerMessages,MessageFormat>();
+
+
+
+  // The default text for this message
+  private final String defaultText;
+
+
+
+  /**
+   * Creates a new message key.
+   */
+  private ListenerMessages(final String defaultText)
+  {
+    this.defaultText = defaultText;
+  }
+
+
+
+  /**
+   * Retrieves a localized version of the message.
+   * This method should only be used for messages which do not take any arguments.
+   *
+   * @return  A localized version of the message.
+   */
+  public String get()
+  {
+    String s = MESSAGE_STRINGS.get(this);
+    if (s == null)
+    {
+      if (RESOURCE_BUNDLE == null)
+      {
+        return defaultText;
+      }
+      else
+      {
+        try
+        {
+          s = RESOURCE_BUNDLE.getString(name());
+        }
+        catch (final Exception e)
+        {
+          s = defaultText;
+        }
+        MESSAGE_STRINGS.putIfAbsent(this, s);
+      }
+    }
+    return s;
+  }
+
+
+
+  /**
+   * Retrieves a localized version of the message.
+   *
+   * @param  args  The arguments to use to format the message.
+   *
+   * @return  A localized version of the message.
+   */
+  public String get(final Object... args)
+  {
+    MessageFormat f = MESSAGES.get(this);
+    if (f == null)
+    {
+      if (RESOURCE_BUNDLE == null)
+      {
+        f = new MessageFormat(defaultText);
+      }
+      else
+      {
+        try
+        {
+          f = new MessageFormat(RESOURCE_BUNDLE.getString(name()));
+        }
+        catch (final Exception e)
+        {
+          f = new MessageFormat(defaultText);
+        }
+      }
+      MESSAGES.putIfAbsent(this, f);
+    }
+    synchronized (f)
+    {
+      return f.format(args);
+    }
+  }
+
+
+
+  /**
+   * Retrieves a string representation of this message key.
+   *
+   * @return  A string representation of this message key.
+   */
+  @Override()
+  public String toString()
+  {
+    return get();
+  }
+}
+
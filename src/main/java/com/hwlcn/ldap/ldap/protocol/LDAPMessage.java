@@ -634,6 +634,52 @@ public final class LDAPMessage
 
 
 
+  public static LDAPResponse readLDAPResponseFrom(final ASN1StreamReader reader,
+                                  final boolean ignoreSocketTimeout,
+                                  final Schema schema,
+                                  final boolean bufferMessage)
+         throws LDAPException
+  {
+    if (! bufferMessage)
+    {
+      return readLDAPResponseFrom(reader, ignoreSocketTimeout, schema);
+    }
+
+    final ASN1StreamReader messageReader;
+    try
+    {
+      reader.setIgnoreSocketTimeout(false, ignoreSocketTimeout);
+      messageReader = reader.bufferNextElement();
+      if (messageReader == null)
+      {
+        return null;
+      }
+    }
+    catch (IOException ioe)
+    {
+      if (! ((ioe instanceof SocketTimeoutException) ||
+             (ioe instanceof InterruptedIOException)))
+      {
+        debugException(ioe);
+      }
+
+      throw new LDAPException(ResultCode.SERVER_DOWN,
+           ERR_MESSAGE_IO_ERROR.get(getExceptionMessage(ioe)), ioe);
+    }
+    catch (Exception e)
+    {
+      debugException(e);
+
+      throw new LDAPException(ResultCode.DECODING_ERROR,
+           ERR_MESSAGE_CANNOT_DECODE.get(getExceptionMessage(e)), e);
+    }
+
+    return readLDAPResponseFrom(messageReader, false, schema);
+  }
+
+
+
+
   public static LDAPResponse readLDAPResponseFrom(final ASN1StreamReader reader,
                                   final boolean ignoreSocketTimeout,
                                   final Schema schema)
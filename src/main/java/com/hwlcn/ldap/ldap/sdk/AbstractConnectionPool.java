@@ -992,6 +992,61 @@ requestLoop:
   }
 
 
+  /**
+   * Processes the provided add, delete, modify, and modify DN requests by
+   * sending them asynchronously over up to {@code numConnections} connections
+   * from this pool, with no more than {@code maxOutstandingRequests} awaiting
+   * a response at any time.  The calling thread blocks whenever that limit is
+   * reached.  Results are returned in the same order as the requests, and a
+   * failed request does not prevent the others from being processed.
+   * <BR><BR>
+   * If {@code useTransaction} is {@code true}, then all requests are sent
+   * over a single connection as part of a transaction (RFC 5805) that is only
+   * committed if every request succeeds; otherwise an exception is thrown and
+   * none of the changes are applied.  The server must support the start and
+   * end transaction extended operations.
+   */
+  public final List<LDAPResult> processBulkWrites(
+                                     final List<LDAPRequest> requests,
+                                     final int numConnections,
+                                     final int maxOutstandingRequests,
+                                     final boolean useTransaction)
+         throws LDAPException
+  {
+    ensureNotNull(requests);
+    ensureFalse(requests.isEmpty(),
+         "LDAPConnectionPool.processBulkWrites.requests must not be empty.");
+
+    for (final LDAPRequest request : requests)
+    {
+      switch (request.getOperationType())
+      {
+        case ADD:
+        case DELETE:
+        case MODIFY:
+        case MODIFY_DN:
+          break;
+
+        default:
+          throw new LDAPException(ResultCode.PARAM_ERROR,
+               ERR_POOL_BULK_WRITE_UNSUPPORTED_REQUEST.get(
+                    String.valueOf(request.getOperationType())));
+      }
+    }
+
+    final BulkWriteProcessor processor = new BulkWriteProcessor(this,
+         requests, numConnections, maxOutstandingRequests);
+    if (useTransaction)
+    {
+      return processor.processInTransaction();
+    }
+    else
+    {
+      return processor.process();
+    }
+  }
+
+
   private void throwLDAPExceptionIfShouldNotRetry(final Throwable t,
                                                   final OperationType o,
                                                   final LDAPConnection conn)
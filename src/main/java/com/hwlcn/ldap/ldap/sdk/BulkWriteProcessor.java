@@ -0,0 +1,481 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.hwlcn.ldap.asn1.ASN1OctetString;
+import com.hwlcn.ldap.ldap.sdk.controls.TransactionSpecificationRequestControl;
+import com.hwlcn.ldap.ldap.sdk.extensions.EndTransactionExtendedRequest;
+import com.hwlcn.ldap.ldap.sdk.extensions.StartTransactionExtendedRequest;
+import com.hwlcn.ldap.ldap.sdk.extensions.StartTransactionExtendedResult;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+
+
+
+/**
+ * This class processes a batch of add, delete, modify, and modify DN requests
+ * for {@link AbstractConnectionPool#processBulkWrites}.  The requests are sent
+ * asynchronously, round-robin across a set of connections checked out of the
+ * pool, and no more than a fixed number may be awaiting a response at any
+ * time; the calling thread blocks until a response frees a slot.  Requests
+ * outstanding on a connection that is found to be closed are completed with a
+ * {@code SERVER_DOWN} result.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class BulkWriteProcessor
+{
+  private static final long POLL_INTERVAL_MILLIS = 100L;
+
+
+
+  private final AbstractConnectionPool pool;
+
+  private final AtomicIntegerArray defunct;
+
+  private final AtomicReferenceArray<LDAPResult> results;
+
+  private final int maxOutstandingRequests;
+
+  private final int numConnections;
+
+  private final int[] requestConnections;
+
+  private final List<LDAPRequest> requests;
+
+  private final Semaphore permits;
+
+  private LDAPConnection[] connections;
+
+  private int nextConnection;
+
+
+
+  BulkWriteProcessor(final AbstractConnectionPool pool,
+                     final List<LDAPRequest> requests,
+                     final int numConnections,
+                     final int maxOutstandingRequests)
+  {
+    this.pool                   = pool;
+    this.requests               = requests;
+    this.numConnections         = Math.max(1, numConnections);
+    this.maxOutstandingRequests = Math.max(1, maxOutstandingRequests);
+
+    results            = new AtomicReferenceArray<LDAPResult>(requests.size());
+    requestConnections = new int[requests.size()];
+    defunct            = new AtomicIntegerArray(this.numConnections);
+    permits            = new Semaphore(this.maxOutstandingRequests);
+    nextConnection     = 0;
+
+    Arrays.fill(requestConnections, -1);
+  }
+
+
+
+  List<LDAPResult> process()
+         throws LDAPException
+  {
+    checkOutConnections(Math.min(numConnections, requests.size()));
+    try
+    {
+      sendRequests(requests);
+    }
+    finally
+    {
+      releaseConnections();
+    }
+
+    return getResults();
+  }
+
+
+
+  List<LDAPResult> processInTransaction()
+         throws LDAPException
+  {
+    checkOutConnections(1);
+    try
+    {
+      final LDAPConnection conn = connections[0];
+
+      final StartTransactionExtendedResult startResult =
+           (StartTransactionExtendedResult) conn.processExtendedOperation(
+                new StartTransactionExtendedRequest());
+      if (startResult.getResultCode() != ResultCode.SUCCESS)
+      {
+        throw new LDAPException(startResult);
+      }
+
+      final ASN1OctetString txnID = startResult.getTransactionID();
+      final TransactionSpecificationRequestControl txnControl =
+           new TransactionSpecificationRequestControl(txnID);
+
+      final List<LDAPRequest> txnRequests =
+           new ArrayList<LDAPRequest>(requests.size());
+      for (final LDAPRequest r : requests)
+      {
+        txnRequests.add(addControl(r, txnControl));
+      }
+
+      sendRequests(txnRequests);
+
+      LDAPResult failedResult = null;
+      for (int i=0; i < results.length(); i++)
+      {
+        if (results.get(i).getResultCode() != ResultCode.SUCCESS)
+        {
+          failedResult = results.get(i);
+          break;
+        }
+      }
+
+      if (! conn.isConnected())
+      {
+        throw new LDAPException(ResultCode.SERVER_DOWN,
+             ERR_POOL_BULK_WRITE_CONNECTION_CLOSED.get());
+      }
+
+      final ExtendedResult endResult = conn.processExtendedOperation(
+           new EndTransactionExtendedRequest(txnID, (failedResult == null)));
+      if (failedResult != null)
+      {
+        throw new LDAPException(failedResult.getResultCode(),
+             ERR_POOL_BULK_WRITE_TXN_ABORTED.get(
+                  failedResult.getMessageID(),
+                  String.valueOf(failedResult.getResultCode()),
+                  String.valueOf(failedResult.getDiagnosticMessage())),
+             failedResult.getMatchedDN(), failedResult.getReferralURLs(),
+             failedResult.getResponseControls());
+      }
+      else if (endResult.getResultCode() != ResultCode.SUCCESS)
+      {
+        throw new LDAPException(endResult);
+      }
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      if (! le.getResultCode().isConnectionUsable())
+      {
+        defunct.set(0, 1);
+      }
+      throw le;
+    }
+    finally
+    {
+      releaseConnections();
+    }
+
+    return getResults();
+  }
+
+
+
+  private void checkOutConnections(final int count)
+          throws LDAPException
+  {
+    final List<LDAPConnection> connList = new ArrayList<LDAPConnection>(count);
+    try
+    {
+      for (int i=0; i < count; i++)
+      {
+        connList.add(pool.getConnection());
+      }
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      if (connList.isEmpty())
+      {
+        throw le;
+      }
+    }
+
+    connections = new LDAPConnection[connList.size()];
+    connList.toArray(connections);
+
+    if (connections[0].synchronousMode())
+    {
+      releaseConnections();
+      throw new LDAPException(ResultCode.NOT_SUPPORTED,
+           ERR_ASYNC_NOT_SUPPORTED_IN_SYNCHRONOUS_MODE.get());
+    }
+  }
+
+
+
+  private void releaseConnections()
+  {
+    if (connections == null)
+    {
+      return;
+    }
+
+    for (int i=0; i < connections.length; i++)
+    {
+      if ((defunct.get(i) != 0) || (! connections[i].isConnected()))
+      {
+        pool.releaseDefunctConnection(connections[i]);
+      }
+      else
+      {
+        pool.releaseConnection(connections[i]);
+      }
+    }
+
+    connections = null;
+  }
+
+
+
+  /**
+   * Sends all of the provided requests and waits for every one of them to be
+   * completed.
+   */
+  private void sendRequests(final List<LDAPRequest> requestList)
+  {
+    boolean interrupted = false;
+    for (int i=0; i < requestList.size(); i++)
+    {
+      if (interrupted)
+      {
+        // The request was never sent and holds no permit, so its result is
+        // set without going through complete().
+        results.set(i, new LDAPResult(-1, ResultCode.LOCAL_ERROR,
+             ERR_POOL_BULK_WRITE_INTERRUPTED.get(), null, NO_STRINGS,
+             NO_CONTROLS));
+        continue;
+      }
+
+      try
+      {
+        while (! permits.tryAcquire(POLL_INTERVAL_MILLIS,
+                                    TimeUnit.MILLISECONDS))
+        {
+          checkConnections();
+        }
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        interrupted = true;
+        i--;
+        continue;
+      }
+
+      send(i, requestList.get(i));
+    }
+
+    // Every completion returns a permit, so all requests are done once all of
+    // the permits are available again.
+    while (true)
+    {
+      try
+      {
+        if (permits.tryAcquire(maxOutstandingRequests, POLL_INTERVAL_MILLIS,
+                               TimeUnit.MILLISECONDS))
+        {
+          break;
+        }
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        interrupted = true;
+      }
+
+      checkConnections();
+    }
+
+    if (interrupted)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+
+
+  private void send(final int requestIndex, final LDAPRequest request)
+  {
+    final int connIndex = selectConnection();
+    if (connIndex < 0)
+    {
+      complete(requestIndex, new LDAPResult(-1, ResultCode.SERVER_DOWN,
+           ERR_POOL_BULK_WRITE_CONNECTION_CLOSED.get(), null, NO_STRINGS,
+           NO_CONTROLS));
+      return;
+    }
+
+    final LDAPConnection conn = connections[connIndex];
+    final RequestListener listener =
+         new RequestListener(requestIndex, connIndex);
+    requestConnections[requestIndex] = connIndex;
+    try
+    {
+      switch (request.getOperationType())
+      {
+        case ADD:
+          conn.asyncAdd((AddRequest) request, listener);
+          break;
+        case DELETE:
+          conn.asyncDelete((DeleteRequest) request, listener);
+          break;
+        case MODIFY:
+          conn.asyncModify((ModifyRequest) request, listener);
+          break;
+        case MODIFY_DN:
+          conn.asyncModifyDN((ModifyDNRequest) request, listener);
+          break;
+      }
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      if (! le.getResultCode().isConnectionUsable())
+      {
+        defunct.set(connIndex, 1);
+      }
+
+      complete(requestIndex, new LDAPResult(request.getLastMessageID(),
+           le.getResultCode(), le.getMessage(), le.getMatchedDN(),
+           le.getReferralURLs(), le.getResponseControls()));
+    }
+  }
+
+
+
+  private int selectConnection()
+  {
+    for (int i=0; i < connections.length; i++)
+    {
+      final int connIndex = nextConnection;
+      nextConnection = (nextConnection + 1) % connections.length;
+      if (defunct.get(connIndex) == 0)
+      {
+        return connIndex;
+      }
+    }
+
+    return -1;
+  }
+
+
+
+  /**
+   * Marks connections that have been closed as defunct and completes all of
+   * the requests still outstanding on them.
+   */
+  private void checkConnections()
+  {
+    for (int i=0; i < connections.length; i++)
+    {
+      if (connections[i].isConnected())
+      {
+        continue;
+      }
+
+      defunct.set(i, 1);
+      for (int j=0; j < requestConnections.length; j++)
+      {
+        if ((requestConnections[j] == i) && (results.get(j) == null))
+        {
+          complete(j, new LDAPResult(-1, ResultCode.SERVER_DOWN,
+               ERR_POOL_BULK_WRITE_CONNECTION_CLOSED.get(), null,
+               NO_STRINGS, NO_CONTROLS));
+        }
+      }
+    }
+  }
+
+
+
+  private void complete(final int requestIndex, final LDAPResult result)
+  {
+    if (results.compareAndSet(requestIndex, null, result))
+    {
+      permits.release();
+    }
+  }
+
+
+
+  private List<LDAPResult> getResults()
+  {
+    final ArrayList<LDAPResult> resultList =
+         new ArrayList<LDAPResult>(results.length());
+    for (int i=0; i < results.length(); i++)
+    {
+      resultList.add(results.get(i));
+    }
+
+    return resultList;
+  }
+
+
+
+  private static LDAPRequest addControl(final LDAPRequest request,
+                                        final Control control)
+  {
+    final Control[] existing = request.getControls();
+    final Control[] controls = new Control[existing.length + 1];
+    System.arraycopy(existing, 0, controls, 0, existing.length);
+    controls[existing.length] = control;
+
+    switch (request.getOperationType())
+    {
+      case ADD:
+        return ((AddRequest) request).duplicate(controls);
+      case DELETE:
+        return ((DeleteRequest) request).duplicate(controls);
+      case MODIFY:
+        return ((ModifyRequest) request).duplicate(controls);
+      default:
+        return ((ModifyDNRequest) request).duplicate(controls);
+    }
+  }
+
+
+
+  /**
+   * The listener that records the result for a single request.
+   */
+  private final class RequestListener
+          implements AsyncResultListener
+  {
+    private final int connIndex;
+
+    private final int requestIndex;
+
+
+
+    private RequestListener(final int requestIndex, final int connIndex)
+    {
+      this.requestIndex = requestIndex;
+      this.connIndex    = connIndex;
+    }
+
+
+
+    public void ldapResultReceived(final AsyncRequestID requestID,
+                                   final LDAPResult ldapResult)
+    {
+      if (! ldapResult.getResultCode().isConnectionUsable())
+      {
+        defunct.set(connIndex, 1);
+      }
+
+      complete(requestIndex, ldapResult);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import static com.hwlcn.ldap.util.Debug.*;
+
+
+
+/**
+ * This class provides an output stream that writes to a socket channel that is
+ * in non-blocking mode because it is registered with a
+ * {@link MultiplexedConnectionReader}.  The stream used by the socket itself
+ * cannot be used in that case.  If the socket send buffer is full, the writer
+ * waits on a private selector until the channel becomes writable again.
+ */
+final class ChannelOutputStream
+      extends OutputStream
+{
+  private final SocketChannel channel;
+
+  private Selector writeSelector;
+
+
+
+  ChannelOutputStream(final SocketChannel channel)
+  {
+    this.channel = channel;
+
+    writeSelector = null;
+  }
+
+
+
+  @Override()
+  public void write(final int b)
+         throws IOException
+  {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+
+
+  @Override()
+  public synchronized void write(final byte[] b, final int off, final int len)
+         throws IOException
+  {
+    final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+    while (buffer.hasRemaining())
+    {
+      if (channel.isBlocking())
+      {
+        channel.write(buffer);
+        continue;
+      }
+
+      if (channel.write(buffer) == 0)
+      {
+        awaitWritable();
+      }
+    }
+  }
+
+
+
+  synchronized void write(final ByteBuffer[] buffers)
+       throws IOException
+  {
+    final ByteBuffer last = buffers[buffers.length - 1];
+    while (last.hasRemaining())
+    {
+      if ((channel.write(buffers) == 0) && (! channel.isBlocking()))
+      {
+        awaitWritable();
+      }
+    }
+  }
+
+
+
+  private void awaitWritable()
+          throws IOException
+  {
+    if (writeSelector == null)
+    {
+      writeSelector = Selector.open();
+      channel.register(writeSelector, SelectionKey.OP_WRITE);
+    }
+
+    writeSelector.select();
+    writeSelector.selectedKeys().clear();
+  }
+
+
+
+  synchronized void closeWriteSelector()
+  {
+    if (writeSelector != null)
+    {
+      try
+      {
+        writeSelector.close();
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+
+      writeSelector = null;
+    }
+  }
+
+
+
+  @Override()
+  public synchronized void close()
+         throws IOException
+  {
+    closeWriteSelector();
+    channel.close();
+  }
+}
@@ -0,0 +1,156 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import com.hwlcn.ldap.asn1.ASN1StreamReader;
+import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
+import com.hwlcn.ldap.ldap.protocol.LDAPResponse;
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+
+import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
+
+
+
+/**
+ * This class accumulates data read from a non-blocking channel and decodes
+ * complete LDAP messages from it.  Data is only handed to the ASN.1 stream
+ * reader once the entire message is available, so decoding never needs to
+ * block waiting for the remainder of a partially-received message.  Each
+ * message is copied once into an array of exactly the right size, and the
+ * octet string values decoded from it reference that array directly.
+ */
+final class ChannelResponseDecoder
+{
+  private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+
+
+  private ByteBuffer buffer;
+
+  private final int maxMessageSize;
+
+  private final String hostPort;
+
+
+
+  ChannelResponseDecoder(final String hostPort, final int maxMessageSize)
+  {
+    this.hostPort       = hostPort;
+    this.maxMessageSize = maxMessageSize;
+
+    buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+  }
+
+
+
+  int read(final ReadableByteChannel channel)
+      throws IOException
+  {
+    if (! buffer.hasRemaining())
+    {
+      final ByteBuffer b = ByteBuffer.allocate(buffer.capacity() << 1);
+      buffer.flip();
+      b.put(buffer);
+      buffer = b;
+    }
+
+    return channel.read(buffer);
+  }
+
+
+
+  boolean hasBufferedData()
+  {
+    return (buffer.position() > 0);
+  }
+
+
+
+  LDAPResponse nextResponse(final Schema schema)
+      throws IOException, LDAPException
+  {
+    buffer.flip();
+    try
+    {
+      final int messageLength = getMessageLength();
+      if (messageLength < 0)
+      {
+        return null;
+      }
+
+      if (messageLength > buffer.remaining())
+      {
+        if (messageLength > buffer.capacity())
+        {
+          final ByteBuffer b = ByteBuffer.allocate(messageLength);
+          b.put(buffer);
+          b.flip();
+          buffer = b;
+        }
+
+        return null;
+      }
+
+      final byte[] messageBytes = new byte[messageLength];
+      buffer.get(messageBytes);
+
+      final ASN1StreamReader reader = new ASN1StreamReader(messageBytes, 0,
+           messageLength, maxMessageSize);
+      return LDAPMessage.readLDAPResponseFrom(reader, true, schema);
+    }
+    finally
+    {
+      buffer.compact();
+    }
+  }
+
+
+
+  private int getMessageLength()
+          throws IOException
+  {
+    final int start = buffer.position();
+    final int available = buffer.remaining();
+    if (available < 2)
+    {
+      return -1;
+    }
+
+    int length = buffer.get(start + 1) & 0xFF;
+    int headerLength = 2;
+    if (length > 127)
+    {
+      final int numLengthBytes = length & 0x7F;
+      if ((numLengthBytes < 1) || (numLengthBytes > 4))
+      {
+        throw new IOException(ERR_CONNREADER_CHANNEL_LENGTH_TOO_LONG.get(
+             hostPort, numLengthBytes));
+      }
+
+      headerLength += numLengthBytes;
+      if (available < headerLength)
+      {
+        return -1;
+      }
+
+      length = 0;
+      for (int i=0; i < numLengthBytes; i++)
+      {
+        length <<= 8;
+        length |= (buffer.get(start + 2 + i) & 0xFF);
+      }
+    }
+
+    if ((length < 0) || ((maxMessageSize > 0) && (length > maxMessageSize)))
+    {
+      throw new IOException(ERR_CONNREADER_CHANNEL_LENGTH_EXCEEDS_MAX.get(
+           hostPort, length, maxMessageSize));
+    }
+
+    return headerLength + length;
+  }
+}
@@ -0,0 +1,118 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import javax.net.SocketFactory;
+
+import static com.hwlcn.ldap.util.Debug.*;
+
+
+
+/**
+ * This class provides a socket factory that creates sockets backed by a
+ * {@code SocketChannel}, which is required for connections that are to be
+ * read by a {@link MultiplexedConnectionReader}.  It is used in place of the
+ * JVM-default socket factory when the multiplexed reader is enabled.
+ */
+final class ChannelSocketFactory
+      extends SocketFactory
+{
+  static final ChannelSocketFactory INSTANCE = new ChannelSocketFactory();
+
+
+
+  private ChannelSocketFactory()
+  {
+    // No implementation required.
+  }
+
+
+
+  @Override()
+  public Socket createSocket()
+         throws IOException
+  {
+    return SocketChannel.open().socket();
+  }
+
+
+
+  @Override()
+  public Socket createSocket(final String host, final int port)
+         throws IOException
+  {
+    return connect(new InetSocketAddress(host, port), null);
+  }
+
+
+
+  @Override()
+  public Socket createSocket(final InetAddress address, final int port)
+         throws IOException
+  {
+    return connect(new InetSocketAddress(address, port), null);
+  }
+
+
+
+  @Override()
+  public Socket createSocket(final String host, final int port,
+                             final InetAddress localAddress,
+                             final int localPort)
+         throws IOException
+  {
+    return connect(new InetSocketAddress(host, port),
+         new InetSocketAddress(localAddress, localPort));
+  }
+
+
+
+  @Override()
+  public Socket createSocket(final InetAddress address, final int port,
+                             final InetAddress localAddress,
+                             final int localPort)
+         throws IOException
+  {
+    return connect(new InetSocketAddress(address, port),
+         new InetSocketAddress(localAddress, localPort));
+  }
+
+
+
+  private static Socket connect(final InetSocketAddress address,
+                                final InetSocketAddress localAddress)
+          throws IOException
+  {
+    final SocketChannel channel = SocketChannel.open();
+    try
+    {
+      if (localAddress != null)
+      {
+        channel.socket().bind(localAddress);
+      }
+
+      channel.connect(address);
+      return channel.socket();
+    }
+    catch (final IOException ioe)
+    {
+      debugException(ioe);
+
+      try
+      {
+        channel.close();
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+
+      throw ioe;
+    }
+  }
+}
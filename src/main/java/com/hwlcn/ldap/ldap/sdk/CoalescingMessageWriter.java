@@ -0,0 +1,257 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.hwlcn.ldap.util.ByteStringBuffer;
+
+
+
+/**
+ * This class coalesces encoded LDAP messages that are submitted concurrently
+ * for the same connection into a single write and flush.  The first thread to
+ * submit a message while no write is in progress becomes the writer.  Any
+ * messages submitted while it is writing are queued, and once its own message
+ * has been written, the writer returns and one of the threads whose message is
+ * still queued takes over and sends all of the queued messages together with
+ * one gathered write.  No thread is held as the writer for other threads'
+ * messages once its own message has been sent, no matter how steadily new
+ * messages arrive.  Threads whose messages are written by another thread wait
+ * until the write that includes their message has completed, so a failure to
+ * send a message is still reported to the thread that submitted it.
+ * <BR><BR>
+ * Messages are written from the buffers in which they were encoded, which
+ * must not be altered until the {@code write} call that submitted them has
+ * returned.  When writing to a socket channel, a batch is sent with a single
+ * gathered write without copying the messages; otherwise, a batch of more than
+ * one message is copied into a single buffer so that it can be sent with one
+ * write to the socket output stream.
+ * <BR><BR>
+ * If a maximum coalescing delay is configured, the writer will wait up to that
+ * long for additional messages before sending a batch, which trades a bounded
+ * amount of latency for fewer writes when requests arrive in quick succession.
+ */
+final class CoalescingMessageWriter
+{
+  private static final int MAX_DELAYED_BATCH_BYTES = 65536;
+
+
+
+  private boolean writing;
+
+  private boolean zeroWriteBuffer;
+
+  private final ByteStringBuffer writeBuffer;
+
+  private final Condition messageAdded;
+
+  private final Condition messagesWritten;
+
+  private ArrayList<ByteBuffer> pending;
+
+  private IOException failure;
+
+  private int pendingBytes;
+
+  private final long maxDelayNanos;
+
+  private long nextSequence;
+
+  private long writtenSequence;
+
+  private final ReentrantLock lock;
+
+
+
+  CoalescingMessageWriter(final long maxDelayMicros)
+  {
+    maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0L, maxDelayMicros));
+
+    lock            = new ReentrantLock();
+    messageAdded    = lock.newCondition();
+    messagesWritten = lock.newCondition();
+    pending         = new ArrayList<ByteBuffer>();
+    writeBuffer     = new ByteStringBuffer();
+    writing         = false;
+    zeroWriteBuffer = false;
+    failure         = null;
+    pendingBytes    = 0;
+    nextSequence    = 0L;
+    writtenSequence = 0L;
+  }
+
+
+
+  void write(final ByteBuffer message, final boolean sensitive,
+             final OutputStream outputStream)
+       throws IOException
+  {
+    lock.lock();
+    try
+    {
+      if (failure != null)
+      {
+        throw newFailure();
+      }
+
+      final long sequence = ++nextSequence;
+      pending.add(message);
+      pendingBytes += message.remaining();
+      if (sensitive)
+      {
+        zeroWriteBuffer = true;
+      }
+
+      if (writing)
+      {
+        messageAdded.signal();
+      }
+
+      while (writing && (writtenSequence < sequence) && (failure == null))
+      {
+        messagesWritten.awaitUninterruptibly();
+      }
+
+      if (writtenSequence >= sequence)
+      {
+        return;
+      }
+      else if (failure != null)
+      {
+        throw newFailure();
+      }
+
+      writing = true;
+      try
+      {
+        awaitMoreMessages();
+
+        final ArrayList<ByteBuffer> batch = pending;
+        final long batchEnd = nextSequence;
+        final boolean zero = zeroWriteBuffer;
+        pending         = new ArrayList<ByteBuffer>(batch.size());
+        pendingBytes    = 0;
+        zeroWriteBuffer = false;
+
+        IOException writeFailure = null;
+        lock.unlock();
+        try
+        {
+          writeBatch(batch, zero, outputStream);
+        }
+        catch (final IOException ioe)
+        {
+          writeFailure = ioe;
+        }
+        catch (final RuntimeException re)
+        {
+          writeFailure = new IOException(re.getMessage());
+          writeFailure.initCause(re);
+        }
+        finally
+        {
+          lock.lock();
+        }
+
+        if (writeFailure != null)
+        {
+          failure = writeFailure;
+          pending.clear();
+          pendingBytes = 0;
+          throw writeFailure;
+        }
+
+        writtenSequence = batchEnd;
+      }
+      finally
+      {
+        // Any thread whose message is still queued may now become the writer.
+        writing = false;
+        messagesWritten.signalAll();
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+
+
+  private void awaitMoreMessages()
+  {
+    if (maxDelayNanos <= 0L)
+    {
+      return;
+    }
+
+    long remainingNanos = maxDelayNanos;
+    while ((remainingNanos > 0L) && (pendingBytes < MAX_DELAYED_BATCH_BYTES))
+    {
+      try
+      {
+        remainingNanos = messageAdded.awaitNanos(remainingNanos);
+      }
+      catch (final InterruptedException ie)
+      {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+
+
+  private void writeBatch(final ArrayList<ByteBuffer> batch, final boolean zero,
+                          final OutputStream outputStream)
+          throws IOException
+  {
+    if (outputStream instanceof ChannelOutputStream)
+    {
+      ((ChannelOutputStream) outputStream).write(
+           batch.toArray(new ByteBuffer[batch.size()]));
+    }
+    else if (batch.size() == 1)
+    {
+      final ByteBuffer b = batch.get(0);
+      outputStream.write(b.array(), b.arrayOffset() + b.position(),
+           b.remaining());
+    }
+    else
+    {
+      writeBuffer.clear();
+      for (final ByteBuffer b : batch)
+      {
+        writeBuffer.append(b.array(), b.arrayOffset() + b.position(),
+             b.remaining());
+      }
+
+      try
+      {
+        writeBuffer.write(outputStream);
+      }
+      finally
+      {
+        writeBuffer.clear(zero);
+      }
+    }
+
+    outputStream.flush();
+  }
+
+
+
+  private IOException newFailure()
+  {
+    final IOException ioe = new IOException(failure.getMessage());
+    ioe.initCause(failure);
+    return ioe;
+  }
+}
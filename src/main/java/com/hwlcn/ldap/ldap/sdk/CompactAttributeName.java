@@ -0,0 +1,85 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hwlcn.core.annotation.NotMutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class provides an attribute name descriptor that is shared by all
+ * {@link CompactEntry} instances containing an attribute with that name, so
+ * that a large number of compact entries do not each hold their own copy of
+ * the same set of names.
+ */
+@NotMutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+final class CompactAttributeName
+      implements Serializable
+{
+  private static final int MAX_CACHED_NAMES = 1000;
+
+
+
+  private static final ConcurrentHashMap<String,CompactAttributeName>
+       cachedNames =
+            new ConcurrentHashMap<String,CompactAttributeName>(
+                 MAX_CACHED_NAMES);
+
+
+
+  private static final long serialVersionUID = -3163478201356870349L;
+
+
+
+  private final String name;
+
+
+
+  private CompactAttributeName(final String name)
+  {
+    this.name = name;
+  }
+
+
+
+  static CompactAttributeName getInstance(final String name)
+  {
+    CompactAttributeName n = cachedNames.get(name);
+    if (n == null)
+    {
+      if (cachedNames.size() >= MAX_CACHED_NAMES)
+      {
+        cachedNames.clear();
+      }
+
+      n = new CompactAttributeName(name);
+      final CompactAttributeName existing = cachedNames.putIfAbsent(name, n);
+      if (existing != null)
+      {
+        n = existing;
+      }
+    }
+
+    return n;
+  }
+
+
+
+  String getName()
+  {
+    return name;
+  }
+
+
+
+  private Object readResolve()
+  {
+    return getInstance(name);
+  }
+}
@@ -11,27 +11,50 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import com.hwlcn.ldap.asn1.ASN1OctetString;
 import com.hwlcn.ldap.util.ByteStringBuffer;
 import com.hwlcn.core.annotation.NotMutable;
 import com.hwlcn.core.annotation.ThreadSafety;
 import com.hwlcn.ldap.util.ThreadSafetyLevel;
 
+import static com.hwlcn.ldap.util.StaticUtils.*;
 import static com.hwlcn.ldap.util.Validator.*;
 
 
 
+/**
+ * This class provides a read-only representation of an entry that is
+ * optimized for holding a large number of entries in memory.  Rather than
+ * keeping a map of {@link Attribute} objects that each hold an array of
+ * {@link ASN1OctetString} values, all of the values for an entry are packed
+ * into a single byte array, with a single integer array holding the position
+ * of each attribute's values and of each value within that byte array.
+ * Attribute names are held as descriptors that are shared by all compact
+ * entries.  {@code Attribute} objects are only created when they are
+ * requested, and they reference the packed values rather than copies of them.
+ * The {@link #toEntry} method may be used to obtain a mutable {@link Entry}
+ * with the same content when one is needed.
+ */
 @NotMutable()
 @ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
 public final class CompactEntry
        implements Serializable
 {
 
-  private static final long serialVersionUID = 8067151651120794058L;
+  private static final long serialVersionUID = 8067151651120794059L;
 
-  private final CompactAttribute[] attributes;
+  private final byte[] values;
+
+  private final CompactAttributeName[] names;
 
   private int hashCode;
 
+  // The first names.length+1 elements hold the index of the first value of
+  // each attribute (with a final element holding the total number of values),
+  // and the remaining elements hold the position of each value in the values
+  // array (with a final element holding the length of the values array).
+  private final int[] offsets;
+
   private final String dn;
 
   public CompactEntry(final Entry entry)
@@ -42,12 +65,113 @@ public final class CompactEntry
     hashCode = -1;
 
     final Collection<Attribute> attrs = entry.getAttributes();
-    attributes = new CompactAttribute[attrs.size()];
+    names = new CompactAttributeName[attrs.size()];
+
+    int numValues = 0;
+    int totalLength = 0;
+    for (final Attribute a : attrs)
+    {
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        numValues++;
+        totalLength += v.getValueLength();
+      }
+    }
+
+    values  = new byte[totalLength];
+    offsets = new int[names.length + numValues + 2];
+
+    final int valueOffsetsStart = names.length + 1;
+    int valueIndex = 0;
+    int position = 0;
     final Iterator<Attribute> iterator = attrs.iterator();
-    for (int i=0; i < attributes.length; i++)
+    for (int i=0; i < names.length; i++)
+    {
+      final Attribute a = iterator.next();
+      names[i] = CompactAttributeName.getInstance(a.getName());
+      offsets[i] = valueIndex;
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        offsets[valueOffsetsStart + valueIndex] = position;
+        final byte[] b = v.getValue();
+        System.arraycopy(b, 0, values, position, b.length);
+        position += b.length;
+        valueIndex++;
+      }
+    }
+
+    offsets[names.length] = valueIndex;
+    offsets[valueOffsetsStart + valueIndex] = position;
+  }
+
+
+  private int indexOf(final String attributeName)
+  {
+    for (int i=0; i < names.length; i++)
+    {
+      if (names[i].getName().equalsIgnoreCase(attributeName))
+      {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+
+  private int getNumValues(final int attrIndex)
+  {
+    return offsets[attrIndex+1] - offsets[attrIndex];
+  }
+
+
+  private int getValueStart(final int attrIndex, final int valueNumber)
+  {
+    return offsets[names.length + 1 + offsets[attrIndex] + valueNumber];
+  }
+
+
+  private int getValueLength(final int attrIndex, final int valueNumber)
+  {
+    final int pos = names.length + 1 + offsets[attrIndex] + valueNumber;
+    return offsets[pos+1] - offsets[pos];
+  }
+
+
+  private ASN1OctetString[] getRawValues(final int attrIndex)
+  {
+    final ASN1OctetString[] rawValues =
+         new ASN1OctetString[getNumValues(attrIndex)];
+    for (int i=0; i < rawValues.length; i++)
     {
-      attributes[i] = new CompactAttribute(iterator.next());
+      rawValues[i] = new ASN1OctetString(values,
+           getValueStart(attrIndex, i), getValueLength(attrIndex, i));
     }
+
+    return rawValues;
+  }
+
+
+  private byte[] getValueBytes(final int attrIndex, final int valueNumber)
+  {
+    final byte[] b = new byte[getValueLength(attrIndex, valueNumber)];
+    System.arraycopy(values, getValueStart(attrIndex, valueNumber), b, 0,
+         b.length);
+    return b;
+  }
+
+
+  private String getValueString(final int attrIndex, final int valueNumber)
+  {
+    return toUTF8String(values, getValueStart(attrIndex, valueNumber),
+         getValueLength(attrIndex, valueNumber));
+  }
+
+
+  private Attribute toAttribute(final int attrIndex)
+  {
+    return new Attribute(names[attrIndex].getName(), getRawValues(attrIndex));
   }
 
 
@@ -88,15 +212,7 @@ public final class CompactEntry
   {
     ensureNotNull(attributeName);
 
-    for (final CompactAttribute a : attributes)
-    {
-      if (a.getName().equalsIgnoreCase(attributeName))
-      {
-        return true;
-      }
-    }
-
-    return false;
+    return (indexOf(attributeName) >= 0);
   }
 
 
@@ -104,9 +220,9 @@ public final class CompactEntry
   {
     ensureNotNull(attribute);
 
-    for (final CompactAttribute a : attributes)
+    for (int i=0; i < names.length; i++)
     {
-      if (a.toAttribute().equals(attribute))
+      if (toAttribute(i).equals(attribute))
       {
         return true;
       }
@@ -120,16 +236,8 @@ public final class CompactEntry
   {
     ensureNotNull(attributeName, attributeValue);
 
-    for (final CompactAttribute a : attributes)
-    {
-      if (a.getName().equalsIgnoreCase(attributeName) &&
-          a.toAttribute().hasValue(attributeValue))
-      {
-        return true;
-      }
-    }
-
-    return false;
+    final int i = indexOf(attributeName);
+    return ((i >= 0) && toAttribute(i).hasValue(attributeValue));
   }
 
   public boolean hasAttributeValue(final String attributeName,
@@ -137,16 +245,8 @@ public final class CompactEntry
   {
     ensureNotNull(attributeName, attributeValue);
 
-    for (final CompactAttribute a : attributes)
-    {
-      if (a.getName().equalsIgnoreCase(attributeName) &&
-          a.toAttribute().hasValue(attributeValue))
-      {
-        return true;
-      }
-    }
-
-    return false;
+    final int i = indexOf(attributeName);
+    return ((i >= 0) && toAttribute(i).hasValue(attributeValue));
   }
 
   public boolean hasObjectClass(final String objectClassName)
@@ -157,10 +257,10 @@ public final class CompactEntry
   public Collection<Attribute> getAttributes()
   {
     final ArrayList<Attribute> attrList =
-         new ArrayList<Attribute>(attributes.length);
-    for (final CompactAttribute a : attributes)
+         new ArrayList<Attribute>(names.length);
+    for (int i=0; i < names.length; i++)
     {
-      attrList.add(a.toAttribute());
+      attrList.add(toAttribute(i));
     }
 
     return Collections.unmodifiableCollection(attrList);
@@ -170,15 +270,13 @@ public final class CompactEntry
   {
     ensureNotNull(attributeName);
 
-    for (final CompactAttribute a : attributes)
+    final int i = indexOf(attributeName);
+    if (i < 0)
     {
-      if (a.getName().equalsIgnoreCase(attributeName))
-      {
-        return a.toAttribute();
-      }
+      return null;
     }
 
-    return null;
+    return toAttribute(i);
   }
 
   public List<Attribute> getAttributesWithOptions(final String baseName,
@@ -191,46 +289,26 @@ public final class CompactEntry
   {
     ensureNotNull(attributeName);
 
-    for (final CompactAttribute a : attributes)
+    final int i = indexOf(attributeName);
+    if ((i < 0) || (getNumValues(i) == 0))
     {
-      if (a.getName().equalsIgnoreCase(attributeName))
-      {
-        final String[] values = a.getStringValues();
-        if (values.length > 0)
-        {
-          return values[0];
-        }
-        else
-        {
-          return null;
-        }
-      }
+      return null;
     }
 
-    return null;
+    return getValueString(i, 0);
   }
 
   public byte[] getAttributeValueBytes(final String attributeName)
   {
     ensureNotNull(attributeName);
 
-    for (final CompactAttribute a : attributes)
+    final int i = indexOf(attributeName);
+    if ((i < 0) || (getNumValues(i) == 0))
     {
-      if (a.getName().equalsIgnoreCase(attributeName))
-      {
-        final byte[][] values = a.getByteValues();
-        if (values.length > 0)
-        {
-          return values[0];
-        }
-        else
-        {
-          return null;
-        }
-      }
+      return null;
     }
 
-    return null;
+    return getValueBytes(i, 0);
   }
 
 
@@ -316,30 +394,38 @@ public final class CompactEntry
   {
     ensureNotNull(attributeName);
 
-    for (final CompactAttribute a : attributes)
+    final int i = indexOf(attributeName);
+    if (i < 0)
     {
-      if (a.getName().equalsIgnoreCase(attributeName))
-      {
-        return a.getStringValues();
-      }
+      return null;
+    }
+
+    final String[] stringValues = new String[getNumValues(i)];
+    for (int j=0; j < stringValues.length; j++)
+    {
+      stringValues[j] = getValueString(i, j);
     }
 
-    return null;
+    return stringValues;
   }
 
   public byte[][] getAttributeValueByteArrays(final String attributeName)
   {
     ensureNotNull(attributeName);
 
-    for (final CompactAttribute a : attributes)
+    final int i = indexOf(attributeName);
+    if (i < 0)
     {
-      if (a.getName().equalsIgnoreCase(attributeName))
-      {
-        return a.getByteValues();
-      }
+      return null;
+    }
+
+    final byte[][] byteValues = new byte[getNumValues(i)][];
+    for (int j=0; j < byteValues.length; j++)
+    {
+      byteValues[j] = getValueBytes(i, j);
     }
 
-    return null;
+    return byteValues;
   }
 
 
@@ -356,10 +442,10 @@ public final class CompactEntry
 
   public Entry toEntry()
   {
-    final Attribute[] attrs = new Attribute[attributes.length];
-    for (int i=0; i < attributes.length; i++)
+    final Attribute[] attrs = new Attribute[names.length];
+    for (int i=0; i < names.length; i++)
     {
-      attrs[i] = attributes[i].toAttribute();
+      attrs[i] = toAttribute(i);
     }
 
     return new Entry(dn, attrs);
@@ -453,13 +539,13 @@ public final class CompactEntry
     buffer.append(dn);
     buffer.append("', attributes={");
 
-    for (int i=0; i < attributes.length; i++)
+    for (int i=0; i < names.length; i++)
     {
       if (i > 0)
       {
         buffer.append(", ");
       }
-      attributes[i].toAttribute().toString(buffer);
+      toAttribute(i).toString(buffer);
     }
 
     buffer.append("})");
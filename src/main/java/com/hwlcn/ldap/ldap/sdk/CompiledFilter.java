@@ -0,0 +1,952 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+
+import com.hwlcn.ldap.asn1.ASN1OctetString;
+import com.hwlcn.ldap.ldap.matchingrules.CaseExactStringMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.CaseIgnoreListMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.CaseIgnoreStringMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.DistinguishedNameMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.IntegerMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.MatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.NumericStringMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.OctetStringMatchingRule;
+import com.hwlcn.ldap.ldap.matchingrules.TelephoneNumberMatchingRule;
+import com.hwlcn.ldap.ldap.sdk.schema.AttributeTypeDefinition;
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+import com.hwlcn.core.annotation.NotMutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides a reusable matcher for a search filter that has been
+ * prepared for repeated evaluation against entries with
+ * {@link Filter#compile(Schema)}.  It produces the same results as
+ * {@link Filter#matchesEntry(Entry, Schema)} with the schema provided at
+ * compile time, but does the work that does not depend on the entry only once:
+ * <UL>
+ *   <LI>The set of keys under which each attribute type may be held in an
+ *       entry (including alternate names and the OID from the schema) is
+ *       determined in advance.</LI>
+ *   <LI>The equality, ordering, and substring matching rules for each
+ *       attribute type are selected in advance.</LI>
+ *   <LI>Assertion values and substring components are normalized in advance
+ *       for matching rules that compare normalized values, so that only the
+ *       entry values need to be normalized for each entry.</LI>
+ *   <LI>The components of AND and OR filters are reordered so that the
+ *       components most likely to determine the result (and least expensive to
+ *       evaluate) are checked first.</LI>
+ * </UL>
+ * The results differ from {@code Filter.matchesEntry} in two respects:
+ * <UL>
+ *   <LI>Presence filters match an attribute held under any of the keys
+ *       determined from the compile-time schema, whereas
+ *       {@code Filter.matchesEntry} uses {@link Entry#hasAttribute(String)},
+ *       which only resolves alternate names and OIDs through the schema of the
+ *       entry itself.  For an entry without a schema, a presence filter on an
+ *       alternate name or OID may therefore match here but not there.</LI>
+ *   <LI>Because the components of AND and OR filters are reordered, a
+ *       component that cannot be evaluated may be reached in a different
+ *       order, so a different exception may be thrown, or none at all if
+ *       another component determines the result first.</LI>
+ * </UL>
+ * Compiled filters are immutable and may be shared by multiple threads.
+ */
+@NotMutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class CompiledFilter
+{
+  private static final int RANK_EQUALITY = 0;
+
+  private static final int RANK_SUBSTRING_INITIAL = 1;
+
+  private static final int RANK_SUBSTRING = 2;
+
+  private static final int RANK_ORDERING = 3;
+
+  private static final int RANK_AND = 4;
+
+  private static final int RANK_OR = 5;
+
+  private static final int RANK_NOT = 6;
+
+  private static final int RANK_PRESENCE = 7;
+
+  private static final Comparator<Node> AND_ORDER = new Comparator<Node>()
+  {
+    public int compare(final Node n1, final Node n2)
+    {
+      return (n1.rank - n2.rank);
+    }
+  };
+
+  private static final Comparator<Node> OR_ORDER = new Comparator<Node>()
+  {
+    public int compare(final Node n1, final Node n2)
+    {
+      return (n2.rank - n1.rank);
+    }
+  };
+
+
+
+  private final Filter filter;
+
+  private final Node root;
+
+  private final Schema schema;
+
+
+
+  CompiledFilter(final Filter filter, final Schema schema)
+       throws LDAPException
+  {
+    ensureNotNull(filter);
+
+    this.filter = filter;
+    this.schema = schema;
+
+    root = compile(filter, schema);
+  }
+
+
+
+  public Filter getFilter()
+  {
+    return filter;
+  }
+
+
+
+  public Schema getSchema()
+  {
+    return schema;
+  }
+
+
+
+  public boolean matchesEntry(final Entry entry)
+         throws LDAPException
+  {
+    ensureNotNull(entry);
+
+    return root.matches(entry);
+  }
+
+
+
+  @Override()
+  public String toString()
+  {
+    return "CompiledFilter(filter='" + filter.toString() + "')";
+  }
+
+
+
+  private static Node compile(final Filter f, final Schema schema)
+          throws LDAPException
+  {
+    final String attrName = f.getAttributeName();
+
+    switch (f.getFilterType())
+    {
+      case Filter.FILTER_TYPE_AND:
+        return new AndNode(compileComponents(f, schema, AND_ORDER));
+
+      case Filter.FILTER_TYPE_OR:
+        return new OrNode(compileComponents(f, schema, OR_ORDER));
+
+      case Filter.FILTER_TYPE_NOT:
+        return new NotNode(compile(f.getNOTComponent(), schema));
+
+      case Filter.FILTER_TYPE_EQUALITY:
+        final MatchingRule equalityRule =
+             MatchingRule.selectEqualityMatchingRule(attrName, schema);
+        if (equalityRule instanceof DistinguishedNameMatchingRule)
+        {
+          try
+          {
+            return new DNEqualityNode(new AttributeKey(attrName, schema),
+                 new DN(f.getRawAssertionValue().stringValue()));
+          }
+          catch (final LDAPException le)
+          {
+            // The assertion value is not a valid DN, so leave it to the
+            // matching rule to report that when an entry is evaluated.
+            debugException(le);
+          }
+        }
+        else if (comparesNormalizedValues(equalityRule))
+        {
+          try
+          {
+            return new NormalizedEqualityNode(
+                 new AttributeKey(attrName, schema), equalityRule,
+                 equalityRule.normalize(f.getRawAssertionValue()));
+          }
+          catch (final LDAPException le)
+          {
+            // The assertion value cannot be normalized, so leave it to the
+            // matching rule to report that when an entry is evaluated.
+            debugException(le);
+          }
+        }
+
+        return new EqualityNode(new AttributeKey(attrName, schema),
+             equalityRule, f.getRawAssertionValue());
+
+      case Filter.FILTER_TYPE_SUBSTRING:
+        final MatchingRule substringRule =
+             MatchingRule.selectSubstringMatchingRule(attrName, schema);
+        if (comparesNormalizedSubstrings(substringRule))
+        {
+          try
+          {
+            return new NormalizedSubstringNode(
+                 new AttributeKey(attrName, schema), substringRule,
+                 f.getRawSubInitialValue(), f.getRawSubAnyValues(),
+                 f.getRawSubFinalValue());
+          }
+          catch (final LDAPException le)
+          {
+            debugException(le);
+          }
+        }
+
+        return new SubstringNode(new AttributeKey(attrName, schema),
+             substringRule, f.getRawSubInitialValue(), f.getRawSubAnyValues(),
+             f.getRawSubFinalValue());
+
+      case Filter.FILTER_TYPE_GREATER_OR_EQUAL:
+      case Filter.FILTER_TYPE_LESS_OR_EQUAL:
+        final boolean greater =
+             (f.getFilterType() == Filter.FILTER_TYPE_GREATER_OR_EQUAL);
+        final MatchingRule orderingRule =
+             MatchingRule.selectOrderingMatchingRule(attrName, schema);
+        if (comparesNormalizedBytes(orderingRule))
+        {
+          try
+          {
+            return new NormalizedOrderingNode(
+                 new AttributeKey(attrName, schema), orderingRule,
+                 orderingRule.normalize(f.getRawAssertionValue()).getValue(),
+                 greater);
+          }
+          catch (final LDAPException le)
+          {
+            debugException(le);
+          }
+        }
+
+        return new OrderingNode(new AttributeKey(attrName, schema),
+             orderingRule, f.getRawAssertionValue(), greater);
+
+      case Filter.FILTER_TYPE_PRESENCE:
+        return new PresenceNode(new AttributeKey(attrName, schema));
+
+      case Filter.FILTER_TYPE_APPROXIMATE_MATCH:
+        throw new LDAPException(ResultCode.NOT_SUPPORTED,
+             ERR_FILTER_APPROXIMATE_MATCHING_NOT_SUPPORTED.get());
+
+      case Filter.FILTER_TYPE_EXTENSIBLE_MATCH:
+        throw new LDAPException(ResultCode.NOT_SUPPORTED,
+             ERR_FILTER_EXTENSIBLE_MATCHING_NOT_SUPPORTED.get());
+
+      default:
+        throw new LDAPException(ResultCode.PARAM_ERROR,
+                                ERR_FILTER_INVALID_TYPE.get());
+    }
+  }
+
+
+
+  private static Node[] compileComponents(final Filter f, final Schema schema,
+                                          final Comparator<Node> order)
+          throws LDAPException
+  {
+    final Filter[] components = f.getComponents();
+    final Node[] nodes = new Node[components.length];
+    for (int i=0; i < components.length; i++)
+    {
+      nodes[i] = compile(components[i], schema);
+    }
+
+    Arrays.sort(nodes, order);
+    return nodes;
+  }
+
+
+
+  private static boolean comparesNormalizedValues(final MatchingRule rule)
+  {
+    return ((rule instanceof CaseIgnoreStringMatchingRule) ||
+            (rule instanceof CaseExactStringMatchingRule) ||
+            (rule instanceof CaseIgnoreListMatchingRule) ||
+            (rule instanceof IntegerMatchingRule) ||
+            (rule instanceof NumericStringMatchingRule) ||
+            (rule instanceof OctetStringMatchingRule) ||
+            (rule instanceof TelephoneNumberMatchingRule));
+  }
+
+
+
+  private static boolean comparesNormalizedSubstrings(final MatchingRule rule)
+  {
+    return ((rule instanceof CaseIgnoreStringMatchingRule) ||
+            (rule instanceof CaseExactStringMatchingRule) ||
+            (rule instanceof NumericStringMatchingRule) ||
+            (rule instanceof OctetStringMatchingRule) ||
+            (rule instanceof TelephoneNumberMatchingRule));
+  }
+
+
+
+  private static boolean comparesNormalizedBytes(final MatchingRule rule)
+  {
+    return ((rule instanceof CaseIgnoreStringMatchingRule) ||
+            (rule instanceof CaseExactStringMatchingRule) ||
+            (rule instanceof NumericStringMatchingRule) ||
+            (rule instanceof OctetStringMatchingRule));
+  }
+
+
+
+  private static final class AttributeKey
+  {
+    private final String[] keys;
+
+    private AttributeKey(final String attrName, final Schema schema)
+    {
+      final LinkedHashSet<String> keySet = new LinkedHashSet<String>(4);
+      keySet.add(toLowerCase(attrName));
+
+      if (schema != null)
+      {
+        final String baseName;
+        final String options;
+        final int semicolonPos = attrName.indexOf(';');
+        if (semicolonPos > 0)
+        {
+          baseName = attrName.substring(0, semicolonPos);
+          options  = toLowerCase(attrName.substring(semicolonPos));
+        }
+        else
+        {
+          baseName = attrName;
+          options  = "";
+        }
+
+        final AttributeTypeDefinition at = schema.getAttributeType(baseName);
+        if (at != null)
+        {
+          keySet.add(toLowerCase(at.getOID() + options));
+          for (final String name : at.getNames())
+          {
+            keySet.add(toLowerCase(name) + options);
+          }
+        }
+      }
+
+      keys = keySet.toArray(new String[keySet.size()]);
+    }
+
+    private Attribute get(final Entry entry)
+    {
+      for (final String key : keys)
+      {
+        final Attribute a = entry.getAttributeByKey(key);
+        if (a != null)
+        {
+          return a;
+        }
+      }
+
+      return null;
+    }
+  }
+
+
+
+  private abstract static class Node
+  {
+    private final int rank;
+
+    private Node(final int rank)
+    {
+      this.rank = rank;
+    }
+
+    abstract boolean matches(final Entry entry)
+             throws LDAPException;
+  }
+
+
+
+  private static final class AndNode
+          extends Node
+  {
+    private final Node[] components;
+
+    private AndNode(final Node[] components)
+    {
+      super(RANK_AND);
+      this.components = components;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      for (final Node n : components)
+      {
+        if (! n.matches(entry))
+        {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+
+
+
+  private static final class OrNode
+          extends Node
+  {
+    private final Node[] components;
+
+    private OrNode(final Node[] components)
+    {
+      super(RANK_OR);
+      this.components = components;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      for (final Node n : components)
+      {
+        if (n.matches(entry))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+
+
+  private static final class NotNode
+          extends Node
+  {
+    private final Node component;
+
+    private NotNode(final Node component)
+    {
+      super(RANK_NOT);
+      this.component = component;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      return (! component.matches(entry));
+    }
+  }
+
+
+
+  private static final class PresenceNode
+          extends Node
+  {
+    private final AttributeKey key;
+
+    private PresenceNode(final AttributeKey key)
+    {
+      super(RANK_PRESENCE);
+      this.key = key;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+    {
+      return (key.get(entry) != null);
+    }
+  }
+
+
+
+  private static final class EqualityNode
+          extends Node
+  {
+    private final ASN1OctetString assertionValue;
+
+    private final AttributeKey key;
+
+    private final MatchingRule matchingRule;
+
+    private EqualityNode(final AttributeKey key,
+                         final MatchingRule matchingRule,
+                         final ASN1OctetString assertionValue)
+    {
+      super(RANK_EQUALITY);
+      this.key            = key;
+      this.matchingRule   = matchingRule;
+      this.assertionValue = assertionValue;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        if (matchingRule.valuesMatch(v, assertionValue))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+
+
+  private static final class NormalizedEqualityNode
+          extends Node
+  {
+    private final ASN1OctetString normalizedAssertionValue;
+
+    private final AttributeKey key;
+
+    private final MatchingRule matchingRule;
+
+    private NormalizedEqualityNode(final AttributeKey key,
+                                   final MatchingRule matchingRule,
+                                   final ASN1OctetString normalizedValue)
+    {
+      super(RANK_EQUALITY);
+      this.key                 = key;
+      this.matchingRule        = matchingRule;
+      normalizedAssertionValue = normalizedValue;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        if (matchingRule.normalize(v).equals(normalizedAssertionValue))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+
+
+  private static final class DNEqualityNode
+          extends Node
+  {
+    private final AttributeKey key;
+
+    private final DN assertionDN;
+
+    private DNEqualityNode(final AttributeKey key, final DN assertionDN)
+    {
+      super(RANK_EQUALITY);
+      this.key         = key;
+      this.assertionDN = assertionDN;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        final DN valueDN;
+        try
+        {
+          valueDN = new DN(v.stringValue());
+        }
+        catch (final LDAPException le)
+        {
+          debugException(le);
+          throw new LDAPException(ResultCode.INVALID_ATTRIBUTE_SYNTAX,
+                                  le.getMessage(), le);
+        }
+
+        if (assertionDN.equals(valueDN))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+
+
+  private static final class SubstringNode
+          extends Node
+  {
+    private final ASN1OctetString subFinal;
+
+    private final ASN1OctetString subInitial;
+
+    private final ASN1OctetString[] subAny;
+
+    private final AttributeKey key;
+
+    private final MatchingRule matchingRule;
+
+    private SubstringNode(final AttributeKey key,
+                          final MatchingRule matchingRule,
+                          final ASN1OctetString subInitial,
+                          final ASN1OctetString[] subAny,
+                          final ASN1OctetString subFinal)
+    {
+      super((subInitial == null) ? RANK_SUBSTRING : RANK_SUBSTRING_INITIAL);
+      this.key          = key;
+      this.matchingRule = matchingRule;
+      this.subInitial   = subInitial;
+      this.subAny       = subAny;
+      this.subFinal     = subFinal;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        if (matchingRule.matchesSubstring(v, subInitial, subAny, subFinal))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+
+
+  private static final class NormalizedSubstringNode
+          extends Node
+  {
+    private final AttributeKey key;
+
+    private final byte[] subFinal;
+
+    private final byte[] subInitial;
+
+    private final byte[][] subAny;
+
+    private final MatchingRule matchingRule;
+
+    private NormalizedSubstringNode(final AttributeKey key,
+                                    final MatchingRule matchingRule,
+                                    final ASN1OctetString subInitial,
+                                    final ASN1OctetString[] subAny,
+                                    final ASN1OctetString subFinal)
+            throws LDAPException
+    {
+      super((subInitial == null) ? RANK_SUBSTRING : RANK_SUBSTRING_INITIAL);
+      this.key          = key;
+      this.matchingRule = matchingRule;
+
+      if (subInitial == null)
+      {
+        this.subInitial = null;
+      }
+      else
+      {
+        this.subInitial = matchingRule.normalizeSubstring(subInitial,
+             MatchingRule.SUBSTRING_TYPE_SUBINITIAL).getValue();
+      }
+
+      this.subAny = new byte[subAny.length][];
+      for (int i=0; i < subAny.length; i++)
+      {
+        this.subAny[i] = matchingRule.normalizeSubstring(subAny[i],
+             MatchingRule.SUBSTRING_TYPE_SUBANY).getValue();
+      }
+
+      if (subFinal == null)
+      {
+        this.subFinal = null;
+      }
+      else
+      {
+        this.subFinal = matchingRule.normalizeSubstring(subFinal,
+             MatchingRule.SUBSTRING_TYPE_SUBFINAL).getValue();
+      }
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        if (matchesNormalized(matchingRule.normalize(v).getValue()))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private boolean matchesNormalized(final byte[] normValue)
+    {
+      int pos = 0;
+      if (subInitial != null)
+      {
+        if (normValue.length < subInitial.length)
+        {
+          return false;
+        }
+
+        for (int i=0; i < subInitial.length; i++)
+        {
+          if (normValue[i] != subInitial[i])
+          {
+            return false;
+          }
+        }
+
+        pos = subInitial.length;
+      }
+
+      for (final byte[] b : subAny)
+      {
+        if (b.length == 0)
+        {
+          continue;
+        }
+
+        boolean match = false;
+        final int subEndLength = normValue.length - b.length;
+        while (pos <= subEndLength)
+        {
+          match = true;
+          for (int i=0; i < b.length; i++)
+          {
+            if (normValue[pos+i] != b[i])
+            {
+              match = false;
+              break;
+            }
+          }
+
+          if (match)
+          {
+            pos += b.length;
+            break;
+          }
+          else
+          {
+            pos++;
+          }
+        }
+
+        if (! match)
+        {
+          return false;
+        }
+      }
+
+      if (subFinal != null)
+      {
+        int finalStartPos = normValue.length - subFinal.length;
+        if (finalStartPos < pos)
+        {
+          return false;
+        }
+
+        for (int i=0; i < subFinal.length; i++,finalStartPos++)
+        {
+          if (normValue[finalStartPos] != subFinal[i])
+          {
+            return false;
+          }
+        }
+      }
+
+      return true;
+    }
+  }
+
+
+
+  private static final class OrderingNode
+          extends Node
+  {
+    private final ASN1OctetString assertionValue;
+
+    private final AttributeKey key;
+
+    private final boolean greater;
+
+    private final MatchingRule matchingRule;
+
+    private OrderingNode(final AttributeKey key,
+                         final MatchingRule matchingRule,
+                         final ASN1OctetString assertionValue,
+                         final boolean greater)
+    {
+      super(RANK_ORDERING);
+      this.key            = key;
+      this.matchingRule   = matchingRule;
+      this.assertionValue = assertionValue;
+      this.greater        = greater;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        final int c = matchingRule.compareValues(v, assertionValue);
+        if (greater ? (c >= 0) : (c <= 0))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+
+
+  private static final class NormalizedOrderingNode
+          extends Node
+  {
+    private final AttributeKey key;
+
+    private final boolean greater;
+
+    private final byte[] normalizedAssertionValue;
+
+    private final MatchingRule matchingRule;
+
+    private NormalizedOrderingNode(final AttributeKey key,
+                                   final MatchingRule matchingRule,
+                                   final byte[] normalizedValue,
+                                   final boolean greater)
+    {
+      super(RANK_ORDERING);
+      this.key                 = key;
+      this.matchingRule        = matchingRule;
+      this.greater             = greater;
+      normalizedAssertionValue = normalizedValue;
+    }
+
+    @Override()
+    boolean matches(final Entry entry)
+            throws LDAPException
+    {
+      final Attribute a = key.get(entry);
+      if (a == null)
+      {
+        return false;
+      }
+
+      for (final ASN1OctetString v : a.getRawValues())
+      {
+        final int c = compare(matchingRule.normalize(v).getValue());
+        if (greater ? (c >= 0) : (c <= 0))
+        {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private int compare(final byte[] normValue)
+    {
+      final int minLength =
+           Math.min(normValue.length, normalizedAssertionValue.length);
+      for (int i=0; i < minLength; i++)
+      {
+        final int b1 = normValue[i] & 0xFF;
+        final int b2 = normalizedAssertionValue[i] & 0xFF;
+
+        if (b1 < b2)
+        {
+          return -1;
+        }
+        else if (b1 > b2)
+        {
+          return 1;
+        }
+      }
+
+      return normValue.length - normalizedAssertionValue.length;
+    }
+  }
+}
@@ -227,7 +227,7 @@ public class Control
             isCritical = reader.readBoolean();
             break;
           case UNIVERSAL_OCTET_STRING_TYPE:
-            value = new ASN1OctetString(reader.readBytes());
+            value = reader.readOctetString();
             break;
           default:
             throw new LDAPException(ResultCode.DECODING_ERROR,
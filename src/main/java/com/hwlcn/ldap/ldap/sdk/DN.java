@@ -40,6 +40,12 @@ public final class DN
 
   private volatile String normalizedString;
 
+  private transient DN internedParent;
+
+  private transient int normalizedHashCode;
+
+  private transient volatile DNInternPool internPool;
+
 
 
   public DN(final RDN... rdns)
@@ -570,8 +576,27 @@ rdnLoop:
   }
 
 
+  public boolean isInterned()
+  {
+    return (internPool != null);
+  }
+
+
+  void setInterned(final DNInternPool pool, final DN parent)
+  {
+    normalizedHashCode = toNormalizedString().hashCode();
+    internedParent     = parent;
+    internPool         = pool;
+  }
+
+
   public DN getParent()
   {
+    if (internPool != null)
+    {
+      return internedParent;
+    }
+
     switch (rdns.length)
     {
       case 0:
@@ -643,6 +668,17 @@ rdnLoop:
       return false;
     }
 
+    if (dn.internPool != null)
+    {
+      DN ancestor = dn;
+      while (thatPos-- > thisPos)
+      {
+        ancestor = ancestor.internedParent;
+      }
+
+      return equals(ancestor);
+    }
+
     while (thisPos >= 0)
     {
       if (! rdns[thisPos--].equals(dn.rdns[thatPos--]))
@@ -685,6 +721,17 @@ rdnLoop:
       return false;
     }
 
+    if (internPool != null)
+    {
+      DN ancestor = this;
+      while (thisPos-- > thatPos)
+      {
+        ancestor = ancestor.internedParent;
+      }
+
+      return ancestor.equals(dn);
+    }
+
     while (thatPos >= 0)
     {
       if (! rdns[thisPos--].equals(dn.rdns[thatPos--]))
@@ -752,6 +799,11 @@ rdnLoop:
 
   @Override() public int hashCode()
   {
+    if (internPool != null)
+    {
+      return normalizedHashCode;
+    }
+
     return toNormalizedString().hashCode();
   }
 
@@ -775,6 +827,12 @@ rdnLoop:
     }
 
     final DN dn = (DN) o;
+    if ((internPool != null) && (dn.internPool != null) &&
+        (normalizedHashCode != dn.normalizedHashCode))
+    {
+      return false;
+    }
+
     return (toNormalizedString().equals(dn.toNormalizedString()));
   }
 
@@ -0,0 +1,330 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hwlcn.ldap.ldap.sdk.schema.Schema;
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides a bounded, concurrent pool of canonical {@link DN}
+ * instances for applications that repeatedly parse and compare the same set of
+ * DNs (for example, search base DNs or group DNs).  A DN string that has
+ * already been interned is returned without being parsed again, and all
+ * strings with the same normalized representation map to the same canonical
+ * instance for as long as that instance remains in the pool.  Because of this,
+ * the string representation of an interned DN is generated from its RDNs and
+ * may not be identical to the string that was provided.
+ * <BR><BR>
+ * Interned DNs have their normalized form and its hash code computed in
+ * advance, and hold a reference to the interned DN of their parent.  As a
+ * result, {@link DN#equals(Object)} and {@link DN#hashCode} for interned DNs
+ * reduce to reference, hash code, and string comparisons;
+ * {@link DN#getParent} does not create any new objects; and
+ * {@link DN#isAncestorOf(DN,boolean)}, {@link DN#isDescendantOf(DN,boolean)},
+ * and {@link DN#matchesBaseAndScope(DN,SearchScope)} walk the parent chain
+ * rather than comparing each RDN.
+ * <BR><BR>
+ * The pool holds at most approximately the configured maximum number of
+ * strings.  When that limit is exceeded, an arbitrary subset of the entries is
+ * discarded.  Discarded DNs remain valid and continue to compare correctly with
+ * any other DN.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class DNInternPool
+{
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private static final DNInternPool DEFAULT_INSTANCE = new DNInternPool();
+
+
+
+  private final AtomicBoolean evicting;
+
+  private final AtomicLong numEvictions;
+
+  private final AtomicLong numHits;
+
+  private final AtomicLong numMisses;
+
+  private final ConcurrentHashMap<String,DN> byNormalizedString;
+
+  private final ConcurrentHashMap<String,DN> byString;
+
+  private final int maxSize;
+
+  private final Schema schema;
+
+
+
+  public DNInternPool()
+  {
+    this(DEFAULT_MAX_SIZE, null);
+  }
+
+
+
+  public DNInternPool(final int maxSize)
+  {
+    this(maxSize, null);
+  }
+
+
+
+  public DNInternPool(final int maxSize, final Schema schema)
+  {
+    ensureTrue(maxSize > 0, "DNInternPool.maxSize must be greater than 0.");
+
+    this.maxSize = maxSize;
+    this.schema  = schema;
+
+    byString           = new ConcurrentHashMap<String,DN>();
+    byNormalizedString = new ConcurrentHashMap<String,DN>();
+    evicting           = new AtomicBoolean(false);
+    numHits            = new AtomicLong(0L);
+    numMisses          = new AtomicLong(0L);
+    numEvictions       = new AtomicLong(0L);
+  }
+
+
+
+  public static DNInternPool getDefaultInstance()
+  {
+    return DEFAULT_INSTANCE;
+  }
+
+
+
+  public DN intern(final String dnString)
+         throws LDAPException
+  {
+    ensureNotNull(dnString);
+
+    final DN dn = byString.get(dnString);
+    if (dn != null)
+    {
+      numHits.incrementAndGet();
+      return dn;
+    }
+
+    numMisses.incrementAndGet();
+    return internParsed(dnString, new DN(dnString, schema));
+  }
+
+
+
+  public DN intern(final DN dn)
+  {
+    ensureNotNull(dn);
+
+    if (dn.isInterned())
+    {
+      numHits.incrementAndGet();
+      return dn;
+    }
+
+    final String dnString = dn.toString();
+    final DN internedDN = byString.get(dnString);
+    if (internedDN != null)
+    {
+      numHits.incrementAndGet();
+      return internedDN;
+    }
+
+    numMisses.incrementAndGet();
+    return internParsed(dnString, dn);
+  }
+
+
+
+  private DN internParsed(final String dnString, final DN parsedDN)
+  {
+    final DN canonicalDN = canonicalize(parsedDN);
+    final DN existingDN = byString.putIfAbsent(dnString, canonicalDN);
+    evictIfNecessary();
+
+    if (existingDN == null)
+    {
+      return canonicalDN;
+    }
+    else
+    {
+      return existingDN;
+    }
+  }
+
+
+
+  private DN canonicalize(final DN dn)
+  {
+    final String normalizedString = dn.toNormalizedString();
+    final DN existingDN = byNormalizedString.get(normalizedString);
+    if (existingDN != null)
+    {
+      return existingDN;
+    }
+
+    final DN parentDN = dn.getParent();
+    final DN canonicalParentDN;
+    if (parentDN == null)
+    {
+      canonicalParentDN = null;
+    }
+    else
+    {
+      canonicalParentDN = canonicalize(parentDN);
+    }
+
+    // Each DN object may only be marked as interned once, so work with a new
+    // copy rather than with a DN that the caller may also be using.
+    final DN canonicalDN = new DN(dn.getRDNs());
+    canonicalDN.setInterned(this, canonicalParentDN);
+
+    final DN racingDN =
+         byNormalizedString.putIfAbsent(normalizedString, canonicalDN);
+    if (racingDN == null)
+    {
+      return canonicalDN;
+    }
+    else
+    {
+      return racingDN;
+    }
+  }
+
+
+
+  private void evictIfNecessary()
+  {
+    if (((byString.size() <= maxSize) &&
+         (byNormalizedString.size() <= maxSize)) ||
+        (! evicting.compareAndSet(false, true)))
+    {
+      return;
+    }
+
+    try
+    {
+      final int targetSize = maxSize - (maxSize >> 2);
+      evict(byString, targetSize);
+      evict(byNormalizedString, targetSize);
+    }
+    finally
+    {
+      evicting.set(false);
+    }
+  }
+
+
+
+  private void evict(final ConcurrentHashMap<String,DN> map,
+                     final int targetSize)
+  {
+    int numToRemove = map.size() - targetSize;
+    final Iterator<String> iterator = map.keySet().iterator();
+    while ((numToRemove > 0) && iterator.hasNext())
+    {
+      iterator.next();
+      iterator.remove();
+      numEvictions.incrementAndGet();
+      numToRemove--;
+    }
+  }
+
+
+
+  public int size()
+  {
+    return byString.size();
+  }
+
+
+
+  public int getMaxSize()
+  {
+    return maxSize;
+  }
+
+
+
+  public Schema getSchema()
+  {
+    return schema;
+  }
+
+
+
+  public long getNumHits()
+  {
+    return numHits.get();
+  }
+
+
+
+  public long getNumMisses()
+  {
+    return numMisses.get();
+  }
+
+
+
+  public long getNumEvictions()
+  {
+    return numEvictions.get();
+  }
+
+
+
+  public void resetStatistics()
+  {
+    numHits.set(0L);
+    numMisses.set(0L);
+    numEvictions.set(0L);
+  }
+
+
+
+  public void clear()
+  {
+    byString.clear();
+    byNormalizedString.clear();
+  }
+
+
+
+  @Override()
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer);
+    return buffer.toString();
+  }
+
+
+
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("DNInternPool(size=");
+    buffer.append(byString.size());
+    buffer.append(", maxSize=");
+    buffer.append(maxSize);
+    buffer.append(", numHits=");
+    buffer.append(numHits.get());
+    buffer.append(", numMisses=");
+    buffer.append(numMisses.get());
+    buffer.append(", numEvictions=");
+    buffer.append(numEvictions.get());
+    buffer.append(')');
+  }
+}
@@ -0,0 +1,1251 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hwlcn.ldap.asn1.ASN1OctetString;
+import com.hwlcn.ldap.ldap.sdk.controls.ContentSyncDoneControl;
+import com.hwlcn.ldap.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.hwlcn.ldap.ldap.sdk.controls.ContentSyncRequestControl;
+import com.hwlcn.ldap.ldap.sdk.controls.ContentSyncRequestMode;
+import com.hwlcn.ldap.ldap.sdk.controls.ContentSyncStateControl;
+import com.hwlcn.ldap.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.hwlcn.ldap.ldap.sdk.controls.PersistentSearchChangeType;
+import com.hwlcn.ldap.ldap.sdk.controls.PersistentSearchRequestControl;
+import com.hwlcn.core.annotation.InternalUseOnly;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides a thread that keeps a local replica of the entries
+ * matching a search request current by following the server's change stream,
+ * so that caches of directory data can be refreshed in proportion to the
+ * number of changes rather than the size of the directory.  Changes to the
+ * replica are published to any registered {@link DirectorySyncListener}s.
+ * <BR><BR>
+ * The client uses the content synchronization operation described in RFC 4533
+ * in refreshAndPersist mode.  The initial refresh loads every matching entry;
+ * afterward the server sends only changes.  Both the refreshPresent and
+ * refreshDeletes forms of the refresh phase are supported: in the former,
+ * entries that the server did not report as present are removed from the
+ * replica when the phase ends.  If the server rejects the content
+ * synchronization control, the client falls back to a persistent search
+ * combined with a full reload of the matching entries, which is repeated each
+ * time the client reconnects.
+ * <BR><BR>
+ * If the connection is lost, the client reconnects using the provided server
+ * set after the retry interval and refreshes the replica, resuming from the
+ * last cookie when content synchronization is in use.  To resume after a
+ * restart, save the entries and cookie captured together by
+ * {@link #getSnapshot} and provide them to the constructor of the new client;
+ * the server then only sends the changes made since the cookie was issued.
+ * The cookie may also be persisted with a {@link SyncCookieStore}, which is
+ * written at most once per cookie write interval (one second by default) once
+ * the initial refresh has completed, rather than once per change.  A stored
+ * cookie is only used if the client is created with the entries of a
+ * previously saved replica but no cookie, and only yields a consistent
+ * replica if those entries were saved after the cookie was stored.  Entries
+ * are keyed by their
+ * {@code entryUUID} attribute, which is added to the requested attributes.
+ * The connections created by the server set must not use synchronous mode.
+ * <BR><BR>
+ * <H2>Example</H2>
+ * The following example keeps a replica of all user entries and clears the
+ * cached authorization data for a user whenever their entry changes:
+ * <PRE>
+ *   SearchRequest searchRequest = new SearchRequest(
+ *        "ou=People,dc=example,dc=com", SearchScope.SUB,
+ *        "(objectClass=person)");
+ *   DirectorySyncClient syncClient = new DirectorySyncClient(serverSet,
+ *        bindRequest, searchRequest, null, null);
+ *   syncClient.addListener(cacheInvalidator);
+ *   syncClient.startSync();
+ *   syncClient.waitForRefresh(30000L);
+ *
+ *   ReadOnlyEntry userEntry = syncClient.getEntry(userDN);
+ *
+ *   syncClient.shutDown();
+ * </PRE>
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class DirectorySyncClient
+       extends Thread
+{
+  private static final String ATTR_ENTRY_UUID = "entryUUID";
+
+
+
+  private static final long DEFAULT_RETRY_INTERVAL_MILLIS = 5000L;
+
+
+
+  private static final long DEFAULT_COOKIE_WRITE_INTERVAL_MILLIS = 1000L;
+
+
+
+  private static final long POLL_INTERVAL_MILLIS = 100L;
+
+
+
+  private final AtomicBoolean stopRequested;
+
+  private final AtomicReference<LDAPConnection> connection;
+
+  private final BindRequest bindRequest;
+
+  private final ConcurrentHashMap<DN,String> keysByDN;
+
+  private final ConcurrentHashMap<String,ReadOnlyEntry> entries;
+
+  private final CopyOnWriteArrayList<DirectorySyncListener> listeners;
+
+  private final CountDownLatch refreshLatch;
+
+  private final Object replicaLock;
+
+  private final SearchRequest searchRequest;
+
+  private final ServerSet serverSet;
+
+  private final SyncCookieStore cookieStore;
+
+  private volatile boolean useContentSync;
+
+  private volatile byte[] cookie;
+
+  private volatile long cookieWriteIntervalMillis;
+
+  private volatile long retryIntervalMillis;
+
+  // These are guarded by replicaLock.  The entries returned by the reload
+  // search of a persistent search are delivered on the connection reader
+  // thread, so the present keys are not confined to the synchronization
+  // thread.  The committed cookie is the most recent cookie that the entries
+  // in the replica are known to include all changes up to.
+  private byte[] committedCookie;
+
+  private HashSet<String> presentKeys;
+
+  // These are only accessed by the synchronization thread.
+  private boolean cookieWritePending;
+
+  private boolean inRefresh;
+
+  private long lastCookieWriteTime;
+
+
+
+  public DirectorySyncClient(final ServerSet serverSet,
+                             final BindRequest bindRequest,
+                             final SearchRequest searchRequest,
+                             final SyncCookieStore cookieStore,
+                             final Collection<? extends Entry> initialEntries)
+         throws LDAPException
+  {
+    this(serverSet, bindRequest, searchRequest, cookieStore, initialEntries,
+         null, true);
+  }
+
+
+
+  /**
+   * Creates a client that resumes from a previously saved replica, such as
+   * the entries and cookie of a {@link DirectorySyncSnapshot}.  The provided
+   * cookie is used rather than any cookie in the cookie store.
+   */
+  public DirectorySyncClient(final ServerSet serverSet,
+                             final BindRequest bindRequest,
+                             final SearchRequest searchRequest,
+                             final SyncCookieStore cookieStore,
+                             final Collection<? extends Entry> initialEntries,
+                             final byte[] initialCookie)
+         throws LDAPException
+  {
+    this(serverSet, bindRequest, searchRequest, cookieStore, initialEntries,
+         initialCookie, false);
+  }
+
+
+
+  private DirectorySyncClient(final ServerSet serverSet,
+                              final BindRequest bindRequest,
+                              final SearchRequest searchRequest,
+                              final SyncCookieStore cookieStore,
+                              final Collection<? extends Entry> initialEntries,
+                              final byte[] initialCookie,
+                              final boolean readStoredCookie)
+          throws LDAPException
+  {
+    ensureNotNull(serverSet, searchRequest);
+
+    if (searchRequest.getSearchResultListener() != null)
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_SYNC_CLIENT_REQUEST_HAS_LISTENER.get());
+    }
+
+    if (searchRequest.hasControl(ContentSyncRequestControl.SYNC_REQUEST_OID) ||
+        searchRequest.hasControl(
+             PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID))
+    {
+      throw new LDAPException(ResultCode.PARAM_ERROR,
+           ERR_SYNC_CLIENT_REQUEST_HAS_SYNC_CONTROL.get());
+    }
+
+    setName("DirectorySyncClient for " + searchRequest.getBaseDN());
+    setDaemon(true);
+
+    this.serverSet     = serverSet;
+    this.bindRequest   = bindRequest;
+    this.searchRequest = searchRequest;
+    this.cookieStore   = cookieStore;
+
+    stopRequested       = new AtomicBoolean(false);
+    connection          = new AtomicReference<LDAPConnection>();
+    keysByDN            = new ConcurrentHashMap<DN,String>();
+    entries             = new ConcurrentHashMap<String,ReadOnlyEntry>();
+    listeners           = new CopyOnWriteArrayList<DirectorySyncListener>();
+    refreshLatch        = new CountDownLatch(1);
+    replicaLock         = new Object();
+    retryIntervalMillis = DEFAULT_RETRY_INTERVAL_MILLIS;
+    useContentSync      = true;
+    inRefresh           = false;
+    presentKeys         = null;
+    cookieWritePending  = false;
+    lastCookieWriteTime = 0L;
+
+    cookieWriteIntervalMillis = DEFAULT_COOKIE_WRITE_INTERVAL_MILLIS;
+
+    if (initialEntries != null)
+    {
+      for (final Entry e : initialEntries)
+      {
+        final String uuid = e.getAttributeValue(ATTR_ENTRY_UUID);
+        if (uuid == null)
+        {
+          continue;
+        }
+
+        final String key;
+        try
+        {
+          key = UUID.fromString(uuid).toString();
+        }
+        catch (final IllegalArgumentException iae)
+        {
+          debugException(iae);
+          continue;
+        }
+
+        final ReadOnlyEntry entry = new ReadOnlyEntry(e);
+        entries.put(key, entry);
+        keysByDN.put(entry.getParsedDN(), key);
+      }
+    }
+
+    // A cookie only describes the server's state relative to a replica, so
+    // it is useless without one.
+    if (entries.isEmpty())
+    {
+      cookie = null;
+    }
+    else if (! readStoredCookie)
+    {
+      cookie = (initialCookie == null) ? null : initialCookie.clone();
+    }
+    else if (cookieStore != null)
+    {
+      cookie = cookieStore.readCookie();
+    }
+    else
+    {
+      cookie = null;
+    }
+    committedCookie = cookie;
+  }
+
+
+
+  public void startSync()
+  {
+    start();
+  }
+
+
+
+  public void shutDown()
+  {
+    stopRequested.set(true);
+    interrupt();
+
+    final LDAPConnection conn = connection.get();
+    if (conn != null)
+    {
+      conn.close();
+    }
+
+    if (isAlive() && (Thread.currentThread() != this))
+    {
+      try
+      {
+        join();
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+
+
+  /**
+   * Waits for the first refresh of the replica to complete.
+   *
+   * @return  {@code true} if the refresh completed, or {@code false} if the
+   *          timeout elapsed first.
+   */
+  public boolean waitForRefresh(final long timeoutMillis)
+         throws InterruptedException
+  {
+    return refreshLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+
+
+  public void addListener(final DirectorySyncListener listener)
+  {
+    ensureNotNull(listener);
+    listeners.add(listener);
+  }
+
+
+
+  public void removeListener(final DirectorySyncListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+
+
+  public long getRetryIntervalMillis()
+  {
+    return retryIntervalMillis;
+  }
+
+
+
+  public void setRetryIntervalMillis(final long retryIntervalMillis)
+  {
+    this.retryIntervalMillis = Math.max(0L, retryIntervalMillis);
+  }
+
+
+
+  public long getCookieWriteIntervalMillis()
+  {
+    return cookieWriteIntervalMillis;
+  }
+
+
+
+  /**
+   * Specifies the minimum time between writes of the cookie to the cookie
+   * store after the initial refresh.  Cookies received in between are not
+   * lost:  the latest one is written once the interval has elapsed, or when
+   * the client disconnects or is shut down.  A value of zero writes every
+   * cookie as it is received.
+   */
+  public void setCookieWriteIntervalMillis(final long cookieWriteIntervalMillis)
+  {
+    this.cookieWriteIntervalMillis = Math.max(0L, cookieWriteIntervalMillis);
+  }
+
+
+
+  /**
+   * Indicates whether the client is using the content synchronization
+   * operation, or has fallen back to a persistent search.
+   */
+  public boolean usesContentSync()
+  {
+    return useContentSync;
+  }
+
+
+
+  /**
+   * Retrieves the most recent content synchronization cookie, or
+   * {@code null} if there is none.  It is not read atomically with the
+   * entries, so use {@link #getSnapshot} to save the state of the replica.
+   */
+  public byte[] getCookie()
+  {
+    final byte[] c = cookie;
+    return (c == null) ? null : c.clone();
+  }
+
+
+
+  public ReadOnlyEntry getEntry(final String dn)
+         throws LDAPException
+  {
+    final String key = keysByDN.get(new DN(dn));
+    return (key == null) ? null : entries.get(key);
+  }
+
+
+
+  /**
+   * Retrieves a snapshot of the entries in the replica.
+   */
+  public List<ReadOnlyEntry> getEntries()
+  {
+    return Collections.unmodifiableList(
+         new ArrayList<ReadOnlyEntry>(entries.values()));
+  }
+
+
+
+  /**
+   * Retrieves the entries in the replica together with a cookie from which
+   * synchronization of those entries may resume.  The cookie is never newer
+   * than the entries, so no changes are lost when a client is created from a
+   * saved snapshot.
+   */
+  public DirectorySyncSnapshot getSnapshot()
+  {
+    synchronized (replicaLock)
+    {
+      return new DirectorySyncSnapshot(entries.values(), committedCookie);
+    }
+  }
+
+
+
+  public int getEntryCount()
+  {
+    return entries.size();
+  }
+
+
+
+  @InternalUseOnly()
+  @Override()
+  public void run()
+  {
+    while (! stopRequested.get())
+    {
+      LDAPConnection conn = null;
+      try
+      {
+        conn = serverSet.getConnection();
+        connection.set(conn);
+        if (stopRequested.get())
+        {
+          break;
+        }
+
+        if (bindRequest != null)
+        {
+          conn.bind(bindRequest.duplicate());
+        }
+
+        synchronize(conn);
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        if (! stopRequested.get())
+        {
+          for (final DirectorySyncListener l : listeners)
+          {
+            try
+            {
+              l.syncInterrupted(le);
+            }
+            catch (final RuntimeException re)
+            {
+              debugException(re);
+            }
+          }
+        }
+      }
+      finally
+      {
+        connection.set(null);
+        if (conn != null)
+        {
+          conn.close();
+        }
+
+        try
+        {
+          writeCookieIfDue(true);
+        }
+        catch (final LDAPException le)
+        {
+          debugException(le);
+        }
+      }
+
+      if (stopRequested.get())
+      {
+        break;
+      }
+
+      try
+      {
+        Thread.sleep(retryIntervalMillis);
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+      }
+    }
+  }
+
+
+
+  /**
+   * Keeps the replica synchronized over the provided connection until it is
+   * closed, the search ends, or the client is shut down.
+   */
+  private void synchronize(final LDAPConnection conn)
+          throws LDAPException
+  {
+    while (! stopRequested.get())
+    {
+      if (useContentSync)
+      {
+        final ResultCode rc = runContentSync(conn);
+        if (rc == ResultCode.UNAVAILABLE_CRITICAL_EXTENSION)
+        {
+          // The replica will now be keyed by DN, and there is no cookie to
+          // resume from.
+          useContentSync = false;
+          rekeyByDN();
+          updateCookie(null, true);
+        }
+        else if (rc == ResultCode.E_SYNC_REFRESH_REQUIRED)
+        {
+          updateCookie(null, true);
+        }
+      }
+      else
+      {
+        runPersistentSearch(conn);
+      }
+    }
+  }
+
+
+
+  /**
+   * Processes a content synchronization search.  It returns normally only if
+   * the search should be immediately retried, and returns the result code
+   * explaining why.
+   */
+  private ResultCode runContentSync(final LDAPConnection conn)
+          throws LDAPException
+  {
+    final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+    final byte[] c = cookie;
+    final SearchRequest r = createRequest(new QueueListener(queue),
+         new ContentSyncRequestControl(ContentSyncRequestMode.REFRESH_AND_PERSIST,
+              ((c == null) ? null : new ASN1OctetString(c)), false));
+
+    startRefresh();
+    conn.asyncSearch(r);
+
+    boolean responseReceived = false;
+    while (true)
+    {
+      final Object o = poll(conn, queue);
+      if (o == null)
+      {
+        return null;
+      }
+
+      if (o instanceof SearchResultEntry)
+      {
+        responseReceived = true;
+        handleSyncEntry((SearchResultEntry) o);
+      }
+      else if (o instanceof IntermediateResponse)
+      {
+        responseReceived = true;
+        final IntermediateResponse ir = (IntermediateResponse) o;
+        if (ContentSyncInfoIntermediateResponse.SYNC_INFO_OID.equals(
+                 ir.getOID()))
+        {
+          handleSyncInfo(ContentSyncInfoIntermediateResponse.decode(ir));
+        }
+      }
+      else if (o instanceof SearchResult)
+      {
+        final SearchResult result = (SearchResult) o;
+        final ResultCode rc = result.getResultCode();
+        if ((rc == ResultCode.UNAVAILABLE_CRITICAL_EXTENSION) &&
+            (! responseReceived))
+        {
+          return rc;
+        }
+        else if (rc == ResultCode.E_SYNC_REFRESH_REQUIRED)
+        {
+          return rc;
+        }
+        else if (rc == ResultCode.SUCCESS)
+        {
+          final ContentSyncDoneControl done = ContentSyncDoneControl.get(result);
+          if (done != null)
+          {
+            if (inRefresh && (! done.refreshDeletes()))
+            {
+              purgeAbsentEntries();
+            }
+
+            updateCookie(done.getCookie(), false);
+          }
+
+          if (inRefresh)
+          {
+            endRefresh();
+          }
+        }
+
+        throw new LDAPException(result);
+      }
+    }
+  }
+
+
+
+  private void handleSyncEntry(final SearchResultEntry searchEntry)
+          throws LDAPException
+  {
+    final ContentSyncStateControl stateControl =
+         ContentSyncStateControl.get(searchEntry);
+    if (stateControl == null)
+    {
+      return;
+    }
+
+    final String key = stateControl.getEntryUUID().toString();
+    switch (stateControl.getState())
+    {
+      case PRESENT:
+        markPresent(key);
+        break;
+
+      case ADD:
+      case MODIFY:
+        markPresent(key);
+        putEntry(key, key, new ReadOnlyEntry(searchEntry));
+        break;
+
+      case DELETE:
+        removeEntry(key);
+        break;
+    }
+
+    updateCookie(stateControl.getCookie(), false);
+  }
+
+
+
+  private void handleSyncInfo(final ContentSyncInfoIntermediateResponse r)
+          throws LDAPException
+  {
+    switch (r.getType())
+    {
+      case NEW_COOKIE:
+        break;
+
+      case REFRESH_DELETE:
+        if (inRefresh && r.refreshDone())
+        {
+          updateCookie(r.getCookie(), false);
+          endRefresh();
+          return;
+        }
+        break;
+
+      case REFRESH_PRESENT:
+        // Any entry not mentioned during the present phase no longer exists.
+        // A delete phase may follow, but it lists the deletions explicitly.
+        if (inRefresh)
+        {
+          purgeAbsentEntries();
+          if (r.refreshDone())
+          {
+            updateCookie(r.getCookie(), false);
+            endRefresh();
+            return;
+          }
+        }
+        break;
+
+      case SYNC_ID_SET:
+        for (final UUID uuid : r.getEntryUUIDs())
+        {
+          if (r.refreshDeletes())
+          {
+            removeEntry(uuid.toString());
+          }
+          else
+          {
+            markPresent(uuid.toString());
+          }
+        }
+        break;
+    }
+
+    updateCookie(r.getCookie(), false);
+  }
+
+
+
+  /**
+   * Processes a persistent search.  Because a persistent search cannot tell
+   * the client what changed while it was disconnected, all matching entries
+   * are reloaded once the search has been registered.  Changes reported
+   * during the reload are held until it completes, so that an entry returned
+   * by the reload cannot overwrite a newer version from the change stream.
+   */
+  private void runPersistentSearch(final LDAPConnection conn)
+          throws LDAPException
+  {
+    final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+    final SearchRequest r = createRequest(new QueueListener(queue),
+         new PersistentSearchRequestControl(
+              PersistentSearchChangeType.allChangeTypes(), true, true));
+    conn.asyncSearch(r);
+
+    startRefresh();
+    final SearchRequest reloadRequest = createRequest(new ReloadListener());
+    final SearchResult reloadResult = conn.search(reloadRequest);
+    if (reloadResult.getResultCode() != ResultCode.SUCCESS)
+    {
+      throw new LDAPException(reloadResult);
+    }
+
+    purgeAbsentEntries();
+    endRefresh();
+
+    while (true)
+    {
+      final Object o = poll(conn, queue);
+      if (o == null)
+      {
+        return;
+      }
+
+      if (o instanceof SearchResultEntry)
+      {
+        handleChangeNotification((SearchResultEntry) o);
+      }
+      else if (o instanceof SearchResult)
+      {
+        throw new LDAPException((SearchResult) o);
+      }
+    }
+  }
+
+
+
+  private void handleChangeNotification(final SearchResultEntry searchEntry)
+          throws LDAPException
+  {
+    final String key = getDNKey(searchEntry.getDN());
+    final EntryChangeNotificationControl ecn =
+         EntryChangeNotificationControl.get(searchEntry);
+    if (ecn == null)
+    {
+      putEntry(key, key, new ReadOnlyEntry(searchEntry));
+      return;
+    }
+
+    switch (ecn.getChangeType())
+    {
+      case ADD:
+      case MODIFY:
+        putEntry(key, key, new ReadOnlyEntry(searchEntry));
+        break;
+
+      case MODIFY_DN:
+        final String previousDN = ecn.getPreviousDN();
+        putEntry(((previousDN == null) ? key : getDNKey(previousDN)), key,
+             new ReadOnlyEntry(searchEntry));
+        break;
+
+      case DELETE:
+        removeEntry(key);
+        break;
+    }
+  }
+
+
+
+  /**
+   * Waits for the next response to a search, checking periodically whether
+   * the connection is still established since the listener is not notified
+   * if it is closed.
+   *
+   * @return  The next response, or {@code null} if the client is being shut
+   *          down.
+   */
+  private Object poll(final LDAPConnection conn,
+                      final LinkedBlockingQueue<Object> queue)
+          throws LDAPException
+  {
+    while (! stopRequested.get())
+    {
+      final Object o;
+      try
+      {
+        o = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        continue;
+      }
+
+      if (o != null)
+      {
+        return o;
+      }
+
+      writeCookieIfDue(false);
+
+      if (! conn.isConnected())
+      {
+        throw new LDAPException(ResultCode.SERVER_DOWN,
+             ERR_CONN_CLOSED_WAITING_FOR_ASYNC_RESPONSE.get());
+      }
+    }
+
+    return null;
+  }
+
+
+
+  private SearchRequest createRequest(final SearchResultListener listener,
+                                      final Control... syncControls)
+  {
+    final List<Control> controls = new ArrayList<Control>(
+         Arrays.asList(searchRequest.getControls()));
+    controls.addAll(Arrays.asList(syncControls));
+
+    final List<String> attributes = new ArrayList<String>(
+         Arrays.asList(searchRequest.getAttributes()));
+    if (attributes.isEmpty())
+    {
+      attributes.add("*");
+    }
+    attributes.add(ATTR_ENTRY_UUID);
+
+    final SearchRequest r = new SearchRequest(listener,
+         controls.toArray(new Control[controls.size()]),
+         searchRequest.getBaseDN(), searchRequest.getScope(),
+         searchRequest.getDereferencePolicy(), searchRequest.getSizeLimit(),
+         searchRequest.getTimeLimitSeconds(), searchRequest.typesOnly(),
+         searchRequest.getFilter(),
+         attributes.toArray(new String[attributes.size()]));
+    if (listener instanceof IntermediateResponseListener)
+    {
+      r.setIntermediateResponseListener(
+           (IntermediateResponseListener) listener);
+    }
+
+    if (syncControls.length > 0)
+    {
+      r.setResponseTimeoutMillis(0L);
+    }
+
+    return r;
+  }
+
+
+
+  private void startRefresh()
+  {
+    inRefresh = true;
+    synchronized (replicaLock)
+    {
+      presentKeys = new HashSet<String>();
+    }
+  }
+
+
+
+  private void endRefresh()
+          throws LDAPException
+  {
+    inRefresh = false;
+    synchronized (replicaLock)
+    {
+      presentKeys     = null;
+      committedCookie = cookie;
+    }
+
+    cookieWritePending = true;
+    writeCookieIfDue(true);
+
+    refreshLatch.countDown();
+    for (final DirectorySyncListener l : listeners)
+    {
+      try
+      {
+        l.refreshComplete();
+      }
+      catch (final RuntimeException re)
+      {
+        debugException(re);
+      }
+    }
+  }
+
+
+
+  private void markPresent(final String key)
+  {
+    synchronized (replicaLock)
+    {
+      if (presentKeys != null)
+      {
+        presentKeys.add(key);
+      }
+    }
+  }
+
+
+
+  private void purgeAbsentEntries()
+  {
+    final ArrayList<String> absentKeys = new ArrayList<String>();
+    synchronized (replicaLock)
+    {
+      if (presentKeys == null)
+      {
+        return;
+      }
+
+      for (final String key : entries.keySet())
+      {
+        if (! presentKeys.contains(key))
+        {
+          absentKeys.add(key);
+        }
+      }
+
+      presentKeys = new HashSet<String>();
+    }
+
+    for (final String key : absentKeys)
+    {
+      removeEntry(key);
+    }
+  }
+
+
+
+  /**
+   * Records a new cookie.  Cookies received during a refresh are only
+   * committed once it completes, since the replica is not consistent before
+   * then.
+   */
+  private void updateCookie(final ASN1OctetString newCookie,
+                            final boolean clear)
+          throws LDAPException
+  {
+    if (clear)
+    {
+      cookie = null;
+    }
+    else if (newCookie == null)
+    {
+      return;
+    }
+    else
+    {
+      cookie = newCookie.getValue();
+    }
+
+    if (clear || (! inRefresh))
+    {
+      synchronized (replicaLock)
+      {
+        committedCookie = cookie;
+      }
+
+      cookieWritePending = true;
+      writeCookieIfDue(clear);
+    }
+  }
+
+
+
+  /**
+   * Writes the committed cookie to the cookie store if it has changed since
+   * it was last written and either the cookie write interval has elapsed or
+   * the write is forced.
+   */
+  private void writeCookieIfDue(final boolean force)
+          throws LDAPException
+  {
+    if ((cookieStore == null) || (! cookieWritePending))
+    {
+      return;
+    }
+
+    final long now = System.currentTimeMillis();
+    if ((! force) &&
+        ((now - lastCookieWriteTime) < cookieWriteIntervalMillis))
+    {
+      return;
+    }
+
+    final byte[] c;
+    synchronized (replicaLock)
+    {
+      c = committedCookie;
+    }
+
+    cookieStore.writeCookie(c);
+    cookieWritePending  = false;
+    lastCookieWriteTime = now;
+  }
+
+
+
+  /**
+   * Stores an entry in the replica under the given key, replacing the entry
+   * with the previous key if there is one.
+   */
+  private void putEntry(final String previousKey, final String key,
+                        final ReadOnlyEntry entry)
+          throws LDAPException
+  {
+    ReadOnlyEntry oldEntry;
+    synchronized (replicaLock)
+    {
+      oldEntry = entries.remove(previousKey);
+      if (! previousKey.equals(key))
+      {
+        final ReadOnlyEntry replaced = entries.remove(key);
+        if (oldEntry == null)
+        {
+          oldEntry = replaced;
+        }
+      }
+
+      if (oldEntry != null)
+      {
+        keysByDN.remove(oldEntry.getParsedDN());
+      }
+
+      entries.put(key, entry);
+      keysByDN.put(entry.getParsedDN(), key);
+    }
+
+    for (final DirectorySyncListener l : listeners)
+    {
+      try
+      {
+        if (oldEntry == null)
+        {
+          l.entryAdded(entry);
+        }
+        else if (! oldEntry.equals(entry))
+        {
+          l.entryModified(oldEntry, entry);
+        }
+      }
+      catch (final RuntimeException re)
+      {
+        debugException(re);
+      }
+    }
+  }
+
+
+
+  private void removeEntry(final String key)
+  {
+    final ReadOnlyEntry oldEntry;
+    synchronized (replicaLock)
+    {
+      oldEntry = entries.remove(key);
+      if (oldEntry == null)
+      {
+        return;
+      }
+
+      try
+      {
+        keysByDN.remove(oldEntry.getParsedDN());
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+      }
+    }
+
+    for (final DirectorySyncListener l : listeners)
+    {
+      try
+      {
+        l.entryDeleted(oldEntry);
+      }
+      catch (final RuntimeException re)
+      {
+        debugException(re);
+      }
+    }
+  }
+
+
+
+  /**
+   * Re-keys the replica by normalized DN for use with a persistent search.
+   */
+  private void rekeyByDN()
+          throws LDAPException
+  {
+    synchronized (replicaLock)
+    {
+      final ArrayList<ReadOnlyEntry> entryList =
+           new ArrayList<ReadOnlyEntry>(entries.values());
+      entries.clear();
+      keysByDN.clear();
+      for (final ReadOnlyEntry e : entryList)
+      {
+        final String key = getDNKey(e.getDN());
+        entries.put(key, e);
+        keysByDN.put(e.getParsedDN(), key);
+      }
+    }
+  }
+
+
+
+  private static String getDNKey(final String dn)
+          throws LDAPException
+  {
+    return new DN(dn).toNormalizedString();
+  }
+
+
+
+  /**
+   * The listener that queues the responses to a synchronization search for
+   * processing by the synchronization thread, in the order in which they
+   * were received.
+   */
+  private static final class QueueListener
+          implements AsyncSearchResultListener, IntermediateResponseListener
+  {
+    private static final long serialVersionUID = 2893157726462958212L;
+
+
+
+    private final LinkedBlockingQueue<Object> queue;
+
+
+
+    private QueueListener(final LinkedBlockingQueue<Object> queue)
+    {
+      this.queue = queue;
+    }
+
+
+
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      queue.offer(searchEntry);
+    }
+
+
+
+    public void searchReferenceReturned(
+                     final SearchResultReference searchReference)
+    {
+      // Referrals are not followed.
+    }
+
+
+
+    public void intermediateResponseReturned(
+                     final IntermediateResponse intermediateResponse)
+    {
+      queue.offer(intermediateResponse);
+    }
+
+
+
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult searchResult)
+    {
+      queue.offer(searchResult);
+    }
+  }
+
+
+
+  /**
+   * The listener for the search used to reload the replica before processing
+   * changes from a persistent search.
+   */
+  private final class ReloadListener
+          implements SearchResultListener
+  {
+    private static final long serialVersionUID = -6415383014735829034L;
+
+
+
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      try
+      {
+        final String key = getDNKey(searchEntry.getDN());
+        markPresent(key);
+        putEntry(key, key, new ReadOnlyEntry(searchEntry));
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+      }
+    }
+
+
+
+    public void searchReferenceReturned(
+                     final SearchResultReference searchReference)
+    {
+      // Referrals are not followed.
+    }
+  }
+}
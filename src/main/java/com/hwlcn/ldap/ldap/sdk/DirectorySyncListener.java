@@ -0,0 +1,48 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import com.hwlcn.core.annotation.Extensible;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This interface defines a set of methods that will be invoked by a
+ * {@link DirectorySyncClient} as the entries in its local replica change.
+ * All methods are invoked by the synchronization thread, after the replica
+ * has been updated, and should return quickly.
+ */
+@Extensible()
+@ThreadSafety(level=ThreadSafetyLevel.INTERFACE_NOT_THREADSAFE)
+public interface DirectorySyncListener
+{
+
+  void entryAdded(final ReadOnlyEntry entry);
+
+
+  /**
+   * Indicates that an entry has changed.  If the entry was renamed, the DN of
+   * the old entry will differ from that of the new entry.
+   */
+  void entryModified(final ReadOnlyEntry oldEntry,
+                     final ReadOnlyEntry newEntry);
+
+
+  void entryDeleted(final ReadOnlyEntry entry);
+
+
+  /**
+   * Indicates that a refresh has completed, so the replica matches the
+   * server's content as of the time the refresh ended.
+   */
+  void refreshComplete();
+
+
+  /**
+   * Indicates that synchronization was interrupted, e.g. because the
+   * connection was lost.  The client will reconnect and refresh the replica.
+   */
+  void syncInterrupted(final LDAPException cause);
+}
@@ -0,0 +1,66 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.hwlcn.core.annotation.NotMutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This class holds the entries in the replica of a {@link DirectorySyncClient}
+ * together with the content synchronization cookie that they correspond to,
+ * as captured at a single point in time by
+ * {@link DirectorySyncClient#getSnapshot}.  The replica may include changes
+ * made after the cookie was issued, but never lacks one made before, so a
+ * client created from a snapshot that was saved and restored can resume from
+ * its cookie without missing any changes.
+ */
+@NotMutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class DirectorySyncSnapshot
+       implements Serializable
+{
+  private static final long serialVersionUID = 4806284711953427316L;
+
+
+
+  private final byte[] cookie;
+
+  private final List<ReadOnlyEntry> entries;
+
+
+
+  DirectorySyncSnapshot(final Collection<ReadOnlyEntry> entries,
+                        final byte[] cookie)
+  {
+    this.entries = Collections.unmodifiableList(
+         new ArrayList<ReadOnlyEntry>(entries));
+    this.cookie  = (cookie == null) ? null : cookie.clone();
+  }
+
+
+
+  public List<ReadOnlyEntry> getEntries()
+  {
+    return entries;
+  }
+
+
+
+  /**
+   * Retrieves the cookie from which synchronization of these entries may
+   * resume, or {@code null} if there is none.
+   */
+  public byte[] getCookie()
+  {
+    return (cookie == null) ? null : cookie.clone();
+  }
+}
@@ -385,6 +385,11 @@ public class Entry
     }
 
 
+    final Attribute getAttributeByKey(final String lowerName) {
+        return attributes.get(lowerName);
+    }
+
+
     public final Attribute getAttribute(final String attributeName) {
         return getAttribute(attributeName, schema);
     }
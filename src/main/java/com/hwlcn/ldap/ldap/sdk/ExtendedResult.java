@@ -119,7 +119,7 @@ public class ExtendedResult
             break;
 
           case TYPE_EXTENDED_RESPONSE_VALUE:
-            value = new ASN1OctetString(type, reader.readBytes());
+            value = reader.readOctetString();
             break;
 
           default:
@@ -0,0 +1,173 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides a {@link SyncCookieStore} that keeps the cookie in a
+ * file.  A new cookie is written to a temporary file that then replaces the
+ * existing one, so a failure while writing leaves the previous cookie intact.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class FileSyncCookieStore
+       implements SyncCookieStore
+{
+  private final File cookieFile;
+
+
+
+  public FileSyncCookieStore(final File cookieFile)
+  {
+    ensureNotNull(cookieFile);
+
+    this.cookieFile = cookieFile;
+  }
+
+
+
+  public File getCookieFile()
+  {
+    return cookieFile;
+  }
+
+
+
+  public synchronized byte[] readCookie()
+         throws LDAPException
+  {
+    if (! cookieFile.exists())
+    {
+      return null;
+    }
+
+    FileInputStream in = null;
+    try
+    {
+      in = new FileInputStream(cookieFile);
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[1024];
+      while (true)
+      {
+        final int bytesRead = in.read(buffer);
+        if (bytesRead < 0)
+        {
+          break;
+        }
+
+        out.write(buffer, 0, bytesRead);
+      }
+
+      return out.toByteArray();
+    }
+    catch (final IOException ioe)
+    {
+      debugException(ioe);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_SYNC_COOKIE_FILE_READ_FAILED.get(cookieFile.getAbsolutePath(),
+                getExceptionMessage(ioe)),
+           ioe);
+    }
+    finally
+    {
+      if (in != null)
+      {
+        try
+        {
+          in.close();
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+    }
+  }
+
+
+
+  public synchronized void writeCookie(final byte[] cookie)
+         throws LDAPException
+  {
+    if (cookie == null)
+    {
+      if (cookieFile.exists() && (! cookieFile.delete()))
+      {
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_SYNC_COOKIE_FILE_WRITE_FAILED.get(
+                  cookieFile.getAbsolutePath(),
+                  ERR_SYNC_COOKIE_FILE_CANNOT_REPLACE.get()));
+      }
+
+      return;
+    }
+
+    final File tempFile = new File(cookieFile.getAbsolutePath() + ".new");
+    FileOutputStream out = null;
+    try
+    {
+      out = new FileOutputStream(tempFile);
+      out.write(cookie);
+      out.getFD().sync();
+    }
+    catch (final IOException ioe)
+    {
+      debugException(ioe);
+      throw new LDAPException(ResultCode.LOCAL_ERROR,
+           ERR_SYNC_COOKIE_FILE_WRITE_FAILED.get(cookieFile.getAbsolutePath(),
+                getExceptionMessage(ioe)),
+           ioe);
+    }
+    finally
+    {
+      if (out != null)
+      {
+        try
+        {
+          out.close();
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+    }
+
+    // Some platforms will not rename a file over an existing one.
+    if (! tempFile.renameTo(cookieFile))
+    {
+      cookieFile.delete();
+      if (! tempFile.renameTo(cookieFile))
+      {
+        throw new LDAPException(ResultCode.LOCAL_ERROR,
+             ERR_SYNC_COOKIE_FILE_WRITE_FAILED.get(
+                  cookieFile.getAbsolutePath(),
+                  ERR_SYNC_COOKIE_FILE_CANNOT_REPLACE.get()));
+      }
+    }
+  }
+
+
+
+  @Override()
+  public String toString()
+  {
+    return "FileSyncCookieStore(cookieFile='" + cookieFile.getAbsolutePath() +
+           "')";
+  }
+}
@@ -2337,6 +2337,13 @@ attrNameLoop:
     return dnAttributes;
   }
 
+  public CompiledFilter compile(final Schema schema)
+         throws LDAPException
+  {
+    return new CompiledFilter(this, schema);
+  }
+
+
   public boolean matchesEntry(final Entry entry)
          throws LDAPException
   {
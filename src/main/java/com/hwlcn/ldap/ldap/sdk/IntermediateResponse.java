@@ -120,7 +120,7 @@ public class IntermediateResponse
             oid = reader.readString();
             break;
           case TYPE_INTERMEDIATE_RESPONSE_VALUE:
-            value = new ASN1OctetString(type, reader.readBytes());
+            value = reader.readOctetString();
             break;
           default:
         }
@@ -13,6 +13,7 @@ import javax.net.ssl.SSLContext;
 import com.hwlcn.ldap.asn1.ASN1Buffer;
 import com.hwlcn.ldap.ldap.protocol.LDAPMessage;
 import com.hwlcn.ldap.util.DebugType;
+import com.hwlcn.ldap.util.SynchronizedSocketFactory;
 import com.hwlcn.core.annotation.InternalUseOnly;
 
 import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
@@ -26,6 +27,10 @@ final class LDAPConnectionInternals
 
   private final AtomicInteger nextMessageID;
 
+  private final CoalescingMessageWriter messageWriter;
+
+  private final boolean multiplexed;
+
   private final boolean synchronousMode;
 
   private final int port;
@@ -68,10 +73,32 @@ final class LDAPConnectionInternals
     nextMessageID             = new AtomicInteger(0);
     synchronousMode           = options.useSynchronousMode();
 
+    if (options.useWriteCoalescing())
+    {
+      messageWriter = new CoalescingMessageWriter(
+           options.getMaxWriteCoalescingDelayMicros());
+    }
+    else
+    {
+      messageWriter = null;
+    }
+
+    final boolean useMultiplexedReader =
+         ((! synchronousMode) && options.useMultiplexedReader());
+    final SocketFactory connectSocketFactory;
+    if (useMultiplexedReader && isDefaultSocketFactory(socketFactory))
+    {
+      connectSocketFactory = ChannelSocketFactory.INSTANCE;
+    }
+    else
+    {
+      connectSocketFactory = socketFactory;
+    }
+
     try
     {
       final ConnectThread connectThread =
-           new ConnectThread(socketFactory, host, port);
+           new ConnectThread(connectSocketFactory, host, port);
       connectThread.start();
       socket = connectThread.getConnectedSocket(timeout);
     }
@@ -81,6 +108,8 @@ final class LDAPConnectionInternals
       throw new IOException(le.getMessage());
     }
 
+    multiplexed = (useMultiplexedReader && (socket.getChannel() != null));
+
     if (options.getReceiveBufferSize() > 0)
     {
       socket.setReceiveBufferSize(options.getReceiveBufferSize());
@@ -100,7 +129,14 @@ final class LDAPConnectionInternals
                          options.getLingerTimeoutSeconds());
       socket.setTcpNoDelay(options.useTCPNoDelay());
 
-      outputStream     = socket.getOutputStream();
+      if (multiplexed)
+      {
+        outputStream = new ChannelOutputStream(socket.getChannel());
+      }
+      else
+      {
+        outputStream = socket.getOutputStream();
+      }
       connectionReader = new LDAPConnectionReader(connection, this);
     }
     catch (IOException ioe)
@@ -120,11 +156,32 @@ final class LDAPConnectionInternals
   }
 
 
+  private static boolean isDefaultSocketFactory(final SocketFactory factory)
+  {
+    SocketFactory f = factory;
+    if (f instanceof SynchronizedSocketFactory)
+    {
+      f = ((SynchronizedSocketFactory) f).getWrappedSocketFactory();
+    }
+
+    return (f.getClass() == SocketFactory.getDefault().getClass());
+  }
+
+
+
   void startConnectionReader()
+       throws IOException
   {
     if (! synchronousMode)
     {
-      connectionReader.start();
+      if (multiplexed)
+      {
+        connectionReader.startMultiplexed();
+      }
+      else
+      {
+        connectionReader.start();
+      }
     }
   }
 
@@ -189,6 +246,12 @@ final class LDAPConnectionInternals
   void convertToTLS(final SSLContext sslContext)
        throws LDAPException
   {
+    final OutputStream os = outputStream;
+    if (os instanceof ChannelOutputStream)
+    {
+      ((ChannelOutputStream) os).closeWriteSelector();
+    }
+
     outputStream = connectionReader.doStartTLS(sslContext);
   }
 
@@ -282,8 +345,21 @@ final class LDAPConnectionInternals
     try
     {
       final OutputStream os = outputStream;
-      buffer.writeTo(os);
-      os.flush();
+      if (messageWriter == null)
+      {
+        buffer.writeTo(os);
+        os.flush();
+      }
+      else
+      {
+        if (debugEnabled(DebugType.ASN1))
+        {
+          debugASN1Write(buffer);
+        }
+
+        messageWriter.write(buffer.asByteBuffer(), buffer.zeroBufferOnClear(),
+             os);
+      }
     }
     catch (IOException ioe)
     {
@@ -418,6 +494,10 @@ final class LDAPConnectionInternals
     buffer.append(port);
     buffer.append(", connected=");
     buffer.append(socket.isConnected());
+    buffer.append(", multiplexed=");
+    buffer.append(multiplexed);
+    buffer.append(", writeCoalescing=");
+    buffer.append(messageWriter != null);
     buffer.append(", nextMessageID=");
     buffer.append(nextMessageID.get());
     buffer.append(')');
@@ -36,6 +36,12 @@ public final class LDAPConnectionOptions {
     static final boolean DEFAULT_USE_LINGER = true;
 
 
+    static final boolean DEFAULT_USE_MESSAGE_BUFFERS = false;
+
+
+    static final boolean DEFAULT_USE_MULTIPLEXED_READER = false;
+
+
     static final boolean DEFAULT_USE_REUSE_ADDRESS = true;
 
 
@@ -45,6 +51,8 @@ public final class LDAPConnectionOptions {
 
     static final boolean DEFAULT_USE_TCP_NODELAY = true;
 
+    static final boolean DEFAULT_USE_WRITE_COALESCING = false;
+
     static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 60000;
 
     static final int DEFAULT_LINGER_TIMEOUT_SECONDS = 5;
@@ -61,6 +69,8 @@ public final class LDAPConnectionOptions {
 
     static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 300000L;
 
+    static final long DEFAULT_MAX_WRITE_COALESCING_DELAY_MICROS = 0L;
+
     static final boolean DEFAULT_ALLOW_CONCURRENT_SOCKET_FACTORY_USE;
 
     static {
@@ -87,6 +97,10 @@ public final class LDAPConnectionOptions {
 
     private boolean useLinger;
 
+    private boolean useMessageBuffers;
+
+    private boolean useMultiplexedReader;
+
     private boolean useReuseAddress;
 
     private boolean usePooledSchema;
@@ -95,6 +109,8 @@ public final class LDAPConnectionOptions {
     private boolean useSynchronousMode;
 
     private boolean useTCPNoDelay;
+
+    private boolean useWriteCoalescing;
     private DisconnectHandler disconnectHandler;
 
     private int connectTimeout;
@@ -112,6 +128,8 @@ public final class LDAPConnectionOptions {
 
     private long responseTimeout;
 
+    private long maxWriteCoalescingDelay;
+
     private ReferralConnector referralConnector;
 
     private UnsolicitedNotificationHandler unsolicitedNotificationHandler;
@@ -124,17 +142,21 @@ public final class LDAPConnectionOptions {
         followReferrals = DEFAULT_FOLLOW_REFERRALS;
         useKeepAlive = DEFAULT_USE_KEEPALIVE;
         useLinger = DEFAULT_USE_LINGER;
+        useMessageBuffers = DEFAULT_USE_MESSAGE_BUFFERS;
+        useMultiplexedReader = DEFAULT_USE_MULTIPLEXED_READER;
         useReuseAddress = DEFAULT_USE_REUSE_ADDRESS;
         usePooledSchema = DEFAULT_USE_POOLED_SCHEMA;
         useSchema = DEFAULT_USE_SCHEMA;
         useSynchronousMode = DEFAULT_USE_SYNCHRONOUS_MODE;
         useTCPNoDelay = DEFAULT_USE_TCP_NODELAY;
+        useWriteCoalescing = DEFAULT_USE_WRITE_COALESCING;
         connectTimeout = DEFAULT_CONNECT_TIMEOUT_MILLIS;
         lingerTimeout = DEFAULT_LINGER_TIMEOUT_SECONDS;
         maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
         referralHopLimit = DEFAULT_REFERRAL_HOP_LIMIT;
         pooledSchemaTimeout = DEFAULT_POOLED_SCHEMA_TIMEOUT_MILLIS;
         responseTimeout = DEFAULT_RESPONSE_TIMEOUT_MILLIS;
+        maxWriteCoalescingDelay = DEFAULT_MAX_WRITE_COALESCING_DELAY_MICROS;
         receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
         sendBufferSize = DEFAULT_SEND_BUFFER_SIZE;
         disconnectHandler = null;
@@ -157,16 +179,20 @@ public final class LDAPConnectionOptions {
         o.followReferrals = followReferrals;
         o.useKeepAlive = useKeepAlive;
         o.useLinger = useLinger;
+        o.useMessageBuffers = useMessageBuffers;
+        o.useMultiplexedReader = useMultiplexedReader;
         o.useReuseAddress = useReuseAddress;
         o.usePooledSchema = usePooledSchema;
         o.useSchema = useSchema;
         o.useSynchronousMode = useSynchronousMode;
         o.useTCPNoDelay = useTCPNoDelay;
+        o.useWriteCoalescing = useWriteCoalescing;
         o.connectTimeout = connectTimeout;
         o.lingerTimeout = lingerTimeout;
         o.maxMessageSize = maxMessageSize;
         o.pooledSchemaTimeout = pooledSchemaTimeout;
         o.responseTimeout = responseTimeout;
+        o.maxWriteCoalescingDelay = maxWriteCoalescingDelay;
         o.referralConnector = referralConnector;
         o.referralHopLimit = referralHopLimit;
         o.disconnectHandler = disconnectHandler;
@@ -346,6 +372,59 @@ public final class LDAPConnectionOptions {
         this.useSynchronousMode = useSynchronousMode;
     }
 
+    public boolean useMultiplexedReader() {
+        return useMultiplexedReader;
+    }
+
+
+
+    public void setUseMultiplexedReader(final boolean useMultiplexedReader) {
+        this.useMultiplexedReader = useMultiplexedReader;
+    }
+
+
+
+    public boolean useWriteCoalescing() {
+        return useWriteCoalescing;
+    }
+
+
+
+    public void setUseWriteCoalescing(final boolean useWriteCoalescing) {
+        this.useWriteCoalescing = useWriteCoalescing;
+    }
+
+
+
+    public long getMaxWriteCoalescingDelayMicros() {
+        return maxWriteCoalescingDelay;
+    }
+
+
+
+    public void setMaxWriteCoalescingDelayMicros(
+                     final long maxWriteCoalescingDelay) {
+        if (maxWriteCoalescingDelay < 0) {
+            this.maxWriteCoalescingDelay = 0L;
+        } else {
+            this.maxWriteCoalescingDelay = maxWriteCoalescingDelay;
+        }
+    }
+
+
+
+    public boolean useMessageBuffers() {
+        return useMessageBuffers;
+    }
+
+
+
+    public void setUseMessageBuffers(final boolean useMessageBuffers) {
+        this.useMessageBuffers = useMessageBuffers;
+    }
+
+
+
     public boolean useTCPNoDelay() {
         return useTCPNoDelay;
     }
@@ -513,6 +592,14 @@ public final class LDAPConnectionOptions {
         buffer.append(pooledSchemaTimeout);
         buffer.append(", useSynchronousMode=");
         buffer.append(useSynchronousMode);
+        buffer.append(", useMultiplexedReader=");
+        buffer.append(useMultiplexedReader);
+        buffer.append(", useMessageBuffers=");
+        buffer.append(useMessageBuffers);
+        buffer.append(", useWriteCoalescing=");
+        buffer.append(useWriteCoalescing);
+        buffer.append(", maxWriteCoalescingDelayMicros=");
+        buffer.append(maxWriteCoalescingDelay);
         buffer.append(", useTCPNoDelay=");
         buffer.append(useTCPNoDelay);
         buffer.append(", captureConnectStackTrace=");
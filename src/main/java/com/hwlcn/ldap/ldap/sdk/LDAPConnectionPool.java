@@ -10,6 +10,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -125,6 +126,16 @@ import static com.hwlcn.ldap.util.Validator.*;
  * is part of a connection pool.  It is acceptable for the pool to maintain
  * connections which have been configured with StartTLS security prior to being
  * added to the pool (via the use of the {@link StartTLSPostConnectProcessor}).
+ * <BR><BR>
+ * <H2>Striped Checkout</H2>
+ * By default, available connections are held in a single blocking queue.  For
+ * pools that are shared by a very large number of threads, the locks that
+ * protect that queue can become a point of contention.  Pools created with
+ * {@code useStripedCheckout} set to {@code true} instead hold available
+ * connections in an array of slots that are checked out and released using
+ * compare-and-set operations, with each thread preferring a different slot.
+ * The maximum wait time, create-if-necessary, and health check behavior are the
+ * same in either mode.
  */
 @ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
 public final class LDAPConnectionPool
@@ -144,6 +155,8 @@ public final class LDAPConnectionPool
 
   private volatile boolean trySynchronousReadDuringHealthCheck;
 
+  private final boolean useStripedCheckout;
+
   private final BindRequest bindRequest;
 
   private final int numConnections;
@@ -155,7 +168,7 @@ public final class LDAPConnectionPool
 
   private final LDAPConnectionPoolStatistics poolStatistics;
 
-  private final LinkedBlockingQueue<LDAPConnection> availableConnections;
+  private final BlockingQueue<LDAPConnection> availableConnections;
 
   private volatile long healthCheckInterval;
 
@@ -230,6 +243,21 @@ public final class LDAPConnectionPool
                             final PostConnectProcessor postConnectProcessor,
                             final boolean throwOnConnectFailure)
          throws LDAPException
+  {
+    this(connection, initialConnections, maxConnections, initialConnectThreads,
+         postConnectProcessor, throwOnConnectFailure, false);
+  }
+
+
+
+  public LDAPConnectionPool(final LDAPConnection connection,
+                            final int initialConnections,
+                            final int maxConnections,
+                            final int initialConnectThreads,
+                            final PostConnectProcessor postConnectProcessor,
+                            final boolean throwOnConnectFailure,
+                            final boolean useStripedCheckout)
+         throws LDAPException
   {
     ensureNotNull(connection);
     ensureTrue(initialConnections >= 1,
@@ -239,6 +267,7 @@ public final class LDAPConnectionPool
                     "than maxConnections.");
 
     this.postConnectProcessor = postConnectProcessor;
+    this.useStripedCheckout   = useStripedCheckout;
 
     trySynchronousReadDuringHealthCheck = true;
     healthCheck               = new LDAPConnectionPoolHealthCheck();
@@ -249,8 +278,7 @@ public final class LDAPConnectionPool
     retryOperationTypes       = new AtomicReference<Set<OperationType>>(
          Collections.unmodifiableSet(EnumSet.noneOf(OperationType.class)));
     numConnections            = maxConnections;
-    availableConnections      =
-         new LinkedBlockingQueue<LDAPConnection>(numConnections);
+    availableConnections      = createAvailableConnectionsQueue();
 
     if (! connection.isConnected())
     {
@@ -415,6 +443,23 @@ public final class LDAPConnectionPool
                             final PostConnectProcessor postConnectProcessor,
                             final boolean throwOnConnectFailure)
          throws LDAPException
+  {
+    this(serverSet, bindRequest, initialConnections, maxConnections,
+         initialConnectThreads, postConnectProcessor, throwOnConnectFailure,
+         false);
+  }
+
+
+
+  public LDAPConnectionPool(final ServerSet serverSet,
+                            final BindRequest bindRequest,
+                            final int initialConnections,
+                            final int maxConnections,
+                            final int initialConnectThreads,
+                            final PostConnectProcessor postConnectProcessor,
+                            final boolean throwOnConnectFailure,
+                            final boolean useStripedCheckout)
+         throws LDAPException
   {
     ensureNotNull(serverSet);
     ensureTrue(initialConnections >= 0,
@@ -429,6 +474,7 @@ public final class LDAPConnectionPool
     this.serverSet            = serverSet;
     this.bindRequest          = bindRequest;
     this.postConnectProcessor = postConnectProcessor;
+    this.useStripedCheckout   = useStripedCheckout;
 
     healthCheck               = new LDAPConnectionPoolHealthCheck();
     healthCheckInterval       = DEFAULT_HEALTH_CHECK_INTERVAL;
@@ -483,8 +529,7 @@ public final class LDAPConnectionPool
 
     numConnections = maxConnections;
 
-    availableConnections =
-         new LinkedBlockingQueue<LDAPConnection>(numConnections);
+    availableConnections = createAvailableConnectionsQueue();
     availableConnections.addAll(connList);
 
     failedReplaceCount        =
@@ -502,6 +547,20 @@ public final class LDAPConnectionPool
 
 
 
+  private BlockingQueue<LDAPConnection> createAvailableConnectionsQueue()
+  {
+    if (useStripedCheckout)
+    {
+      return new StripedConnectionQueue(numConnections);
+    }
+    else
+    {
+      return new LinkedBlockingQueue<LDAPConnection>(numConnections);
+    }
+  }
+
+
+
   LDAPConnection createConnection()
                  throws LDAPException
   {
@@ -830,6 +889,17 @@ public final class LDAPConnectionPool
   @Override()
   public LDAPConnection getConnection()
          throws LDAPException
+  {
+    final long startTime = System.nanoTime();
+    final LDAPConnection conn = checkOutConnection();
+    poolStatistics.recordCheckoutWaitTime(System.nanoTime() - startTime);
+    return conn;
+  }
+
+
+
+  private LDAPConnection checkOutConnection()
+         throws LDAPException
   {
     if (closed)
     {
@@ -1164,8 +1234,8 @@ public final class LDAPConnectionPool
 
   private boolean connectionIsExpired(final LDAPConnection connection)
   {
-
-    if (maxConnectionAge <= 0L)
+    final boolean replace = serverSet.shouldReplaceConnection(connection);
+    if ((maxConnectionAge <= 0L) && (! replace))
     {
       return false;
     }
@@ -1177,6 +1247,11 @@ public final class LDAPConnectionPool
       return false;
     }
 
+    if (replace)
+    {
+      return true;
+    }
+
     final long connectionAge = currentTime - connection.getConnectTime();
     return (connectionAge > maxConnectionAge);
   }
@@ -1202,6 +1277,13 @@ public final class LDAPConnectionPool
 
 
 
+  public boolean useStripedCheckout()
+  {
+    return useStripedCheckout;
+  }
+
+
+
   public boolean getCreateIfNecessary()
   {
     return createIfNecessary;
@@ -1589,6 +1671,8 @@ public final class LDAPConnectionPool
     serverSet.toString(buffer);
     buffer.append(", maxConnections=");
     buffer.append(numConnections);
+    buffer.append(", useStripedCheckout=");
+    buffer.append(useStripedCheckout);
     buffer.append(')');
   }
 }
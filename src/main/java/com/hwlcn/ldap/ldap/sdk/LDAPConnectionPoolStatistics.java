@@ -7,6 +7,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import com.hwlcn.core.annotation.Mutable;
 import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.LatencyHistogram;
 import com.hwlcn.ldap.util.ThreadSafetyLevel;
 
 
@@ -45,6 +46,8 @@ public final class LDAPConnectionPoolStatistics
 
   private final AtomicLong numSuccessfulConnectionAttempts;
 
+  private final LatencyHistogram checkoutWaitTimes;
+
   private final AbstractConnectionPool pool;
 
 
@@ -65,6 +68,7 @@ public final class LDAPConnectionPoolStatistics
     numSuccessfulCheckoutsWithoutWait   = new AtomicLong(0L);
     numFailedCheckouts                  = new AtomicLong(0L);
     numReleasedValid                    = new AtomicLong(0L);
+    checkoutWaitTimes                   = new LatencyHistogram();
   }
 
 
@@ -83,6 +87,7 @@ public final class LDAPConnectionPoolStatistics
     numSuccessfulCheckoutsWithoutWait.set(0L);
     numFailedCheckouts.set(0L);
     numReleasedValid.set(0L);
+    checkoutWaitTimes.reset();
   }
 
 
@@ -223,6 +228,24 @@ public final class LDAPConnectionPoolStatistics
   }
 
 
+
+  /**
+   * Retrieves a histogram of the time spent obtaining connections for
+   * successful checkouts, optionally clearing the values recorded so far.
+   */
+  public LatencyHistogram getCheckoutWaitTimeHistogram(final boolean reset)
+  {
+    return checkoutWaitTimes.getSnapshot(reset);
+  }
+
+
+
+  void recordCheckoutWaitTime(final long waitTimeNanos)
+  {
+    checkoutWaitTimes.record(waitTimeNanos);
+  }
+
+
   public long getNumReleasedValid()
   {
     return numReleasedValid.get();
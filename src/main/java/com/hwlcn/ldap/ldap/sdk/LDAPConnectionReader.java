@@ -10,6 +10,7 @@ import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -45,6 +46,8 @@ final class LDAPConnectionReader
 
   private volatile boolean closeRequested;
 
+  private volatile ChannelResponseDecoder channelDecoder;
+
   private final ConcurrentHashMap<Integer,ResponseAcceptor> acceptorMap;
 
   private volatile Exception startTLSException;
@@ -55,6 +58,8 @@ final class LDAPConnectionReader
 
   private final LDAPConnection connection;
 
+  private volatile MultiplexedConnectionReader multiplexedReader;
+
   private volatile Socket socket;
 
 
@@ -150,6 +155,144 @@ final class LDAPConnectionReader
     return acceptorMap.size();
   }
 
+
+
+  void startMultiplexed()
+       throws IOException
+  {
+    channelDecoder = new ChannelResponseDecoder(connection.getHostPort(),
+         connection.getConnectionOptions().getMaxMessageSize());
+    multiplexedReader =
+         MultiplexedConnectionReader.register(this, socket.getChannel());
+  }
+
+
+
+  boolean readFromChannel(final SocketChannel channel)
+  {
+    if (closeRequested)
+    {
+      return false;
+    }
+
+    try
+    {
+      final int bytesRead = channelDecoder.read(channel);
+      while (! closeRequested)
+      {
+        final LDAPResponse response =
+             channelDecoder.nextResponse(connection.getCachedSchema());
+        if (response == null)
+        {
+          break;
+        }
+
+        processResponse(response);
+      }
+
+      if (bytesRead < 0)
+      {
+        multiplexedReadFailed(null);
+        return false;
+      }
+
+      return (! closeRequested);
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+      multiplexedReadFailed(e);
+      return false;
+    }
+  }
+
+
+
+  void multiplexedReadFailed(final Exception e)
+  {
+    final boolean reconnect;
+    final String message;
+    if (e == null)
+    {
+      connection.setDisconnectInfo(
+           DisconnectType.SERVER_CLOSED_WITHOUT_NOTICE, null, null);
+      message = null;
+      reconnect = ((! closeRequested) && (! connection.unbindRequestSent()) &&
+           connection.getConnectionOptions().autoReconnect());
+    }
+    else
+    {
+      final Throwable t;
+      final String disconnectMessage;
+      if (e instanceof LDAPException)
+      {
+        t = e.getCause();
+        disconnectMessage = e.getMessage();
+      }
+      else
+      {
+        t = e;
+        disconnectMessage = null;
+      }
+
+      Level debugLevel = Level.SEVERE;
+      if (t == null)
+      {
+        connection.setDisconnectInfo(DisconnectType.DECODE_ERROR,
+             disconnectMessage, null);
+        message = e.getMessage();
+        debugLevel = Level.WARNING;
+      }
+      else if (t instanceof IOException)
+      {
+        connection.setDisconnectInfo(DisconnectType.IO_ERROR,
+             disconnectMessage, t);
+        message = ERR_READER_CLOSING_DUE_TO_IO_EXCEPTION.get(
+             connection.getHostPort(), getExceptionMessage(t));
+        debugLevel = Level.WARNING;
+      }
+      else if (t instanceof ASN1Exception)
+      {
+        connection.setDisconnectInfo(DisconnectType.DECODE_ERROR,
+             disconnectMessage, t);
+        message = ERR_READER_CLOSING_DUE_TO_ASN1_EXCEPTION.get(
+             connection.getHostPort(), getExceptionMessage(t));
+      }
+      else
+      {
+        connection.setDisconnectInfo(DisconnectType.LOCAL_ERROR,
+             disconnectMessage, t);
+        message = ERR_READER_CLOSING_DUE_TO_EXCEPTION.get(
+             connection.getHostPort(), getExceptionMessage(t));
+      }
+
+      if (! (closeRequested || connection.closeRequested()))
+      {
+        debug(debugLevel, DebugType.LDAP, message, t);
+      }
+
+      reconnect = ((! closeRequested) &&
+           connection.getConnectionOptions().autoReconnect());
+    }
+
+    if (reconnect && (! connection.closeRequested()))
+    {
+      try
+      {
+        connection.setNeedsReconnect();
+      }
+      catch (final Exception e2)
+      {
+        debugException(e2);
+      }
+    }
+    else
+    {
+      closeRequested = true;
+      closeInternal(true, message);
+    }
+  }
+
   @Override()
   public void run()
   {
@@ -165,7 +308,8 @@ final class LDAPConnectionReader
         try
         {
           response = LDAPMessage.readLDAPResponseFrom(asn1StreamReader, true,
-               connection.getCachedSchema());
+               connection.getCachedSchema(),
+               connection.getConnectionOptions().useMessageBuffers());
         }
         catch (LDAPException le)
         {
@@ -343,129 +487,7 @@ final class LDAPConnectionReader
           }
         }
 
-        debugLDAPResult(response, connection);
-
-        final ResponseAcceptor responseAcceptor;
-        if ((response instanceof SearchResultEntry) ||
-            (response instanceof SearchResultReference))
-        {
-          responseAcceptor = acceptorMap.get(response.getMessageID());
-        }
-        else if (response instanceof IntermediateResponse)
-        {
-          final IntermediateResponse ir = (IntermediateResponse) response;
-          responseAcceptor = acceptorMap.get(response.getMessageID());
-           IntermediateResponseListener l = null;
-          if (responseAcceptor instanceof LDAPRequest)
-          {
-            final LDAPRequest r = (LDAPRequest) responseAcceptor;
-            l = r.getIntermediateResponseListener();
-
-          }
-          else if (responseAcceptor instanceof IntermediateResponseListener)
-          {
-            l = (IntermediateResponseListener) responseAcceptor;
-          }
-
-          if (l == null)
-          {
-            debug(Level.WARNING, DebugType.LDAP,
-                  WARN_INTERMEDIATE_RESPONSE_WITH_NO_LISTENER.get(
-                       String.valueOf(ir)));
-          }
-          else
-          {
-            try
-            {
-              l.intermediateResponseReturned(ir);
-            }
-            catch (Exception e)
-            {
-              debugException(e);
-            }
-          }
-          continue;
-        }
-        else
-        {
-          responseAcceptor = acceptorMap.remove(response.getMessageID());
-        }
-
-
-        if (responseAcceptor == null)
-        {
-          if ((response instanceof ExtendedResult) &&
-              (response.getMessageID() == 0))
-          {
-             ExtendedResult extendedResult = (ExtendedResult) response;
-
-            final String oid = extendedResult.getOID();
-            if (NoticeOfDisconnectionExtendedResult.
-                     NOTICE_OF_DISCONNECTION_RESULT_OID.equals(oid))
-            {
-              extendedResult = new NoticeOfDisconnectionExtendedResult(
-                                        extendedResult);
-              connection.setDisconnectInfo(
-                   DisconnectType.SERVER_CLOSED_WITH_NOTICE,
-                   extendedResult.getDiagnosticMessage(), null);
-            }
-            else if ("1.3.6.1.4.1.30221.2.6.5".equals(oid))
-            {
-              try
-              {
-                final Class<?> c = Class.forName("com.hwlcn.ldap.ldap.sdk." +
-                     "unboundidds.extensions." +
-                     "InteractiveTransactionAbortedExtendedResult");
-                final Constructor<?> ctor =
-                     c.getConstructor(ExtendedResult.class);
-                extendedResult =
-                     (ExtendedResult) ctor.newInstance(extendedResult);
-              }
-              catch (Exception e)
-              {
-               debugException(e);
-              }
-            }
-
-            final UnsolicitedNotificationHandler handler =
-                 connection.getConnectionOptions().
-                      getUnsolicitedNotificationHandler();
-            if (handler == null)
-            {
-              if (debugEnabled(DebugType.LDAP))
-              {
-                debug(Level.WARNING, DebugType.LDAP,
-                     WARN_READER_UNHANDLED_UNSOLICITED_NOTIFICATION.get(
-                          response));
-              }
-            }
-            else
-            {
-              handler.handleUnsolicitedNotification(connection,
-                                                    extendedResult);
-            }
-            continue;
-          }
-
-          if (debugEnabled(DebugType.LDAP))
-          {
-            debug(Level.WARNING, DebugType.LDAP,
-                  WARN_READER_NO_ACCEPTOR.get(response));
-          }
-          continue;
-        }
-
-        try
-        {
-          responseAcceptor.responseReceived(response);
-        }
-        catch (LDAPException le)
-        {
-          debugException(le);
-          debug(Level.WARNING, DebugType.LDAP,
-                ERR_READER_ACCEPTOR_ERROR.get(String.valueOf(response),
-                     connection.getHostPort(), getExceptionMessage(le)), le);
-        }
+        processResponse(response);
       }
       catch (Exception e)
       {
@@ -540,6 +562,134 @@ final class LDAPConnectionReader
 
 
 
+  private void processResponse(final LDAPResponse response)
+  {
+    debugLDAPResult(response, connection);
+
+    final ResponseAcceptor responseAcceptor;
+    if ((response instanceof SearchResultEntry) ||
+        (response instanceof SearchResultReference))
+    {
+      responseAcceptor = acceptorMap.get(response.getMessageID());
+    }
+    else if (response instanceof IntermediateResponse)
+    {
+      final IntermediateResponse ir = (IntermediateResponse) response;
+      responseAcceptor = acceptorMap.get(response.getMessageID());
+       IntermediateResponseListener l = null;
+      if (responseAcceptor instanceof LDAPRequest)
+      {
+        final LDAPRequest r = (LDAPRequest) responseAcceptor;
+        l = r.getIntermediateResponseListener();
+
+      }
+      else if (responseAcceptor instanceof IntermediateResponseListener)
+      {
+        l = (IntermediateResponseListener) responseAcceptor;
+      }
+
+      if (l == null)
+      {
+        debug(Level.WARNING, DebugType.LDAP,
+              WARN_INTERMEDIATE_RESPONSE_WITH_NO_LISTENER.get(
+                   String.valueOf(ir)));
+      }
+      else
+      {
+        try
+        {
+          l.intermediateResponseReturned(ir);
+        }
+        catch (Exception e)
+        {
+          debugException(e);
+        }
+      }
+      return;
+    }
+    else
+    {
+      responseAcceptor = acceptorMap.remove(response.getMessageID());
+    }
+
+
+    if (responseAcceptor == null)
+    {
+      if ((response instanceof ExtendedResult) &&
+          (response.getMessageID() == 0))
+      {
+         ExtendedResult extendedResult = (ExtendedResult) response;
+
+        final String oid = extendedResult.getOID();
+        if (NoticeOfDisconnectionExtendedResult.
+                 NOTICE_OF_DISCONNECTION_RESULT_OID.equals(oid))
+        {
+          extendedResult = new NoticeOfDisconnectionExtendedResult(
+                                    extendedResult);
+          connection.setDisconnectInfo(
+               DisconnectType.SERVER_CLOSED_WITH_NOTICE,
+               extendedResult.getDiagnosticMessage(), null);
+        }
+        else if ("1.3.6.1.4.1.30221.2.6.5".equals(oid))
+        {
+          try
+          {
+            final Class<?> c = Class.forName("com.hwlcn.ldap.ldap.sdk." +
+                 "unboundidds.extensions." +
+                 "InteractiveTransactionAbortedExtendedResult");
+            final Constructor<?> ctor =
+                 c.getConstructor(ExtendedResult.class);
+            extendedResult =
+                 (ExtendedResult) ctor.newInstance(extendedResult);
+          }
+          catch (Exception e)
+          {
+           debugException(e);
+          }
+        }
+
+        final UnsolicitedNotificationHandler handler =
+             connection.getConnectionOptions().
+                  getUnsolicitedNotificationHandler();
+        if (handler == null)
+        {
+          if (debugEnabled(DebugType.LDAP))
+          {
+            debug(Level.WARNING, DebugType.LDAP,
+                 WARN_READER_UNHANDLED_UNSOLICITED_NOTIFICATION.get(
+                      response));
+          }
+        }
+        else
+        {
+          handler.handleUnsolicitedNotification(connection,
+                                                extendedResult);
+        }
+        return;
+      }
+
+      if (debugEnabled(DebugType.LDAP))
+      {
+        debug(Level.WARNING, DebugType.LDAP,
+              WARN_READER_NO_ACCEPTOR.get(response));
+      }
+      return;
+    }
+
+    try
+    {
+      responseAcceptor.responseReceived(response);
+    }
+    catch (LDAPException le)
+    {
+      debugException(le);
+      debug(Level.WARNING, DebugType.LDAP,
+            ERR_READER_ACCEPTOR_ERROR.get(String.valueOf(response),
+                 connection.getHostPort(), getExceptionMessage(le)), le);
+    }
+  }
+
+
 
   LDAPResponse readResponse(final int messageID)
                throws LDAPException
@@ -549,7 +699,8 @@ final class LDAPConnectionReader
       try
       {
         final LDAPResponse response = LDAPMessage.readLDAPResponseFrom(
-             asn1StreamReader, false, connection.getCachedSchema());
+             asn1StreamReader, false, connection.getCachedSchema(),
+             connection.getConnectionOptions().useMessageBuffers());
         if (response == null)
         {
           return new ConnectionClosedResponse(ResultCode.SERVER_DOWN, null);
@@ -737,10 +888,22 @@ final class LDAPConnectionReader
   OutputStream doStartTLS(final SSLContext sslContext)
        throws LDAPException
   {
-    if (connection.synchronousMode())
+    final MultiplexedConnectionReader mr = multiplexedReader;
+    if (connection.synchronousMode() || (mr != null))
     {
       try
       {
+        if (mr != null)
+        {
+          mr.detach(socket.getChannel());
+          multiplexedReader = null;
+          if (channelDecoder.hasBufferedData())
+          {
+            throw new IOException(ERR_CONNREADER_STARTTLS_PENDING_DATA.get(
+                 connection.getHostPort()));
+          }
+        }
+
         final int connectTimeout = connection.getConnectionOptions().
              getConnectTimeoutMillis();
         if (connectTimeout > 0)
@@ -784,6 +947,12 @@ final class LDAPConnectionReader
         socket = sslSocket;
         final OutputStream outputStream = startTLSOutputStream;
         startTLSOutputStream = null;
+
+        if (mr != null)
+        {
+          start();
+        }
+
         return outputStream;
       }
       catch (Exception e)
@@ -867,6 +1036,12 @@ final class LDAPConnectionReader
    private void closeInternal(final boolean notifyConnection,
                               final String message)
    {
+     final MultiplexedConnectionReader mr = multiplexedReader;
+     if (mr != null)
+     {
+       mr.forget(socket.getChannel());
+     }
+
      final InputStream is = inputStream;
      inputStream = null;
 
@@ -6,9 +6,11 @@ package com.hwlcn.ldap.ldap.sdk;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.hwlcn.core.annotation.Mutable;
 import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.LatencyHistogram;
 import com.hwlcn.ldap.util.ThreadSafetyLevel;
 
 
@@ -81,6 +83,8 @@ private final AtomicLong numSearchReferenceResponses;
 
   private final AtomicLong totalSearchResponseTime;
 
+  private final AtomicReferenceArray<LatencyHistogram> responseTimeHistograms;
+
 
 
   public LDAPConnectionStatistics()
@@ -115,6 +119,9 @@ private final AtomicLong numSearchReferenceResponses;
     totalModifyResponseTime     = new AtomicLong(0L);
     totalModifyDNResponseTime   = new AtomicLong(0L);
     totalSearchResponseTime     = new AtomicLong(0L);
+
+    responseTimeHistograms = new AtomicReferenceArray<LatencyHistogram>(
+         OperationType.values().length);
   }
 
 
@@ -151,6 +158,11 @@ private final AtomicLong numSearchReferenceResponses;
     totalModifyResponseTime.set(0L);
     totalModifyDNResponseTime.set(0L);
     totalSearchResponseTime.set(0L);
+
+    for (int i=0; i < responseTimeHistograms.length(); i++)
+    {
+      responseTimeHistograms.set(i, null);
+    }
   }
 
 
@@ -225,6 +237,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalAddResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.ADD, responseTime);
     }
   }
 
@@ -301,6 +314,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalBindResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.BIND, responseTime);
     }
   }
 
@@ -378,6 +392,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalCompareResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.COMPARE, responseTime);
     }
   }
 
@@ -452,6 +467,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalDeleteResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.DELETE, responseTime);
     }
   }
 
@@ -534,6 +550,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalExtendedResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.EXTENDED, responseTime);
     }
   }
 
@@ -610,6 +627,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalModifyResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.MODIFY, responseTime);
     }
   }
 
@@ -688,6 +706,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalModifyDNResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.MODIFY_DN, responseTime);
     }
   }
 
@@ -782,6 +801,7 @@ private final AtomicLong numSearchReferenceResponses;
     if (responseTime > 0)
     {
       totalSearchResponseTime.addAndGet(responseTime);
+      recordResponseTime(OperationType.SEARCH, responseTime);
     }
   }
 
@@ -1004,4 +1024,43 @@ private final AtomicLong numSearchReferenceResponses;
 
     buffer.append(')');
   }
+
+
+
+  /**
+   * Retrieves a histogram of the response times for operations of the
+   * specified type processed on the connection, optionally clearing the
+   * values recorded so far.  Histograms from multiple connections may be
+   * merged with {@link LatencyHistogram#add}.
+   */
+  public LatencyHistogram getResponseTimeHistogram(
+                               final OperationType operationType,
+                               final boolean reset)
+  {
+    final LatencyHistogram h =
+         responseTimeHistograms.get(operationType.ordinal());
+    if (h == null)
+    {
+      return new LatencyHistogram();
+    }
+
+    return h.getSnapshot(reset);
+  }
+
+
+
+  private void recordResponseTime(final OperationType operationType,
+                                  final long responseTime)
+  {
+    final int i = operationType.ordinal();
+    LatencyHistogram h = responseTimeHistograms.get(i);
+    while (h == null)
+    {
+      // Histograms are only created for the operation types actually used.
+      responseTimeHistograms.compareAndSet(i, null, new LatencyHistogram());
+      h = responseTimeHistograms.get(i);
+    }
+
+    h.record(responseTime);
+  }
 }
@@ -220,6 +220,20 @@ public enum LDAPMessages
 
 
 
+  /**
+   * Unable to decode an LDAP message read from server {0} because it indicated a length of {1,number,0} bytes, which is larger than the maximum of {2,number,0} bytes that the client has been configured to accept.
+   */
+  ERR_CONNREADER_CHANNEL_LENGTH_EXCEEDS_MAX("Unable to decode an LDAP message read from server {0} because it indicated a length of {1,number,0} bytes, which is larger than the maximum of {2,number,0} bytes that the client has been configured to accept."),
+
+
+
+  /**
+   * Unable to decode an LDAP message read from server {0} because it has a multi-byte length with {1,number,0} length bytes, which is more than the maximum of four.
+   */
+  ERR_CONNREADER_CHANNEL_LENGTH_TOO_LONG("Unable to decode an LDAP message read from server {0} because it has a multi-byte length with {1,number,0} length bytes, which is more than the maximum of four."),
+
+
+
   /**
    * The specified message ID is already registered with another response acceptor.
    */
@@ -241,6 +255,13 @@ public enum LDAPMessages
 
 
 
+  /**
+   * Unable to convert the connection to server {0} to use TLS because data has already been received from that server that has not yet been processed.
+   */
+  ERR_CONNREADER_STARTTLS_PENDING_DATA("Unable to convert the connection to server {0} to use TLS because data has already been received from that server that has not yet been processed."),
+
+
+
   /**
    * Unable to authenticate to remote system {0}:{1,number,0} because the authentication method used does not support rebinding.
    */
@@ -1333,6 +1354,48 @@ public enum LDAPMessages
 
 
 
+  /**
+   * The provided search request already includes a simple paged results or virtual list view request control.  The search request provided to a paged LDAP entry source must not include either of these controls.
+   */
+  ERR_PAGED_ENTRY_SOURCE_REQUEST_HAS_PAGING_CONTROL("The provided search request already includes a simple paged results or virtual list view request control.  The search request provided to a paged LDAP entry source must not include either of these controls."),
+
+
+
+  /**
+   * The server did not return the requested page of entries using the virtual list view control.  The virtual list view result code was {0}.
+   */
+  ERR_PAGED_ENTRY_SOURCE_VLV_FAILED("The server did not return the requested page of entries using the virtual list view control.  The virtual list view result code was {0}."),
+
+
+
+  /**
+   * The connection used to process the request was closed before a response was received.
+   */
+  ERR_POOL_BULK_WRITE_CONNECTION_CLOSED("The connection used to process the request was closed before a response was received."),
+
+
+
+  /**
+   * The request was not sent because the thread processing the bulk write requests was interrupted.
+   */
+  ERR_POOL_BULK_WRITE_INTERRUPTED("The request was not sent because the thread processing the bulk write requests was interrupted."),
+
+
+
+  /**
+   * The transaction was aborted because the operation with message ID {0,number,0} failed with result code {1}:  {2}
+   */
+  ERR_POOL_BULK_WRITE_TXN_ABORTED("The transaction was aborted because the operation with message ID {0,number,0} failed with result code {1}:  {2}"),
+
+
+
+  /**
+   * Only add, delete, modify, and modify DN requests may be processed as bulk writes, but a {0} request was provided.
+   */
+  ERR_POOL_BULK_WRITE_UNSUPPORTED_REQUEST("Only add, delete, modify, and modify DN requests may be processed as bulk writes, but a {0} request was provided."),
+
+
+
   /**
    * This connection pool has been closed.
    */
@@ -1620,6 +1683,41 @@ public enum LDAPMessages
 
 
 
+  /**
+   * The provided search request has a search result listener.  The search request provided to a directory sync client must not have a search result listener associated with it.
+   */
+  ERR_SYNC_CLIENT_REQUEST_HAS_LISTENER("The provided search request has a search result listener.  The search request provided to a directory sync client must not have a search result listener associated with it."),
+
+
+
+  /**
+   * The provided search request already includes a content synchronization or persistent search request control.
+   */
+  ERR_SYNC_CLIENT_REQUEST_HAS_SYNC_CONTROL("The provided search request already includes a content synchronization or persistent search request control."),
+
+
+
+  /**
+   * The existing cookie file could not be replaced.
+   */
+  ERR_SYNC_COOKIE_FILE_CANNOT_REPLACE("The existing cookie file could not be replaced."),
+
+
+
+  /**
+   * An error occurred while attempting to read the synchronization cookie from file {0}:  {1}
+   */
+  ERR_SYNC_COOKIE_FILE_READ_FAILED("An error occurred while attempting to read the synchronization cookie from file {0}:  {1}"),
+
+
+
+  /**
+   * An error occurred while attempting to write the synchronization cookie to file {0}:  {1}
+   */
+  ERR_SYNC_COOKIE_FILE_WRITE_FAILED("An error occurred while attempting to write the synchronization cookie to file {0}:  {1}"),
+
+
+
   /**
    * Too many referrals were encountered while attempting to process the operation.
    */
@@ -0,0 +1,827 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.SocketFactory;
+
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides a server set implementation that selects servers based
+ * on how quickly they have been responding.  It keeps an exponentially
+ * weighted moving average of the operation response time and a count of the
+ * outstanding requests for each server, fed from the
+ * {@link LDAPConnectionStatistics} of the connections it has created.  Each
+ * new connection is established to the better of two randomly chosen servers
+ * (the "power of two choices"), skipping servers that are considerably slower
+ * than the fastest one.
+ * <BR><BR>
+ * When used with an {@link LDAPConnectionPool}, connections to a degraded
+ * server are closed and replaced with connections to a healthier server as
+ * they are released back to the pool, at most one every
+ * {@link #getDrainIntervalMillis} milliseconds, so load moves away from a
+ * slow replica without waiting for it to fail outright.  The response time of
+ * a server that is no longer in use decays over time so that it will be
+ * tried again once it has had a chance to recover.
+ * <BR><BR>
+ * <H2>Example</H2>
+ * The following example demonstrates the process for creating a latency-aware
+ * server set for three replicas and using it to back a connection pool:
+ * <PRE>
+ *   String[] addresses =
+ *   {
+ *     "ds1.example.com",
+ *     "ds2.example.com",
+ *     "ds3.example.com"
+ *   };
+ *   int[] ports =
+ *   {
+ *     389,
+ *     389,
+ *     389
+ *   };
+ *   LatencyAwareServerSet serverSet =
+ *        new LatencyAwareServerSet(addresses, ports);
+ *   LDAPConnectionPool pool =
+ *        new LDAPConnectionPool(serverSet, bindRequest, 10);
+ * </PRE>
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LatencyAwareServerSet
+       extends ServerSet
+{
+  static final double DEFAULT_DEGRADED_LATENCY_FACTOR = 3.0d;
+
+  static final long DEFAULT_MIN_DEGRADED_LATENCY_MILLIS = 5L;
+
+  static final long DEFAULT_DRAIN_INTERVAL_MILLIS = 1000L;
+
+  static final long DEFAULT_LATENCY_HALF_LIFE_MILLIS = 30000L;
+
+  static final double DEFAULT_LATENCY_WEIGHT = 0.1d;
+
+  private static final double FAILURE_LATENCY_NANOS = 1000000000.0d;
+
+  private static final long MIN_RESPONSES = 10L;
+
+
+
+  private final int[] ports;
+
+  private final LDAPConnectionOptions connectionOptions;
+
+  private final SocketFactory socketFactory;
+
+  private final String[] addresses;
+
+  private final ServerState[] servers;
+
+  private final Map<LDAPConnection,TrackedConnection> connections;
+
+  private final AtomicLong lastDrainTime;
+
+  private final Random random;
+
+  private volatile double degradedLatencyFactor;
+
+  private volatile double latencyWeight;
+
+  private volatile long drainIntervalMillis;
+
+  private volatile long latencyHalfLifeMillis;
+
+  private volatile long minDegradedLatencyNanos;
+
+
+
+  public LatencyAwareServerSet(final String[] addresses, final int[] ports)
+  {
+    this(addresses, ports, null, null);
+  }
+
+
+
+  public LatencyAwareServerSet(final String[] addresses, final int[] ports,
+                               final LDAPConnectionOptions connectionOptions)
+  {
+    this(addresses, ports, null, connectionOptions);
+  }
+
+
+
+  public LatencyAwareServerSet(final String[] addresses, final int[] ports,
+                               final SocketFactory socketFactory)
+  {
+    this(addresses, ports, socketFactory, null);
+  }
+
+
+
+  public LatencyAwareServerSet(final String[] addresses, final int[] ports,
+                               final SocketFactory socketFactory,
+                               final LDAPConnectionOptions connectionOptions)
+  {
+    ensureNotNull(addresses, ports);
+    ensureTrue(addresses.length > 0,
+               "LatencyAwareServerSet.addresses must not be empty.");
+    ensureTrue(addresses.length == ports.length,
+               "LatencyAwareServerSet addresses and ports arrays must be the " +
+                    "same size.");
+
+    this.addresses = addresses;
+    this.ports     = ports;
+
+    if (socketFactory == null)
+    {
+      this.socketFactory = SocketFactory.getDefault();
+    }
+    else
+    {
+      this.socketFactory = socketFactory;
+    }
+
+    if (connectionOptions == null)
+    {
+      this.connectionOptions = new LDAPConnectionOptions();
+    }
+    else
+    {
+      this.connectionOptions = connectionOptions;
+    }
+
+    servers = new ServerState[addresses.length];
+    for (int i=0; i < servers.length; i++)
+    {
+      servers[i] = new ServerState(i);
+    }
+
+    connections = new WeakHashMap<LDAPConnection,TrackedConnection>();
+    lastDrainTime = new AtomicLong(0L);
+    random = new Random();
+
+    degradedLatencyFactor   = DEFAULT_DEGRADED_LATENCY_FACTOR;
+    latencyWeight           = DEFAULT_LATENCY_WEIGHT;
+    drainIntervalMillis     = DEFAULT_DRAIN_INTERVAL_MILLIS;
+    latencyHalfLifeMillis   = DEFAULT_LATENCY_HALF_LIFE_MILLIS;
+    minDegradedLatencyNanos = DEFAULT_MIN_DEGRADED_LATENCY_MILLIS * 1000000L;
+  }
+
+
+
+  public String[] getAddresses()
+  {
+    return addresses;
+  }
+
+
+
+  public int[] getPorts()
+  {
+    return ports;
+  }
+
+
+
+  public SocketFactory getSocketFactory()
+  {
+    return socketFactory;
+  }
+
+
+
+  public LDAPConnectionOptions getConnectionOptions()
+  {
+    return connectionOptions;
+  }
+
+
+
+  public double getDegradedLatencyFactor()
+  {
+    return degradedLatencyFactor;
+  }
+
+
+
+  /**
+   * Specifies how many times slower than the fastest server a server must be
+   * responding before it is considered degraded.
+   */
+  public void setDegradedLatencyFactor(final double degradedLatencyFactor)
+  {
+    ensureTrue(degradedLatencyFactor > 1.0d,
+         "LatencyAwareServerSet.degradedLatencyFactor must be greater than 1.");
+    this.degradedLatencyFactor = degradedLatencyFactor;
+  }
+
+
+
+  public long getMinDegradedLatencyMillis()
+  {
+    return minDegradedLatencyNanos / 1000000L;
+  }
+
+
+
+  /**
+   * Specifies the response time below which a server is never considered
+   * degraded, so that small differences between fast servers are ignored.
+   */
+  public void setMinDegradedLatencyMillis(final long minDegradedLatencyMillis)
+  {
+    if (minDegradedLatencyMillis > 0L)
+    {
+      minDegradedLatencyNanos = minDegradedLatencyMillis * 1000000L;
+    }
+    else
+    {
+      minDegradedLatencyNanos = 0L;
+    }
+  }
+
+
+
+  public long getDrainIntervalMillis()
+  {
+    return drainIntervalMillis;
+  }
+
+
+
+  public void setDrainIntervalMillis(final long drainIntervalMillis)
+  {
+    if (drainIntervalMillis > 0L)
+    {
+      this.drainIntervalMillis = drainIntervalMillis;
+    }
+    else
+    {
+      this.drainIntervalMillis = 0L;
+    }
+  }
+
+
+
+  public long getLatencyHalfLifeMillis()
+  {
+    return latencyHalfLifeMillis;
+  }
+
+
+
+  /**
+   * Specifies how quickly the recorded response time of a server that is not
+   * receiving any requests decays, allowing it to be tried again.
+   */
+  public void setLatencyHalfLifeMillis(final long latencyHalfLifeMillis)
+  {
+    ensureTrue(latencyHalfLifeMillis > 0L,
+         "LatencyAwareServerSet.latencyHalfLifeMillis must be greater than " +
+              "zero.");
+    this.latencyHalfLifeMillis = latencyHalfLifeMillis;
+  }
+
+
+
+  public double getLatencyWeight()
+  {
+    return latencyWeight;
+  }
+
+
+
+  /**
+   * Specifies the weight given to each new response time in the moving
+   * average, between zero (exclusive) and one (inclusive).
+   */
+  public void setLatencyWeight(final double latencyWeight)
+  {
+    ensureTrue((latencyWeight > 0.0d) && (latencyWeight <= 1.0d),
+         "LatencyAwareServerSet.latencyWeight must be greater than zero and " +
+              "less than or equal to one.");
+    this.latencyWeight = latencyWeight;
+  }
+
+
+
+  /**
+   * Retrieves the current average response time for each server, in the same
+   * order as the addresses, or zero for servers that have not yet processed
+   * any requests through this server set.
+   */
+  public double[] getAverageLatencyMillis()
+  {
+    final long now = System.nanoTime();
+    final double[] latencies = new double[servers.length];
+    for (int i=0; i < servers.length; i++)
+    {
+      latencies[i] = servers[i].getLatencyNanos(now) / 1000000.0d;
+    }
+
+    return latencies;
+  }
+
+
+
+  /**
+   * Indicates whether the server at the specified position is currently
+   * considered degraded.
+   */
+  public boolean isDegraded(final int serverIndex)
+  {
+    final long now = System.nanoTime();
+    return isDegraded(servers[serverIndex], now, getMinLatencyNanos(now));
+  }
+
+
+
+  @Override()
+  public LDAPConnection getConnection()
+         throws LDAPException
+  {
+    return getConnection(null);
+  }
+
+
+
+  @Override()
+  public LDAPConnection getConnection(
+                             final LDAPConnectionPoolHealthCheck healthCheck)
+         throws LDAPException
+  {
+    refresh();
+
+    final long now = System.nanoTime();
+    final List<ServerState> candidates = orderCandidates(now);
+
+    LDAPException lastException = null;
+    for (final ServerState s : candidates)
+    {
+      final LDAPConnection c;
+      try
+      {
+        c = new LDAPConnection(socketFactory, connectionOptions,
+             addresses[s.index], ports[s.index]);
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        s.recordFailure();
+        lastException = le;
+        continue;
+      }
+
+      if (healthCheck != null)
+      {
+        try
+        {
+          healthCheck.ensureNewConnectionValid(c);
+        }
+        catch (final LDAPException le)
+        {
+          debugException(le);
+          c.close();
+          s.recordFailure();
+          lastException = le;
+          continue;
+        }
+      }
+
+      final LDAPConnectionStatistics stats = c.getConnectionStatistics();
+      synchronized (connections)
+      {
+        connections.put(c, new TrackedConnection(s,
+             getNumResponses(stats), getTotalResponseTimeNanos(stats)));
+      }
+
+      return c;
+    }
+
+    throw lastException;
+  }
+
+
+
+  @Override()
+  public boolean shouldReplaceConnection(final LDAPConnection connection)
+  {
+    final TrackedConnection tc;
+    synchronized (connections)
+    {
+      tc = connections.get(connection);
+    }
+
+    if (tc == null)
+    {
+      return false;
+    }
+
+    tc.sample(connection.getConnectionStatistics());
+
+    final long now = System.nanoTime();
+    if (! isDegraded(tc.server, now, getMinLatencyNanos(now)))
+    {
+      return false;
+    }
+
+    final long currentTime = System.currentTimeMillis();
+    final long lastDrain = lastDrainTime.get();
+    if ((currentTime - lastDrain) < drainIntervalMillis)
+    {
+      return false;
+    }
+
+    return lastDrainTime.compareAndSet(lastDrain, currentTime);
+  }
+
+
+
+  /**
+   * Updates the response times and outstanding request counts of all servers
+   * from the statistics of the connections created by this server set, and
+   * stops tracking connections that have been closed.
+   */
+  private void refresh()
+  {
+    final long[] outstanding = new long[servers.length];
+    final int[] numConnections = new int[servers.length];
+
+    synchronized (connections)
+    {
+      final Iterator<Map.Entry<LDAPConnection,TrackedConnection>> iterator =
+           connections.entrySet().iterator();
+      while (iterator.hasNext())
+      {
+        final Map.Entry<LDAPConnection,TrackedConnection> e = iterator.next();
+        final LDAPConnection c = e.getKey();
+        if ((c == null) || (! c.isConnected()))
+        {
+          iterator.remove();
+          continue;
+        }
+
+        final TrackedConnection tc = e.getValue();
+        final LDAPConnectionStatistics stats = c.getConnectionStatistics();
+        tc.sample(stats);
+
+        final int i = tc.server.index;
+        outstanding[i] +=
+             Math.max(0L, getNumRequests(stats) - getNumResponses(stats));
+        numConnections[i]++;
+      }
+    }
+
+    for (int i=0; i < servers.length; i++)
+    {
+      servers[i].outstandingRequests = outstanding[i];
+      servers[i].numConnections      = numConnections[i];
+    }
+  }
+
+
+
+  /**
+   * Orders the servers in which connections should be attempted.  The first
+   * is the better of two servers chosen at random from those that are not
+   * degraded, followed by all remaining servers from the cheapest to the most
+   * expensive.
+   */
+  private List<ServerState> orderCandidates(final long now)
+  {
+    final long minLatency = getMinLatencyNanos(now);
+    final double[] costs = new double[servers.length];
+    final List<ServerState> healthy =
+         new ArrayList<ServerState>(servers.length);
+    for (final ServerState s : servers)
+    {
+      costs[s.index] = s.getLatencyNanos(now) * (s.outstandingRequests + 1L);
+      if (! isDegraded(s, now, minLatency))
+      {
+        healthy.add(s);
+      }
+    }
+
+    final List<ServerState> choices;
+    if (healthy.isEmpty())
+    {
+      choices = Arrays.asList(servers);
+    }
+    else
+    {
+      choices = healthy;
+    }
+
+    final Comparator<ServerState> comparator = new Comparator<ServerState>()
+    {
+      public int compare(final ServerState s1, final ServerState s2)
+      {
+        final int c = Double.compare(costs[s1.index], costs[s2.index]);
+        if (c != 0)
+        {
+          return c;
+        }
+
+        return (s1.numConnections - s2.numConnections);
+      }
+    };
+
+    final ServerState first;
+    if (choices.size() == 1)
+    {
+      first = choices.get(0);
+    }
+    else
+    {
+      final int i1 = random.nextInt(choices.size());
+      int i2 = random.nextInt(choices.size() - 1);
+      if (i2 >= i1)
+      {
+        i2++;
+      }
+
+      final ServerState s1 = choices.get(i1);
+      final ServerState s2 = choices.get(i2);
+      first = (comparator.compare(s2, s1) < 0) ? s2 : s1;
+    }
+
+    final List<ServerState> ordered =
+         new ArrayList<ServerState>(servers.length);
+    for (final ServerState s : servers)
+    {
+      if (s != first)
+      {
+        ordered.add(s);
+      }
+    }
+    Collections.sort(ordered, comparator);
+    ordered.add(0, first);
+
+    return ordered;
+  }
+
+
+
+  private long getMinLatencyNanos(final long now)
+  {
+    double min = Double.MAX_VALUE;
+    for (final ServerState s : servers)
+    {
+      if (! s.hasEnoughResponses())
+      {
+        continue;
+      }
+
+      final double latency = s.getLatencyNanos(now);
+      if ((latency > 0.0d) && (latency < min))
+      {
+        min = latency;
+      }
+    }
+
+    return (min == Double.MAX_VALUE) ? 0L : (long) min;
+  }
+
+
+
+  private boolean isDegraded(final ServerState server, final long now,
+                             final long minLatency)
+  {
+    if ((minLatency <= 0L) || (! server.hasEnoughResponses()))
+    {
+      return false;
+    }
+
+    final double latency = server.getLatencyNanos(now);
+    return ((latency > minDegradedLatencyNanos) &&
+            (latency > (minLatency * degradedLatencyFactor)));
+  }
+
+
+
+  private static long getNumRequests(final LDAPConnectionStatistics stats)
+  {
+    return stats.getNumAddRequests() + stats.getNumBindRequests() +
+         stats.getNumCompareRequests() + stats.getNumDeleteRequests() +
+         stats.getNumExtendedRequests() + stats.getNumModifyRequests() +
+         stats.getNumModifyDNRequests() + stats.getNumSearchRequests();
+  }
+
+
+
+  private static long getNumResponses(final LDAPConnectionStatistics stats)
+  {
+    return stats.getNumAddResponses() + stats.getNumBindResponses() +
+         stats.getNumCompareResponses() + stats.getNumDeleteResponses() +
+         stats.getNumExtendedResponses() + stats.getNumModifyResponses() +
+         stats.getNumModifyDNResponses() + stats.getNumSearchDoneResponses();
+  }
+
+
+
+  private static long getTotalResponseTimeNanos(
+                           final LDAPConnectionStatistics stats)
+  {
+    return stats.getTotalAddResponseTimeNanos() +
+         stats.getTotalBindResponseTimeNanos() +
+         stats.getTotalCompareResponseTimeNanos() +
+         stats.getTotalDeleteResponseTimeNanos() +
+         stats.getTotalExtendedResponseTimeNanos() +
+         stats.getTotalModifyResponseTimeNanos() +
+         stats.getTotalModifyDNResponseTimeNanos() +
+         stats.getTotalSearchResponseTimeNanos();
+  }
+
+
+
+  @Override()
+  public void toString(final StringBuilder buffer)
+  {
+    final double[] latencies = getAverageLatencyMillis();
+
+    buffer.append("LatencyAwareServerSet(servers={");
+
+    for (int i=0; i < addresses.length; i++)
+    {
+      if (i > 0)
+      {
+        buffer.append(", ");
+      }
+
+      buffer.append(addresses[i]);
+      buffer.append(':');
+      buffer.append(ports[i]);
+      buffer.append("(averageLatencyMillis=");
+      buffer.append(latencies[i]);
+      buffer.append(", outstandingRequests=");
+      buffer.append(servers[i].outstandingRequests);
+      buffer.append(')');
+    }
+
+    buffer.append("})");
+  }
+
+
+
+  /**
+   * The response time and load information kept for a single server.
+   */
+  private final class ServerState
+  {
+    private final int index;
+
+    private double latencyNanos;
+
+    private long lastSampleTime;
+
+    private long numResponses;
+
+    private volatile int numConnections;
+
+    private volatile long outstandingRequests;
+
+
+
+    private ServerState(final int index)
+    {
+      this.index = index;
+
+      latencyNanos   = 0.0d;
+      lastSampleTime = System.nanoTime();
+      numResponses   = 0L;
+    }
+
+
+
+    private synchronized boolean hasEnoughResponses()
+    {
+      return (numResponses >= MIN_RESPONSES);
+    }
+
+
+
+    private synchronized double getLatencyNanos(final long now)
+    {
+      final long idleNanos = now - lastSampleTime;
+      if ((latencyNanos == 0.0d) || (idleNanos <= 0L))
+      {
+        return latencyNanos;
+      }
+
+      final double halfLives =
+           idleNanos / (latencyHalfLifeMillis * 1000000.0d);
+      return latencyNanos * Math.pow(0.5d, halfLives);
+    }
+
+
+
+    private synchronized void recordLatency(final long count,
+                                            final long totalNanos)
+    {
+      final long now = System.nanoTime();
+      final double average = ((double) totalNanos) / count;
+      double latency = getLatencyNanos(now);
+
+      // Weight the sample as if each response had been recorded in turn.  The
+      // first responses use a weight of 1/n, which makes the average a plain
+      // mean until there are enough responses for the configured weight to
+      // take over, so a slow first request does not dominate.
+      final double weight = latencyWeight;
+      long remaining = count;
+      while ((remaining > 0L) && ((1.0d / (numResponses + 1L)) > weight))
+      {
+        numResponses++;
+        remaining--;
+        latency += (average - latency) / numResponses;
+      }
+
+      if (remaining > 0L)
+      {
+        numResponses += remaining;
+        latency += (1.0d - Math.pow(1.0d - weight, remaining)) *
+             (average - latency);
+      }
+
+      latencyNanos   = latency;
+      lastSampleTime = now;
+    }
+
+
+
+    private synchronized void recordFailure()
+    {
+      latencyNanos   = Math.max(getLatencyNanos(System.nanoTime()),
+                                FAILURE_LATENCY_NANOS);
+      lastSampleTime = System.nanoTime();
+    }
+  }
+
+
+
+  /**
+   * The server and the statistics already accounted for for a connection
+   * created by this server set.
+   */
+  private static final class TrackedConnection
+  {
+    private final ServerState server;
+
+    private long numResponses;
+
+    private long totalResponseTimeNanos;
+
+
+
+    private TrackedConnection(final ServerState server,
+                              final long numResponses,
+                              final long totalResponseTimeNanos)
+    {
+      this.server                 = server;
+      this.numResponses           = numResponses;
+      this.totalResponseTimeNanos = totalResponseTimeNanos;
+    }
+
+
+
+    private void sample(final LDAPConnectionStatistics stats)
+    {
+      final long responses = getNumResponses(stats);
+      final long totalNanos = getTotalResponseTimeNanos(stats);
+
+      final long deltaResponses;
+      final long deltaNanos;
+      synchronized (this)
+      {
+        deltaResponses = responses - numResponses;
+        deltaNanos     = totalNanos - totalResponseTimeNanos;
+
+        numResponses           = responses;
+        totalResponseTimeNanos = totalNanos;
+      }
+
+      // Negative deltas mean the statistics were reset, in which case the new
+      // values simply become the baseline.
+      if ((deltaResponses > 0L) && (deltaNanos > 0L))
+      {
+        server.recordLatency(deltaResponses, deltaNanos);
+      }
+    }
+  }
+}
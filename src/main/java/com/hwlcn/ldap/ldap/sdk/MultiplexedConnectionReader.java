@@ -0,0 +1,378 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hwlcn.core.annotation.InternalUseOnly;
+
+import static com.hwlcn.ldap.util.Debug.*;
+
+
+
+/**
+ * This class provides a selector-driven alternative to running a dedicated
+ * {@link LDAPConnectionReader} thread for each connection.  A small, fixed set
+ * of daemon threads is shared by all connections created with the
+ * {@link LDAPConnectionOptions#useMultiplexedReader} option, and each of those
+ * threads reads from many non-blocking channels, decodes complete LDAP
+ * messages, and passes them to the reader for the associated connection for
+ * delivery to the appropriate response acceptor.
+ * <BR><BR>
+ * Because responses are delivered on a shared thread, a response acceptor (or
+ * an asynchronous result listener) that blocks will delay the delivery of
+ * responses for other connections served by the same thread.
+ * <BR><BR>
+ * If a thread's selector fails, all connections registered with it are
+ * treated as if their reads had failed, the thread exits, and a new thread
+ * with a new selector takes its place for subsequently-created connections.
+ */
+@InternalUseOnly()
+final class MultiplexedConnectionReader
+      extends Thread
+{
+  private static final int NUM_THREADS =
+       Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  private static final AtomicInteger NEXT_THREAD = new AtomicInteger(0);
+
+  private static volatile MultiplexedConnectionReader[] threads = null;
+
+
+
+  private final ConcurrentHashMap<SocketChannel,LDAPConnectionReader>
+       attachedReaders;
+
+  private final ConcurrentLinkedQueue<Runnable> pendingTasks;
+
+  private final Selector selector;
+
+  private final int threadNumber;
+
+  private volatile boolean stopped;
+
+
+
+  private MultiplexedConnectionReader(final int threadNumber)
+          throws IOException
+  {
+    setName("Multiplexed LDAP connection reader " + threadNumber);
+    setDaemon(true);
+
+    this.threadNumber = threadNumber;
+
+    selector        = Selector.open();
+    attachedReaders =
+         new ConcurrentHashMap<SocketChannel,LDAPConnectionReader>();
+    pendingTasks    = new ConcurrentLinkedQueue<Runnable>();
+    stopped         = false;
+  }
+
+
+
+  private static MultiplexedConnectionReader[] getThreads()
+          throws IOException
+  {
+    MultiplexedConnectionReader[] t = threads;
+    if (t != null)
+    {
+      return t;
+    }
+
+    synchronized (MultiplexedConnectionReader.class)
+    {
+      if (threads == null)
+      {
+        t = new MultiplexedConnectionReader[NUM_THREADS];
+        for (int i=0; i < t.length; i++)
+        {
+          t[i] = new MultiplexedConnectionReader(i);
+        }
+
+        for (final MultiplexedConnectionReader r : t)
+        {
+          r.start();
+        }
+
+        threads = t;
+      }
+
+      return threads;
+    }
+  }
+
+
+
+  static MultiplexedConnectionReader register(
+              final LDAPConnectionReader connectionReader,
+              final SocketChannel channel)
+         throws IOException
+  {
+    final MultiplexedConnectionReader[] t = getThreads();
+    final int index =
+         (NEXT_THREAD.getAndIncrement() & Integer.MAX_VALUE) % t.length;
+    final MultiplexedConnectionReader reader = t[index];
+
+    channel.configureBlocking(false);
+    reader.submit(new Runnable()
+    {
+      public void run()
+      {
+        try
+        {
+          channel.register(reader.selector, SelectionKey.OP_READ,
+               connectionReader);
+          reader.attachedReaders.put(channel, connectionReader);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+          connectionReader.multiplexedReadFailed(e);
+        }
+      }
+    });
+
+    return reader;
+  }
+
+
+
+  void detach(final SocketChannel channel)
+       throws IOException
+  {
+    final Runnable task = new Runnable()
+    {
+      public void run()
+      {
+        attachedReaders.remove(channel);
+
+        final SelectionKey key = channel.keyFor(selector);
+        if (key != null)
+        {
+          key.cancel();
+          try
+          {
+            selector.selectNow();
+          }
+          catch (final Exception e)
+          {
+            debugException(e);
+          }
+        }
+      }
+    };
+
+    if (Thread.currentThread() == this)
+    {
+      task.run();
+    }
+    else
+    {
+      final CountDownLatch latch = new CountDownLatch(1);
+      submit(new Runnable()
+      {
+        public void run()
+        {
+          try
+          {
+            task.run();
+          }
+          finally
+          {
+            latch.countDown();
+          }
+        }
+      });
+
+      try
+      {
+        latch.await();
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        throw new IOException(ie.getMessage());
+      }
+    }
+
+    channel.configureBlocking(true);
+  }
+
+
+
+  void forget(final SocketChannel channel)
+  {
+    attachedReaders.remove(channel);
+  }
+
+
+
+  private void submit(final Runnable task)
+  {
+    pendingTasks.add(task);
+    if (stopped)
+    {
+      runPendingTasks();
+    }
+    else
+    {
+      selector.wakeup();
+    }
+  }
+
+
+
+  private void runPendingTasks()
+  {
+    Runnable task = pendingTasks.poll();
+    while (task != null)
+    {
+      try
+      {
+        task.run();
+      }
+      catch (final Throwable t)
+      {
+        debugException(t);
+      }
+
+      task = pendingTasks.poll();
+    }
+  }
+
+
+
+  @Override()
+  public void run()
+  {
+    try
+    {
+      while (true)
+      {
+        try
+        {
+          selector.select();
+        }
+        catch (final IOException ioe)
+        {
+          debugException(ioe);
+          selectorFailed(ioe);
+          return;
+        }
+        catch (final ClosedSelectorException cse)
+        {
+          debugException(cse);
+          selectorFailed(new IOException(String.valueOf(cse)));
+          return;
+        }
+
+        runPendingTasks();
+
+        final Iterator<SelectionKey> iterator =
+             selector.selectedKeys().iterator();
+        while (iterator.hasNext())
+        {
+          final SelectionKey key = iterator.next();
+          iterator.remove();
+
+          if (! key.isValid())
+          {
+            continue;
+          }
+
+          final LDAPConnectionReader connectionReader =
+               (LDAPConnectionReader) key.attachment();
+          try
+          {
+            if (! connectionReader.readFromChannel(
+                       (SocketChannel) key.channel()))
+            {
+              attachedReaders.remove(key.channel());
+              key.cancel();
+            }
+          }
+          catch (final Throwable t)
+          {
+            debugException(t);
+            attachedReaders.remove(key.channel());
+            key.cancel();
+            connectionReader.multiplexedReadFailed(
+                 new IOException(String.valueOf(t)));
+          }
+        }
+      }
+    }
+    catch (final Throwable t)
+    {
+      debugException(t);
+      selectorFailed(new IOException(String.valueOf(t)));
+    }
+  }
+
+
+
+  private void selectorFailed(final IOException cause)
+  {
+    stopped = true;
+
+    try
+    {
+      selector.close();
+    }
+    catch (final Exception e)
+    {
+      debugException(e);
+    }
+
+    runPendingTasks();
+
+    final Iterator<LDAPConnectionReader> iterator =
+         attachedReaders.values().iterator();
+    while (iterator.hasNext())
+    {
+      final LDAPConnectionReader connectionReader = iterator.next();
+      iterator.remove();
+      try
+      {
+        connectionReader.multiplexedReadFailed(cause);
+      }
+      catch (final Throwable t)
+      {
+        debugException(t);
+      }
+    }
+
+    synchronized (MultiplexedConnectionReader.class)
+    {
+      final MultiplexedConnectionReader[] t = threads;
+      if ((t == null) || (t[threadNumber] != this))
+      {
+        return;
+      }
+
+      try
+      {
+        final MultiplexedConnectionReader replacement =
+             new MultiplexedConnectionReader(threadNumber);
+        replacement.start();
+
+        final MultiplexedConnectionReader[] newThreads = t.clone();
+        newThreads[threadNumber] = replacement;
+        threads = newThreads;
+      }
+      catch (final Exception e)
+      {
+        debugException(e);
+      }
+    }
+  }
+}
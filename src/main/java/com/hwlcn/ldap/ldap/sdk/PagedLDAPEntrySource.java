@@ -0,0 +1,618 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hwlcn.ldap.asn1.ASN1OctetString;
+import com.hwlcn.ldap.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.hwlcn.ldap.ldap.sdk.controls.SimplePagedResultsControl;
+import com.hwlcn.ldap.ldap.sdk.controls.SortKey;
+import com.hwlcn.ldap.ldap.sdk.controls.VirtualListViewRequestControl;
+import com.hwlcn.ldap.ldap.sdk.controls.VirtualListViewResponseControl;
+import com.hwlcn.core.annotation.InternalUseOnly;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.LDAPMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides an {@link EntrySource} that retrieves the entries
+ * matching a search request one page at a time using the simple paged results
+ * control, requesting the next page as soon as the previous one is complete so
+ * that the server is working on it while the caller is still processing the
+ * entries already received.  At most {@code prefetchPages} pages of entries
+ * are held in memory: the next page is only requested once the number of
+ * entries waiting to be read has dropped to {@code prefetchPages - 1} pages,
+ * so a prefetch depth of one waits for each page to be fully consumed before
+ * requesting the next.
+ * <BR><BR>
+ * All pages are retrieved over the same connection, because the paged results
+ * cookie is only valid on the connection on which it was issued.  When created
+ * with a connection pool, a connection is checked out for the lifetime of the
+ * entry source and released once all entries have been read or the entry
+ * source is closed.
+ * <BR><BR>
+ * If sort keys are provided and the server rejects the simple paged results
+ * control before returning any entries, then the entry source falls back to
+ * retrieving the same pages with the server-side sort and virtual list view
+ * controls.
+ * <BR><BR>
+ * <H2>Example</H2>
+ * The following example demonstrates the process for iterating across all
+ * user entries in 500-entry pages, keeping up to two pages in memory:
+ * <PRE>
+ *   SearchRequest searchRequest = new SearchRequest("dc=example,dc=com",
+ *        SearchScope.SUB, "(objectClass=person)");
+ *   PagedLDAPEntrySource entrySource = new PagedLDAPEntrySource(pool,
+ *        searchRequest, 500, 2, new SortKey("uid"));
+ *
+ *   try
+ *   {
+ *     Entry entry;
+ *     while ((entry = entrySource.nextEntry()) != null)
+ *     {
+ *       // Do something with the entry here.
+ *     }
+ *   }
+ *   finally
+ *   {
+ *     entrySource.close();
+ *   }
+ * </PRE>
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+public final class PagedLDAPEntrySource
+       extends EntrySource
+       implements AsyncSearchResultListener
+{
+  private static final String END_OF_RESULTS = "END OF RESULTS";
+
+
+
+  private static final long serialVersionUID = -3954110876263719518L;
+
+
+
+  private final AbstractConnectionPool pool;
+
+  private final AtomicBoolean closed;
+
+  private final AtomicInteger bufferedEntries;
+
+  private final AtomicReference<SearchResult> searchResult;
+
+  private final boolean closeConnection;
+
+  private final int pageSize;
+
+  private final int prefetchPages;
+
+  private final LDAPConnection connection;
+
+  private final LinkedBlockingQueue<Object> queue;
+
+  private final Object pageLock;
+
+  private final SearchRequest searchRequest;
+
+  private final SortKey[] sortKeys;
+
+  private AsyncRequestID asyncRequestID;
+
+  private ASN1OctetString cookie;
+
+  private ASN1OctetString vlvContextID;
+
+  private boolean connectionDefunct;
+
+  private boolean morePages;
+
+  private boolean pageInProgress;
+
+  private boolean useVLV;
+
+  private int entriesInPage;
+
+  private int nextVLVOffset;
+
+  private int vlvContentCount;
+
+
+
+  public PagedLDAPEntrySource(final AbstractConnectionPool pool,
+                              final SearchRequest searchRequest,
+                              final int pageSize, final int prefetchPages,
+                              final SortKey... sortKeys)
+         throws LDAPException
+  {
+    this(pool, pool.getConnection(), searchRequest, pageSize, prefetchPages,
+         false, sortKeys);
+  }
+
+
+
+  public PagedLDAPEntrySource(final LDAPConnection connection,
+                              final SearchRequest searchRequest,
+                              final int pageSize, final int prefetchPages,
+                              final boolean closeConnection,
+                              final SortKey... sortKeys)
+         throws LDAPException
+  {
+    this(null, connection, searchRequest, pageSize, prefetchPages,
+         closeConnection, sortKeys);
+  }
+
+
+
+  private PagedLDAPEntrySource(final AbstractConnectionPool pool,
+                               final LDAPConnection connection,
+                               final SearchRequest searchRequest,
+                               final int pageSize, final int prefetchPages,
+                               final boolean closeConnection,
+                               final SortKey... sortKeys)
+          throws LDAPException
+  {
+    ensureNotNull(connection, searchRequest);
+    ensureTrue(pageSize > 0,
+         "PagedLDAPEntrySource.pageSize must be greater than 0.");
+    ensureTrue(prefetchPages > 0,
+         "PagedLDAPEntrySource.prefetchPages must be greater than 0.");
+
+    this.pool            = pool;
+    this.connection      = connection;
+    this.closeConnection = closeConnection;
+    this.pageSize        = pageSize;
+    this.prefetchPages   = prefetchPages;
+    this.searchRequest   = searchRequest;
+    this.sortKeys        = sortKeys;
+
+    closed          = new AtomicBoolean(false);
+    bufferedEntries = new AtomicInteger(0);
+    searchResult    = new AtomicReference<SearchResult>();
+    queue           = new LinkedBlockingQueue<Object>();
+    pageLock        = new Object();
+
+    connectionDefunct = false;
+    cookie            = null;
+    morePages         = true;
+    pageInProgress    = false;
+    useVLV            = false;
+    entriesInPage     = 0;
+    nextVLVOffset     = 1;
+    vlvContentCount   = 0;
+    vlvContextID      = null;
+
+    try
+    {
+      if (searchRequest.getSearchResultListener() != null)
+      {
+        throw new LDAPException(ResultCode.PARAM_ERROR,
+             ERR_LDAP_ENTRY_SOURCE_REQUEST_HAS_LISTENER.get());
+      }
+
+      if (searchRequest.hasControl(
+               SimplePagedResultsControl.PAGED_RESULTS_OID) ||
+          searchRequest.hasControl(
+               VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID))
+      {
+        throw new LDAPException(ResultCode.PARAM_ERROR,
+             ERR_PAGED_ENTRY_SOURCE_REQUEST_HAS_PAGING_CONTROL.get());
+      }
+
+      synchronized (pageLock)
+      {
+        pageInProgress = true;
+        sendPageRequest();
+      }
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      connectionDefunct = (! le.getResultCode().isConnectionUsable());
+      releaseConnection();
+      throw le;
+    }
+  }
+
+
+
+  @Override()
+  public Entry nextEntry()
+         throws EntrySourceException
+  {
+    while (true)
+    {
+      if (closed.get() && queue.isEmpty())
+      {
+        return null;
+      }
+
+      final Object o;
+      try
+      {
+        o = queue.poll(10L, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException ie)
+      {
+        debugException(ie);
+        continue;
+      }
+
+      if (o == null)
+      {
+        checkConnection();
+      }
+      else
+      {
+        if (o == END_OF_RESULTS)
+        {
+          closeInternal();
+          return null;
+        }
+        else if (o instanceof Entry)
+        {
+          bufferedEntries.decrementAndGet();
+          requestNextPageIfNeeded();
+          return (Entry) o;
+        }
+        else
+        {
+          final EntrySourceException e = (EntrySourceException) o;
+          if (! e.mayContinueReading())
+          {
+            closeInternal();
+          }
+          throw e;
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Ends the results with an error if the connection was closed while a page
+   * was in progress, since the listener is not notified in that case.
+   */
+  private void checkConnection()
+  {
+    synchronized (pageLock)
+    {
+      if (pageInProgress && (! connection.isConnected()))
+      {
+        pageInProgress    = false;
+        connectionDefunct = true;
+        finish(new EntrySourceException(false, new LDAPException(
+             ResultCode.SERVER_DOWN,
+             ERR_CONN_CLOSED_WAITING_FOR_ASYNC_RESPONSE.get())));
+      }
+    }
+  }
+
+
+
+  @Override()
+  public void close()
+  {
+    closeInternal();
+  }
+
+
+
+  private void closeInternal()
+  {
+    if (! closed.compareAndSet(false, true))
+    {
+      return;
+    }
+
+    synchronized (pageLock)
+    {
+      if (pageInProgress)
+      {
+        try
+        {
+          connection.abandon(asyncRequestID);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+      else if (morePages && (cookie != null) && (! connectionDefunct))
+      {
+        // A page size of zero tells the server to discard the state it holds
+        // for the cookie.
+        try
+        {
+          final SearchRequest r = createPageRequest(null,
+               new SimplePagedResultsControl(0, cookie, false));
+          connection.search(r);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+
+      morePages = false;
+    }
+
+    queue.clear();
+    releaseConnection();
+  }
+
+
+
+  private void releaseConnection()
+  {
+    if (pool != null)
+    {
+      if (connectionDefunct)
+      {
+        pool.releaseDefunctConnection(connection);
+      }
+      else
+      {
+        pool.releaseConnection(connection);
+      }
+    }
+    else if (closeConnection)
+    {
+      connection.close();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the search result for the most recent page, or {@code null} if
+   * no page has been completed yet.
+   */
+  public SearchResult getSearchResult()
+  {
+    return searchResult.get();
+  }
+
+
+
+  /**
+   * Indicates whether the entries are being retrieved with the virtual list
+   * view control because the server did not support simple paged results.
+   */
+  public boolean usesVirtualListView()
+  {
+    synchronized (pageLock)
+    {
+      return useVLV;
+    }
+  }
+
+
+
+  @InternalUseOnly()
+  public void searchEntryReturned(final SearchResultEntry searchEntry)
+  {
+    bufferedEntries.incrementAndGet();
+    entriesInPage++;
+    addToQueue(searchEntry);
+  }
+
+
+
+  @InternalUseOnly()
+  public void searchReferenceReturned(
+                   final SearchResultReference searchReference)
+  {
+    addToQueue(new SearchResultReferenceEntrySourceException(searchReference));
+  }
+
+
+
+  @InternalUseOnly()
+  public void searchResultReceived(final AsyncRequestID requestID,
+                                   final SearchResult searchResult)
+  {
+    this.searchResult.set(searchResult);
+
+    synchronized (pageLock)
+    {
+      pageInProgress = false;
+      final int numEntries = entriesInPage;
+      entriesInPage = 0;
+
+      if (closed.get())
+      {
+        return;
+      }
+
+      final ResultCode resultCode = searchResult.getResultCode();
+      if ((resultCode == ResultCode.UNAVAILABLE_CRITICAL_EXTENSION) &&
+          (! useVLV) && (cookie == null) && (numEntries == 0) &&
+          (sortKeys != null) && (sortKeys.length > 0))
+      {
+        useVLV = true;
+        sendNextPage();
+        return;
+      }
+
+      if (resultCode != ResultCode.SUCCESS)
+      {
+        connectionDefunct = (! resultCode.isConnectionUsable());
+        finish(new EntrySourceException(false,
+             new LDAPSearchException(searchResult)));
+        return;
+      }
+
+      try
+      {
+        if (useVLV)
+        {
+          final VirtualListViewResponseControl vlvResponse =
+               VirtualListViewResponseControl.get(searchResult);
+          if ((vlvResponse == null) ||
+              (vlvResponse.getResultCode() != ResultCode.SUCCESS))
+          {
+            final ResultCode rc = (vlvResponse == null)
+                 ? ResultCode.UNAVAILABLE_CRITICAL_EXTENSION
+                 : vlvResponse.getResultCode();
+            finish(new EntrySourceException(false, new LDAPSearchException(
+                 rc, ERR_PAGED_ENTRY_SOURCE_VLV_FAILED.get(
+                      String.valueOf(rc)))));
+            return;
+          }
+
+          vlvContentCount = vlvResponse.getContentCount();
+          vlvContextID    = vlvResponse.getContextID();
+          nextVLVOffset  += pageSize;
+          morePages = ((numEntries > 0) && (nextVLVOffset <= vlvContentCount));
+        }
+        else
+        {
+          final SimplePagedResultsControl pagedResponse =
+               SimplePagedResultsControl.get(searchResult);
+          if ((pagedResponse == null) ||
+              (pagedResponse.getCookie().getValueLength() == 0))
+          {
+            morePages = false;
+          }
+          else
+          {
+            cookie = pagedResponse.getCookie();
+          }
+        }
+      }
+      catch (final LDAPException le)
+      {
+        debugException(le);
+        finish(new EntrySourceException(false, le));
+        return;
+      }
+
+      if (morePages)
+      {
+        requestNextPageIfNeeded();
+      }
+      else
+      {
+        finish(null);
+      }
+    }
+  }
+
+
+
+  /**
+   * Requests the next page if there is one, it has not already been
+   * requested, and few enough entries are waiting to be read.
+   */
+  private void requestNextPageIfNeeded()
+  {
+    synchronized (pageLock)
+    {
+      if (closed.get() || pageInProgress || (! morePages) ||
+          (bufferedEntries.get() > ((prefetchPages - 1) * pageSize)))
+      {
+        return;
+      }
+
+      sendNextPage();
+    }
+  }
+
+
+
+  private void sendNextPage()
+  {
+    pageInProgress = true;
+    try
+    {
+      sendPageRequest();
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      pageInProgress = false;
+      connectionDefunct = (! le.getResultCode().isConnectionUsable());
+      finish(new EntrySourceException(false, le));
+    }
+  }
+
+
+
+  private void sendPageRequest()
+          throws LDAPException
+  {
+    final SearchRequest r;
+    if (useVLV)
+    {
+      r = createPageRequest(this,
+           new ServerSideSortRequestControl(true, sortKeys),
+           new VirtualListViewRequestControl(nextVLVOffset, 0, pageSize - 1,
+                vlvContentCount, vlvContextID, true));
+    }
+    else
+    {
+      r = createPageRequest(this,
+           new SimplePagedResultsControl(pageSize, cookie, true));
+    }
+
+    asyncRequestID = connection.asyncSearch(r);
+  }
+
+
+
+  private SearchRequest createPageRequest(
+                             final SearchResultListener listener,
+                             final Control... pagingControls)
+  {
+    final List<Control> controls = new ArrayList<Control>(
+         Arrays.asList(searchRequest.getControls()));
+    controls.addAll(Arrays.asList(pagingControls));
+
+    return new SearchRequest(listener,
+         controls.toArray(new Control[controls.size()]),
+         searchRequest.getBaseDN(), searchRequest.getScope(),
+         searchRequest.getDereferencePolicy(), searchRequest.getSizeLimit(),
+         searchRequest.getTimeLimitSeconds(), searchRequest.typesOnly(),
+         searchRequest.getFilter(), searchRequest.getAttributes());
+  }
+
+
+
+  /**
+   * Marks the end of the results, optionally preceded by an exception, so
+   * that the reading thread will release the connection.
+   */
+  private void finish(final EntrySourceException e)
+  {
+    morePages = false;
+    if (e != null)
+    {
+      addToQueue(e);
+    }
+    addToQueue(END_OF_RESULTS);
+  }
+
+
+
+  private void addToQueue(final Object o)
+  {
+    if (! closed.get())
+    {
+      queue.offer(o);
+    }
+  }
+}
@@ -47,6 +47,18 @@ public abstract class ServerSet
   }
 
 
+
+  /**
+   * Indicates whether the provided connection, which was obtained from this
+   * server set, should be replaced by the connection pool even though it is
+   * still valid, e.g. because the server it is connected to has degraded.
+   */
+  public boolean shouldReplaceConnection(final LDAPConnection connection)
+  {
+    return false;
+  }
+
+
   @Override()
   public String toString()
   {
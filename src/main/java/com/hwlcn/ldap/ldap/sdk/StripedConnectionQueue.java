@@ -0,0 +1,424 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides a bounded blocking queue of available connections for
+ * use by the {@link LDAPConnectionPool} when striped checkout is enabled.
+ * Rather than funneling every checkout and release through the head and tail
+ * locks of a {@code LinkedBlockingQueue}, connections are held in a fixed
+ * array of slots that are claimed and filled with compare-and-set operations.
+ * Each thread starts scanning at a slot derived from its thread ID, so that
+ * threads tend to return connections to, and take connections from, different
+ * cache lines.  A lock is only acquired when a thread needs to block because
+ * no slot is available, and by releasing threads when there are such waiters.
+ */
+final class StripedConnectionQueue
+      extends AbstractQueue<LDAPConnection>
+      implements BlockingQueue<LDAPConnection>
+{
+  private static final int SLOT_SHIFT = 4;
+
+
+
+  private final AtomicInteger notEmptyWaiters;
+
+  private final AtomicInteger notFullWaiters;
+
+  private final AtomicReferenceArray<LDAPConnection> slots;
+
+  private final Condition notEmpty;
+
+  private final Condition notFull;
+
+  private final int capacity;
+
+  private final ReentrantLock waitLock;
+
+
+
+  StripedConnectionQueue(final int capacity)
+  {
+    ensureTrue(capacity > 0,
+         "StripedConnectionQueue.capacity must be greater than 0.");
+
+    this.capacity = capacity;
+
+    slots           = new AtomicReferenceArray<LDAPConnection>(
+                           capacity << SLOT_SHIFT);
+    notEmptyWaiters = new AtomicInteger(0);
+    notFullWaiters  = new AtomicInteger(0);
+    waitLock        = new ReentrantLock();
+    notEmpty        = waitLock.newCondition();
+    notFull         = waitLock.newCondition();
+  }
+
+
+
+  private int homeSlot()
+  {
+    long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    h ^= (h >>> 32);
+    return (int) ((h & 0x7FFFFFFFL) % capacity);
+  }
+
+
+
+  private LDAPConnection tryTake()
+  {
+    final int start = homeSlot();
+    for (int i=0; i < capacity; i++)
+    {
+      int slot = start + i;
+      if (slot >= capacity)
+      {
+        slot -= capacity;
+      }
+
+      final int index = slot << SLOT_SHIFT;
+      final LDAPConnection c = slots.get(index);
+      if ((c != null) && slots.compareAndSet(index, c, null))
+      {
+        return c;
+      }
+    }
+
+    return null;
+  }
+
+
+
+  private boolean tryPut(final LDAPConnection connection)
+  {
+    final int start = homeSlot();
+    for (int i=0; i < capacity; i++)
+    {
+      int slot = start + i;
+      if (slot >= capacity)
+      {
+        slot -= capacity;
+      }
+
+      final int index = slot << SLOT_SHIFT;
+      if ((slots.get(index) == null) &&
+          slots.compareAndSet(index, null, connection))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+
+  private void signal(final AtomicInteger waiters, final Condition condition)
+  {
+    if (waiters.get() > 0)
+    {
+      waitLock.lock();
+      try
+      {
+        condition.signal();
+      }
+      finally
+      {
+        waitLock.unlock();
+      }
+    }
+  }
+
+
+
+  public boolean offer(final LDAPConnection connection)
+  {
+    ensureNotNull(connection);
+
+    if (tryPut(connection))
+    {
+      signal(notEmptyWaiters, notEmpty);
+      return true;
+    }
+
+    return false;
+  }
+
+
+
+  public boolean offer(final LDAPConnection connection, final long timeout,
+                       final TimeUnit unit)
+         throws InterruptedException
+  {
+    if (offer(connection))
+    {
+      return true;
+    }
+
+    long nanos = unit.toNanos(timeout);
+    waitLock.lockInterruptibly();
+    notFullWaiters.incrementAndGet();
+    try
+    {
+      while (true)
+      {
+        if (tryPut(connection))
+        {
+          break;
+        }
+
+        if (nanos <= 0L)
+        {
+          return false;
+        }
+
+        nanos = notFull.awaitNanos(nanos);
+      }
+    }
+    finally
+    {
+      notFullWaiters.decrementAndGet();
+      waitLock.unlock();
+    }
+
+    signal(notEmptyWaiters, notEmpty);
+    return true;
+  }
+
+
+
+  public void put(final LDAPConnection connection)
+         throws InterruptedException
+  {
+    while (! offer(connection, Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+    {
+      // Keep waiting until there is room for the connection.
+    }
+  }
+
+
+
+  public LDAPConnection poll()
+  {
+    final LDAPConnection c = tryTake();
+    if (c != null)
+    {
+      signal(notFullWaiters, notFull);
+    }
+
+    return c;
+  }
+
+
+
+  public LDAPConnection poll(final long timeout, final TimeUnit unit)
+         throws InterruptedException
+  {
+    LDAPConnection c = poll();
+    if (c != null)
+    {
+      return c;
+    }
+
+    long nanos = unit.toNanos(timeout);
+    waitLock.lockInterruptibly();
+    notEmptyWaiters.incrementAndGet();
+    try
+    {
+      while (true)
+      {
+        c = tryTake();
+        if (c != null)
+        {
+          break;
+        }
+
+        if (nanos <= 0L)
+        {
+          return null;
+        }
+
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+    }
+    finally
+    {
+      notEmptyWaiters.decrementAndGet();
+      waitLock.unlock();
+    }
+
+    signal(notFullWaiters, notFull);
+    return c;
+  }
+
+
+
+  public LDAPConnection take()
+         throws InterruptedException
+  {
+    while (true)
+    {
+      final LDAPConnection c = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      if (c != null)
+      {
+        return c;
+      }
+    }
+  }
+
+
+
+  public LDAPConnection peek()
+  {
+    for (int i=0; i < capacity; i++)
+    {
+      final LDAPConnection c = slots.get(i << SLOT_SHIFT);
+      if (c != null)
+      {
+        return c;
+      }
+    }
+
+    return null;
+  }
+
+
+
+  public int size()
+  {
+    int count = 0;
+    for (int i=0; i < capacity; i++)
+    {
+      if (slots.get(i << SLOT_SHIFT) != null)
+      {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+
+
+  public int remainingCapacity()
+  {
+    return capacity - size();
+  }
+
+
+
+  public int drainTo(final Collection<? super LDAPConnection> c)
+  {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+
+
+  public int drainTo(final Collection<? super LDAPConnection> c,
+                     final int maxElements)
+  {
+    ensureNotNull(c);
+    ensureTrue(c != this, "StripedConnectionQueue cannot drain to itself.");
+
+    int drained = 0;
+    for (int i=0; (i < capacity) && (drained < maxElements); i++)
+    {
+      final int index = i << SLOT_SHIFT;
+      final LDAPConnection conn = slots.getAndSet(index, null);
+      if (conn != null)
+      {
+        c.add(conn);
+        drained++;
+      }
+    }
+
+    if (drained > 0)
+    {
+      signal(notFullWaiters, notFull);
+    }
+
+    return drained;
+  }
+
+
+
+  public Iterator<LDAPConnection> iterator()
+  {
+    final ArrayList<LDAPConnection> snapshot =
+         new ArrayList<LDAPConnection>(capacity);
+    for (int i=0; i < capacity; i++)
+    {
+      final LDAPConnection c = slots.get(i << SLOT_SHIFT);
+      if (c != null)
+      {
+        snapshot.add(c);
+      }
+    }
+
+    final Iterator<LDAPConnection> snapshotIterator = snapshot.iterator();
+    return new Iterator<LDAPConnection>()
+    {
+      private LDAPConnection last = null;
+
+      public boolean hasNext()
+      {
+        return snapshotIterator.hasNext();
+      }
+
+      public LDAPConnection next()
+      {
+        last = snapshotIterator.next();
+        return last;
+      }
+
+      public void remove()
+      {
+        if (last == null)
+        {
+          throw new IllegalStateException();
+        }
+
+        StripedConnectionQueue.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+
+
+  @Override()
+  public boolean remove(final Object o)
+  {
+    if (o == null)
+    {
+      return false;
+    }
+
+    for (int i=0; i < capacity; i++)
+    {
+      final int index = i << SLOT_SHIFT;
+      if ((slots.get(index) == o) && slots.compareAndSet(index,
+           (LDAPConnection) o, null))
+      {
+        signal(notFullWaiters, notFull);
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
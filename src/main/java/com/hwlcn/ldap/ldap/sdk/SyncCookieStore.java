@@ -0,0 +1,35 @@
+package com.hwlcn.ldap.ldap.sdk;
+
+
+
+import com.hwlcn.core.annotation.Extensible;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+
+
+/**
+ * This interface defines the methods used by a {@link DirectorySyncClient}
+ * to persist its content synchronization cookie, so that a client whose
+ * replica was saved and restored can resume from where it left off rather
+ * than reloading all entries.
+ */
+@Extensible()
+@ThreadSafety(level=ThreadSafetyLevel.INTERFACE_THREADSAFE)
+public interface SyncCookieStore
+{
+
+  /**
+   * Retrieves the stored cookie, or {@code null} if there is none.
+   */
+  byte[] readCookie()
+         throws LDAPException;
+
+
+  /**
+   * Stores the provided cookie, or removes the stored cookie if it is
+   * {@code null}.
+   */
+  void writeCookie(final byte[] cookie)
+       throws LDAPException;
+}
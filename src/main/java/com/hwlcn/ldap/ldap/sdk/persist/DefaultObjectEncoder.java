@@ -438,7 +438,7 @@ public final class DefaultObjectEncoder
                                     final String name)
          throws LDAPPersistException
   {
-    return encodeValue(field.getGenericType(), value, name);
+    return encodeValue(new TypeInfo(field.getGenericType()), value, name);
   }
 
 
@@ -447,18 +447,17 @@ public final class DefaultObjectEncoder
                                      final String name)
          throws LDAPPersistException
   {
-    return encodeValue(method.getGenericReturnType(), value, name);
+    return encodeValue(new TypeInfo(method.getGenericReturnType()), value,
+                       name);
   }
 
 
 
 
-  private static Attribute encodeValue(final Type type, final Object value,
-                                       final String name)
+  static Attribute encodeValue(final TypeInfo typeInfo, final Object value,
+                               final String name)
          throws LDAPPersistException
   {
-    final TypeInfo typeInfo = new TypeInfo(type);
-
     final Class<?> c = typeInfo.getBaseClass();
     if (c.equals(AtomicInteger.class) ||
         c.equals(AtomicLong.class) ||
@@ -555,7 +554,7 @@ public final class DefaultObjectEncoder
     }
 
     throw new LDAPPersistException(ERR_DEFAULT_ENCODER_UNSUPPORTED_TYPE.get(
-         String.valueOf(type)));
+         String.valueOf(typeInfo.getType())));
   }
 
 
@@ -784,16 +783,38 @@ public final class DefaultObjectEncoder
          throws LDAPPersistException
   {
     field.setAccessible(true);
-    final TypeInfo typeInfo = new TypeInfo(field.getGenericType());
+    final Object value =
+         decodeValue(new TypeInfo(field.getGenericType()), attribute);
 
+    try
+    {
+      field.set(object, value);
+    }
+    catch (Exception e)
+    {
+      debugException(e);
+      throw new LDAPPersistException(getExceptionMessage(e), e);
+    }
+  }
+
+
+
+  /**
+   * Decodes the provided attribute to a value of the given type, as it would
+   * be assigned to a field by {@link #decodeField}.  This allows callers that
+   * have already resolved the type of a field to skip doing so for each entry.
+   */
+  static Object decodeValue(final TypeInfo typeInfo,
+                            final Attribute attribute)
+         throws LDAPPersistException
+  {
     try
     {
       final Class<?> baseClass = typeInfo.getBaseClass();
       final Object newValue = getValue(baseClass, attribute, 0);
       if (newValue != null)
       {
-        field.set(object, newValue);
-        return;
+        return newValue;
       }
 
       if (typeInfo.isArray())
@@ -814,8 +835,7 @@ public final class DefaultObjectEncoder
           Array.set(arrayObject, i, o);
         }
 
-        field.set(object, arrayObject);
-        return;
+        return arrayObject;
       }
       else if (typeInfo.isList() && isSupportedListType(baseClass))
       {
@@ -841,8 +861,7 @@ public final class DefaultObjectEncoder
           invokeAdd(l, o);
         }
 
-        field.set(object, l);
-        return;
+        return l;
       }
       else if (typeInfo.isSet() && isSupportedSetType(baseClass))
       {
@@ -868,8 +887,7 @@ public final class DefaultObjectEncoder
           invokeAdd(l, o);
         }
 
-        field.set(object, l);
-        return;
+        return l;
       }
 
       throw new LDAPPersistException(ERR_DEFAULT_ENCODER_UNSUPPORTED_TYPE.get(
@@ -65,6 +65,8 @@ public final class FieldInfo
 
   private final String[] objectClasses;
 
+  private final TypeInfo typeInfo;
+
 
   FieldInfo(final Field f, final Class<?> c)
        throws LDAPPersistException
@@ -156,6 +158,15 @@ public final class FieldInfo
                 f.getGenericType()));
     }
 
+    if (encoder instanceof DefaultObjectEncoder)
+    {
+      typeInfo = new TypeInfo(f.getGenericType());
+    }
+    else
+    {
+      typeInfo = null;
+    }
+
     supportsMultipleValues = encoder.supportsMultipleValues(f);
     if (supportsMultipleValues)
     {
@@ -383,6 +394,12 @@ public final class FieldInfo
         return null;
       }
 
+      if (typeInfo != null)
+      {
+        return DefaultObjectEncoder.encodeValue(typeInfo, fieldValue,
+             attributeName);
+      }
+
       return encoder.encodeFieldValue(field, fieldValue, attributeName);
     }
     catch (LDAPPersistException lpe)
@@ -446,7 +463,23 @@ public final class FieldInfo
 
     try
     {
-      encoder.decodeField(field, o, a);
+      if (typeInfo != null)
+      {
+        final Object value = DefaultObjectEncoder.decodeValue(typeInfo, a);
+        try
+        {
+          field.set(o, value);
+        }
+        catch (final Exception ex)
+        {
+          debugException(ex);
+          throw new LDAPPersistException(getExceptionMessage(ex), ex);
+        }
+      }
+      else
+      {
+        encoder.decodeField(field, o, a);
+      }
     }
     catch (LDAPPersistException lpe)
     {
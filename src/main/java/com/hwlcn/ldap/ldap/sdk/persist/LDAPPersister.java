@@ -649,6 +649,70 @@ public final class LDAPPersister<T>
   }
 
 
+  /**
+   * Searches for objects matching the provided object, as for the
+   * corresponding {@code search} method, but decodes the entries on up to
+   * {@code numThreads} threads from a pool shared by all parallel searches
+   * (with one thread per available processor) instead of the thread that
+   * iterates through the results.  No more than {@code queueSize} entries are held
+   * waiting to be decoded, and no more than {@code queueSize} objects waiting
+   * to be retrieved; once that many are pending, the connection stops
+   * reading results from the server until the caller catches up.  The
+   * connection must not be operating in synchronous mode.
+   *
+   * @param  preserveOrder  Indicates whether objects should be returned in
+   *                        the order in which the server returned the
+   *                        entries.  If not, each object is returned as soon
+   *                        as it has been decoded.
+   */
+  public PersistedObjects<T> parallelSearch(final T o, final LDAPConnection c,
+                                            final String baseDN,
+                                            final SearchScope scope,
+                                            final DereferencePolicy derefPolicy,
+                                            final int sizeLimit,
+                                            final int timeLimit,
+                                            final Filter extraFilter,
+                                            final int numThreads,
+                                            final int queueSize,
+                                            final boolean preserveOrder,
+                                            final Control... controls)
+         throws LDAPPersistException
+  {
+    ensureNotNull(o, c, scope, derefPolicy);
+
+    final String base;
+    if (baseDN == null)
+    {
+      base = handler.getDefaultParentDN().toString();
+    }
+    else
+    {
+      base = baseDN;
+    }
+
+    final Filter filter;
+    if (extraFilter == null)
+    {
+      filter = handler.createFilter(o);
+    }
+    else
+    {
+      filter = Filter.createANDFilter(handler.createFilter(o), extraFilter);
+    }
+
+    final SearchRequest searchRequest = new SearchRequest(base, scope,
+         derefPolicy, sizeLimit, timeLimit, false, filter,
+         handler.getAttributesToRequest());
+    if (controls != null)
+    {
+      searchRequest.setControls(controls);
+    }
+
+    return parallelSearch(c, searchRequest, numThreads, queueSize,
+         preserveOrder);
+  }
+
+
   public SearchResult search(final T o, final LDAPInterface i,
                              final ObjectSearchListener<T> l)
          throws LDAPPersistException
@@ -769,6 +833,80 @@ public final class LDAPPersister<T>
   }
 
 
+  /**
+   * Searches for objects matching the provided filter, as for the
+   * corresponding {@code search} method, but decodes the entries on worker
+   * threads as described for the other {@code parallelSearch} method.
+   */
+  public PersistedObjects<T> parallelSearch(final LDAPConnection c,
+                                            final String baseDN,
+                                            final SearchScope scope,
+                                            final DereferencePolicy derefPolicy,
+                                            final int sizeLimit,
+                                            final int timeLimit,
+                                            final Filter filter,
+                                            final int numThreads,
+                                            final int queueSize,
+                                            final boolean preserveOrder,
+                                            final Control... controls)
+         throws LDAPPersistException
+  {
+    ensureNotNull(c, scope, derefPolicy, filter);
+
+    final String base;
+    if (baseDN == null)
+    {
+      base = handler.getDefaultParentDN().toString();
+    }
+    else
+    {
+      base = baseDN;
+    }
+
+    final Filter f = Filter.createANDFilter(filter, handler.createBaseFilter());
+
+    final SearchRequest searchRequest = new SearchRequest(base, scope,
+         derefPolicy, sizeLimit, timeLimit, false, f,
+         handler.getAttributesToRequest());
+    if (controls != null)
+    {
+      searchRequest.setControls(controls);
+    }
+
+    return parallelSearch(c, searchRequest, numThreads, queueSize,
+         preserveOrder);
+  }
+
+
+
+  private PersistedObjects<T> parallelSearch(final LDAPConnection c,
+                                             final SearchRequest searchRequest,
+                                             final int numThreads,
+                                             final int queueSize,
+                                             final boolean preserveOrder)
+          throws LDAPPersistException
+  {
+    ensureTrue(numThreads > 0,
+         "LDAPPersister.parallelSearch.numThreads must be greater than 0.");
+    ensureTrue(queueSize > 0,
+         "LDAPPersister.parallelSearch.queueSize must be greater than 0.");
+
+    final ParallelObjectDecoder<T> decoder;
+    try
+    {
+      decoder = new ParallelObjectDecoder<T>(this, c, searchRequest,
+           numThreads, queueSize, preserveOrder);
+    }
+    catch (LDAPException le)
+    {
+      debugException(le);
+      throw new LDAPPersistException(le);
+    }
+
+    return new PersistedObjects<T>(this, decoder);
+  }
+
+
   public SearchResult search(final LDAPInterface i, final String baseDN,
                              final SearchScope scope,
                              final DereferencePolicy derefPolicy,
@@ -0,0 +1,523 @@
+package com.hwlcn.ldap.ldap.sdk.persist;
+
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.hwlcn.ldap.ldap.sdk.AsyncRequestID;
+import com.hwlcn.ldap.ldap.sdk.AsyncSearchResultListener;
+import com.hwlcn.ldap.ldap.sdk.LDAPConnection;
+import com.hwlcn.ldap.ldap.sdk.LDAPException;
+import com.hwlcn.ldap.ldap.sdk.LDAPSearchException;
+import com.hwlcn.ldap.ldap.sdk.ResultCode;
+import com.hwlcn.ldap.ldap.sdk.SearchRequest;
+import com.hwlcn.ldap.ldap.sdk.SearchResult;
+import com.hwlcn.ldap.ldap.sdk.SearchResultEntry;
+import com.hwlcn.ldap.ldap.sdk.SearchResultReference;
+import com.hwlcn.ldap.ldap.sdk.SearchResultReferenceEntrySourceException;
+import com.hwlcn.core.annotation.InternalUseOnly;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.LDAPSDKThreadFactory;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.persist.PersistMessages.*;
+import static com.hwlcn.ldap.util.Debug.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+
+
+
+/**
+ * This class processes a search for {@link PersistedObjects} and decodes the
+ * entries it returns on a set of worker threads, so that neither the
+ * connection reader thread nor the caller spends its time decoding.  The
+ * workers run on a pool of daemon threads, one per available processor, that
+ * is shared by all searches, and no more than the requested number of them
+ * work on any one search at a time.  Entries
+ * are handed from the reader thread to the workers, and decoded objects from
+ * the workers to the caller, through queues of a fixed size.  When the caller
+ * falls behind, the reader thread blocks and stops reading from the socket,
+ * which pushes back against the server in the same way as
+ * {@link com.hwlcn.ldap.ldap.sdk.LDAPEntrySource}.
+ * <BR><BR>
+ * If the order of the results is to be preserved, each entry is placed on the
+ * caller's queue when it is received, and the caller waits for it to be
+ * decoded.  Otherwise, objects are placed on the queue as soon as they are
+ * decoded.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.NOT_THREADSAFE)
+final class ParallelObjectDecoder<T>
+      implements AsyncSearchResultListener
+{
+  private static final long POLL_INTERVAL_MILLIS = 100L;
+
+  private static final long serialVersionUID = -3094316712547905377L;
+
+  private static final int NUM_SHARED_THREADS =
+       Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  private static volatile ThreadPoolExecutor sharedExecutor = null;
+
+
+
+  private final AsyncRequestID asyncRequestID;
+
+  private final AtomicBoolean closed;
+
+  private final AtomicInteger activeWorkers;
+
+  private final AtomicInteger outstanding;
+
+  private final AtomicReference<SearchResult> searchResult;
+
+  private final boolean preserveOrder;
+
+  private final LDAPConnection connection;
+
+  private final int numThreads;
+
+  private final LDAPPersister<T> persister;
+
+  private final LinkedBlockingQueue<DecodedObject<T>> decodeQueue;
+
+  private final LinkedBlockingQueue<DecodedObject<T>> resultQueue;
+
+  private volatile DecodedObject<T> endOfResults;
+
+  private boolean finished;
+
+
+
+  ParallelObjectDecoder(final LDAPPersister<T> persister,
+                        final LDAPConnection connection,
+                        final SearchRequest searchRequest,
+                        final int numThreads, final int queueSize,
+                        final boolean preserveOrder)
+         throws LDAPException
+  {
+    this.persister     = persister;
+    this.connection    = connection;
+    this.numThreads    = numThreads;
+    this.preserveOrder = preserveOrder;
+
+    closed        = new AtomicBoolean(false);
+    activeWorkers = new AtomicInteger(0);
+    outstanding   = new AtomicInteger(1);
+    searchResult  = new AtomicReference<SearchResult>();
+    decodeQueue   = new LinkedBlockingQueue<DecodedObject<T>>(queueSize);
+    resultQueue   = new LinkedBlockingQueue<DecodedObject<T>>(queueSize);
+    endOfResults  = null;
+    finished      = false;
+
+    final SearchRequest r = new SearchRequest(this, searchRequest.getControls(),
+         searchRequest.getBaseDN(), searchRequest.getScope(),
+         searchRequest.getDereferencePolicy(), searchRequest.getSizeLimit(),
+         searchRequest.getTimeLimitSeconds(), searchRequest.typesOnly(),
+         searchRequest.getFilter(), searchRequest.getAttributes());
+
+    try
+    {
+      asyncRequestID = connection.asyncSearch(r);
+    }
+    catch (final LDAPException le)
+    {
+      debugException(le);
+      closed.set(true);
+      throw le;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the next decoded object, waiting for it if necessary, or
+   * {@code null} if there are no more results.
+   */
+  T next()
+    throws LDAPPersistException
+  {
+    while (true)
+    {
+      if (finished || closed.get())
+      {
+        finished = true;
+        return null;
+      }
+
+      final DecodedObject<T> o;
+      try
+      {
+        o = resultQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+        continue;
+      }
+
+      if (o == null)
+      {
+        if ((searchResult.get() == null) && (! connection.isConnected()))
+        {
+          finished = true;
+          closeInternal(false);
+          throw new LDAPPersistException(new LDAPException(
+               ResultCode.SERVER_DOWN,
+               ERR_OBJECT_SEARCH_RESULTS_CONNECTION_CLOSED.get()));
+        }
+
+        continue;
+      }
+
+      if (o.entry == null)
+      {
+        finished = true;
+        closeInternal(false);
+        if (o.exception != null)
+        {
+          throw o.exception;
+        }
+
+        return null;
+      }
+
+      o.awaitDecoded();
+      if (o.exception != null)
+      {
+        throw o.exception;
+      }
+
+      return o.object;
+    }
+  }
+
+
+
+  void close()
+  {
+    closeInternal(true);
+  }
+
+
+
+  private void closeInternal(final boolean abandon)
+  {
+    if (closed.compareAndSet(false, true))
+    {
+      if (abandon && (searchResult.get() == null))
+      {
+        try
+        {
+          connection.abandon(asyncRequestID);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+        }
+      }
+
+      decodeQueue.clear();
+      resultQueue.clear();
+    }
+  }
+
+
+
+  SearchResult getSearchResult()
+  {
+    return searchResult.get();
+  }
+
+
+
+  private static ThreadPoolExecutor getSharedExecutor()
+  {
+    ThreadPoolExecutor e = sharedExecutor;
+    if (e != null)
+    {
+      return e;
+    }
+
+    synchronized (ParallelObjectDecoder.class)
+    {
+      if (sharedExecutor == null)
+      {
+        e = new ThreadPoolExecutor(NUM_SHARED_THREADS, NUM_SHARED_THREADS,
+             60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+             new LDAPSDKThreadFactory("LDAPPersister Decoder", true));
+        e.allowCoreThreadTimeOut(true);
+        sharedExecutor = e;
+      }
+
+      return sharedExecutor;
+    }
+  }
+
+
+
+  /**
+   * Starts another worker for this search if there are entries waiting to be
+   * decoded and fewer than {@code numThreads} workers are running.
+   */
+  private void startWorkerIfNecessary()
+  {
+    if (acquireWorkerSlot())
+    {
+      try
+      {
+        getSharedExecutor().execute(new Worker());
+      }
+      catch (final RuntimeException re)
+      {
+        debugException(re);
+        activeWorkers.decrementAndGet();
+        throw re;
+      }
+    }
+  }
+
+
+
+  /**
+   * Claims a worker slot if there are entries waiting to be decoded and fewer
+   * than {@code numThreads} workers are running.  If the slots are all taken,
+   * the workers holding them will decode the waiting entries.
+   */
+  private boolean acquireWorkerSlot()
+  {
+    while (! decodeQueue.isEmpty())
+    {
+      final int active = activeWorkers.get();
+      if (active >= numThreads)
+      {
+        return false;
+      }
+
+      if (activeWorkers.compareAndSet(active, active+1))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+
+  @InternalUseOnly()
+  public void searchEntryReturned(final SearchResultEntry searchEntry)
+  {
+    final DecodedObject<T> o = new DecodedObject<T>(searchEntry);
+    outstanding.incrementAndGet();
+    if (preserveOrder)
+    {
+      addToQueue(resultQueue, o);
+    }
+
+    addToQueue(decodeQueue, o);
+    startWorkerIfNecessary();
+  }
+
+
+
+  @InternalUseOnly()
+  public void searchReferenceReturned(
+                   final SearchResultReference searchReference)
+  {
+    final SearchResultReferenceEntrySourceException e =
+         new SearchResultReferenceEntrySourceException(searchReference);
+    final DecodedObject<T> o = new DecodedObject<T>(searchReference);
+    o.setException(new LDAPPersistException(
+         ERR_OBJECT_SEARCH_RESULTS_ENTRY_SOURCE_EXCEPTION.get(
+              getExceptionMessage(e)), e));
+    addToQueue(resultQueue, o);
+  }
+
+
+
+  @InternalUseOnly()
+  public void searchResultReceived(final AsyncRequestID requestID,
+                                   final SearchResult searchResult)
+  {
+    final DecodedObject<T> end = new DecodedObject<T>(null);
+    if (! searchResult.getResultCode().equals(ResultCode.SUCCESS))
+    {
+      end.setException(new LDAPPersistException(
+           new LDAPSearchException(searchResult)));
+    }
+
+    endOfResults = end;
+    this.searchResult.set(searchResult);
+    if (preserveOrder)
+    {
+      addToQueue(resultQueue, end);
+    }
+    else
+    {
+      decrementOutstanding();
+    }
+  }
+
+
+
+  /**
+   * Decrements the number of entries that have not yet been placed on the
+   * caller's queue, where the search result itself counts as one.  When it
+   * reaches zero, every decoded object is on the queue and the end of the
+   * results may follow them.
+   */
+  private void decrementOutstanding()
+  {
+    if (outstanding.decrementAndGet() == 0)
+    {
+      addToQueue(resultQueue, endOfResults);
+    }
+  }
+
+
+
+  private void addToQueue(final LinkedBlockingQueue<DecodedObject<T>> queue,
+                          final DecodedObject<T> o)
+  {
+    while (true)
+    {
+      if (closed.get())
+      {
+        return;
+      }
+
+      try
+      {
+        if (queue.offer(o, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS))
+        {
+          return;
+        }
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+      }
+    }
+  }
+
+
+
+  /**
+   * A worker that decodes entries until none are waiting.  A worker only
+   * gives up its slot once it has found the queue empty, and it checks the
+   * queue again after doing so, so an entry queued while it was exiting is
+   * picked up either by this worker or by one started for that entry.
+   */
+  private final class Worker
+          implements Runnable
+  {
+    public void run()
+    {
+      while (true)
+      {
+        final DecodedObject<T> o = decodeQueue.poll();
+        if (o == null)
+        {
+          activeWorkers.decrementAndGet();
+          if (acquireWorkerSlot())
+          {
+            continue;
+          }
+
+          return;
+        }
+
+        if (closed.get())
+        {
+          continue;
+        }
+
+        try
+        {
+          o.setObject(persister.decode((SearchResultEntry) o.entry));
+        }
+        catch (final LDAPPersistException lpe)
+        {
+          debugException(lpe);
+          o.setException(lpe);
+        }
+        catch (final Throwable t)
+        {
+          debugException(t);
+          o.setException(new LDAPPersistException(getExceptionMessage(t),
+               t));
+        }
+
+        if (! preserveOrder)
+        {
+          addToQueue(resultQueue, o);
+          decrementOutstanding();
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * A search result entry or reference and the outcome of decoding it, or the
+   * end of the results if there is no entry.
+   */
+  private static final class DecodedObject<T>
+  {
+    private final CountDownLatch decoded;
+
+    private final Object entry;
+
+    private volatile LDAPPersistException exception;
+
+    private volatile T object;
+
+
+
+    private DecodedObject(final Object entry)
+    {
+      this.entry = entry;
+      decoded    = new CountDownLatch(1);
+    }
+
+
+
+    private void setObject(final T object)
+    {
+      this.object = object;
+      decoded.countDown();
+    }
+
+
+
+    private void setException(final LDAPPersistException exception)
+    {
+      this.exception = exception;
+      decoded.countDown();
+    }
+
+
+
+    private void awaitDecoded()
+    {
+      while (true)
+      {
+        try
+        {
+          decoded.await();
+          return;
+        }
+        catch (final InterruptedException ie)
+        {
+          debugException(ie);
+        }
+      }
+    }
+  }
+}
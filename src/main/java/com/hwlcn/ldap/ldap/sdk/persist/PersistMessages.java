@@ -704,6 +704,13 @@ enum PersistMessages
 
 
 
+  /**
+   * The connection was closed before all of the search results had been received.
+   */
+  ERR_OBJECT_SEARCH_RESULTS_CONNECTION_CLOSED("The connection was closed before all of the search results had been received."),
+
+
+
   /**
    * An error occurred while attempting to read the next search result entry from the directory:  {0}
    */
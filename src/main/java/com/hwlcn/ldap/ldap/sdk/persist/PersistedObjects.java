@@ -30,18 +30,42 @@ public final class PersistedObjects<T>
 
   private final LDAPPersister<T> persister;
 
+  private final ParallelObjectDecoder<T> decoder;
+
 
   PersistedObjects(final LDAPPersister<T> persister,
                    final EntrySource entrySource)
   {
     this.persister   = persister;
     this.entrySource = entrySource;
+
+    decoder = null;
+  }
+
+
+
+  /**
+   * Creates a new set of persisted objects whose entries are decoded by the
+   * provided decoder rather than by the thread calling {@link #next}.
+   */
+  PersistedObjects(final LDAPPersister<T> persister,
+                   final ParallelObjectDecoder<T> decoder)
+  {
+    this.persister = persister;
+    this.decoder   = decoder;
+
+    entrySource = null;
   }
 
 
   public T next()
          throws LDAPPersistException
   {
+    if (decoder != null)
+    {
+      return decoder.next();
+    }
+
     final Entry entry;
     try
     {
@@ -77,13 +101,23 @@ public final class PersistedObjects<T>
 
   public void close()
   {
+    if (decoder != null)
+    {
+      decoder.close();
+      return;
+    }
+
     entrySource.close();
   }
 
 
   public SearchResult getSearchResult()
   {
-    if (entrySource instanceof LDAPEntrySource)
+    if (decoder != null)
+    {
+      return decoder.getSearchResult();
+    }
+    else if (entrySource instanceof LDAPEntrySource)
     {
       return ((LDAPEntrySource) entrySource).getSearchResult();
     }
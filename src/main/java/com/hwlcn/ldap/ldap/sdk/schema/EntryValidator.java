@@ -2,10 +2,16 @@ package com.hwlcn.ldap.ldap.sdk.schema;
 
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +19,7 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.hwlcn.ldap.asn1.ASN1OctetString;
 import com.hwlcn.ldap.ldap.matchingrules.MatchingRule;
@@ -36,6 +43,12 @@ public final class EntryValidator
 
   private static final long serialVersionUID = -8945609557086398241L;
 
+  /**
+   * The maximum number of distinct sets of object classes for which compiled
+   * rules will be cached.
+   */
+  private static final int MAX_CACHED_RULE_SETS = 1000;
+
   private final AtomicLong entriesExamined;
 
   private final AtomicLong invalidEntries;
@@ -90,9 +103,18 @@ public final class EntryValidator
 
   private final Schema schema;
 
+  private transient AttributeTypeDefinition[] attributeTypes;
+
+  private transient AtomicReferenceArray<MatchingRule> matchingRules;
+
+  private transient ConcurrentHashMap<List<String>,ObjectClassRules> ruleCache;
+
+  private transient Map<String,Integer> attributeIndexes;
+
   public EntryValidator(final Schema schema)
   {
     this.schema = schema;
+    compileSchema();
 
     checkAttributeSyntax              = true;
     checkMalformedDNs                 = true;
@@ -125,6 +147,59 @@ public final class EntryValidator
   }
 
 
+  /**
+   * Assigns an index to each attribute type in the schema, so that the
+   * attribute types allowed by a set of object classes can be represented as
+   * bit sets, and creates an empty cache of compiled object class rules.  Each
+   * name and OID is mapped to the same definition returned by the schema.
+   */
+  private void compileSchema()
+  {
+    final IdentityHashMap<AttributeTypeDefinition,Integer> defIndexes =
+         new IdentityHashMap<AttributeTypeDefinition,Integer>();
+    final HashMap<String,Integer> nameIndexes = new HashMap<String,Integer>();
+    final ArrayList<AttributeTypeDefinition> defs =
+         new ArrayList<AttributeTypeDefinition>();
+    for (final AttributeTypeDefinition at : schema.getAttributeTypes())
+    {
+      final ArrayList<String> keys = new ArrayList<String>();
+      keys.add(at.getOID());
+      keys.addAll(Arrays.asList(at.getNames()));
+      for (final String key : keys)
+      {
+        final AttributeTypeDefinition d = schema.getAttributeType(key);
+        if (d == null)
+        {
+          continue;
+        }
+
+        Integer index = defIndexes.get(d);
+        if (index == null)
+        {
+          index = defs.size();
+          defIndexes.put(d, index);
+          defs.add(d);
+        }
+
+        nameIndexes.put(toLowerCase(key), index);
+      }
+    }
+
+    attributeTypes   = defs.toArray(new AttributeTypeDefinition[defs.size()]);
+    attributeIndexes = nameIndexes;
+    matchingRules    = new AtomicReferenceArray<MatchingRule>(defs.size());
+    ruleCache = new ConcurrentHashMap<List<String>,ObjectClassRules>();
+  }
+
+
+  private void readObject(final ObjectInputStream in)
+          throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    compileSchema();
+  }
+
+
   public boolean checkMissingAttributes()
   {
     return checkMissingAttributes;
@@ -144,6 +219,7 @@ public final class EntryValidator
                    final boolean checkMissingSuperiorObjectClasses)
   {
     this.checkMissingSuperiorObjectClasses = checkMissingSuperiorObjectClasses;
+    ruleCache.clear();
   }
 
   public boolean checkMalformedDNs()
@@ -189,6 +265,7 @@ public final class EntryValidator
                    final boolean checkProhibitedObjectClasses)
   {
     this.checkProhibitedObjectClasses = checkProhibitedObjectClasses;
+    ruleCache.clear();
   }
 
   public boolean checkSingleValuedAttributes()
@@ -211,6 +288,7 @@ public final class EntryValidator
                    final boolean checkStructuralObjectClasses)
   {
     this.checkStructuralObjectClasses = checkStructuralObjectClasses;
+    ruleCache.clear();
   }
 
   public boolean checkAttributeSyntax()
@@ -243,6 +321,7 @@ public final class EntryValidator
                    final boolean checkUndefinedObjectClasses)
   {
     this.checkUndefinedObjectClasses = checkUndefinedObjectClasses;
+    ruleCache.clear();
   }
 
 
@@ -274,22 +353,85 @@ public final class EntryValidator
       }
     }
 
-    final HashSet<ObjectClassDefinition> ocSet =
-         new HashSet<ObjectClassDefinition>();
-    final boolean missingOC =
-         (! getObjectClasses(entry, ocSet, invalidReasons));
-    if (missingOC)
+    final ObjectClassRules rules =
+         getObjectClassRules(entry.getObjectClassValues());
+    entryValid &= applyViolations(rules.objectClassViolations, invalidReasons);
+
+    if (checkMissingAttributes)
     {
-      entryValid = false;
+      entryValid &= checkForMissingAttributes(entry, rdn, rules,
+                                              invalidReasons);
+    }
+
+    for (final Attribute a : entry.getAttributes())
+    {
+      entryValid &= checkAttribute(a, rules, invalidReasons);
+    }
+
+    entryValid &=
+         applyViolations(rules.auxiliaryClassViolations, invalidReasons);
+
+    if (rdn != null)
+    {
+      entryValid &= checkRDN(rdn, rules, invalidReasons);
+    }
+
+    if (! entryValid)
+    {
+      invalidEntries.incrementAndGet();
+    }
+
+    return entryValid;
+  }
+
+
+  /**
+   * Retrieves the rules for entries with the provided set of object class
+   * values, compiling and caching them if necessary.  The cache stops growing
+   * once it holds {@link #MAX_CACHED_RULE_SETS} rule sets, after which rules
+   * for other sets of object classes are compiled for each entry.
+   */
+  private ObjectClassRules getObjectClassRules(final String[] ocValues)
+  {
+    final List<String> key;
+    if (ocValues == null)
+    {
+      key = Collections.emptyList();
+    }
+    else
+    {
+      key = Arrays.asList(ocValues);
+    }
+
+    ObjectClassRules rules = ruleCache.get(key);
+    if (rules == null)
+    {
+      rules = compileObjectClassRules(ocValues);
+      if (ruleCache.size() < MAX_CACHED_RULE_SETS)
+      {
+        ruleCache.putIfAbsent(key, rules);
+      }
     }
 
+    return rules;
+  }
+
+
+  private ObjectClassRules compileObjectClassRules(final String[] ocValues)
+  {
+    final ObjectClassRules rules = new ObjectClassRules();
+
+    final HashSet<ObjectClassDefinition> ocSet =
+         new HashSet<ObjectClassDefinition>();
+    final boolean missingOC = (! getObjectClasses(ocValues, ocSet, rules));
+
     DITContentRuleDefinition ditContentRule = null;
     NameFormDefinition nameForm = null;
     if (! missingOC)
     {
       final AtomicReference<ObjectClassDefinition> ref =
            new AtomicReference<ObjectClassDefinition>(null);
-      entryValid &= getStructuralClass(ocSet, ref, invalidReasons);
+      getStructuralClass(ocSet, ref, rules);
       final ObjectClassDefinition structuralClass = ref.get();
       if (structuralClass != null)
       {
@@ -299,68 +441,116 @@ public final class EntryValidator
       }
     }
 
-    HashSet<AttributeTypeDefinition> requiredAttrs = null;
-    if (checkMissingAttributes || checkProhibitedAttributes)
+    final HashSet<AttributeTypeDefinition> requiredAttrs =
+         getRequiredAttributes(ocSet, ditContentRule);
+    final HashSet<AttributeTypeDefinition> optionalAttrs =
+         getOptionalAttributes(ocSet, ditContentRule, requiredAttrs);
+    for (final AttributeTypeDefinition d : requiredAttrs)
     {
-      requiredAttrs = getRequiredAttributes(ocSet, ditContentRule);
-      if (checkMissingAttributes)
+      final Integer index = attributeIndexes.get(toLowerCase(d.getOID()));
+      if (index != null)
       {
-        entryValid &= checkForMissingAttributes(entry, rdn, requiredAttrs,
-                                                invalidReasons);
+        rules.requiredAttributes.set(index);
+        rules.allowedAttributes.set(index);
       }
     }
 
-    HashSet<AttributeTypeDefinition> optionalAttrs = null;
-    if (checkProhibitedAttributes)
+    for (final AttributeTypeDefinition d : optionalAttrs)
     {
-      optionalAttrs =
-           getOptionalAttributes(ocSet, ditContentRule, requiredAttrs);
-    }
-    for (final Attribute a : entry.getAttributes())
-    {
-      entryValid &=
-           checkAttribute(a, requiredAttrs, optionalAttrs, invalidReasons);
+      final Integer index = attributeIndexes.get(toLowerCase(d.getOID()));
+      if (index != null)
+      {
+        rules.allowedAttributes.set(index);
+      }
     }
 
     if (checkProhibitedObjectClasses && (ditContentRule != null))
     {
-      entryValid &=
-           checkAuxiliaryClasses(ocSet, ditContentRule, invalidReasons);
+      checkAuxiliaryClasses(ocSet, ditContentRule, rules);
     }
 
-    if (rdn != null)
+    if (nameForm != null)
     {
-      entryValid &= checkRDN(rdn, requiredAttrs, optionalAttrs, nameForm,
-                             invalidReasons);
+      rules.hasNameForm = true;
+      for (final String s : nameForm.getRequiredAttributes())
+      {
+        final Integer index = attributeIndexes.get(toLowerCase(s));
+        if (index != null)
+        {
+          rules.nameFormRequiredAttributes.set(index);
+          rules.nameFormAllowedAttributes.set(index);
+        }
+      }
+
+      for (final String s : nameForm.getOptionalAttributes())
+      {
+        final Integer index = attributeIndexes.get(toLowerCase(s));
+        if (index != null)
+        {
+          rules.nameFormAllowedAttributes.set(index);
+        }
+      }
     }
 
-    if (! entryValid)
+    return rules;
+  }
+
+
+  /**
+   * Updates the counts for the provided violations recorded while compiling
+   * object class rules, and adds their messages to the list of reasons.
+   */
+  private boolean applyViolations(final List<ObjectClassViolation> violations,
+                                  final List<String> invalidReasons)
+  {
+    for (final ObjectClassViolation v : violations)
     {
-      invalidEntries.incrementAndGet();
+      switch (v.type)
+      {
+        case NO_OBJECT_CLASSES:
+          noObjectClasses.incrementAndGet();
+          break;
+        case UNDEFINED_OBJECT_CLASS:
+          updateCount(v.name, undefinedObjectClasses);
+          break;
+        case MISSING_SUPERIOR_CLASS:
+          missingSuperiorClasses.incrementAndGet();
+          break;
+        case PROHIBITED_OBJECT_CLASS:
+          updateCount(v.name, prohibitedObjectClasses);
+          break;
+        case NO_STRUCTURAL_CLASS:
+          noStructuralClass.incrementAndGet();
+          break;
+        case MULTIPLE_STRUCTURAL_CLASSES:
+          multipleStructuralClasses.incrementAndGet();
+          break;
+      }
+
+      if (invalidReasons != null)
+      {
+        invalidReasons.add(v.message);
+      }
     }
 
-    return entryValid;
+    return violations.isEmpty();
   }
 
 
-  private boolean getObjectClasses(final Entry entry,
+  private boolean getObjectClasses(final String[] ocValues,
                                    final HashSet<ObjectClassDefinition> ocSet,
-                                   final List<String> invalidReasons)
+                                   final ObjectClassRules rules)
   {
-    final String[] ocValues = entry.getObjectClassValues();
     if ((ocValues == null) || (ocValues.length == 0))
     {
-      noObjectClasses.incrementAndGet();
-      if (invalidReasons != null)
-      {
-        invalidReasons.add(ERR_ENTRY_NO_OCS.get());
-      }
+      rules.addViolation(ViolationType.NO_OBJECT_CLASSES, null,
+           ERR_ENTRY_NO_OCS.get());
       return false;
     }
 
     boolean entryValid = true;
     final HashSet<String> missingOCs = new HashSet<String>(ocValues.length);
-    for (final String ocName : entry.getObjectClassValues())
+    for (final String ocName : ocValues)
     {
       final ObjectClassDefinition d = schema.getObjectClass(ocName);
       if (d == null)
@@ -369,11 +559,8 @@ public final class EntryValidator
         {
           entryValid = false;
           missingOCs.add(toLowerCase(ocName));
-          updateCount(ocName, undefinedObjectClasses);
-          if (invalidReasons != null)
-          {
-            invalidReasons.add(ERR_ENTRY_UNDEFINED_OC.get(ocName));
-          }
+          rules.addViolation(ViolationType.UNDEFINED_OBJECT_CLASS, ocName,
+               ERR_ENTRY_UNDEFINED_OC.get(ocName));
         }
       }
       else
@@ -385,7 +572,7 @@ public final class EntryValidator
     for (final ObjectClassDefinition d :
          new HashSet<ObjectClassDefinition>(ocSet))
     {
-      entryValid &= addSuperiorClasses(d, ocSet, missingOCs, invalidReasons);
+      entryValid &= addSuperiorClasses(d, ocSet, missingOCs, rules);
     }
 
     return entryValid;
@@ -395,7 +582,7 @@ public final class EntryValidator
   private boolean addSuperiorClasses(final ObjectClassDefinition d,
                                      final HashSet<ObjectClassDefinition> ocSet,
                                      final HashSet<String> missingOCNames,
-                                     final List<String> invalidReasons)
+                                     final ObjectClassRules rules)
   {
     boolean entryValid = true;
 
@@ -411,12 +598,8 @@ public final class EntryValidator
           if (! missingOCNames.contains(lowerName))
           {
             missingOCNames.add(lowerName);
-            updateCount(ocName, undefinedObjectClasses);
-            if (invalidReasons != null)
-            {
-              invalidReasons.add(ERR_ENTRY_UNDEFINED_SUP_OC.get(
-                   d.getNameOrOID(), ocName));
-            }
+            rules.addViolation(ViolationType.UNDEFINED_OBJECT_CLASS, ocName,
+                 ERR_ENTRY_UNDEFINED_SUP_OC.get(d.getNameOrOID(), ocName));
           }
         }
       }
@@ -428,17 +611,13 @@ public final class EntryValidator
           if (checkMissingSuperiorObjectClasses)
           {
             entryValid = false;
-            missingSuperiorClasses.incrementAndGet();
-            if (invalidReasons != null)
-            {
-              invalidReasons.add(ERR_ENTRY_MISSING_SUP_OC.get(
-                   supOC.getNameOrOID(), d.getNameOrOID()));
-            }
+            rules.addViolation(ViolationType.MISSING_SUPERIOR_CLASS, null,
+                 ERR_ENTRY_MISSING_SUP_OC.get(supOC.getNameOrOID(),
+                      d.getNameOrOID()));
           }
         }
 
-        entryValid &=
-             addSuperiorClasses(supOC, ocSet, missingOCNames, invalidReasons);
+        entryValid &= addSuperiorClasses(supOC, ocSet, missingOCNames, rules);
       }
     }
 
@@ -446,9 +625,9 @@ public final class EntryValidator
   }
 
 
-  private boolean getStructuralClass(final HashSet<ObjectClassDefinition> ocSet,
+  private void getStructuralClass(final HashSet<ObjectClassDefinition> ocSet,
                final AtomicReference<ObjectClassDefinition> structuralClass,
-               final List<String> invalidReasons)
+               final ObjectClassRules rules)
   {
     final HashSet<ObjectClassDefinition> ocCopy =
          new HashSet<ObjectClassDefinition>(ocSet);
@@ -466,7 +645,6 @@ public final class EntryValidator
       }
     }
 
-    boolean entryValid = true;
     Iterator<ObjectClassDefinition> iterator = ocCopy.iterator();
     while (iterator.hasNext())
     {
@@ -475,13 +653,9 @@ public final class EntryValidator
       {
         if (checkProhibitedObjectClasses)
         {
-          entryValid = false;
-          updateCount(d.getNameOrOID(), prohibitedObjectClasses);
-          if (invalidReasons != null)
-          {
-            invalidReasons.add(ERR_ENTRY_INVALID_ABSTRACT_CLASS.get(
-                 d.getNameOrOID()));
-          }
+          rules.addViolation(ViolationType.PROHIBITED_OBJECT_CLASS,
+               d.getNameOrOID(),
+               ERR_ENTRY_INVALID_ABSTRACT_CLASS.get(d.getNameOrOID()));
         }
         iterator.remove();
       }
@@ -492,12 +666,8 @@ public final class EntryValidator
       case 0:
         if (checkStructuralObjectClasses)
         {
-          entryValid = false;
-          noStructuralClass.incrementAndGet();
-          if (invalidReasons != null)
-          {
-            invalidReasons.add(ERR_ENTRY_NO_STRUCTURAL_CLASS.get());
-          }
+          rules.addViolation(ViolationType.NO_STRUCTURAL_CLASS, null,
+               ERR_ENTRY_NO_STRUCTURAL_CLASS.get());
         }
         break;
 
@@ -508,28 +678,21 @@ public final class EntryValidator
       default:
         if (checkStructuralObjectClasses)
         {
-          entryValid = false;
-          multipleStructuralClasses.incrementAndGet();
-          if (invalidReasons != null)
+          final StringBuilder ocList = new StringBuilder();
+          iterator = ocCopy.iterator();
+          while (iterator.hasNext())
           {
-            final StringBuilder ocList = new StringBuilder();
-            iterator = ocCopy.iterator();
-            while (iterator.hasNext())
+            ocList.append(iterator.next().getNameOrOID());
+            if (iterator.hasNext())
             {
-              ocList.append(iterator.next().getNameOrOID());
-              if (iterator.hasNext())
-              {
-                ocList.append(", ");
-              }
+              ocList.append(", ");
             }
-            invalidReasons.add(
-                 ERR_ENTRY_MULTIPLE_STRUCTURAL_CLASSES.get(ocList));
           }
+          rules.addViolation(ViolationType.MULTIPLE_STRUCTURAL_CLASSES, null,
+               ERR_ENTRY_MULTIPLE_STRUCTURAL_CLASSES.get(ocList));
         }
         break;
     }
-
-    return entryValid;
   }
 
   private HashSet<AttributeTypeDefinition> getRequiredAttributes(
@@ -610,53 +773,58 @@ public final class EntryValidator
 
 
   private boolean checkForMissingAttributes(final Entry entry, final RDN rdn,
-                       final HashSet<AttributeTypeDefinition> requiredAttrs,
-                       final List<String> invalidReasons)
+                                            final ObjectClassRules rules,
+                                            final List<String> invalidReasons)
   {
-    boolean entryValid = true;
-
-    for (final AttributeTypeDefinition d : requiredAttrs)
+    final BitSet missing = (BitSet) rules.requiredAttributes.clone();
+    for (final Attribute a : entry.getAttributes())
     {
-      boolean found = false;
-      for (final String s : d.getNames())
+      if (! a.hasOptions())
       {
-        if (entry.hasAttribute(s) || ((rdn != null) && rdn.hasAttribute(s)))
+        final Integer index = attributeIndexes.get(toLowerCase(a.getName()));
+        if (index != null)
         {
-          found = true;
-          break;
+          missing.clear(index);
         }
       }
+    }
 
-      if (! found)
+    if (rdn != null)
+    {
+      for (final String s : rdn.getAttributeNames())
       {
-        if (! (entry.hasAttribute(d.getOID()) ||
-               ((rdn != null) && (rdn.hasAttribute(d.getOID())))))
+        final Integer index = attributeIndexes.get(toLowerCase(s));
+        if (index != null)
         {
-          entryValid = false;
-          updateCount(d.getNameOrOID(), missingAttributes);
-          if (invalidReasons != null)
-          {
-            invalidReasons.add(ERR_ENTRY_MISSING_REQUIRED_ATTR.get(
-                 d.getNameOrOID()));
-          }
+          missing.clear(index);
         }
       }
     }
 
-    return entryValid;
+    for (int i=missing.nextSetBit(0); i >= 0; i=missing.nextSetBit(i+1))
+    {
+      final AttributeTypeDefinition d = attributeTypes[i];
+      updateCount(d.getNameOrOID(), missingAttributes);
+      if (invalidReasons != null)
+      {
+        invalidReasons.add(ERR_ENTRY_MISSING_REQUIRED_ATTR.get(
+             d.getNameOrOID()));
+      }
+    }
+
+    return missing.isEmpty();
   }
 
 
   private boolean checkAttribute(final Attribute attr,
-                       final HashSet<AttributeTypeDefinition> requiredAttrs,
-                       final HashSet<AttributeTypeDefinition> optionalAttrs,
-                       final List<String> invalidReasons)
+                                 final ObjectClassRules rules,
+                                 final List<String> invalidReasons)
   {
     boolean entryValid = true;
 
-    final AttributeTypeDefinition d =
-         schema.getAttributeType(attr.getBaseName());
-    if (d == null)
+    final Integer index =
+         attributeIndexes.get(toLowerCase(attr.getBaseName()));
+    if (index == null)
     {
       if (checkUndefinedAttributes)
       {
@@ -671,9 +839,10 @@ public final class EntryValidator
       return entryValid;
     }
 
+    final AttributeTypeDefinition d = attributeTypes[index];
     if (checkProhibitedAttributes && (! d.isOperational()))
     {
-      if (! (requiredAttrs.contains(d) || optionalAttrs.contains(d)))
+      if (! rules.allowedAttributes.get(index))
       {
         entryValid = false;
         updateCount(d.getNameOrOID(), prohibitedAttributes);
@@ -699,8 +868,13 @@ public final class EntryValidator
 
     if (checkAttributeSyntax)
     {
-      final MatchingRule r =
-           MatchingRule.selectEqualityMatchingRule(d.getNameOrOID(), schema);
+      MatchingRule r = matchingRules.get(index);
+      if (r == null)
+      {
+        r = MatchingRule.selectEqualityMatchingRule(d.getNameOrOID(), schema);
+        matchingRules.set(index, r);
+      }
+
       for (final ASN1OctetString v : rawValues)
       {
         try
@@ -724,10 +898,10 @@ public final class EntryValidator
     return entryValid;
   }
 
-  private boolean checkAuxiliaryClasses(
-                       final HashSet<ObjectClassDefinition> ocSet,
-                       final DITContentRuleDefinition ditContentRule,
-                       final List<String> invalidReasons)
+  private void checkAuxiliaryClasses(
+                    final HashSet<ObjectClassDefinition> ocSet,
+                    final DITContentRuleDefinition ditContentRule,
+                    final ObjectClassRules rules)
   {
     final HashSet<ObjectClassDefinition> auxSet =
          new HashSet<ObjectClassDefinition>();
@@ -740,62 +914,29 @@ public final class EntryValidator
       }
     }
 
-    boolean entryValid = true;
     for (final ObjectClassDefinition d : ocSet)
     {
       final ObjectClassType t = d.getObjectClassType(schema);
       if ((t == ObjectClassType.AUXILIARY) && (! auxSet.contains(d)))
       {
-        entryValid = false;
-        updateCount(d.getNameOrOID(), prohibitedObjectClasses);
-        if (invalidReasons != null)
-        {
-          invalidReasons.add(
-               ERR_ENTRY_AUX_CLASS_NOT_ALLOWED.get(d.getNameOrOID()));
-        }
+        rules.auxiliaryClassViolations.add(new ObjectClassViolation(
+             ViolationType.PROHIBITED_OBJECT_CLASS, d.getNameOrOID(),
+             ERR_ENTRY_AUX_CLASS_NOT_ALLOWED.get(d.getNameOrOID())));
       }
     }
-
-    return entryValid;
   }
 
-  private boolean checkRDN(final RDN rdn,
-                           final HashSet<AttributeTypeDefinition> requiredAttrs,
-                           final HashSet<AttributeTypeDefinition> optionalAttrs,
-                           final NameFormDefinition nameForm,
+  private boolean checkRDN(final RDN rdn, final ObjectClassRules rules,
                            final List<String> invalidReasons)
   {
-    final HashSet<AttributeTypeDefinition> nfReqAttrs =
-         new HashSet<AttributeTypeDefinition>();
-    final HashSet<AttributeTypeDefinition> nfAllowedAttrs =
-         new HashSet<AttributeTypeDefinition>();
-    if (nameForm != null)
-    {
-      for (final String s : nameForm.getRequiredAttributes())
-      {
-        final AttributeTypeDefinition d = schema.getAttributeType(s);
-        if (d != null)
-        {
-          nfReqAttrs.add(d);
-        }
-      }
-
-      nfAllowedAttrs.addAll(nfReqAttrs);
-      for (final String s : nameForm.getOptionalAttributes())
-      {
-        final AttributeTypeDefinition d = schema.getAttributeType(s);
-        if (d != null)
-        {
-          nfAllowedAttrs.add(d);
-        }
-      }
-    }
+    final boolean checkNameForm = (checkNameForms && rules.hasNameForm);
+    final BitSet nfReqAttrs = (BitSet) rules.nameFormRequiredAttributes.clone();
 
     boolean entryValid = true;
     for (final String s : rdn.getAttributeNames())
     {
-      final AttributeTypeDefinition d = schema.getAttributeType(s);
-      if (d == null)
+      final Integer index = attributeIndexes.get(toLowerCase(s));
+      if (index == null)
       {
         if (checkUndefinedAttributes)
         {
@@ -809,9 +950,9 @@ public final class EntryValidator
       }
       else
       {
+        final AttributeTypeDefinition d = attributeTypes[index];
         if (checkProhibitedAttributes &&
-            (! (requiredAttrs.contains(d) || optionalAttrs.contains(d) ||
-                d.isOperational())))
+            (! (rules.allowedAttributes.get(index) || d.isOperational())))
         {
           entryValid = false;
           updateCount(d.getNameOrOID(), prohibitedAttributes);
@@ -822,28 +963,29 @@ public final class EntryValidator
           }
         }
 
-        if (checkNameForms && (nameForm != null))
+        if (checkNameForm)
         {
-          if (! nfReqAttrs.remove(d))
+          if (nfReqAttrs.get(index))
+          {
+            nfReqAttrs.clear(index);
+          }
+          else if (! rules.nameFormAllowedAttributes.get(index))
           {
-            if (! nfAllowedAttrs.contains(d))
+            if (entryValid)
+            {
+              entryValid = false;
+              nameFormViolations.incrementAndGet();
+            }
+            if (invalidReasons != null)
             {
-              if (entryValid)
-              {
-                entryValid = false;
-                nameFormViolations.incrementAndGet();
-              }
-              if (invalidReasons != null)
-              {
-                invalidReasons.add(ERR_ENTRY_RDN_ATTR_NOT_ALLOWED_BY_NF.get(s));
-              }
+              invalidReasons.add(ERR_ENTRY_RDN_ATTR_NOT_ALLOWED_BY_NF.get(s));
             }
           }
         }
       }
     }
 
-    if (checkNameForms && (! nfReqAttrs.isEmpty()))
+    if (checkNameForm && (! nfReqAttrs.isEmpty()))
     {
       if (entryValid)
       {
@@ -852,10 +994,11 @@ public final class EntryValidator
       }
       if (invalidReasons != null)
       {
-        for (final AttributeTypeDefinition d : nfReqAttrs)
+        for (int i=nfReqAttrs.nextSetBit(0); i >= 0;
+             i=nfReqAttrs.nextSetBit(i+1))
         {
           invalidReasons.add(ERR_ENTRY_RDN_MISSING_REQUIRED_ATTR.get(
-               d.getNameOrOID()));
+               attributeTypes[i].getNameOrOID()));
         }
       }
     }
@@ -1206,4 +1349,72 @@ public final class EntryValidator
 
     return Collections.unmodifiableList(messages);
   }
+
+
+  /**
+   * The types of problems that may be found while compiling the rules for a
+   * set of object classes, which determine the counter to update whenever an
+   * entry with that set of object classes is validated.
+   */
+  private enum ViolationType
+  {
+    NO_OBJECT_CLASSES,
+    UNDEFINED_OBJECT_CLASS,
+    MISSING_SUPERIOR_CLASS,
+    PROHIBITED_OBJECT_CLASS,
+    NO_STRUCTURAL_CLASS,
+    MULTIPLE_STRUCTURAL_CLASSES
+  }
+
+
+  private static final class ObjectClassViolation
+  {
+    private final ViolationType type;
+
+    private final String name;
+
+    private final String message;
+
+    private ObjectClassViolation(final ViolationType type, final String name,
+                                 final String message)
+    {
+      this.type    = type;
+      this.name    = name;
+      this.message = message;
+    }
+  }
+
+
+  /**
+   * The rules that apply to every entry with a given set of object classes.
+   * The attribute types that are required or allowed by the object classes,
+   * the DIT content rule, and the name form are held as bit sets of attribute
+   * type indexes, and any problems with the object classes themselves are held
+   * so that they can be reported for each entry.  Instances are not modified
+   * after they have been compiled.
+   */
+  private static final class ObjectClassRules
+  {
+    private final ArrayList<ObjectClassViolation> objectClassViolations =
+         new ArrayList<ObjectClassViolation>(0);
+
+    private final ArrayList<ObjectClassViolation> auxiliaryClassViolations =
+         new ArrayList<ObjectClassViolation>(0);
+
+    private final BitSet requiredAttributes = new BitSet();
+
+    private final BitSet allowedAttributes = new BitSet();
+
+    private final BitSet nameFormRequiredAttributes = new BitSet();
+
+    private final BitSet nameFormAllowedAttributes = new BitSet();
+
+    private boolean hasNameForm = false;
+
+    private void addViolation(final ViolationType type, final String name,
+                              final String message)
+    {
+      objectClassViolations.add(new ObjectClassViolation(type, name, message));
+    }
+  }
 }
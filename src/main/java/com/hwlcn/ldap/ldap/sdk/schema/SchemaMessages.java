@@ -325,6 +325,13 @@ enum SchemaMessages
 
 
 
+  /**
+   * Entry {0} does not conform to the schema:  {1}
+   */
+  ERR_ENTRY_VIOLATES_SCHEMA("Entry {0} does not conform to the schema:  {1}"),
+
+
+
   /**
    * Unable to decode the provided string ''{0}'' as a matching rule use because the closing parenthesis was not at the end of the string.
    */
@@ -0,0 +1,81 @@
+package com.hwlcn.ldap.ldap.sdk.schema;
+
+
+
+import java.util.ArrayList;
+
+import com.hwlcn.ldap.ldap.sdk.Entry;
+import com.hwlcn.ldap.ldif.LDIFException;
+import com.hwlcn.ldap.ldif.LDIFReaderEntryTranslator;
+import com.hwlcn.core.annotation.ThreadSafety;
+import com.hwlcn.ldap.util.ThreadSafetyLevel;
+
+import static com.hwlcn.ldap.ldap.sdk.schema.SchemaMessages.*;
+import static com.hwlcn.ldap.util.StaticUtils.*;
+import static com.hwlcn.ldap.util.Validator.*;
+
+
+
+/**
+ * This class provides an LDIF reader entry translator that checks each entry
+ * read with an {@link EntryValidator}.  When it is provided to an
+ * {@code LDIFReader} created with more than one parse thread, entries are
+ * validated in parallel on those threads rather than by the thread that reads
+ * them.  An entry that is not valid causes the reader to throw an
+ * {@link LDIFException} from which reading may continue, and the validator
+ * keeps count of the problems found in all entries.  Entries may optionally be
+ * passed to another translator after they have been validated.
+ */
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class ValidatingEntryTranslator
+       implements LDIFReaderEntryTranslator
+{
+  private final EntryValidator entryValidator;
+
+  private final LDIFReaderEntryTranslator translator;
+
+
+  public ValidatingEntryTranslator(final EntryValidator entryValidator)
+  {
+    this(entryValidator, null);
+  }
+
+
+  public ValidatingEntryTranslator(final EntryValidator entryValidator,
+                                   final LDIFReaderEntryTranslator translator)
+  {
+    ensureNotNull(entryValidator);
+
+    this.entryValidator = entryValidator;
+    this.translator     = translator;
+  }
+
+
+  public EntryValidator getEntryValidator()
+  {
+    return entryValidator;
+  }
+
+
+  public Entry translate(final Entry original, final long firstLineNumber)
+         throws LDIFException
+  {
+    final ArrayList<String> invalidReasons = new ArrayList<String>(5);
+    if (! entryValidator.entryIsValid(original, invalidReasons))
+    {
+      throw new LDIFException(
+           ERR_ENTRY_VIOLATES_SCHEMA.get(original.getDN(),
+                concatenateStrings(invalidReasons)),
+           firstLineNumber, true);
+    }
+
+    if (translator == null)
+    {
+      return original;
+    }
+    else
+    {
+      return translator.translate(original, firstLineNumber);
+    }
+  }
+}
@@ -135,6 +135,13 @@ enum LDIFMessages
 
 
 
+  /**
+   * Unable to memory-map the portion of LDIF file {0} starting at byte {1,number,0} because it does not contain a record boundary within the maximum supported size of {2,number,0} bytes.
+   */
+  ERR_READ_MAPPED_RANGE_TOO_LARGE("Unable to memory-map the portion of LDIF file {0} starting at byte {1,number,0} because it does not contain a record boundary within the maximum supported size of {2,number,0} bytes."),
+
+
+
   /**
    * Unable to base64-decode the deleteOldRDN value in the modify DN change record starting at or near line number {0,number,0}:  {1}
    */
@@ -341,7 +348,14 @@ enum LDIFMessages
   /**
    * The record for entry ''{0}'' starting near line {1,number,0} contains a value for attribute ''{2}'' which violates the associated attribute syntax:  {3}
    */
-  ERR_READ_VALUE_SYNTAX_VIOLATION("The record for entry ''{0}'' starting near line {1,number,0} contains a value for attribute ''{2}'' which violates the associated attribute syntax:  {3}");
+  ERR_READ_VALUE_SYNTAX_VIOLATION("The record for entry ''{0}'' starting near line {1,number,0} contains a value for attribute ''{2}'' which violates the associated attribute syntax:  {3}"),
+
+
+
+  /**
+   * The LDIF writer was interrupted while waiting for records to be encoded and written.
+   */
+  ERR_WRITER_INTERRUPTED("The LDIF writer was interrupted while waiting for records to be encoded and written.");
 
 
 
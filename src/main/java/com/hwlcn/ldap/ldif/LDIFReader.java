@@ -10,16 +10,24 @@ import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.nio.charset.Charset;
 
 import com.hwlcn.ldap.asn1.ASN1OctetString;
@@ -54,6 +62,18 @@ import static com.hwlcn.ldap.util.Validator.*;
  * This class is not synchronized.  If multiple threads read from the
  * LDIFReader, they must be synchronized externally.
  * <BR><BR>
+ * When reading a large LDIF file, the reader may be created in memory-mapped
+ * mode.  In that mode, the file is split at record boundaries into ranges of a
+ * few megabytes, and each parse thread maps a range, copies it into a buffer
+ * of its own, splits it into records and decodes them, so that there is no
+ * single thread reading all of the lines.  Records may either be returned in the order in which they appear in
+ * the file, or in the order in which they are decoded, which avoids holding
+ * decoded ranges until all earlier ranges are complete.  Any
+ * {@link LDIFReaderEntryTranslator} is invoked by the parse threads with the
+ * line number at which the record starts, as in the other modes.  The reader
+ * configuration (for example, the schema and duplicate value behavior) may be
+ * changed until the first record is read.
+ * <BR><BR>
  * <H2>Example</H2>
  * The following example iterates through all entries contained in an LDIF file
  * and attempts to add them to a directory server:
@@ -126,6 +146,9 @@ public final class LDIFReader
   private static final int ASYNC_QUEUE_SIZE = 500;
 
 
+  private static final int MAPPED_RANGE_SIZE = 4 * 1024 * 1024;
+
+
   private static final Entry SKIP_ENTRY = new Entry("cn=skipped");
 
 
@@ -178,6 +201,8 @@ public final class LDIFReader
   private final BlockingQueue<Result<UnparsedLDIFRecord, LDIFRecord>>
        asyncParsedRecords;
 
+  private final MappedLDIFRecordReader mappedReader;
+
 
 
   public LDIFReader(final String path)
@@ -215,6 +240,35 @@ public final class LDIFReader
   }
 
 
+  public LDIFReader(final File file, final int numParseThreads,
+                    final LDIFReaderEntryTranslator entryTranslator,
+                    final boolean preserveOrder)
+         throws IOException
+  {
+    ensureNotNull(file);
+    ensureTrue(numParseThreads > 0,
+               "LDIFReader.numParseThreads must be greater than zero for a " +
+               "memory-mapped LDIF file.");
+
+    reader = null;
+    this.entryTranslator = entryTranslator;
+
+    duplicateValueBehavior = DuplicateValueBehavior.STRIP;
+    trailingSpaceBehavior  = TrailingSpaceBehavior.REJECT;
+
+    relativeBasePath = DEFAULT_RELATIVE_BASE_PATH;
+
+    isAsync = true;
+    asyncParser = null;
+    asyncParsingComplete = new AtomicBoolean(false);
+    asyncParsedRecords = new ArrayBlockingQueue
+         <Result<UnparsedLDIFRecord, LDIFRecord>>(2 * ASYNC_QUEUE_SIZE + 100);
+
+    mappedReader =
+         new MappedLDIFRecordReader(file, numParseThreads, preserveOrder);
+  }
+
+
   private static InputStream createAggregateInputStream(final File... files)
           throws IOException
   {
@@ -305,6 +359,7 @@ public final class LDIFReader
 
     this.reader = reader;
     this.entryTranslator = entryTranslator;
+    mappedReader = null;
 
     duplicateValueBehavior = DuplicateValueBehavior.STRIP;
     trailingSpaceBehavior  = TrailingSpaceBehavior.REJECT;
@@ -397,7 +452,14 @@ public final class LDIFReader
   public void close()
          throws IOException
   {
-    reader.close();
+    if (mappedReader == null)
+    {
+      reader.close();
+    }
+    else
+    {
+      mappedReader.close();
+    }
 
     if (isAsync())
     {
@@ -642,6 +704,11 @@ public final class LDIFReader
   {
     Result<UnparsedLDIFRecord, LDIFRecord> result = null;
 
+    if (mappedReader != null)
+    {
+      mappedReader.start();
+    }
+
     if (asyncParsingComplete.get())
     {
       result = asyncParsedRecords.poll();
@@ -2357,4 +2424,674 @@ public final class LDIFReader
         return record;
       }
   }
+
+
+
+  private static final class MappedRecordResult
+          implements Result<UnparsedLDIFRecord, LDIFRecord>
+  {
+    private final LDIFRecord record;
+
+    private final Throwable failureCause;
+
+    private final UnparsedLDIFRecord unparsedRecord;
+
+
+
+    private MappedRecordResult(final UnparsedLDIFRecord unparsedRecord,
+                               final LDIFRecord record,
+                               final Throwable failureCause)
+    {
+      this.unparsedRecord = unparsedRecord;
+      this.record         = record;
+      this.failureCause   = failureCause;
+    }
+
+
+
+    public UnparsedLDIFRecord getInput()
+    {
+      return unparsedRecord;
+    }
+
+
+
+    public LDIFRecord getOutput()
+    {
+      return record;
+    }
+
+
+
+    public Throwable getFailureCause()
+    {
+      return failureCause;
+    }
+  }
+
+
+
+  private final class MappedLDIFRecordReader
+  {
+    private final AtomicBoolean started;
+
+    private final AtomicInteger activeWorkers;
+
+    private final AtomicInteger nextRange;
+
+    private final AtomicReferenceArray
+         <List<Result<UnparsedLDIFRecord, LDIFRecord>>> decodedRanges;
+
+    private final boolean preserveOrder;
+
+    private volatile boolean closed;
+
+    private final FileChannel channel;
+
+    private final File file;
+
+    private final int numThreads;
+
+    private volatile int nextRangeToDeliver;
+
+    // The byte offset at which each range starts, with a final element holding
+    // the size of the file.
+    private final long[] rangeStarts;
+
+    // The line number of the first line in each range, or -1 if it is not yet
+    // known.  The line number for a range is only known once the lines in all
+    // earlier ranges have been counted.
+    private final long[] rangeFirstLineNumbers;
+
+    private final Object lineNumberLock;
+
+    private final ReentrantLock deliveryLock;
+
+    private final Semaphore rangePermits;
+
+
+
+    private MappedLDIFRecordReader(final File file, final int numThreads,
+                                   final boolean preserveOrder)
+            throws IOException
+    {
+      this.file          = file;
+      this.numThreads    = numThreads;
+      this.preserveOrder = preserveOrder;
+
+      channel = new FileInputStream(file).getChannel();
+      try
+      {
+        rangeStarts = findRangeStarts();
+      }
+      catch (final IOException ioe)
+      {
+        debugException(ioe);
+        channel.close();
+        throw ioe;
+      }
+
+      final int numRanges = rangeStarts.length - 1;
+      rangeFirstLineNumbers = new long[numRanges];
+      Arrays.fill(rangeFirstLineNumbers, -1L);
+      rangeFirstLineNumbers[0] = 1L;
+
+      started            = new AtomicBoolean(false);
+      activeWorkers      = new AtomicInteger(numThreads);
+      nextRange          = new AtomicInteger(0);
+      decodedRanges      = new AtomicReferenceArray
+           <List<Result<UnparsedLDIFRecord, LDIFRecord>>>(numRanges);
+      lineNumberLock     = new Object();
+      deliveryLock       = new ReentrantLock();
+      rangePermits       = new Semaphore(2 * numThreads);
+      nextRangeToDeliver = 0;
+      closed             = false;
+    }
+
+
+
+    private long[] findRangeStarts()
+            throws IOException
+    {
+      final long size = channel.size();
+      final ArrayList<Long> starts = new ArrayList<Long>(
+           (int) Math.min(1000000L, (size / MAPPED_RANGE_SIZE) + 2L));
+      starts.add(0L);
+
+      final ByteBuffer buffer = ByteBuffer.allocate(8192);
+      long pos = MAPPED_RANGE_SIZE;
+      while (pos < size)
+      {
+        final long boundary = findRecordBoundary(pos, buffer);
+        if ((boundary < 0L) || (boundary >= size))
+        {
+          break;
+        }
+
+        starts.add(boundary);
+        pos = boundary + MAPPED_RANGE_SIZE;
+      }
+
+      starts.add(size);
+
+      final long[] startArray = new long[starts.size()];
+      for (int i=0; i < startArray.length; i++)
+      {
+        startArray[i] = starts.get(i);
+      }
+
+      return startArray;
+    }
+
+
+
+    // Finds the position just after the first empty line that ends at or after
+    // the given position, or -1 if there is no such line.  An empty line can
+    // never be a continuation, so it always separates two records.
+    private long findRecordBoundary(final long startPos,
+                                    final ByteBuffer buffer)
+            throws IOException
+    {
+      long pos = startPos - 1L;
+      int state = 0;
+      while (true)
+      {
+        buffer.clear();
+        final int bytesRead = channel.read(buffer, pos);
+        if (bytesRead <= 0)
+        {
+          return -1L;
+        }
+
+        for (int i=0; i < bytesRead; i++)
+        {
+          switch (buffer.get(i))
+          {
+            case '\n':
+              if (state != 0)
+              {
+                return pos + i + 1;
+              }
+              state = 1;
+              break;
+
+            case '\r':
+              if (state == 1)
+              {
+                state = 2;
+              }
+              else
+              {
+                state = 0;
+              }
+              break;
+
+            default:
+              state = 0;
+              break;
+          }
+        }
+
+        pos += bytesRead;
+      }
+    }
+
+
+
+    private void start()
+    {
+      if (started.getAndSet(true))
+      {
+        return;
+      }
+
+      final LDAPSDKThreadFactory threadFactory =
+           new LDAPSDKThreadFactory("LDIFReader Worker", true, null);
+      for (int i=0; i < numThreads; i++)
+      {
+        threadFactory.newThread(new MappedRangeWorker()).start();
+      }
+    }
+
+
+
+    private void close()
+            throws IOException
+    {
+      closed = true;
+      synchronized (lineNumberLock)
+      {
+        lineNumberLock.notifyAll();
+      }
+
+      rangePermits.release(numThreads);
+      asyncParsingComplete.set(true);
+      channel.close();
+    }
+
+
+
+    private long getFirstLineNumber(final int range, final long numLines)
+    {
+      synchronized (lineNumberLock)
+      {
+        while ((rangeFirstLineNumbers[range] < 0L) && (! closed))
+        {
+          try
+          {
+            lineNumberLock.wait();
+          }
+          catch (final InterruptedException ie)
+          {
+            debugException(ie);
+          }
+        }
+
+        final long firstLineNumber = Math.max(rangeFirstLineNumbers[range], 0L);
+        if ((range + 1) < rangeFirstLineNumbers.length)
+        {
+          rangeFirstLineNumbers[range+1] = firstLineNumber + numLines;
+          lineNumberLock.notifyAll();
+        }
+
+        return firstLineNumber;
+      }
+    }
+
+
+
+    private void deliver(
+                      final List<Result<UnparsedLDIFRecord, LDIFRecord>> list,
+                      final Result<UnparsedLDIFRecord, LDIFRecord> result)
+    {
+      if (list == null)
+      {
+        put(result);
+      }
+      else
+      {
+        list.add(result);
+      }
+    }
+
+
+
+    private void put(final Result<UnparsedLDIFRecord, LDIFRecord> result)
+    {
+      try
+      {
+        while (! closed)
+        {
+          if (asyncParsedRecords.offer(result, 100L, TimeUnit.MILLISECONDS))
+          {
+            return;
+          }
+        }
+      }
+      catch (final InterruptedException ie)
+      {
+        debugException(ie);
+      }
+    }
+
+
+
+    // Makes the records in the given range available to the reader once the
+    // records in all earlier ranges have been made available.  Whichever
+    // thread completes the next range to deliver delivers it along with any
+    // later ranges that are already complete.
+    private void rangeDecoded(final int range,
+                   final List<Result<UnparsedLDIFRecord, LDIFRecord>> results)
+    {
+      decodedRanges.set(range, results);
+
+      while (decodedRanges.get(nextRangeToDeliver) != null)
+      {
+        if (! deliveryLock.tryLock())
+        {
+          return;
+        }
+
+        try
+        {
+          List<Result<UnparsedLDIFRecord, LDIFRecord>> list =
+               decodedRanges.get(nextRangeToDeliver);
+          while (list != null)
+          {
+            decodedRanges.set(nextRangeToDeliver, null);
+            for (final Result<UnparsedLDIFRecord, LDIFRecord> r : list)
+            {
+              put(r);
+            }
+
+            rangePermits.release();
+            nextRangeToDeliver++;
+            if (nextRangeToDeliver >= decodedRanges.length())
+            {
+              finish();
+              return;
+            }
+
+            list = decodedRanges.get(nextRangeToDeliver);
+          }
+        }
+        finally
+        {
+          deliveryLock.unlock();
+        }
+      }
+    }
+
+
+
+    private void finish()
+    {
+      put(new MappedRecordResult(new UnparsedLDIFRecord(
+           new ArrayList<StringBuilder>(0), duplicateValueBehavior,
+           trailingSpaceBehavior, schema, -1), null, null));
+      asyncParsingComplete.set(true);
+    }
+
+
+
+    private final class MappedRangeWorker
+            implements Runnable
+    {
+      private byte[] data = new byte[0];
+
+      private final RecordParser recordParser = new RecordParser();
+
+
+
+      public void run()
+      {
+        try
+        {
+          while (! closed)
+          {
+            if (preserveOrder)
+            {
+              rangePermits.acquireUninterruptibly();
+              if (closed)
+              {
+                return;
+              }
+            }
+
+            final int range = nextRange.getAndIncrement();
+            if (range >= decodedRanges.length())
+            {
+              return;
+            }
+
+            processRange(range);
+          }
+        }
+        finally
+        {
+          if ((activeWorkers.decrementAndGet() == 0) && (! preserveOrder))
+          {
+            finish();
+          }
+        }
+      }
+
+
+
+      private void processRange(final int range)
+      {
+        final List<Result<UnparsedLDIFRecord, LDIFRecord>> results;
+        if (preserveOrder)
+        {
+          results = new ArrayList<Result<UnparsedLDIFRecord, LDIFRecord>>();
+        }
+        else
+        {
+          results = null;
+        }
+
+        // The first line number of the range must be published and the range
+        // must be marked as decoded no matter what fails, or the workers and
+        // the reader waiting on later ranges would block forever.
+        boolean lineNumberPublished = false;
+        try
+        {
+          int length = 0;
+          Exception mapFailure = null;
+          try
+          {
+            length = mapRange(range);
+          }
+          catch (final Exception e)
+          {
+            debugException(e);
+            mapFailure = e;
+          }
+
+          final long numLines = countLines(length);
+          final long firstLineNumber = getFirstLineNumber(range, numLines);
+          lineNumberPublished = true;
+          if (mapFailure == null)
+          {
+            decodeRange(length, firstLineNumber, results);
+          }
+          else
+          {
+            deliver(results, new MappedRecordResult(
+                 new UnparsedLDIFRecord(mapFailure), null, mapFailure));
+          }
+        }
+        catch (final Throwable t)
+        {
+          debugException(t);
+          if (! lineNumberPublished)
+          {
+            getFirstLineNumber(range, 0L);
+          }
+
+          final Exception e;
+          if (t instanceof Exception)
+          {
+            e = (Exception) t;
+          }
+          else
+          {
+            e = new IOException(getExceptionMessage(t), t);
+          }
+
+          deliver(results, new MappedRecordResult(
+               new UnparsedLDIFRecord(e), null, t));
+        }
+        finally
+        {
+          if (preserveOrder)
+          {
+            rangeDecoded(range, results);
+          }
+        }
+      }
+
+
+
+      private int mapRange(final int range)
+              throws IOException
+      {
+        final long start = rangeStarts[range];
+        final long size = rangeStarts[range+1] - start;
+        if (size > Integer.MAX_VALUE)
+        {
+          throw new IOException(ERR_READ_MAPPED_RANGE_TOO_LARGE.get(
+               file.getAbsolutePath(), start, Integer.MAX_VALUE));
+        }
+
+        final int length = (int) size;
+        if (data.length < length)
+        {
+          data = new byte[length];
+        }
+
+        final MappedByteBuffer buffer =
+             channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        buffer.get(data, 0, length);
+        return length;
+      }
+
+
+
+      // Counts lines the same way as BufferedReader.readLine, for which a
+      // line may be terminated by LF, CR, or CR followed by LF.
+      private long countLines(final int length)
+      {
+        long numLines = 0L;
+        for (int i=0; i < length; i++)
+        {
+          if (data[i] == '\n')
+          {
+            numLines++;
+          }
+          else if ((data[i] == '\r') &&
+                   (((i+1) == length) || (data[i+1] != '\n')))
+          {
+            numLines++;
+          }
+        }
+
+        if ((length > 0) && (data[length-1] != '\n') &&
+            (data[length-1] != '\r'))
+        {
+          numLines++;
+        }
+
+        return numLines;
+      }
+
+
+
+      // Splits the range into records using the same rules as
+      // readUnparsedRecord, and decodes each of them.
+      private void decodeRange(final int length, final long rangeFirstLine,
+                    final List<Result<UnparsedLDIFRecord, LDIFRecord>> results)
+      {
+        ArrayList<StringBuilder> lineList = new ArrayList<StringBuilder>(20);
+        boolean lastWasComment = false;
+        long firstLineNumber = rangeFirstLine;
+        long lineNumber = rangeFirstLine - 1L;
+        int pos = 0;
+        while ((pos < length) && (! closed))
+        {
+          final int lineStart = pos;
+          int lineEnd = pos;
+          while ((lineEnd < length) && (data[lineEnd] != '\n') &&
+                 (data[lineEnd] != '\r'))
+          {
+            lineEnd++;
+          }
+
+          if (lineEnd >= length)
+          {
+            pos = length;
+          }
+          else if ((data[lineEnd] == '\r') && ((lineEnd+1) < length) &&
+                   (data[lineEnd+1] == '\n'))
+          {
+            pos = lineEnd + 2;
+          }
+          else
+          {
+            pos = lineEnd + 1;
+          }
+
+          lineNumber++;
+
+          if (lineEnd == lineStart)
+          {
+            lastWasComment = false;
+            if (lineList.isEmpty())
+            {
+              firstLineNumber++;
+            }
+            else
+            {
+              decodeRecord(lineList, firstLineNumber, results);
+              lineList = new ArrayList<StringBuilder>(20);
+              firstLineNumber = lineNumber + 1L;
+            }
+
+            continue;
+          }
+
+          if (data[lineStart] == ' ')
+          {
+            if (lastWasComment)
+            {
+            }
+            else if (lineList.isEmpty())
+            {
+              final LDIFException le = new LDIFException(
+                   ERR_READ_UNEXPECTED_FIRST_SPACE.get(lineNumber), lineNumber,
+                   false);
+              deliver(results, new MappedRecordResult(
+                   new UnparsedLDIFRecord(le), null, le));
+              firstLineNumber = lineNumber + 1L;
+            }
+            else
+            {
+              lineList.get(lineList.size() - 1).append(
+                   toUTF8String(data, lineStart+1, lineEnd-lineStart-1));
+              lastWasComment = false;
+            }
+          }
+          else if (data[lineStart] == '#')
+          {
+            lastWasComment = true;
+          }
+          else
+          {
+            final String line =
+                 toUTF8String(data, lineStart, lineEnd-lineStart);
+            if (lineList.isEmpty() && line.startsWith("version:"))
+            {
+              lastWasComment = true;
+            }
+            else
+            {
+              lineList.add(new StringBuilder(line));
+              lastWasComment = false;
+            }
+          }
+        }
+
+        if ((! lineList.isEmpty()) && (! closed))
+        {
+          decodeRecord(lineList, firstLineNumber, results);
+        }
+      }
+
+
+
+      private void decodeRecord(final ArrayList<StringBuilder> lineList,
+                    final long firstLineNumber,
+                    final List<Result<UnparsedLDIFRecord, LDIFRecord>> results)
+      {
+        final UnparsedLDIFRecord unparsedRecord = new UnparsedLDIFRecord(
+             lineList, duplicateValueBehavior, trailingSpaceBehavior, schema,
+             firstLineNumber);
+
+        LDIFRecord record = null;
+        Throwable failureCause = null;
+        try
+        {
+          record = recordParser.process(unparsedRecord);
+        }
+        catch (final Exception e)
+        {
+          debugException(e);
+          failureCause = e;
+        }
+
+        deliver(results,
+             new MappedRecordResult(unparsedRecord, record, failureCause));
+      }
+    }
+  }
 }
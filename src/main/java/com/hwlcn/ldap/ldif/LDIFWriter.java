@@ -7,9 +7,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.hwlcn.ldap.asn1.ASN1OctetString;
 import com.hwlcn.ldap.ldap.sdk.Entry;
@@ -18,10 +23,13 @@ import com.hwlcn.ldap.util.LDAPSDKThreadFactory;
 import com.hwlcn.core.annotation.ThreadSafety;
 import com.hwlcn.ldap.util.ThreadSafetyLevel;
 import com.hwlcn.ldap.util.ByteStringBuffer;
+import com.hwlcn.ldap.util.parallel.AsynchronousParallelProcessor;
 import com.hwlcn.ldap.util.parallel.ParallelProcessor;
 import com.hwlcn.ldap.util.parallel.Result;
 import com.hwlcn.ldap.util.parallel.Processor;
+import com.hwlcn.ldap.util.parallel.ResultProcessor;
 
+import static com.hwlcn.ldap.ldif.LDIFMessages.*;
 import static com.hwlcn.ldap.util.Debug.*;
 import static com.hwlcn.ldap.util.StaticUtils.*;
 import static com.hwlcn.ldap.util.Validator.*;
@@ -33,6 +41,27 @@ import static com.hwlcn.ldap.util.Validator.*;
  * change records in the LDAP Data Interchange Format as per
  * <A HREF="http://www.ietf.org/rfc/rfc2849.txt">RFC 2849</A>.
  * <BR><BR>
+ * If the writer is created with a nonzero number of parallel threads, records
+ * are encoded (including any base64 encoding, line wrapping, and entry
+ * translation) by a pool of worker threads, and the encoded records are
+ * written in the order in which they were provided.  In that case, the
+ * {@code write} methods return as soon as the record has been queued, so
+ * entries must not be altered after they are provided to the writer, and a
+ * failure to encode or write a record will be reported by a subsequent call to
+ * one of the {@code write} methods or to {@link #flush} or {@link #close}.  No
+ * further records will be written after such a failure.  When writing to a
+ * file, the encoded records are written directly to its file channel with
+ * large gathered writes.
+ * <BR><BR>
+ * Records are handed to the worker threads in batches of 100, so the parallel
+ * mode only pays off when encoding is the bottleneck and more than one CPU is
+ * available to the writer: large entries, many base64-encoded or wrapped
+ * values, or an expensive entry translator.  It should not be used on a
+ * single-CPU system, for small numbers of records, or for small entries that
+ * are written to a fast local file, since in those cases the hand-off to the
+ * worker threads costs more than the encoding it offloads and the serial
+ * writer will be faster.
+ * <BR><BR>
  * <H2>Example</H2>
  * The following example performs a search to find all users in the "Sales"
  * department and then writes their entries to an LDIF file:
@@ -55,18 +84,28 @@ public final class LDIFWriter
 
   private static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
 
+  private static final int ASYNC_MIN_PER_ENCODING_THREAD = 1;
+
+  private static final int ASYNC_BATCH_SIZE = 100;
+
+  private static final int ASYNC_QUEUE_SIZE = 20;
+
   private final BufferedOutputStream writer;
 
+  private final FileChannel channel;
+
   private final ByteStringBuffer buffer;
 
   private final LDIFWriterEntryTranslator entryTranslator;
 
   private int wrapColumn = 0;
 
-  private int wrapColumnMinusTwo = -2;
+  private final AsynchronousParallelProcessor<List<PendingLDIFRecord>,
+       ByteStringBuffer> asyncEncoder;
 
-  private final ParallelProcessor<LDIFRecord,ByteStringBuffer>
-       toLdifBytesInvoker;
+  private ArrayList<PendingLDIFRecord> pendingBatch;
+
+  private final AtomicReference<Throwable> asyncFailure;
 
   public LDIFWriter(final String path)
          throws IOException
@@ -76,6 +115,14 @@ public final class LDIFWriter
 
 
 
+  public LDIFWriter(final String path, final int parallelThreads)
+         throws IOException
+  {
+    this(new FileOutputStream(path), parallelThreads);
+  }
+
+
+
   public LDIFWriter(final File file)
          throws IOException
   {
@@ -84,6 +131,23 @@ public final class LDIFWriter
 
 
 
+  public LDIFWriter(final File file, final int parallelThreads)
+         throws IOException
+  {
+    this(new FileOutputStream(file), parallelThreads);
+  }
+
+
+
+  public LDIFWriter(final File file, final int parallelThreads,
+                    final LDIFWriterEntryTranslator entryTranslator)
+         throws IOException
+  {
+    this(new FileOutputStream(file), parallelThreads, entryTranslator);
+  }
+
+
+
   public LDIFWriter(final OutputStream outputStream)
   {
     this(outputStream, 0);
@@ -117,36 +181,37 @@ public final class LDIFWriter
 
     if (parallelThreads == 0)
     {
-      toLdifBytesInvoker = null;
+      channel      = null;
+      asyncEncoder = null;
+      asyncFailure = null;
     }
     else
     {
+      if (outputStream instanceof FileOutputStream)
+      {
+        channel = ((FileOutputStream) outputStream).getChannel();
+      }
+      else
+      {
+        channel = null;
+      }
+
+      asyncFailure = new AtomicReference<Throwable>();
+
       final LDAPSDKThreadFactory threadFactory =
            new LDAPSDKThreadFactory("LDIFWriter Worker", true, null);
-      toLdifBytesInvoker = new ParallelProcessor<LDIFRecord,ByteStringBuffer>(
-           new Processor<LDIFRecord,ByteStringBuffer>() {
-             public ByteStringBuffer process(final LDIFRecord input)
-                    throws IOException
-             {
-               final LDIFRecord r;
-               if ((entryTranslator != null) && (input instanceof Entry))
-               {
-                 r = entryTranslator.translateEntryToWrite((Entry) input);
-                 if (r == null)
-                 {
-                   return null;
-                 }
-               }
-               else
-               {
-                 r = input;
-               }
-
-               final ByteStringBuffer b = new ByteStringBuffer(200);
-               r.toLDIF(b, wrapColumn);
-               return b;
-             }
-           }, threadFactory, parallelThreads, 5);
+      final ParallelProcessor<List<PendingLDIFRecord>,ByteStringBuffer>
+           parallelEncoder =
+                new ParallelProcessor<List<PendingLDIFRecord>,
+                     ByteStringBuffer>(
+                     new RecordEncoder(), threadFactory, parallelThreads,
+                     ASYNC_MIN_PER_ENCODING_THREAD);
+
+      asyncEncoder = new AsynchronousParallelProcessor
+           <List<PendingLDIFRecord>,ByteStringBuffer>(
+                new ArrayBlockingQueue<List<PendingLDIFRecord>>(
+                     ASYNC_QUEUE_SIZE),
+                parallelEncoder, new OrderedChunkWriter());
     }
   }
 
@@ -155,6 +220,25 @@ public final class LDIFWriter
   public void flush()
          throws IOException
   {
+    if (asyncEncoder != null)
+    {
+      final CountDownLatch flushLatch = new CountDownLatch(1);
+      submit(new PendingLDIFRecord(null, null, 0, null, flushLatch));
+
+      try
+      {
+        flushLatch.await();
+      }
+      catch (final InterruptedException e)
+      {
+        debugException(e);
+        Thread.currentThread().interrupt();
+        throw new IOException(ERR_WRITER_INTERRUPTED.get());
+      }
+
+      rethrow(asyncFailure.get());
+    }
+
     writer.flush();
   }
 
@@ -164,15 +248,22 @@ public final class LDIFWriter
   {
     try
     {
-      if (toLdifBytesInvoker != null)
+      if (asyncEncoder != null)
       {
         try
         {
-          toLdifBytesInvoker.shutdown();
+          flush();
         }
-        catch (InterruptedException e)
+        finally
         {
-          debugException(e);
+          try
+          {
+            asyncEncoder.shutdown();
+          }
+          catch (InterruptedException e)
+          {
+            debugException(e);
+          }
         }
       }
     }
@@ -190,8 +281,6 @@ public final class LDIFWriter
   public void setWrapColumn(final int wrapColumn)
   {
     this.wrapColumn = wrapColumn;
-
-    wrapColumnMinusTwo = wrapColumn - 2;
   }
 
 
@@ -209,6 +298,13 @@ public final class LDIFWriter
   {
     ensureNotNull(entry);
 
+    if (asyncEncoder != null)
+    {
+      debugLDIFWrite(entry);
+      submit(new PendingLDIFRecord(entry, comment, wrapColumn, null, null));
+      return;
+    }
+
     final Entry e;
     if (entryTranslator == null)
     {
@@ -237,10 +333,7 @@ public final class LDIFWriter
   public void writeChangeRecord(final LDIFChangeRecord changeRecord)
          throws IOException
   {
-    ensureNotNull(changeRecord);
-
-    debugLDIFWrite(changeRecord);
-    writeLDIF(changeRecord);
+    writeChangeRecord(changeRecord, null);
   }
 
 
@@ -251,6 +344,13 @@ public final class LDIFWriter
     ensureNotNull(changeRecord);
 
     debugLDIFWrite(changeRecord);
+    if (asyncEncoder != null)
+    {
+      submit(new PendingLDIFRecord(changeRecord, comment, wrapColumn, null,
+           null));
+      return;
+    }
+
     if (comment != null)
     {
       writeComment(comment, false, false);
@@ -274,6 +374,13 @@ public final class LDIFWriter
   {
     ensureNotNull(record);
 
+    if (asyncEncoder != null)
+    {
+      debugLDIFWrite(record);
+      submit(new PendingLDIFRecord(record, comment, wrapColumn, null, null));
+      return;
+    }
+
     final LDIFRecord r;
     if ((entryTranslator != null) && (record instanceof Entry))
     {
@@ -300,28 +407,9 @@ public final class LDIFWriter
   public void writeLDIFRecords(final List<? extends LDIFRecord> ldifRecords)
          throws IOException, InterruptedException
   {
-    if (toLdifBytesInvoker == null)
-    {
-      for (final LDIFRecord ldifRecord : ldifRecords)
-      {
-        writeLDIFRecord(ldifRecord);
-      }
-    }
-    else
+    for (final LDIFRecord ldifRecord : ldifRecords)
     {
-      final List<Result<LDIFRecord,ByteStringBuffer>> results =
-           toLdifBytesInvoker.processAll(ldifRecords);
-      for (final Result<LDIFRecord,ByteStringBuffer> result: results)
-      {
-        rethrow(result.getFailureCause());
-
-        final ByteStringBuffer encodedBytes = result.getOutput();
-        if (encodedBytes != null)
-        {
-          encodedBytes.write(writer);
-          writer.write(EOL_BYTES);
-        }
-      }
+      writeLDIFRecord(ldifRecord);
     }
   }
 
@@ -333,15 +421,38 @@ public final class LDIFWriter
          throws IOException
   {
     ensureNotNull(comment);
+
+    if (asyncEncoder != null)
+    {
+      final ByteStringBuffer encodedComment = new ByteStringBuffer();
+      encodeComment(comment, spaceBefore, spaceAfter, wrapColumn,
+           encodedComment);
+      submit(new PendingLDIFRecord(null, null, 0, encodedComment, null));
+      return;
+    }
+
+    buffer.clear();
+    encodeComment(comment, spaceBefore, spaceAfter, wrapColumn, buffer);
+    buffer.write(writer);
+  }
+
+
+
+  private static void encodeComment(final String comment,
+                                    final boolean spaceBefore,
+                                    final boolean spaceAfter,
+                                    final int wrapColumn,
+                                    final ByteStringBuffer buffer)
+  {
     if (spaceBefore)
     {
-      writer.write(EOL_BYTES);
+      buffer.append(EOL_BYTES);
     }
 
 
     if (comment.indexOf('\n') < 0)
     {
-      writeSingleLineComment(comment);
+      encodeSingleLineComment(comment, wrapColumn, buffer);
     }
     else
     {
@@ -349,20 +460,21 @@ public final class LDIFWriter
       final String[] lines = comment.split("\\r?\\n");
       for (final String line: lines)
       {
-        writeSingleLineComment(line);
+        encodeSingleLineComment(line, wrapColumn, buffer);
       }
     }
 
     if (spaceAfter)
     {
-      writer.write(EOL_BYTES);
+      buffer.append(EOL_BYTES);
     }
   }
 
 
 
-  private void writeSingleLineComment(final String comment)
-          throws IOException
+  private static void encodeSingleLineComment(final String comment,
+                                              final int wrapColumn,
+                                              final ByteStringBuffer buffer)
   {
 
     final int commentWrapMinusTwo;
@@ -372,10 +484,9 @@ public final class LDIFWriter
     }
     else
     {
-      commentWrapMinusTwo = wrapColumnMinusTwo;
+      commentWrapMinusTwo = wrapColumn - 2;
     }
 
-    buffer.clear();
     final int length = comment.length();
     if (length <= commentWrapMinusTwo)
     {
@@ -444,8 +555,6 @@ public final class LDIFWriter
         }
       }
     }
-
-    buffer.write(writer);
   }
 
 
@@ -461,6 +570,40 @@ public final class LDIFWriter
 
 
 
+  private void submit(final PendingLDIFRecord pendingRecord)
+          throws IOException
+  {
+    rethrow(asyncFailure.get());
+
+    if (pendingBatch == null)
+    {
+      pendingBatch = new ArrayList<PendingLDIFRecord>(ASYNC_BATCH_SIZE);
+    }
+
+    pendingBatch.add(pendingRecord);
+    if ((pendingBatch.size() < ASYNC_BATCH_SIZE) &&
+        (pendingRecord.flushLatch == null))
+    {
+      return;
+    }
+
+    final List<PendingLDIFRecord> batch = pendingBatch;
+    pendingBatch = null;
+
+    try
+    {
+      asyncEncoder.submit(batch);
+    }
+    catch (final InterruptedException e)
+    {
+      debugException(e);
+      Thread.currentThread().interrupt();
+      throw new IOException(ERR_WRITER_INTERRUPTED.get());
+    }
+  }
+
+
+
   public static List<String> wrapLines(final int wrapColumn,
                                        final String... ldifLines)
   {
@@ -678,19 +821,29 @@ public final class LDIFWriter
         final int length = buffer.length() - bufferStartPos;
         if (length > wrapColumn)
         {
-          final byte[] EOL_BYTES_PLUS_SPACE = new byte[EOL_BYTES.length + 1];
-          System.arraycopy(EOL_BYTES, 0, EOL_BYTES_PLUS_SPACE, 0,
-                           EOL_BYTES.length);
-          EOL_BYTES_PLUS_SPACE[EOL_BYTES.length] = ' ';
-
-          buffer.insert((bufferStartPos+wrapColumn), EOL_BYTES_PLUS_SPACE);
-
-          int pos = bufferStartPos + (2*wrapColumn) +
-                    EOL_BYTES_PLUS_SPACE.length - 1;
-          while (pos < buffer.length())
+          // Make room for all of the line breaks at once and then move each
+          // continuation line into place, working back from the end of the
+          // value, rather than inserting one line break at a time.
+          final int numContinuationLines =
+               (length - wrapColumn + wrapColumn - 2) / (wrapColumn - 1);
+          final int extraBytes =
+               numContinuationLines * (EOL_BYTES.length + 1);
+          buffer.setLength(buffer.length() + extraBytes);
+
+          final byte[] b = buffer.getBackingArray();
+          int srcEnd = bufferStartPos + length;
+          int destEnd = srcEnd + extraBytes;
+          for (int i=numContinuationLines; i > 0; i--)
           {
-            buffer.insert(pos, EOL_BYTES_PLUS_SPACE);
-            pos += (wrapColumn - 1 + EOL_BYTES_PLUS_SPACE.length);
+            final int srcStart = bufferStartPos + wrapColumn +
+                                 ((i - 1) * (wrapColumn - 1));
+            final int lineLength = srcEnd - srcStart;
+            destEnd -= lineLength;
+            System.arraycopy(b, srcStart, b, destEnd, lineLength);
+            b[--destEnd] = ' ';
+            destEnd -= EOL_BYTES.length;
+            System.arraycopy(EOL_BYTES, 0, b, destEnd, EOL_BYTES.length);
+            srcEnd = srcStart;
           }
         }
       }
@@ -723,4 +876,196 @@ public final class LDIFWriter
       throw new IOException(getExceptionMessage(t));
     }
   }
+
+
+
+  private static final class PendingLDIFRecord
+  {
+    private final ByteStringBuffer encodedBytes;
+
+    private final CountDownLatch flushLatch;
+
+    private final int wrapColumn;
+
+    private final LDIFRecord record;
+
+    private final String comment;
+
+
+
+    private PendingLDIFRecord(final LDIFRecord record, final String comment,
+                              final int wrapColumn,
+                              final ByteStringBuffer encodedBytes,
+                              final CountDownLatch flushLatch)
+    {
+      this.record       = record;
+      this.comment      = comment;
+      this.wrapColumn   = wrapColumn;
+      this.encodedBytes = encodedBytes;
+      this.flushLatch   = flushLatch;
+    }
+  }
+
+
+
+  private final class RecordEncoder
+          implements Processor<List<PendingLDIFRecord>,ByteStringBuffer>
+  {
+    public ByteStringBuffer process(final List<PendingLDIFRecord> inputs)
+    {
+      final ByteStringBuffer b = new ByteStringBuffer(256 * inputs.size());
+      for (final PendingLDIFRecord input : inputs)
+      {
+        encode(input, b);
+      }
+
+      return b;
+    }
+
+
+
+    private void encode(final PendingLDIFRecord input,
+                        final ByteStringBuffer b)
+    {
+      if (input.record == null)
+      {
+        if (input.encodedBytes != null)
+        {
+          b.append(input.encodedBytes);
+        }
+        return;
+      }
+
+      final LDIFRecord r;
+      if ((entryTranslator != null) && (input.record instanceof Entry))
+      {
+        r = entryTranslator.translateEntryToWrite((Entry) input.record);
+        if (r == null)
+        {
+          return;
+        }
+      }
+      else
+      {
+        r = input.record;
+      }
+
+      if (input.comment != null)
+      {
+        encodeComment(input.comment, false, false, input.wrapColumn, b);
+      }
+
+      r.toLDIF(b, input.wrapColumn);
+      b.append(EOL_BYTES);
+    }
+  }
+
+
+
+  private final class OrderedChunkWriter
+          implements ResultProcessor<List<PendingLDIFRecord>,ByteStringBuffer>
+  {
+    private final ArrayList<ByteStringBuffer> chunks;
+
+    private int chunkBytes;
+
+
+
+    private OrderedChunkWriter()
+    {
+      chunks     = new ArrayList<ByteStringBuffer>(100);
+      chunkBytes = 0;
+    }
+
+
+
+    public void processResult(
+                     final Result<List<PendingLDIFRecord>,ByteStringBuffer>
+                          result)
+    {
+      final List<PendingLDIFRecord> batch = result.getInput();
+      final CountDownLatch flushLatch = batch.get(batch.size() - 1).flushLatch;
+
+      try
+      {
+        if (asyncFailure.get() != null)
+        {
+          return;
+        }
+
+        if (result.getFailureCause() != null)
+        {
+          asyncFailure.compareAndSet(null, result.getFailureCause());
+          return;
+        }
+
+        final ByteStringBuffer encodedBytes = result.getOutput();
+        if ((encodedBytes != null) && (! encodedBytes.isEmpty()))
+        {
+          chunks.add(encodedBytes);
+          chunkBytes += encodedBytes.length();
+        }
+
+        if ((chunkBytes >= DEFAULT_BUFFER_SIZE) ||
+            (flushLatch != null))
+        {
+          writeChunks();
+        }
+      }
+      catch (final Throwable t)
+      {
+        debugException(t);
+        asyncFailure.compareAndSet(null, t);
+      }
+      finally
+      {
+        if (flushLatch != null)
+        {
+          flushLatch.countDown();
+        }
+      }
+    }
+
+
+
+    private void writeChunks()
+            throws IOException
+    {
+      if (chunks.isEmpty())
+      {
+        return;
+      }
+
+      try
+      {
+        if (channel == null)
+        {
+          for (final ByteStringBuffer b : chunks)
+          {
+            b.write(writer);
+          }
+        }
+        else
+        {
+          final ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+          for (int i=0; i < buffers.length; i++)
+          {
+            final ByteStringBuffer b = chunks.get(i);
+            buffers[i] = ByteBuffer.wrap(b.getBackingArray(), 0, b.length());
+          }
+
+          final ByteBuffer last = buffers[buffers.length - 1];
+          while (last.hasRemaining())
+          {
+            channel.write(buffers);
+          }
+        }
+      }
+      finally
+      {
+        chunks.clear();
+        chunkBytes = 0;
+      }
+    }
+  }
 }
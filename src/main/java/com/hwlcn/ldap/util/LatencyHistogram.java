@@ -0,0 +1,285 @@
+package com.hwlcn.ldap.util;
+
+
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.hwlcn.core.annotation.Mutable;
+import com.hwlcn.core.annotation.ThreadSafety;
+
+
+
+/**
+ * This class provides a lock-free histogram of durations in nanoseconds.
+ * Values are counted in log-linear buckets, in the style of HdrHistogram:
+ * every power of two is split into sixteen equal sub-buckets, so any reported
+ * percentile is within 6.25% of the true value while a histogram covering
+ * everything from one nanosecond to over an hour needs only 640 counters.
+ * Durations longer than that are counted in the last bucket.
+ * <BR><BR>
+ * Recording a value only updates atomic counters, so any number of threads
+ * may record values concurrently.  Histograms from different sources may be
+ * combined with the {@link #add} method, and {@link #getSnapshot(boolean)}
+ * may be used to periodically capture and clear the recorded values without
+ * losing any that are recorded concurrently.
+ */
+@Mutable()
+@ThreadSafety(level=ThreadSafetyLevel.COMPLETELY_THREADSAFE)
+public final class LatencyHistogram
+       implements Serializable
+{
+  private static final int SUB_BUCKET_BITS = 4;
+
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  private static final int MAX_VALUE_BITS = 43;
+
+  private static final long MAX_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1L;
+
+  private static final int NUM_BUCKETS =
+       (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private static final long serialVersionUID = 4736205410827613092L;
+
+
+
+  private final AtomicLong maxValue;
+
+  private final AtomicLong totalValue;
+
+  private final AtomicLongArray counts;
+
+
+
+  public LatencyHistogram()
+  {
+    maxValue   = new AtomicLong(0L);
+    totalValue = new AtomicLong(0L);
+    counts     = new AtomicLongArray(NUM_BUCKETS);
+  }
+
+
+
+  public void record(final long nanos)
+  {
+    final long value = Math.max(0L, nanos);
+
+    counts.incrementAndGet(getBucketIndex(value));
+    totalValue.addAndGet(value);
+
+    long max = maxValue.get();
+    while ((value > max) && (! maxValue.compareAndSet(max, value)))
+    {
+      max = maxValue.get();
+    }
+  }
+
+
+
+  /**
+   * Adds all values recorded in the provided histogram to this histogram.
+   */
+  public void add(final LatencyHistogram histogram)
+  {
+    for (int i=0; i < NUM_BUCKETS; i++)
+    {
+      final long count = histogram.counts.get(i);
+      if (count != 0L)
+      {
+        counts.addAndGet(i, count);
+      }
+    }
+
+    totalValue.addAndGet(histogram.totalValue.get());
+
+    final long otherMax = histogram.maxValue.get();
+    long max = maxValue.get();
+    while ((otherMax > max) && (! maxValue.compareAndSet(max, otherMax)))
+    {
+      max = maxValue.get();
+    }
+  }
+
+
+
+  /**
+   * Retrieves a copy of this histogram, optionally clearing the values
+   * recorded so far.  When resetting, every value recorded concurrently is
+   * counted either in the snapshot or in this histogram afterward.
+   */
+  public LatencyHistogram getSnapshot(final boolean reset)
+  {
+    final LatencyHistogram snapshot = new LatencyHistogram();
+    if (reset)
+    {
+      snapshot.maxValue.set(maxValue.getAndSet(0L));
+      snapshot.totalValue.set(totalValue.getAndSet(0L));
+      for (int i=0; i < NUM_BUCKETS; i++)
+      {
+        if (counts.get(i) != 0L)
+        {
+          snapshot.counts.set(i, counts.getAndSet(i, 0L));
+        }
+      }
+    }
+    else
+    {
+      snapshot.maxValue.set(maxValue.get());
+      snapshot.totalValue.set(totalValue.get());
+      for (int i=0; i < NUM_BUCKETS; i++)
+      {
+        snapshot.counts.set(i, counts.get(i));
+      }
+    }
+
+    return snapshot;
+  }
+
+
+
+  public void reset()
+  {
+    getSnapshot(true);
+  }
+
+
+
+  public long getCount()
+  {
+    long count = 0L;
+    for (int i=0; i < NUM_BUCKETS; i++)
+    {
+      count += counts.get(i);
+    }
+
+    return count;
+  }
+
+
+
+  public long getTotalNanos()
+  {
+    return totalValue.get();
+  }
+
+
+
+  public long getMaxNanos()
+  {
+    return maxValue.get();
+  }
+
+
+
+  public double getMeanNanos()
+  {
+    final long count = getCount();
+    if (count == 0L)
+    {
+      return Double.NaN;
+    }
+
+    return (1.0d * totalValue.get() / count);
+  }
+
+
+
+  /**
+   * Retrieves the value at or below which the given percentage of the
+   * recorded values fall, e.g. 99.9 for the 99.9th percentile, or zero if no
+   * values have been recorded.  The result is the upper bound of the bucket
+   * containing that value, but never more than the largest recorded value.
+   */
+  public long getValueAtPercentile(final double percentile)
+  {
+    final long[] c = new long[NUM_BUCKETS];
+    long count = 0L;
+    for (int i=0; i < NUM_BUCKETS; i++)
+    {
+      c[i] = counts.get(i);
+      count += c[i];
+    }
+
+    if (count == 0L)
+    {
+      return 0L;
+    }
+
+    final double p = Math.min(100.0d, Math.max(0.0d, percentile));
+    final long target = Math.max(1L, (long) Math.ceil(p / 100.0d * count));
+
+    long cumulative = 0L;
+    for (int i=0; i < NUM_BUCKETS; i++)
+    {
+      cumulative += c[i];
+      if (cumulative >= target)
+      {
+        return Math.min(getBucketUpperBound(i), maxValue.get());
+      }
+    }
+
+    return maxValue.get();
+  }
+
+
+
+  private static int getBucketIndex(final long value)
+  {
+    if (value < (SUB_BUCKET_COUNT << 1))
+    {
+      return (int) value;
+    }
+
+    final long v = Math.min(value, MAX_TRACKABLE_VALUE);
+    final int shift =
+         (63 - Long.numberOfLeadingZeros(v)) - SUB_BUCKET_BITS;
+    return (shift << SUB_BUCKET_BITS) + (int) (v >>> shift);
+  }
+
+
+
+  private static long getBucketUpperBound(final int index)
+  {
+    if (index < (SUB_BUCKET_COUNT << 1))
+    {
+      return index;
+    }
+
+    final int shift = (index >> SUB_BUCKET_BITS) - 1;
+    final long mantissa = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+    return ((mantissa + 1L) << shift) - 1L;
+  }
+
+
+
+  @Override()
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer);
+    return buffer.toString();
+  }
+
+
+
+  public void toString(final StringBuilder buffer)
+  {
+    buffer.append("LatencyHistogram(count=");
+    buffer.append(getCount());
+    buffer.append(", meanNanos=");
+    buffer.append(Math.round(getMeanNanos()));
+    buffer.append(", p50Nanos=");
+    buffer.append(getValueAtPercentile(50.0d));
+    buffer.append(", p90Nanos=");
+    buffer.append(getValueAtPercentile(90.0d));
+    buffer.append(", p99Nanos=");
+    buffer.append(getValueAtPercentile(99.0d));
+    buffer.append(", p999Nanos=");
+    buffer.append(getValueAtPercentile(99.9d));
+    buffer.append(", maxNanos=");
+    buffer.append(maxValue.get());
+    buffer.append(')');
+  }
+}
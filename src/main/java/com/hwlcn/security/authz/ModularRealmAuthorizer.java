@@ -7,6 +7,7 @@ import com.hwlcn.security.authz.permission.RolePermissionResolver;
 import com.hwlcn.security.realm.Realm;
 import com.hwlcn.security.subject.PrincipalCollection;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -113,8 +114,11 @@ public class ModularRealmAuthorizer implements Authorizer, PermissionResolverAwa
         assertRealmsConfigured();
         if (permissions != null && permissions.length > 0) {
             boolean[] isPermitted = new boolean[permissions.length];
-            for (int i = 0; i < permissions.length; i++) {
-                isPermitted[i] = isPermitted(principals, permissions[i]);
+            for (Realm realm : getRealms()) {
+                if (!(realm instanceof Authorizer)) continue;
+                if (merge(isPermitted, ((Authorizer) realm).isPermitted(principals, permissions))) {
+                    break;
+                }
             }
             return isPermitted;
         }
@@ -125,9 +129,11 @@ public class ModularRealmAuthorizer implements Authorizer, PermissionResolverAwa
         assertRealmsConfigured();
         if (permissions != null && !permissions.isEmpty()) {
             boolean[] isPermitted = new boolean[permissions.size()];
-            int i = 0;
-            for (Permission p : permissions) {
-                isPermitted[i++] = isPermitted(principals, p);
+            for (Realm realm : getRealms()) {
+                if (!(realm instanceof Authorizer)) continue;
+                if (merge(isPermitted, ((Authorizer) realm).isPermitted(principals, permissions))) {
+                    break;
+                }
             }
             return isPermitted;
         }
@@ -138,11 +144,7 @@ public class ModularRealmAuthorizer implements Authorizer, PermissionResolverAwa
     public boolean isPermittedAll(PrincipalCollection principals, String... permissions) {
         assertRealmsConfigured();
         if (permissions != null && permissions.length > 0) {
-            for (String perm : permissions) {
-                if (!isPermitted(principals, perm)) {
-                    return false;
-                }
-            }
+            return allTrue(isPermitted(principals, permissions));
         }
         return true;
     }
@@ -151,10 +153,32 @@ public class ModularRealmAuthorizer implements Authorizer, PermissionResolverAwa
     public boolean isPermittedAll(PrincipalCollection principals, Collection<Permission> permissions) {
         assertRealmsConfigured();
         if (permissions != null && !permissions.isEmpty()) {
-            for (Permission permission : permissions) {
-                if (!isPermitted(principals, permission)) {
-                    return false;
-                }
+            List<Permission> list = permissions instanceof List ?
+                    (List<Permission>) permissions : new ArrayList<Permission>(permissions);
+            return allTrue(isPermitted(principals, list));
+        }
+        return true;
+    }
+
+    /**
+     * Marks each permission granted by a realm as permitted, and returns whether every permission is now permitted,
+     * in which case the remaining realms need not be consulted.
+     */
+    private static boolean merge(boolean[] isPermitted, boolean[] realmPermitted) {
+        boolean all = true;
+        for (int i = 0; i < isPermitted.length; i++) {
+            if (!isPermitted[i] && realmPermitted != null && i < realmPermitted.length && realmPermitted[i]) {
+                isPermitted[i] = true;
+            }
+            all &= isPermitted[i];
+        }
+        return all;
+    }
+
+    private static boolean allTrue(boolean[] values) {
+        for (boolean b : values) {
+            if (!b) {
+                return false;
             }
         }
         return true;
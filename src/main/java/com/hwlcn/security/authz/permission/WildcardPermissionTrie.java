@@ -0,0 +1,191 @@
+package com.hwlcn.security.authz.permission;
+
+import com.hwlcn.security.authz.Permission;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A set of permissions compiled so that {@link #implies(Permission)} runs in time proportional to the number of
+ * parts in the permission being checked rather than the number of permissions held.
+ * <p/>
+ * Each {@link WildcardPermission} is added as a path in a trie with one level per part.  Parts containing the
+ * wildcard token share a single wildcard edge, and the other edges of a node are indexed by each subpart token, so
+ * that only edges whose subparts contain the tokens being checked are followed.  The result of
+ * {@link #implies(Permission)} is the same as calling {@link Permission#implies(Permission)} on each held permission.
+ * Permissions of other types, and subclasses that override {@code implies}, are checked one at a time.
+ * <p/>
+ * Instances are not modified after they are built and may be shared between threads.
+ */
+public class WildcardPermissionTrie {
+
+    private final Node root;
+
+    private final List<Permission> uncompiled;
+
+    public WildcardPermissionTrie(Collection<? extends Permission> permissions) {
+        this.root = new Node();
+        this.uncompiled = new ArrayList<Permission>();
+
+        Map<Class<?>, Boolean> compilable = new IdentityHashMap<Class<?>, Boolean>();
+        Map<String, String> tokens = new HashMap<String, String>();
+        if (permissions != null) {
+            for (Permission p : permissions) {
+                if (p instanceof WildcardPermission && ((WildcardPermission) p).getParts() != null &&
+                        isCompilable(p.getClass(), compilable)) {
+                    add((WildcardPermission) p, tokens);
+                } else if (p != null) {
+                    uncompiled.add(p);
+                }
+            }
+        }
+        root.computeImpliesEnd();
+    }
+
+    private static boolean isCompilable(Class<?> type, Map<Class<?>, Boolean> compilable) {
+        Boolean b = compilable.get(type);
+        if (b == null) {
+            try {
+                b = type.getMethod("implies", Permission.class).getDeclaringClass() == WildcardPermission.class;
+            } catch (NoSuchMethodException e) {
+                b = Boolean.FALSE;
+            }
+            compilable.put(type, b);
+        }
+        return b;
+    }
+
+    private void add(WildcardPermission permission, Map<String, String> tokens) {
+        Node node = root;
+        for (Set<String> part : permission.getParts()) {
+            node = node.getOrCreateChild(part, tokens);
+        }
+        node.terminal = true;
+    }
+
+    public boolean implies(Permission permission) {
+        if (permission instanceof WildcardPermission) {
+            List<Set<String>> parts = ((WildcardPermission) permission).getParts();
+            if (root.implies(parts, 0)) {
+                return true;
+            }
+        }
+        for (Permission p : uncompiled) {
+            if (p.implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        /**
+         * Whether a held permission ends at this node, which implies any permission whose parts matched so far.
+         */
+        private boolean terminal;
+
+        /**
+         * Whether a held permission ends at this node or continues with only wildcard parts, which implies a
+         * permission that ends here.
+         */
+        private boolean impliesEnd;
+
+        private Node wildcardChild;
+
+        private Map<Set<String>, Node> children;
+
+        private Map<String, List<Edge>> edgesByToken;
+
+        private Node getOrCreateChild(Set<String> part, Map<String, String> tokens) {
+            if (part.contains(WildcardPermission.WILDCARD_TOKEN)) {
+                if (wildcardChild == null) {
+                    wildcardChild = new Node();
+                }
+                return wildcardChild;
+            }
+
+            if (children == null) {
+                children = new HashMap<Set<String>, Node>();
+                edgesByToken = new HashMap<String, List<Edge>>();
+            }
+            Node child = children.get(part);
+            if (child == null) {
+                child = new Node();
+                children.put(part, child);
+                Edge edge = new Edge(part, child);
+                for (String token : part) {
+                    String interned = tokens.get(token);
+                    if (interned == null) {
+                        interned = token;
+                        tokens.put(token, token);
+                    }
+                    List<Edge> edges = edgesByToken.get(interned);
+                    if (edges == null) {
+                        edges = new ArrayList<Edge>(1);
+                        edgesByToken.put(interned, edges);
+                    }
+                    edges.add(edge);
+                }
+            }
+            return child;
+        }
+
+        private boolean computeImpliesEnd() {
+            impliesEnd = terminal;
+            if (wildcardChild != null && wildcardChild.computeImpliesEnd()) {
+                impliesEnd = true;
+            }
+            if (children != null) {
+                for (Node child : children.values()) {
+                    child.computeImpliesEnd();
+                }
+            }
+            return impliesEnd;
+        }
+
+        private boolean implies(List<Set<String>> parts, int index) {
+            if (terminal) {
+                return true;
+            }
+            if (index == parts.size()) {
+                return impliesEnd;
+            }
+            if (wildcardChild != null && wildcardChild.implies(parts, index + 1)) {
+                return true;
+            }
+            if (edgesByToken == null) {
+                return false;
+            }
+
+            Set<String> part = parts.get(index);
+            List<Edge> edges = edgesByToken.get(part.iterator().next());
+            if (edges != null) {
+                for (Edge edge : edges) {
+                    if ((part.size() == 1 || edge.part.containsAll(part)) && edge.child.implies(parts, index + 1)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Edge {
+
+        private final Set<String> part;
+
+        private final Node child;
+
+        private Edge(Set<String> part, Node child) {
+            this.part = part;
+            this.child = child;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hwlcn.security.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what a {@link CompactSerializer} has written to a {@link CompactDataOutput}.
+ */
+public final class CompactDataInput {
+
+    private final CompactSerializer<?> serializer;
+
+    private final byte[] buf;
+
+    private int pos;
+
+    private List<String> symbols;
+
+    CompactDataInput(CompactSerializer<?> serializer, byte[] buf) {
+        this.serializer = serializer;
+        this.buf = buf;
+    }
+
+    public int remaining() {
+        return buf.length - pos;
+    }
+
+    public int readByte() throws IOException {
+        if (pos >= buf.length) {
+            throw new EOFException();
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed variable-length integer.");
+    }
+
+    public int readVarInt() throws IOException {
+        long v = readVarLong();
+        if ((v & ~0xFFFFFFFFL) != 0) {
+            throw new IOException("Malformed variable-length integer.");
+        }
+        return (int) v;
+    }
+
+    public long readSignedVarLong() throws IOException {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Reads the number of bytes or elements that follow, which cannot be more than the number of bytes remaining as
+     * every element takes at least one byte.
+     */
+    public int readLength() throws IOException {
+        int length = readVarInt();
+        if (length < 0 || length > remaining()) {
+            throw new EOFException("Length " + (length & 0xFFFFFFFFL) + " exceeds the " + remaining() +
+                    " bytes remaining.");
+        }
+        return length;
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(buf, pos, bytes, 0, length);
+        pos += length;
+        return bytes;
+    }
+
+    public String readString() throws IOException {
+        int length = readLength();
+        int end = pos + length;
+        for (int i = pos; i < end; i++) {
+            if (buf[i] < 0) {
+                String s = new String(buf, pos, length, CompactDataOutput.UTF_8);
+                pos = end;
+                return s;
+            }
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buf[pos++];
+        }
+        return new String(chars);
+    }
+
+    public String readSymbol() throws IOException {
+        int index = readVarInt();
+        if (index == 0) {
+            String s = readString();
+            if (symbols == null) {
+                symbols = new ArrayList<String>();
+            }
+            symbols.add(s);
+            return s;
+        }
+        index--;
+        int symbolCount = serializer.getSymbolCount();
+        if (index < symbolCount) {
+            return serializer.getSymbol(index);
+        }
+        index -= symbolCount;
+        if (symbols == null || index >= symbols.size()) {
+            throw new IOException("Unknown symbol reference " + (index + symbolCount + 1) + ".");
+        }
+        return symbols.get(index);
+    }
+
+    public Object readValue() throws IOException {
+        return serializer.readValue(this);
+    }
+}
@@ -0,0 +1,130 @@
+package com.hwlcn.security.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The buffer a {@link CompactSerializer} writes to, with variable-length encodings for integers and strings.
+ *
+ * @see CompactDataInput
+ */
+public final class CompactDataOutput {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CompactSerializer<?> serializer;
+
+    private byte[] buf;
+
+    private int count;
+
+    /**
+     * Symbols written in this message that are not in the serializer's dictionary, by their index.
+     */
+    private Map<String, Integer> symbols;
+
+    CompactDataOutput(CompactSerializer<?> serializer) {
+        this.serializer = serializer;
+        this.buf = new byte[128];
+    }
+
+    private void ensureCapacity(int n) {
+        if (count + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + n));
+        }
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(1);
+        buf[count++] = (byte) b;
+    }
+
+    public void writeBoolean(boolean b) {
+        writeByte(b ? 1 : 0);
+    }
+
+    /**
+     * Writes a non-negative value in seven bits per byte, so that small values take a single byte.  Negative values
+     * take ten bytes; use {@link #writeSignedVarLong(long)} for them.
+     */
+    public void writeVarLong(long v) {
+        ensureCapacity(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[count++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[count++] = (byte) v;
+    }
+
+    public void writeVarInt(int v) {
+        writeVarLong(v & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a value that may be negative, so that values close to zero take a single byte.
+     */
+    public void writeSignedVarLong(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes.
+     */
+    public void writeString(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) >= 0x80) {
+                writeBytes(s.getBytes(UTF_8));
+                return;
+            }
+        }
+        writeVarInt(length);
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a string that is likely to be repeated, such as an attribute key or realm name.  A string in the
+     * serializer's {@link CompactSerializer#getSymbols() symbols}, or already written as a symbol in this message,
+     * is written as its index.
+     */
+    public void writeSymbol(String s) {
+        Integer index = serializer.getSymbolIndex(s);
+        if (index == null && symbols != null) {
+            index = symbols.get(s);
+        }
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+        if (symbols == null) {
+            symbols = new HashMap<String, Integer>();
+        }
+        symbols.put(s, serializer.getSymbolCount() + symbols.size());
+        writeByte(0);
+        writeString(s);
+    }
+
+    /**
+     * Writes a value of any type, using the serializer's codec for its class if there is one.
+     */
+    public void writeValue(Object value) throws IOException {
+        serializer.writeValue(value, this);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+}
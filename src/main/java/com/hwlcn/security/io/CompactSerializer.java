@@ -0,0 +1,319 @@
+package com.hwlcn.security.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A {@link Serializer} that writes a compact binary format instead of using {@code ObjectOutputStream}, avoiding
+ * the class descriptors and reflection of Java serialization.
+ * <p/>
+ * Strings, booleans, integers, longs, dates and byte arrays are written directly, with integers in a variable-length
+ * encoding.  Values of other classes are written by the {@link ValueCodec} {@link #addCodec added} for their class,
+ * and otherwise with Java serialization, unless {@link #setJavaSerializationEnabled(boolean) disabled}.  Strings
+ * written as symbols, such as attribute keys, are written once per message, or not at all if they are among the
+ * {@link #setSymbols(java.util.Collection) symbols} known in advance.
+ * <p/>
+ * The codecs and symbols are part of the format: a serializer can only read what was written by one with the same
+ * codecs and symbols in the same order, although more may be added at the end of each.  They should be set up
+ * before the serializer is used, after which it may be shared between threads.
+ * <p/>
+ * This class serializes a single value; subclasses override {@link #writeObject} and {@link #readObject} to write the
+ * fields of a particular class.
+ */
+public class CompactSerializer<T> implements Serializer<T> {
+
+    private static final int FORMAT_VERSION = 1;
+
+    //value tags. DO NOT CHANGE THE EXISTING VALUES!
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int TRUE = 2;
+    private static final int FALSE = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int DATE = 6;
+    private static final int BYTES = 7;
+    private static final int SERIALIZED = 8;
+    private static final int FIRST_CODEC = 16;
+
+    /**
+     * The maximum number of codecs, whose tags follow the built-in ones up to the largest value of a byte.
+     */
+    public static final int MAX_CODECS = 256 - FIRST_CODEC;
+
+    private static final Map<Class<?>, Integer> BUILT_IN_TAGS;
+
+    static {
+        Map<Class<?>, Integer> tags = new IdentityHashMap<Class<?>, Integer>();
+        tags.put(String.class, STRING);
+        tags.put(Boolean.class, TRUE);
+        tags.put(Integer.class, INTEGER);
+        tags.put(Long.class, LONG);
+        tags.put(Date.class, DATE);
+        tags.put(byte[].class, BYTES);
+        BUILT_IN_TAGS = tags;
+    }
+
+    private volatile ValueCodec<?>[] codecs;
+
+    private volatile Map<Class<?>, Integer> codecTags;
+
+    private volatile String[] symbols;
+
+    private volatile Map<String, Integer> symbolIndexes;
+
+    private boolean javaSerializationEnabled;
+
+    public CompactSerializer() {
+        this.codecs = new ValueCodec<?>[0];
+        this.codecTags = Collections.emptyMap();
+        this.symbols = new String[0];
+        this.symbolIndexes = Collections.emptyMap();
+        this.javaSerializationEnabled = true;
+    }
+
+    public List<ValueCodec<?>> getCodecs() {
+        List<ValueCodec<?>> list = new ArrayList<ValueCodec<?>>(codecs.length);
+        for (ValueCodec<?> codec : codecs) {
+            list.add(codec);
+        }
+        return list;
+    }
+
+    public synchronized void setCodecs(Collection<ValueCodec<?>> codecs) {
+        this.codecTags = Collections.emptyMap();
+        this.codecs = new ValueCodec<?>[0];
+        if (codecs != null) {
+            for (ValueCodec<?> codec : codecs) {
+                addCodec(codec);
+            }
+        }
+    }
+
+    /**
+     * Adds a codec for values of its type, replacing the built-in encoding or an earlier codec for the same class.
+     * At most {@link #MAX_CODECS} codecs may be added, since each is identified by a one-byte tag.
+     */
+    public synchronized void addCodec(ValueCodec<?> codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec argument cannot be null.");
+        }
+        if (this.codecs.length >= MAX_CODECS) {
+            throw new IllegalStateException("Unable to add more than " + MAX_CODECS + " codecs.");
+        }
+        ValueCodec<?>[] codecs = Arrays.copyOf(this.codecs, this.codecs.length + 1);
+        codecs[codecs.length - 1] = codec;
+        Map<Class<?>, Integer> codecTags = new IdentityHashMap<Class<?>, Integer>(this.codecTags);
+        codecTags.put(codec.getType(), FIRST_CODEC + codecs.length - 1);
+        this.codecs = codecs;
+        this.codecTags = codecTags;
+    }
+
+    public List<String> getSymbols() {
+        return Collections.unmodifiableList(Arrays.asList(symbols));
+    }
+
+    public synchronized void setSymbols(Collection<String> symbols) {
+        this.symbolIndexes = Collections.emptyMap();
+        this.symbols = new String[0];
+        if (symbols != null) {
+            addSymbols(symbols);
+        }
+    }
+
+    public synchronized void addSymbols(Collection<String> symbols) {
+        List<String> list = new ArrayList<String>(Arrays.asList(this.symbols));
+        Map<String, Integer> indexes = new HashMap<String, Integer>(this.symbolIndexes);
+        for (String symbol : symbols) {
+            if (symbol != null && !indexes.containsKey(symbol)) {
+                indexes.put(symbol, list.size());
+                list.add(symbol);
+            }
+        }
+        this.symbols = list.toArray(new String[list.size()]);
+        this.symbolIndexes = indexes;
+    }
+
+    public boolean isJavaSerializationEnabled() {
+        return javaSerializationEnabled;
+    }
+
+    /**
+     * Sets whether values of classes without a codec or built-in encoding are written and read with Java
+     * serialization.  If disabled, such values cause a {@link SerializationException}, and so do messages that
+     * contain them when they are read, which prevents untrusted input from instantiating arbitrary classes.
+     * The default is {@code true}.
+     */
+    public void setJavaSerializationEnabled(boolean javaSerializationEnabled) {
+        this.javaSerializationEnabled = javaSerializationEnabled;
+    }
+
+    Integer getSymbolIndex(String symbol) {
+        return symbolIndexes.get(symbol);
+    }
+
+    int getSymbolCount() {
+        return symbols.length;
+    }
+
+    String getSymbol(int index) {
+        return symbols[index];
+    }
+
+    public byte[] serialize(T o) throws SerializationException {
+        if (o == null) {
+            String msg = "argument cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        CompactDataOutput out = new CompactDataOutput(this);
+        out.writeByte(FORMAT_VERSION);
+        try {
+            writeObject(o, out);
+        } catch (IOException e) {
+            String msg = "Unable to serialize object [" + o + "].";
+            throw new SerializationException(msg, e);
+        }
+        return out.toByteArray();
+    }
+
+    public T deserialize(byte[] serialized) throws SerializationException {
+        if (serialized == null) {
+            String msg = "argument cannot be null.";
+            throw new IllegalArgumentException(msg);
+        }
+        CompactDataInput in = new CompactDataInput(this, serialized);
+        try {
+            int version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported format version " + version + ".");
+            }
+            T deserialized = readObject(in);
+            if (in.remaining() != 0) {
+                throw new IOException(in.remaining() + " unexpected bytes after the serialized object.");
+            }
+            return deserialized;
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            String msg = "Unable to deserialze argument byte array.";
+            throw new SerializationException(msg, e);
+        }
+    }
+
+    protected void writeObject(T o, CompactDataOutput out) throws IOException {
+        out.writeValue(o);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    protected T readObject(CompactDataInput in) throws IOException {
+        return (T) in.readValue();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    void writeValue(Object value, CompactDataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        Integer tag = codecTags.get(value.getClass());
+        if (tag != null) {
+            out.writeByte(tag);
+            ((ValueCodec<Object>) codecs[tag - FIRST_CODEC]).write(value, out);
+            return;
+        }
+        tag = BUILT_IN_TAGS.get(value.getClass());
+        switch (tag != null ? tag : SERIALIZED) {
+            case STRING:
+                out.writeByte(STRING);
+                out.writeSymbol((String) value);
+                break;
+            case TRUE:
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+                break;
+            case INTEGER:
+                out.writeByte(INTEGER);
+                out.writeSignedVarLong((Integer) value);
+                break;
+            case LONG:
+                out.writeByte(LONG);
+                out.writeSignedVarLong((Long) value);
+                break;
+            case DATE:
+                out.writeByte(DATE);
+                out.writeSignedVarLong(((Date) value).getTime());
+                break;
+            case BYTES:
+                out.writeByte(BYTES);
+                out.writeBytes((byte[]) value);
+                break;
+            default:
+                if (!isJavaSerializationEnabled()) {
+                    throw new SerializationException("No codec for [" + value.getClass().getName() + "] values " +
+                            "and Java serialization is disabled.");
+                }
+                out.writeByte(SERIALIZED);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(baos);
+                oos.writeObject(value);
+                oos.close();
+                out.writeBytes(baos.toByteArray());
+        }
+    }
+
+    Object readValue(CompactDataInput in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readSymbol();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INTEGER:
+                long v = in.readSignedVarLong();
+                if (v != (int) v) {
+                    throw new IOException("Integer value " + v + " is out of range.");
+                }
+                return (int) v;
+            case LONG:
+                return in.readSignedVarLong();
+            case DATE:
+                return new Date(in.readSignedVarLong());
+            case BYTES:
+                return in.readBytes();
+            case SERIALIZED:
+                if (!isJavaSerializationEnabled()) {
+                    throw new SerializationException("Java serialized value found but Java serialization is disabled.");
+                }
+                ObjectInputStream ois = new ClassResolvingObjectInputStream(new ByteArrayInputStream(in.readBytes()));
+                try {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unable to deserialize value.", e);
+                } finally {
+                    ois.close();
+                }
+            default:
+                ValueCodec<?>[] codecs = this.codecs;
+                if (tag < FIRST_CODEC || tag - FIRST_CODEC >= codecs.length) {
+                    throw new IOException("Unknown value tag " + tag + ".");
+                }
+                return codecs[tag - FIRST_CODEC].read(in);
+        }
+    }
+}
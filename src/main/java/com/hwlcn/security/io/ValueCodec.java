@@ -0,0 +1,20 @@
+package com.hwlcn.security.io;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads values of one class for a {@link CompactSerializer}, in place of Java serialization.
+ * <p/>
+ * A codec is used for values whose class is exactly {@link #getType()}, not for subclasses.  Codecs may write
+ * nested values with {@link CompactDataOutput#writeValue(Object)}, which uses the other codecs of the serializer.
+ *
+ * @param <T> the class of the values written and read.
+ */
+public interface ValueCodec<T> {
+
+    Class<T> getType();
+
+    void write(T value, CompactDataOutput out) throws IOException;
+
+    T read(CompactDataInput in) throws IOException;
+}
@@ -35,6 +35,12 @@ public abstract class AuthorizingRealm extends AuthenticatingRealm
 
     private RolePermissionResolver permissionRoleResolver;
 
+    /**
+     * Compiled permissions for each cached AuthorizationInfo, held only as long as the info itself is referenced.
+     */
+    private final Map<AuthorizationInfo, WildcardPermissionTrie> permissionTries =
+            Collections.synchronizedMap(new WeakHashMap<AuthorizationInfo, WildcardPermissionTrie>());
+
     public AuthorizingRealm() {
         this(null, null);
     }
@@ -221,7 +227,10 @@ public abstract class AuthorizingRealm extends AuthenticatingRealm
         Cache<Object, AuthorizationInfo> cache = getAvailableAuthorizationCache();
         if (cache != null) {
             Object key = getAuthorizationCacheKey(principals);
-            cache.remove(key);
+            AuthorizationInfo info = cache.remove(key);
+            if (info != null) {
+                permissionTries.remove(info);
+            }
         }
     }
 
@@ -300,7 +309,31 @@ public abstract class AuthorizingRealm extends AuthenticatingRealm
         return isPermitted(permission, info);
     }
 
+    /**
+     * Returns the compiled permissions for the given info, building them the first time the info is seen.  An info
+     * is only compiled when authorization info is cached, since otherwise a new info is created for every check;
+     * {@code null} is returned in that case and the permissions are checked one at a time.
+     */
+    private WildcardPermissionTrie getPermissionTrie(AuthorizationInfo info) {
+        if (info == null || getAvailableAuthorizationCache() == null) {
+            return null;
+        }
+        WildcardPermissionTrie trie = permissionTries.get(info);
+        if (trie == null) {
+            trie = new WildcardPermissionTrie(getPermissions(info));
+            permissionTries.put(info, trie);
+        }
+        return trie;
+    }
+
     private boolean isPermitted(Permission permission, AuthorizationInfo info) {
+        return isPermitted(permission, info, getPermissionTrie(info));
+    }
+
+    private boolean isPermitted(Permission permission, AuthorizationInfo info, WildcardPermissionTrie trie) {
+        if (trie != null) {
+            return trie.implies(permission);
+        }
         Collection<Permission> perms = getPermissions(info);
         if (perms != null && !perms.isEmpty()) {
             for (Permission perm : perms) {
@@ -330,9 +363,10 @@ public abstract class AuthorizingRealm extends AuthenticatingRealm
         if (permissions != null && !permissions.isEmpty()) {
             int size = permissions.size();
             result = new boolean[size];
+            WildcardPermissionTrie trie = getPermissionTrie(info);
             int i = 0;
             for (Permission p : permissions) {
-                result[i++] = isPermitted(p, info);
+                result[i++] = isPermitted(p, info, trie);
             }
         } else {
             result = new boolean[0];
@@ -358,8 +392,9 @@ public abstract class AuthorizingRealm extends AuthenticatingRealm
 
     protected boolean isPermittedAll(Collection<Permission> permissions, AuthorizationInfo info) {
         if (permissions != null && !permissions.isEmpty()) {
+            WildcardPermissionTrie trie = getPermissionTrie(info);
             for (Permission p : permissions) {
-                if (!isPermitted(p, info)) {
+                if (!isPermitted(p, info, trie)) {
                     return false;
                 }
             }
@@ -34,6 +34,7 @@ public abstract class AbstractNativeSessionManager extends AbstractSessionManage
     public Session start(SessionContext context) {
         Session session = createSession(context);
         applyGlobalSessionTimeout(session);
+        onTimeoutReset(session);
         onStart(session, context);
         notifyStart(session);
         //Don't expose the EIS-tier Session object to the client-tier:
@@ -121,14 +122,35 @@ public abstract class AbstractNativeSessionManager extends AbstractSessionManage
         Session s = lookupRequiredSession(key);
         s.setTimeout(maxIdleTimeInMillis);
         onChange(s);
+        onTimeoutReset(s);
     }
 
     public void touch(SessionKey key) throws InvalidSessionException {
         Session s = lookupRequiredSession(key);
         s.touch();
+        onTouch(s);
+        onTimeoutReset(s);
+    }
+
+    /**
+     * Called when a session's last access time has been updated and nothing else about it has changed.  This
+     * implementation calls {@link #onChange(Session)}.
+     *
+     * @param s the session that was touched.
+     */
+    protected void onTouch(Session s) {
         onChange(s);
     }
 
+    /**
+     * Called when the time at which a session times out may have changed, because it has been started or touched or
+     * its timeout has been changed.  This implementation does nothing.
+     *
+     * @param s the session whose last access time or timeout has changed.
+     */
+    protected void onTimeoutReset(Session s) {
+    }
+
     public String getHost(SessionKey key) {
         return lookupRequiredSession(key).getHost();
     }
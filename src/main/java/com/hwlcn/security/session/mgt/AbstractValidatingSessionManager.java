@@ -28,7 +28,10 @@ import com.hwlcn.security.session.UnknownSessionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -58,6 +61,15 @@ public abstract class AbstractValidatingSessionManager extends AbstractNativeSes
 
     protected long sessionValidationInterval;
 
+    private boolean sessionExpiryIndexEnabled;
+
+    private volatile SessionExpiryIndex sessionExpiryIndex;
+
+    /**
+     * Whether the sessions in the data store at startup have been added to the expiry index by a full validation.
+     */
+    private volatile boolean sessionExpiryIndexSeeded;
+
     public AbstractValidatingSessionManager() {
         this.sessionValidationSchedulerEnabled = true;
         this.sessionValidationInterval = DEFAULT_SESSION_VALIDATION_INTERVAL;
@@ -109,6 +121,62 @@ public abstract class AbstractValidatingSessionManager extends AbstractNativeSes
         return sessionValidationInterval;
     }
 
+    public boolean isSessionExpiryIndexEnabled() {
+        return sessionExpiryIndexEnabled;
+    }
+
+    /**
+     * Sets whether sessions are indexed by the time at which they time out, so that {@link #validateSessions()} only
+     * looks at the sessions that are due to time out instead of every active session.  The default is {@code false}.
+     * <p/>
+     * Sessions are indexed when they are started, touched or have their timeout changed through this manager.  The
+     * first validation after startup still checks every active session, to index the sessions already in the data
+     * store.  After that, a session is only validated by the scheduler if this manager has indexed it, so this should
+     * not be enabled when other processes share the data store and may be the only ones to see a session used.
+     *
+     * @param sessionExpiryIndexEnabled whether sessions are indexed by the time at which they time out.
+     */
+    public void setSessionExpiryIndexEnabled(boolean sessionExpiryIndexEnabled) {
+        this.sessionExpiryIndexEnabled = sessionExpiryIndexEnabled;
+    }
+
+    private SessionExpiryIndex getSessionExpiryIndex() {
+        if (!isSessionExpiryIndexEnabled()) {
+            return null;
+        }
+        SessionExpiryIndex index = this.sessionExpiryIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = this.sessionExpiryIndex;
+                if (index == null) {
+                    //validation only runs once per interval, so finer buckets would only cause more moves:
+                    long interval = getSessionValidationInterval();
+                    index = new SessionExpiryIndex(interval > 0 ? interval : MILLIS_PER_MINUTE);
+                    this.sessionExpiryIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    protected void onTimeoutReset(Session s) {
+        SessionExpiryIndex index = getSessionExpiryIndex();
+        if (index != null) {
+            scheduleExpiry(index, s);
+        }
+    }
+
+    private void scheduleExpiry(SessionExpiryIndex index, Session s) {
+        long timeout = getTimeout(s);
+        Date lastAccessTime = s.getLastAccessTime();
+        if (timeout < 0 || lastAccessTime == null) {
+            index.remove(s.getId());
+        } else {
+            index.schedule(s.getId(), lastAccessTime.getTime() + timeout);
+        }
+    }
+
     @Override
     protected final Session doGetSession(final SessionKey key) throws InvalidSessionException {
         enableSessionValidationIfNecessary();
@@ -267,6 +335,12 @@ public abstract class AbstractValidatingSessionManager extends AbstractNativeSes
      * @see ValidatingSessionManager#validateSessions()
      */
     public void validateSessions() {
+        SessionExpiryIndex index = getSessionExpiryIndex();
+        if (index != null && sessionExpiryIndexSeeded) {
+            validateDueSessions(index);
+            return;
+        }
+
         if (log.isInfoEnabled()) {
             log.info("Validating all active sessions...");
         }
@@ -282,6 +356,9 @@ public abstract class AbstractValidatingSessionManager extends AbstractNativeSes
                     //this could probably stand to be cleaned up in future versions:
                     SessionKey key = new DefaultSessionKey(s.getId());
                     validate(s, key);
+                    if (index != null) {
+                        scheduleExpiry(index, s);
+                    }
                 } catch (InvalidSessionException e) {
                     if (log.isDebugEnabled()) {
                         boolean expired = (e instanceof ExpiredSessionException);
@@ -303,6 +380,52 @@ public abstract class AbstractValidatingSessionManager extends AbstractNativeSes
             }
             log.info(msg);
         }
+
+        if (index != null) {
+            sessionExpiryIndexSeeded = true;
+        }
+    }
+
+    /**
+     * Validates the sessions that the expiry index says are due to time out, and indexes again those that are still
+     * valid because they were touched after being placed in the index.
+     */
+    private void validateDueSessions(SessionExpiryIndex index) {
+        List<Serializable> due = index.removeDue(System.currentTimeMillis());
+        if (log.isDebugEnabled()) {
+            log.debug("Validating {} of {} indexed sessions that are due to time out...", due.size(),
+                    due.size() + index.size());
+        }
+
+        int invalidCount = 0;
+        for (Serializable sessionId : due) {
+            SessionKey key = new DefaultSessionKey(sessionId);
+            Session s;
+            try {
+                s = retrieveSession(key);
+            } catch (UnknownSessionException e) {
+                //already stopped and deleted:
+                continue;
+            }
+            if (s == null) {
+                continue;
+            }
+            try {
+                validate(s, key);
+                scheduleExpiry(index, s);
+            } catch (InvalidSessionException e) {
+                if (log.isDebugEnabled()) {
+                    boolean expired = (e instanceof ExpiredSessionException);
+                    log.debug("Invalidated session with id [" + sessionId + "]" +
+                            (expired ? " (expired)" : " (stopped)"));
+                }
+                invalidCount++;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Finished session validation.  [" + invalidCount + "] sessions were stopped.");
+        }
     }
 
     protected abstract Collection<Session> getActiveSessions();
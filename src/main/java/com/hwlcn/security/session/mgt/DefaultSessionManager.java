@@ -28,9 +28,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default business-tier implementation of a {@link ValidatingSessionManager}.  All session CRUD operations are
@@ -52,10 +61,32 @@ public class DefaultSessionManager extends AbstractValidatingSessionManager impl
 
     private boolean deleteInvalidSessions;
 
+    private static final int WRITE_LOCK_COUNT = 32;
+
+    private volatile long sessionWriteBehindInterval;
+
+    /**
+     * Sessions whose last access time has changed since they were last written, keyed by session ID.
+     */
+    private final ConcurrentHashMap<Serializable, Session> dirtySessions;
+
+    /**
+     * Locks striped by session ID, held while a dirty session is written or a session is deleted, so that a
+     * background write cannot put back a session that has just been deleted.
+     */
+    private final Object[] writeLocks;
+
+    private volatile ScheduledExecutorService writeBehindService;
+
     public DefaultSessionManager() {
         this.deleteInvalidSessions = true;
         this.sessionFactory = new SimpleSessionFactory();
         this.sessionDAO = new MemorySessionDAO();
+        this.dirtySessions = new ConcurrentHashMap<Serializable, Session>();
+        this.writeLocks = new Object[WRITE_LOCK_COUNT];
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new Object();
+        }
     }
 
     public void setSessionDAO(SessionDAO sessionDAO) {
@@ -128,6 +159,52 @@ public class DefaultSessionManager extends AbstractValidatingSessionManager impl
         this.deleteInvalidSessions = deleteInvalidSessions;
     }
 
+    /**
+     * Returns the number of milliseconds between writes of touched sessions to the {@code SessionDAO}, or zero if
+     * every touch is written immediately.  The default is zero.
+     *
+     * @return the number of milliseconds between writes of touched sessions, or zero if they are written immediately.
+     */
+    public long getSessionWriteBehindInterval() {
+        return sessionWriteBehindInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds between writes of touched sessions to the {@code SessionDAO}.
+     * <p/>
+     * Sessions are touched on every request, and by default each touch is written to the {@code SessionDAO}
+     * straight away.  When this is greater than zero, a touch only marks the session as dirty, and all dirty sessions
+     * are written together by a background thread once per interval, so a session touched many times in an interval
+     * is written once.  Any other change, including setting or removing an attribute, stopping or expiring the
+     * session, writes it immediately, along with its last access time.  Sessions that are still dirty are written when
+     * this manager is destroyed, and may be written at any time by calling {@link #flushSessions()}.
+     * <p/>
+     * Until a dirty session is written, the last access time held by the {@code SessionDAO} is out of date, so this
+     * should only be enabled when sessions are not shared with other processes through the data store, or when a
+     * session being idle for up to one more interval is acceptable.
+     * <p/>
+     * Changing the interval while the background thread is running reschedules it, and setting it to zero stops it
+     * and writes the sessions that are still dirty.
+     *
+     * @param sessionWriteBehindInterval the number of milliseconds between writes of touched sessions, or zero to
+     *                                   write every touch immediately.
+     */
+    public void setSessionWriteBehindInterval(long sessionWriteBehindInterval) {
+        this.sessionWriteBehindInterval = sessionWriteBehindInterval;
+        if (this.writeBehindService != null) {
+            stopWriteBehind();
+            if (isSessionWriteBehindEnabled()) {
+                startWriteBehindIfNecessary();
+            } else {
+                flushSessions();
+            }
+        }
+    }
+
+    public boolean isSessionWriteBehindEnabled() {
+        return sessionWriteBehindInterval > 0;
+    }
+
     public void setCacheManager(CacheManager cacheManager) {
         this.cacheManager = cacheManager;
         applyCacheManagerToSessionDAO();
@@ -208,10 +285,112 @@ public class DefaultSessionManager extends AbstractValidatingSessionManager impl
         }
     }
 
+    @Override
+    protected void onTouch(Session session) {
+        if (!isSessionWriteBehindEnabled()) {
+            onChange(session);
+            return;
+        }
+        dirtySessions.put(session.getId(), session);
+        startWriteBehindIfNecessary();
+    }
+
     protected void onChange(Session session) {
+        dirtySessions.remove(session.getId());
         sessionDAO.update(session);
     }
 
+    /**
+     * Writes every session that has been touched since it was last written to the {@code SessionDAO}.  A session that
+     * cannot be written is kept to be tried again on the next flush, unless it has been touched again meanwhile.
+     */
+    public void flushSessions() {
+        if (dirtySessions.isEmpty()) {
+            return;
+        }
+        int count = 0;
+        Iterator<Map.Entry<Serializable, Session>> i = dirtySessions.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Serializable, Session> entry = i.next();
+            Serializable sessionId = entry.getKey();
+            Session session = entry.getValue();
+            synchronized (getWriteLock(sessionId)) {
+                //a session deleted meanwhile is no longer dirty, and stopped and expired sessions were already
+                //written when they became invalid:
+                if (!dirtySessions.remove(sessionId, session) || !isValid(session)) {
+                    continue;
+                }
+                try {
+                    sessionDAO.update(session);
+                    count++;
+                } catch (RuntimeException e) {
+                    log.warn("Unable to write session with id [" + sessionId + "].  It will be retried on the " +
+                            "next flush.", e);
+                    if (isValid(session)) {
+                        dirtySessions.putIfAbsent(sessionId, session);
+                    }
+                }
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Wrote {} touched sessions.", count);
+        }
+    }
+
+    private static boolean isValid(Session session) {
+        return !(session instanceof ValidatingSession) || ((ValidatingSession) session).isValid();
+    }
+
+    private Object getWriteLock(Serializable sessionId) {
+        int h = sessionId != null ? sessionId.hashCode() : 0;
+        h ^= (h >>> 16);
+        return writeLocks[h & (WRITE_LOCK_COUNT - 1)];
+    }
+
+    private void startWriteBehindIfNecessary() {
+        //checked without locking first, as this is called on every touch:
+        if (this.writeBehindService != null) {
+            return;
+        }
+        synchronized (this) {
+            long interval = getSessionWriteBehindInterval();
+            if (this.writeBehindService != null || interval <= 0) {
+                return;
+            }
+            ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "SessionWriteBehind");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            service.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        flushSessions();
+                    } catch (Throwable t) {
+                        log.warn("Unable to write touched sessions.", t);
+                    }
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+            this.writeBehindService = service;
+        }
+    }
+
+    private synchronized void stopWriteBehind() {
+        if (this.writeBehindService != null) {
+            this.writeBehindService.shutdownNow();
+            this.writeBehindService = null;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        stopWriteBehind();
+        flushSessions();
+        super.destroy();
+    }
+
     protected Session retrieveSession(SessionKey sessionKey) throws UnknownSessionException {
         Serializable sessionId = getSessionId(sessionKey);
         if (sessionId == null) {
@@ -233,16 +412,36 @@ public class DefaultSessionManager extends AbstractValidatingSessionManager impl
     }
 
     protected Session retrieveSessionFromDataSource(Serializable sessionId) throws UnknownSessionException {
+        //a touched session that has not been written yet is more recent than the stored one:
+        Session dirty = dirtySessions.get(sessionId);
+        if (dirty != null) {
+            return dirty;
+        }
         return sessionDAO.readSession(sessionId);
     }
 
     protected void delete(Session session) {
-        sessionDAO.delete(session);
+        synchronized (getWriteLock(session.getId())) {
+            dirtySessions.remove(session.getId());
+            sessionDAO.delete(session);
+        }
     }
 
     protected Collection<Session> getActiveSessions() {
         Collection<Session> active = sessionDAO.getActiveSessions();
-        return active != null ? active : Collections.<Session>emptySet();
+        if (active == null) {
+            return Collections.emptySet();
+        }
+        if (dirtySessions.isEmpty()) {
+            return active;
+        }
+        //validate touched sessions that have not been written yet against their current last access time:
+        List<Session> current = new ArrayList<Session>(active.size());
+        for (Session s : active) {
+            Session dirty = dirtySessions.get(s.getId());
+            current.add(dirty != null ? dirty : s);
+        }
+        return current;
     }
 
 }
@@ -0,0 +1,123 @@
+package com.hwlcn.security.session.mgt;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Groups session IDs into buckets by the time at which the sessions time out, so that the sessions due to time out
+ * can be found without looking at every active session.
+ * <p/>
+ * Each bucket covers a fixed span of time, and a session is placed in the bucket after the one containing its
+ * timeout time, so every session in a bucket has timed out once the bucket is due.  A session only moves to another
+ * bucket when a touch pushes its timeout time past the end of its current bucket, which happens at most once per
+ * span however often it is touched.  The index may lag behind the sessions themselves: a session may be found in a
+ * bucket that is due although it has since been touched, or may have been stopped or deleted, so callers must check
+ * each session returned and {@link #schedule} it again if it is still valid.
+ *
+ * @since 1.2
+ */
+final class SessionExpiryIndex {
+
+    private final long bucketMillis;
+
+    private final ConcurrentHashMap<Serializable, Long> sessionBuckets;
+
+    private final ConcurrentSkipListMap<Long, Set<Serializable>> buckets;
+
+    SessionExpiryIndex(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucketMillis must be greater than zero.");
+        }
+        this.bucketMillis = bucketMillis;
+        this.sessionBuckets = new ConcurrentHashMap<Serializable, Long>();
+        this.buckets = new ConcurrentSkipListMap<Long, Set<Serializable>>();
+    }
+
+    /**
+     * Places the session with the given ID in the bucket for the given timeout time, or removes it from the index if
+     * the timeout time is negative because the session never times out.
+     */
+    void schedule(Serializable sessionId, long timeoutTimeMillis) {
+        if (timeoutTimeMillis < 0) {
+            remove(sessionId);
+            return;
+        }
+        Long bucket = (timeoutTimeMillis / bucketMillis) + 1;
+        Long previous = sessionBuckets.put(sessionId, bucket);
+        if (bucket.equals(previous)) {
+            return;
+        }
+        while (true) {
+            Set<Serializable> ids = getOrCreateBucket(bucket);
+            ids.add(sessionId);
+            //if the bucket was removed as due meanwhile, the ID may have been missed, so add it to a new one:
+            if (buckets.get(bucket) == ids) {
+                break;
+            }
+        }
+        if (previous != null) {
+            Set<Serializable> ids = buckets.get(previous);
+            if (ids != null) {
+                ids.remove(sessionId);
+            }
+        }
+    }
+
+    void remove(Serializable sessionId) {
+        Long bucket = sessionBuckets.remove(sessionId);
+        if (bucket != null) {
+            Set<Serializable> ids = buckets.get(bucket);
+            if (ids != null) {
+                ids.remove(sessionId);
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the IDs of the sessions in every bucket that is due at the given time.
+     */
+    List<Serializable> removeDue(long nowMillis) {
+        Long last = nowMillis / bucketMillis;
+        ConcurrentNavigableMap<Long, Set<Serializable>> due = buckets.headMap(last, true);
+        if (due.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Serializable> sessionIds = new ArrayList<Serializable>();
+        Iterator<Map.Entry<Long, Set<Serializable>>> i = due.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Long, Set<Serializable>> entry = i.next();
+            i.remove();
+            for (Serializable sessionId : entry.getValue()) {
+                //skip IDs left behind by concurrent moves to a later bucket:
+                if (sessionBuckets.remove(sessionId, entry.getKey())) {
+                    sessionIds.add(sessionId);
+                }
+            }
+        }
+        return sessionIds;
+    }
+
+    int size() {
+        return sessionBuckets.size();
+    }
+
+    private Set<Serializable> getOrCreateBucket(Long bucket) {
+        Set<Serializable> ids = buckets.get(bucket);
+        if (ids == null) {
+            ids = Collections.newSetFromMap(new ConcurrentHashMap<Serializable, Boolean>());
+            Set<Serializable> existing = buckets.putIfAbsent(bucket, ids);
+            if (existing != null) {
+                ids = existing;
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,143 @@
+package com.hwlcn.security.session.mgt;
+
+import com.hwlcn.security.io.CompactDataInput;
+import com.hwlcn.security.io.CompactDataOutput;
+import com.hwlcn.security.io.CompactSerializer;
+import com.hwlcn.security.subject.SimplePrincipalCollectionCodec;
+import com.hwlcn.security.subject.support.DefaultSubjectContext;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A {@link CompactSerializer} for {@link SimpleSession}s, for session DAOs that store sessions as bytes.
+ * <p/>
+ * Like {@code SimpleSession}'s own serialization, only the fields that are set are written, after a bit mask of
+ * those fields.  Timestamps are written as variable-length integers, with the stop and last access times relative to
+ * the start time, so that they typically take a few bytes.  Attribute keys are written as symbols, and the keys the
+ * framework stores in sessions are known in advance and written as a single byte.  Principal collections are written
+ * with a {@link SimplePrincipalCollectionCodec}; {@link #addCodec add codecs} for other attribute types stored in
+ * sessions to avoid Java serialization of them.
+ *
+ * @since 1.2
+ */
+public class SimpleSessionSerializer extends CompactSerializer<SimpleSession> {
+
+    //field bit masks. DO NOT CHANGE THE EXISTING VALUES!
+    private static final int ID_BIT_MASK = 1;
+    private static final int START_TIMESTAMP_BIT_MASK = 1 << 1;
+    private static final int STOP_TIMESTAMP_BIT_MASK = 1 << 2;
+    private static final int LAST_ACCESS_TIME_BIT_MASK = 1 << 3;
+    private static final int TIMEOUT_BIT_MASK = 1 << 4;
+    private static final int EXPIRED_BIT_MASK = 1 << 5;
+    private static final int HOST_BIT_MASK = 1 << 6;
+    private static final int ATTRIBUTES_BIT_MASK = 1 << 7;
+
+    public SimpleSessionSerializer() {
+        addCodec(new SimplePrincipalCollectionCodec());
+        setSymbols(Arrays.asList(
+                DefaultSubjectContext.PRINCIPALS_SESSION_KEY,
+                DefaultSubjectContext.AUTHENTICATED_SESSION_KEY));
+    }
+
+    @Override
+    protected void writeObject(SimpleSession session, CompactDataOutput out) throws IOException {
+        Serializable id = session.getId();
+        Date start = session.getStartTimestamp();
+        Date stop = session.getStopTimestamp();
+        Date lastAccess = session.getLastAccessTime();
+        long timeout = session.getTimeout();
+        String host = session.getHost();
+        Map<Object, Object> attributes = session.getAttributes();
+
+        int bitMask = 0;
+        bitMask = id != null ? bitMask | ID_BIT_MASK : bitMask;
+        bitMask = start != null ? bitMask | START_TIMESTAMP_BIT_MASK : bitMask;
+        bitMask = stop != null ? bitMask | STOP_TIMESTAMP_BIT_MASK : bitMask;
+        bitMask = lastAccess != null ? bitMask | LAST_ACCESS_TIME_BIT_MASK : bitMask;
+        bitMask = timeout != 0l ? bitMask | TIMEOUT_BIT_MASK : bitMask;
+        bitMask = session.isExpired() ? bitMask | EXPIRED_BIT_MASK : bitMask;
+        bitMask = host != null ? bitMask | HOST_BIT_MASK : bitMask;
+        bitMask = attributes != null && !attributes.isEmpty() ? bitMask | ATTRIBUTES_BIT_MASK : bitMask;
+        out.writeVarInt(bitMask);
+
+        if (id != null) {
+            out.writeValue(id);
+        }
+        long base = 0;
+        if (start != null) {
+            base = start.getTime();
+            out.writeSignedVarLong(base);
+        }
+        if (stop != null) {
+            out.writeSignedVarLong(stop.getTime() - base);
+        }
+        if (lastAccess != null) {
+            out.writeSignedVarLong(lastAccess.getTime() - base);
+        }
+        if (timeout != 0l) {
+            out.writeSignedVarLong(timeout);
+        }
+        if (host != null) {
+            out.writeString(host);
+        }
+        if ((bitMask & ATTRIBUTES_BIT_MASK) != 0) {
+            out.writeVarInt(attributes.size());
+            for (Map.Entry<Object, Object> entry : attributes.entrySet()) {
+                out.writeValue(entry.getKey());
+                out.writeValue(entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    protected SimpleSession readObject(CompactDataInput in) throws IOException {
+        int bitMask = in.readVarInt();
+        SimpleSession session = newSession();
+
+        Object id = (bitMask & ID_BIT_MASK) != 0 ? in.readValue() : null;
+        if (id != null && !(id instanceof Serializable)) {
+            throw new IOException("Session ID of type [" + id.getClass().getName() + "] is not Serializable.");
+        }
+        session.setId((Serializable) id);
+        long base = 0;
+        Date start = null;
+        if ((bitMask & START_TIMESTAMP_BIT_MASK) != 0) {
+            base = in.readSignedVarLong();
+            start = new Date(base);
+        }
+        session.setStartTimestamp(start);
+        session.setStopTimestamp(
+                (bitMask & STOP_TIMESTAMP_BIT_MASK) != 0 ? new Date(base + in.readSignedVarLong()) : null);
+        session.setLastAccessTime(
+                (bitMask & LAST_ACCESS_TIME_BIT_MASK) != 0 ? new Date(base + in.readSignedVarLong()) : null);
+        session.setTimeout((bitMask & TIMEOUT_BIT_MASK) != 0 ? in.readSignedVarLong() : 0l);
+        session.setExpired((bitMask & EXPIRED_BIT_MASK) != 0);
+        session.setHost((bitMask & HOST_BIT_MASK) != 0 ? in.readString() : null);
+
+        Map<Object, Object> attributes = null;
+        if ((bitMask & ATTRIBUTES_BIT_MASK) != 0) {
+            int count = in.readLength();
+            attributes = new HashMap<Object, Object>((int) (count / 0.75f) + 1);
+            for (int i = 0; i < count; i++) {
+                Object key = in.readValue();
+                attributes.put(key, in.readValue());
+            }
+        }
+        session.setAttributes(attributes);
+        return session;
+    }
+
+    /**
+     * Returns the session to populate with the fields read, allowing subclasses to return a subclass of
+     * {@code SimpleSession}.
+     */
+    protected SimpleSession newSession() {
+        return new SimpleSession();
+    }
+}
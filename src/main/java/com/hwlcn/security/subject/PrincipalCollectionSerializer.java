@@ -0,0 +1,20 @@
+package com.hwlcn.security.subject;
+
+import com.hwlcn.security.io.CompactSerializer;
+
+
+/**
+ * A {@link CompactSerializer} for principal collections, which may be used as the serializer of a
+ * {@link com.hwlcn.security.mgt.AbstractRememberMeManager AbstractRememberMeManager}.
+ * <p/>
+ * {@link SimplePrincipalCollection}s are written with a {@link SimplePrincipalCollectionCodec}, and principals of
+ * types other than those with a built-in encoding or an added codec with Java serialization.  As remembered
+ * identities are read from cookies sent by the client, consider disabling
+ * {@link #setJavaSerializationEnabled(boolean) Java serialization} and adding codecs for the principal types used.
+ */
+public class PrincipalCollectionSerializer extends CompactSerializer<PrincipalCollection> {
+
+    public PrincipalCollectionSerializer() {
+        addCodec(new SimplePrincipalCollectionCodec());
+    }
+}
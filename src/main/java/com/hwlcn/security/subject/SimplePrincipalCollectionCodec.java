@@ -0,0 +1,61 @@
+package com.hwlcn.security.subject;
+
+import com.hwlcn.security.io.CompactDataInput;
+import com.hwlcn.security.io.CompactDataOutput;
+import com.hwlcn.security.io.ValueCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Writes a {@link SimplePrincipalCollection} as its realm names, each followed by the principals from that realm.
+ * Realm names are written as symbols, and each principal with the codec for its own class.
+ */
+public class SimplePrincipalCollectionCodec implements ValueCodec<SimplePrincipalCollection> {
+
+    public Class<SimplePrincipalCollection> getType() {
+        return SimplePrincipalCollection.class;
+    }
+
+    public void write(SimplePrincipalCollection principals, CompactDataOutput out) throws IOException {
+        Set<String> realmNames = principals.getRealmNames();
+        List<String> nonEmpty = new ArrayList<String>(realmNames != null ? realmNames.size() : 0);
+        if (realmNames != null) {
+            for (String realmName : realmNames) {
+                if (!principals.fromRealm(realmName).isEmpty()) {
+                    nonEmpty.add(realmName);
+                }
+            }
+        }
+        out.writeVarInt(nonEmpty.size());
+        for (String realmName : nonEmpty) {
+            Collection<?> fromRealm = principals.fromRealm(realmName);
+            out.writeSymbol(realmName);
+            out.writeVarInt(fromRealm.size());
+            for (Object principal : fromRealm) {
+                out.writeValue(principal);
+            }
+        }
+    }
+
+    public SimplePrincipalCollection read(CompactDataInput in) throws IOException {
+        SimplePrincipalCollection principals = new SimplePrincipalCollection();
+        int realmCount = in.readLength();
+        for (int i = 0; i < realmCount; i++) {
+            String realmName = in.readSymbol();
+            int count = in.readLength();
+            for (int j = 0; j < count; j++) {
+                Object principal = in.readValue();
+                if (principal == null) {
+                    throw new IOException("Null principal in realm [" + realmName + "].");
+                }
+                principals.add(principal, realmName);
+            }
+        }
+        return principals;
+    }
+}
@@ -28,14 +28,30 @@ public class AntPathMatcher implements PatternMatcher {
     }
 
 
+    /**
+     * Splits a pattern or path into the directories that are matched against each other.
+     */
+    public String[] tokenizePath(String path) {
+        return StringUtils.tokenizeToStringArray(path, this.pathSeparator);
+    }
+
+    /**
+     * Same as {@link #match(String, String)}, for a pattern and path that have already been split by
+     * {@link #tokenizePath(String)}.
+     */
+    public boolean match(String pattern, String[] pattDirs, String path, String[] pathDirs) {
+        return doMatch(pattern, pattDirs, path, pathDirs, true);
+    }
+
     protected boolean doMatch(String pattern, String path, boolean fullMatch) {
+        return doMatch(pattern, tokenizePath(pattern), path, tokenizePath(path), fullMatch);
+    }
+
+    private boolean doMatch(String pattern, String[] pattDirs, String path, String[] pathDirs, boolean fullMatch) {
         if (path.startsWith(this.pathSeparator) != pattern.startsWith(this.pathSeparator)) {
             return false;
         }
 
-        String[] pattDirs = StringUtils.tokenizeToStringArray(pattern, this.pathSeparator);
-        String[] pathDirs = StringUtils.tokenizeToStringArray(path, this.pathSeparator);
-
         int pattIdxStart = 0;
         int pattIdxEnd = pattDirs.length - 1;
         int pathIdxStart = 0;
@@ -0,0 +1,158 @@
+package com.hwlcn.security.web.filter.mgt;
+
+import com.hwlcn.cache.BoundedCache;
+import com.hwlcn.security.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Finds the first of an ordered set of Ant-style chain names that matches a request path, giving the same result as
+ * calling {@link AntPathMatcher#matches(String, String)} for each name in turn.
+ * <p/>
+ * The names are split into directories once, and each is placed in a trie under its leading literal directories
+ * (those without {@code *} or {@code ?}).  A lookup splits the path once and walks the trie along its directories,
+ * so that only names whose literal prefix matches the path are candidates; the candidates are then checked with the
+ * pre-split pattern in definition order.  The chain found for each path is kept in a bounded cache.
+ * <p/>
+ * Instances are not modified after they are built and may be shared between threads.
+ */
+public class FilterChainPathIndex {
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final Object NO_MATCH = new Object();
+
+    private final AntPathMatcher pathMatcher;
+
+    private final String[] patterns;
+
+    private final String[][] patternDirs;
+
+    private final Node root;
+
+    private final BoundedCache<String, Object> cache;
+
+    public FilterChainPathIndex(Collection<String> chainNames, AntPathMatcher pathMatcher) {
+        this(chainNames, pathMatcher, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize the maximum number of paths whose chain is cached, or zero to disable the cache.
+     */
+    public FilterChainPathIndex(Collection<String> chainNames, AntPathMatcher pathMatcher, int cacheSize) {
+        if (pathMatcher == null) {
+            throw new IllegalArgumentException("AntPathMatcher argument cannot be null.");
+        }
+        this.pathMatcher = pathMatcher;
+        this.patterns = chainNames.toArray(new String[chainNames.size()]);
+        this.patternDirs = new String[patterns.length][];
+        this.root = new Node();
+        this.cache = cacheSize > 0 ? new BoundedCache<String, Object>(getClass().getName(), cacheSize) : null;
+
+        for (int i = 0; i < patterns.length; i++) {
+            String[] dirs = pathMatcher.tokenizePath(patterns[i]);
+            patternDirs[i] = dirs;
+            Node node = root;
+            for (String dir : dirs) {
+                if (dir.indexOf('*') != -1 || dir.indexOf('?') != -1) {
+                    break;
+                }
+                node = node.getOrCreateChild(dir);
+            }
+            node.addPattern(i);
+        }
+    }
+
+    public AntPathMatcher getPathMatcher() {
+        return pathMatcher;
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Returns the first chain name that matches the given path, or {@code null} if none does.
+     */
+    public String getChainName(String path) {
+        if (cache == null) {
+            return findChainName(path);
+        }
+        Object cached = cache.get(path);
+        if (cached == null) {
+            String chainName = findChainName(path);
+            cache.put(path, chainName != null ? chainName : NO_MATCH);
+            return chainName;
+        }
+        return cached != NO_MATCH ? (String) cached : null;
+    }
+
+    private String findChainName(String path) {
+        String[] pathDirs = pathMatcher.tokenizePath(path);
+
+        int[] candidates = new int[8];
+        int count = 0;
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            if (node.patterns != null) {
+                if (count + node.patternCount > candidates.length) {
+                    candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, count + node.patternCount));
+                }
+                System.arraycopy(node.patterns, 0, candidates, count, node.patternCount);
+                count += node.patternCount;
+            }
+            node = depth < pathDirs.length ? node.getChild(pathDirs[depth++]) : null;
+        }
+
+        Arrays.sort(candidates, 0, count);
+        for (int i = 0; i < count; i++) {
+            int index = candidates[i];
+            if (pathMatcher.match(patterns[index], patternDirs[index], path, pathDirs)) {
+                return patterns[index];
+            }
+        }
+        return null;
+    }
+
+    private static final class Node {
+
+        private Map<String, Node> children;
+
+        /**
+         * Indexes of the patterns whose literal prefix ends at this node, in ascending order.
+         */
+        private int[] patterns;
+
+        private int patternCount;
+
+        private Node getChild(String dir) {
+            return children != null ? children.get(dir) : null;
+        }
+
+        private Node getOrCreateChild(String dir) {
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+            Node child = children.get(dir);
+            if (child == null) {
+                child = new Node();
+                children.put(dir, child);
+            }
+            return child;
+        }
+
+        private void addPattern(int index) {
+            if (patterns == null) {
+                patterns = new int[2];
+            } else if (patternCount == patterns.length) {
+                patterns = Arrays.copyOf(patterns, patternCount * 2);
+            }
+            patterns[patternCount++] = index;
+        }
+    }
+}
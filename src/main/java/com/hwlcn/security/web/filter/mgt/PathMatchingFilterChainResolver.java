@@ -10,6 +10,7 @@ import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import java.util.Set;
 
 public class PathMatchingFilterChainResolver implements FilterChainResolver {
 
@@ -19,14 +20,25 @@ public class PathMatchingFilterChainResolver implements FilterChainResolver {
 
     private PatternMatcher pathMatcher;
 
+    private int chainCacheSize = FilterChainPathIndex.DEFAULT_CACHE_SIZE;
+
+    private volatile CompiledChains compiledChains;
+
+    /**
+     * Whether a subclass overrides {@link #pathMatches}, in which case chain names cannot be indexed.
+     */
+    private final boolean pathMatchesOverridden;
+
     public PathMatchingFilterChainResolver() {
         this.pathMatcher = new AntPathMatcher();
         this.filterChainManager = new DefaultFilterChainManager();
+        this.pathMatchesOverridden = overridesPathMatches();
     }
 
     public PathMatchingFilterChainResolver(FilterConfig filterConfig) {
         this.pathMatcher = new AntPathMatcher();
         this.filterChainManager = new DefaultFilterChainManager(filterConfig);
+        this.pathMatchesOverridden = overridesPathMatches();
     }
 
     public PatternMatcher getPathMatcher() {
@@ -45,6 +57,18 @@ public class PathMatchingFilterChainResolver implements FilterChainResolver {
         this.filterChainManager = filterChainManager;
     }
 
+    public int getChainCacheSize() {
+        return chainCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of request paths whose matching chain is remembered, or zero to match every request.
+     */
+    public void setChainCacheSize(int chainCacheSize) {
+        this.chainCacheSize = chainCacheSize;
+        this.compiledChains = null;
+    }
+
     public FilterChain getChain(ServletRequest request, ServletResponse response, FilterChain originalChain) {
         FilterChainManager filterChainManager = getFilterChainManager();
         if (!filterChainManager.hasChains()) {
@@ -53,6 +77,19 @@ public class PathMatchingFilterChainResolver implements FilterChainResolver {
 
         String requestURI = getPathWithinApplication(request);
 
+        FilterChainPathIndex index = getChainIndex(filterChainManager);
+        if (index != null && requestURI != null) {
+            String pathPattern = index.getChainName(requestURI);
+            if (pathPattern == null) {
+                return null;
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Matched path pattern [" + pathPattern + "] for requestURI [" + requestURI + "].  " +
+                        "Utilizing corresponding filter chain...");
+            }
+            return filterChainManager.proxy(originalChain, pathPattern);
+        }
+
         for (String pathPattern : filterChainManager.getChainNames()) {
 
             if (pathMatches(pathPattern, requestURI)) {
@@ -67,6 +104,42 @@ public class PathMatchingFilterChainResolver implements FilterChainResolver {
         return null;
     }
 
+    /**
+     * Returns an index of the chain names for the given manager, building it when first needed and again whenever
+     * the manager, the path matcher or the number of chains changes.  Chains are only ever added to a manager, so
+     * the number of chains is enough to tell whether the names have changed.  {@code null} is returned when the path
+     * matcher is not a plain {@link AntPathMatcher} or {@link #pathMatches} has been overridden, in which case each
+     * chain name is matched in turn.
+     */
+    private FilterChainPathIndex getChainIndex(FilterChainManager filterChainManager) {
+        PatternMatcher pathMatcher = getPathMatcher();
+        if (pathMatcher == null || pathMatcher.getClass() != AntPathMatcher.class || pathMatchesOverridden) {
+            return null;
+        }
+
+        Set<String> chainNames = filterChainManager.getChainNames();
+        CompiledChains compiled = this.compiledChains;
+        if (compiled == null || compiled.filterChainManager != filterChainManager ||
+                compiled.index.getPathMatcher() != pathMatcher || compiled.index.size() != chainNames.size()) {
+            compiled = new CompiledChains(filterChainManager,
+                    new FilterChainPathIndex(chainNames, (AntPathMatcher) pathMatcher, chainCacheSize));
+            this.compiledChains = compiled;
+        }
+        return compiled.index;
+    }
+
+    private boolean overridesPathMatches() {
+        for (Class<?> c = getClass(); c != PathMatchingFilterChainResolver.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("pathMatches", String.class, String.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                //not declared by this class; check the next one
+            }
+        }
+        return false;
+    }
+
     protected boolean pathMatches(String pattern, String path) {
         PatternMatcher pathMatcher = getPathMatcher();
         return pathMatcher.matches(pattern, path);
@@ -75,4 +148,16 @@ public class PathMatchingFilterChainResolver implements FilterChainResolver {
     protected String getPathWithinApplication(ServletRequest request) {
         return WebUtils.getPathWithinApplication(WebUtils.toHttp(request));
     }
+
+    private static final class CompiledChains {
+
+        private final FilterChainManager filterChainManager;
+
+        private final FilterChainPathIndex index;
+
+        private CompiledChains(FilterChainManager filterChainManager, FilterChainPathIndex index) {
+            this.filterChainManager = filterChainManager;
+            this.index = index;
+        }
+    }
 }